@@ -0,0 +1,67 @@
+package czb.framework.hotfix.benchmarks;
+
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.ClassLoaderPartition;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.source.MemoryPatchSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 {@link HotFixClassLoader} 定义一个补丁中所有类的耗时
+ * <p>每次调用都新建一个 HotFixClassLoader，即一次热修复扫描补丁、构建依赖关系图、划分类加载器并定义所有类的开销，
+ * 对比类加载器的划分方式和是否并行定义。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassDefineBenchmark {
+
+    /**
+     * 补丁中的类数
+     */
+    @Param({"10", "100", "1000"})
+    private int classCount;
+
+    /**
+     * 每个类的方法数
+     */
+    @Param({"10"})
+    private int methodCount;
+
+    @Param({"COMPONENT", "PER_CLASS"})
+    private ClassLoaderPartition partition;
+
+    @Param({"false", "true"})
+    private boolean parallelLoad;
+
+    private HotFixProperties properties;
+
+    private MemoryPatchSource patchSource;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        Map<String,byte[]> classes=new LinkedHashMap<>();
+        for (int i = 0; i < classCount; i++) {
+            String className = "czb.framework.hotfix.benchmarks.define.Generated" + i;
+            classes.put(className, SyntheticClasses.generateClass(className, methodCount));
+        }
+        patchSource = SyntheticClasses.toPatchSource("memory:define", classes, null);
+        properties = new HotFixProperties();
+        properties.setClassLoaderPartition(partition);
+        properties.setParallelLoad(parallelLoad);
+    }
+
+    @Benchmark
+    public HotFixClassLoader definePatch(){
+        return new HotFixClassLoader(ClassDefineBenchmark.class.getClassLoader(), properties, patchSource);
+    }
+}
@@ -0,0 +1,100 @@
+package czb.framework.hotfix.benchmarks;
+
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.generation.PatchGenerationRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热修复后多线程并发查找已定义的补丁类的吞吐量
+ * <p>补丁类在 Setup 中全部定义好，测量的是请求线程通过 {@link HotFixClassLoader#loadClass(String)} 和
+ * {@link PatchGenerationRegistry#getClassLoader(String)} 查找类的开销随线程数的变化，已定义的类应该不加锁直接返回。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassResolutionBenchmark {
+
+    private static final int CLASS_COUNT = 256;
+
+    private HotFixClassLoader hotFixClassLoader;
+
+    private PatchGenerationRegistry registry;
+
+    private String[] classNames;
+
+    /**
+     * 每个线程轮流查找不同的类
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        String next(String[] classNames){
+            index = (index + 1) & (classNames.length - 1);
+            return classNames[index];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        Map<String,byte[]> classes=new LinkedHashMap<>();
+        List<String> names=new ArrayList<>(CLASS_COUNT);
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            String className = "czb.framework.hotfix.benchmarks.resolve.Generated" + i;
+            classes.put(className, SyntheticClasses.generateClass(className, 1));
+            names.add(className);
+        }
+        hotFixClassLoader = new HotFixClassLoader(ClassResolutionBenchmark.class.getClassLoader(), new HotFixProperties(),
+                SyntheticClasses.toPatchSource("memory:resolve", classes, null));
+        registry = new PatchGenerationRegistry();
+        registry.register(new PatchGeneration("memory:resolve", hotFixClassLoader.getClassLoaderMap(), hotFixClassLoader.getMetaspaceUsedBytes()));
+        classNames = names.toArray(new String[0]);
+        for (String className : classNames) {
+            hotFixClassLoader.loadClass(className);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Class<?> loadClass_1thread(Cursor cursor) throws ClassNotFoundException {
+        return hotFixClassLoader.loadClass(cursor.next(classNames));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Class<?> loadClass_4threads(Cursor cursor) throws ClassNotFoundException {
+        return hotFixClassLoader.loadClass(cursor.next(classNames));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Class<?> loadClass_8threads(Cursor cursor) throws ClassNotFoundException {
+        return hotFixClassLoader.loadClass(cursor.next(classNames));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ClassLoader registryLookup_1thread(Cursor cursor) {
+        return registry.getClassLoader(cursor.next(classNames));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ClassLoader registryLookup_8threads(Cursor cursor) {
+        return registry.getClassLoader(cursor.next(classNames));
+    }
+}
@@ -0,0 +1,102 @@
+package czb.framework.hotfix.benchmarks;
+
+import czb.framework.hotfix.benchmarks.support.SyntheticClassLoader;
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.config.MappingSwapScope;
+import czb.framework.hotfix.core.strategy.HotFixAction;
+import czb.framework.hotfix.core.strategy.impl.ControllerHofFixBeanGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ControllerHofFixBeanGenerator} 热修复一个 Controller 的耗时随接口数的变化
+ * <p>原 Controller 注册在真实的 {@link RequestMappingHandlerMapping} 中，热修复类是同名的合成类，由 {@link HotFixClassLoader} 重新定义。
+ * prepare 只创建 Controller 对象并在锁外构建接口注册信息；swap 只测量生效时覆盖注册表的耗时，即请求线程查找接口可能被阻塞的时间窗口。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerSwapBenchmark {
+
+    private static final String CONTROLLER_CLASS_NAME = "czb.framework.hotfix.benchmarks.controller.GeneratedController";
+
+    /**
+     * Controller 的接口数
+     */
+    @Param({"10", "100", "1000"})
+    private int endpointCount;
+
+    @Param({"CONTROLLER", "METHOD"})
+    private MappingSwapScope mappingSwapScope;
+
+    private GenericApplicationContext context;
+
+    private ControllerHofFixBeanGenerator generator;
+
+    private Class<?> hotFixClass;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        byte[] classData = SyntheticClasses.generateController(CONTROLLER_CLASS_NAME, "/bench", endpointCount);
+        SyntheticClassLoader appClassLoader = new SyntheticClassLoader(ControllerSwapBenchmark.class.getClassLoader(),
+                Collections.singletonMap(CONTROLLER_CLASS_NAME, classData));
+        context = new GenericApplicationContext();
+        context.registerBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        context.registerBean("generatedController", appClassLoader.loadClass(CONTROLLER_CLASS_NAME));
+        context.refresh();
+        HotFixProperties properties = new HotFixProperties();
+        properties.setMappingSwapScope(mappingSwapScope);
+        HotFixClassLoader hotFixClassLoader = new HotFixClassLoader(appClassLoader, properties,
+                SyntheticClasses.toPatchSource("memory:controller", Collections.singletonMap(CONTROLLER_CLASS_NAME, classData), null));
+        hotFixClass = hotFixClassLoader.loadClass(CONTROLLER_CLASS_NAME);
+        generator = new ControllerHofFixBeanGenerator((DefaultListableBeanFactory) context.getBeanFactory(), properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public HotFixAction prepare(){
+        return generator.prepare(hotFixClass);
+    }
+
+    @Benchmark
+    public Object prepareAndSwap(){
+        return generator.generate(hotFixClass);
+    }
+
+    /**
+     * 每次调用前准备好的热修复动作，只用于 {@link #swap(PreparedAction)}
+     */
+    @State(Scope.Thread)
+    public static class PreparedAction {
+
+        private HotFixAction action;
+
+        @Setup(Level.Invocation)
+        public void prepare(ControllerSwapBenchmark benchmark){
+            action = benchmark.generator.prepare(benchmark.hotFixClass);
+        }
+    }
+
+    @Benchmark
+    public HotFixAction swap(PreparedAction preparedAction){
+        //生效时只缓冲接口注册信息，flush 时才覆盖注册表
+        preparedAction.action.commit();
+        generator.flush();
+        return preparedAction.action;
+    }
+}
@@ -0,0 +1,65 @@
+package czb.framework.hotfix.benchmarks;
+
+import czb.framework.hotfix.benchmarks.service.BenchService;
+import czb.framework.hotfix.benchmarks.service.BenchServiceImpl;
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.swap.HotSwappableBeanPostProcessor;
+import czb.framework.hotfix.core.swap.HotSwappableBeanRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热修复后稳定运行时调用热修复 Bean 的开销
+ * <p>对比调用原 Bean 对象、由 {@link HotFixClassLoader} 重新定义的热修复 Bean 对象【属性引用替换的方式】，
+ * 以及可热替换的代理对象【{@link HotSwappableBeanPostProcessor} 包装，目标对象已替换成热修复 Bean 对象】。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotFixedBeanCallBenchmark {
+
+    private BenchService original;
+
+    private BenchService hotFixed;
+
+    private BenchService swappableProxy;
+
+    private int value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        original = new BenchServiceImpl();
+        HotFixClassLoader hotFixClassLoader = new HotFixClassLoader(HotFixedBeanCallBenchmark.class.getClassLoader(), new HotFixProperties(),
+                SyntheticClasses.toPatchSource("memory:call", Collections.singletonMap(BenchServiceImpl.class.getName(),
+                        SyntheticClasses.readClassBytes(BenchServiceImpl.class)), null));
+        hotFixed = (BenchService) hotFixClassLoader.loadClass(BenchServiceImpl.class.getName()).getDeclaredConstructor().newInstance();
+        HotSwappableBeanRegistry registry = new HotSwappableBeanRegistry();
+        HotSwappableBeanPostProcessor postProcessor = new HotSwappableBeanPostProcessor(registry,
+                Collections.singletonList(BenchService.class.getPackage().getName()));
+        swappableProxy = (BenchService) postProcessor.postProcessAfterInitialization(new BenchServiceImpl(), "benchService");
+        registry.getTargetSource("benchService").swap(hotFixed);
+    }
+
+    @Benchmark
+    public int original(){
+        return original.hash(value++);
+    }
+
+    @Benchmark
+    public int hotFixed(){
+        return hotFixed.hash(value++);
+    }
+
+    @Benchmark
+    public int swappableProxy(){
+        return swappableProxy.hash(value++);
+    }
+}
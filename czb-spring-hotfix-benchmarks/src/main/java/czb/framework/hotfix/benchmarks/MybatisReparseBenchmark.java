@@ -0,0 +1,97 @@
+package czb.framework.hotfix.benchmarks;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import czb.framework.hotfix.benchmarks.support.SyntheticClassLoader;
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.strategy.HotFixAction;
+import czb.framework.hotfix.core.strategy.impl.MybatisHotFixBeanGenerator;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MybatisHotFixBeanGenerator} 热修复一个 Mapper 的耗时随 {@link Configuration} 规模的变化
+ * <p>运行中的 Configuration 预先解析 namespaceCount 个其他命名空间的 mapper.xml，每个有 statementCount 个语句，
+ * 热修复的 Mapper 接口和 mapper.xml 都是合成的。reparse 只把热修复 Mapper 删除并重新解析到影子 Configuration，
+ * reparseAndSwap 还包括生效时把影子 Configuration 替换到运行中的 Configuration。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MybatisReparseBenchmark {
+
+    private static final String MAPPER_CLASS_NAME = "czb.framework.hotfix.benchmarks.mapper.GeneratedMapper";
+
+    /**
+     * 运行中的 Configuration 中其他命名空间的数量
+     */
+    @Param({"10", "100", "1000"})
+    private int namespaceCount;
+
+    /**
+     * 每个命名空间【包括热修复的 Mapper】的语句数
+     */
+    @Param({"20"})
+    private int statementCount;
+
+    private MybatisHotFixBeanGenerator generator;
+
+    private Class<?> hotFixClass;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        Configuration configuration = new MybatisConfiguration();
+        for (int i = 0; i < namespaceCount; i++) {
+            parse(configuration, "czb.framework.hotfix.benchmarks.mapper.BackgroundMapper" + i);
+        }
+        byte[] classData = SyntheticClasses.generateMapper(MAPPER_CLASS_NAME, statementCount);
+        SyntheticClassLoader appClassLoader = new SyntheticClassLoader(MybatisReparseBenchmark.class.getClassLoader(),
+                Collections.singletonMap(MAPPER_CLASS_NAME, classData));
+        parse(configuration, MAPPER_CLASS_NAME);
+        configuration.addMapper(appClassLoader.loadClass(MAPPER_CLASS_NAME));
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("sqlSessionFactory", new DefaultSqlSessionFactory(configuration));
+        HotFixProperties properties = new HotFixProperties();
+        HotFixClassLoader hotFixClassLoader = new HotFixClassLoader(appClassLoader, properties,
+                SyntheticClasses.toPatchSource("memory:mybatis", Collections.singletonMap(MAPPER_CLASS_NAME, classData),
+                        Collections.singletonMap(SyntheticClasses.getMapperXmlPath(MAPPER_CLASS_NAME), SyntheticClasses.generateMapperXml(MAPPER_CLASS_NAME, statementCount))));
+        hotFixClass = hotFixClassLoader.loadClass(MAPPER_CLASS_NAME);
+        generator = new MybatisHotFixBeanGenerator(beanFactory, properties);
+    }
+
+    /**
+     * 把命名空间为 namespace 的合成 mapper.xml 解析到 configuration 中
+     */
+    private void parse(Configuration configuration, String namespace){
+        String xml = SyntheticClasses.generateMapperXml(namespace, statementCount);
+        new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), configuration,
+                SyntheticClasses.getMapperXmlPath(namespace), configuration.getSqlFragments(), namespace).parse();
+    }
+
+    @Benchmark
+    public HotFixAction reparse(){
+        return generator.prepare(hotFixClass);
+    }
+
+    @Benchmark
+    public HotFixAction reparseAndSwap(){
+        HotFixAction action = generator.prepare(hotFixClass);
+        action.commit();
+        generator.flush();
+        return action;
+    }
+}
@@ -0,0 +1,118 @@
+package czb.framework.hotfix.benchmarks;
+
+import czb.framework.hotfix.benchmarks.service.BenchService;
+import czb.framework.hotfix.benchmarks.service.BenchServiceImpl;
+import czb.framework.hotfix.benchmarks.support.SyntheticClassLoader;
+import czb.framework.hotfix.benchmarks.support.SyntheticClasses;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.helper.BeanInjectionMetadata;
+import czb.framework.hotfix.core.helper.RefNewBeanHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RefNewBeanHelper} 把热修复 Bean 对象引用到所有依赖方的耗时
+ * <p>依赖方是合成类，每个有一个 BenchService 类型的 benchService 属性，以及 fieldCount-1 个其他类型的被 Autowired 修饰的属性。
+ * 热修复 Bean 对象是由 {@link HotFixClassLoader} 重新定义的 {@link BenchServiceImpl}。
+ * 默认依赖方类的注入元数据已经缓存【同一个类被多次热修复】；coldMetadata 在每次调用前清除缓存，包括第一次构建注入元数据的开销。</p>
+ * @author chenzhuobin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefNewBeanHelperBenchmark {
+
+    /**
+     * 依赖热修复 Bean 的 Bean 数
+     */
+    @Param({"10", "100", "1000"})
+    private int dependentCount;
+
+    /**
+     * 每个依赖方被 Autowired 修饰的属性数
+     */
+    @Param({"1", "16"})
+    private int fieldCount;
+
+    private final RefNewBeanHelper refNewBeanHelper = new RefNewBeanHelper();
+
+    private SyntheticClassLoader dependentClassLoader;
+
+    private Object[] dependents;
+
+    private Object hotFixBean;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Map<String,Class<?>> fields=new LinkedHashMap<>();
+        fields.put("benchService", BenchService.class);
+        for (int i = 1; i < fieldCount; i++) {
+            fields.put("field" + i, String.class);
+        }
+        Map<String,byte[]> classes=new LinkedHashMap<>();
+        for (int i = 0; i < dependentCount; i++) {
+            String className = "czb.framework.hotfix.benchmarks.ref.Dependent" + i;
+            classes.put(className, SyntheticClasses.generateDependent(className, fields));
+        }
+        dependentClassLoader = new SyntheticClassLoader(RefNewBeanHelperBenchmark.class.getClassLoader(), classes);
+        dependents = new Object[dependentCount];
+        int index = 0;
+        for (String className : classes.keySet()) {
+            dependents[index++] = dependentClassLoader.loadClass(className).getDeclaredConstructor().newInstance();
+        }
+        HotFixClassLoader hotFixClassLoader = new HotFixClassLoader(RefNewBeanHelperBenchmark.class.getClassLoader(), new HotFixProperties(),
+                SyntheticClasses.toPatchSource("memory:ref", Collections.singletonMap(BenchServiceImpl.class.getName(),
+                        SyntheticClasses.readClassBytes(BenchServiceImpl.class)), null));
+        hotFixBean = hotFixClassLoader.loadClass(BenchServiceImpl.class.getName()).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * 每次调用前清除依赖方类的注入元数据缓存，只用于 {@link #planAndApplyColdMetadata(ColdMetadata)}
+     */
+    @State(Scope.Thread)
+    public static class ColdMetadata {
+
+        @Setup(Level.Invocation)
+        public void evict(RefNewBeanHelperBenchmark benchmark){
+            BeanInjectionMetadata.evict(benchmark.dependentClassLoader);
+        }
+    }
+
+    @Benchmark
+    public int plan(){
+        int count = 0;
+        for (int i = 0; i < dependents.length; i++) {
+            if(refNewBeanHelper.planRefNewBean("dependent" + i, dependents[i], "benchService", hotFixBean)!=null) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int planAndApply(){
+        return applyAll();
+    }
+
+    @Benchmark
+    public int planAndApplyColdMetadata(ColdMetadata coldMetadata){
+        return applyAll();
+    }
+
+    private int applyAll(){
+        int count = 0;
+        for (int i = 0; i < dependents.length; i++) {
+            RefNewBeanHelper.FieldRef fieldRef = refNewBeanHelper.planRefNewBean("dependent" + i, dependents[i], "benchService", hotFixBean);
+            if(fieldRef==null) continue;
+            fieldRef.apply();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,14 @@
+package czb.framework.hotfix.benchmarks.service;
+
+/**
+ * 基准测试中被热修复的服务接口
+ * @author chenzhuobin
+ */
+public interface BenchService {
+
+    /**
+     * 计算 value 的哈希，足够轻量，调用开销不会被方法体掩盖
+     * @param value 输入值
+     */
+    int hash(int value);
+}
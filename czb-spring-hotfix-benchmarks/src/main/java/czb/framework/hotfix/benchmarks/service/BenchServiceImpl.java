@@ -0,0 +1,13 @@
+package czb.framework.hotfix.benchmarks.service;
+
+/**
+ * 基准测试中被热修复的服务实现，热修复时直接把本类的类数据作为补丁重新定义
+ * @author chenzhuobin
+ */
+public class BenchServiceImpl implements BenchService {
+
+    @Override
+    public int hash(int value) {
+        return value * 31 + 17;
+    }
+}
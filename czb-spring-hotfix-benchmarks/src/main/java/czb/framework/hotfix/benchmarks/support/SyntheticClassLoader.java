@@ -0,0 +1,39 @@
+package czb.framework.hotfix.benchmarks.support;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 加载合成类的类加载器，模拟应用程序类加载器中的原类
+ * <p>热修复基准测试以它作为 {@link czb.framework.hotfix.core.classloader.HotFixClassLoader} 的父级类加载器，
+ * 同名的补丁类由热修复类加载器重新定义。</p>
+ * @author chenzhuobin
+ */
+public class SyntheticClassLoader extends ClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * 合成类的类数据【key=类名,value=类数据】
+     */
+    private final Map<String,byte[]> classes;
+
+    /**
+     * 新建一个 SyntheticClassLoader 对象
+     * @param parent 父级类加载器
+     * @param classes 合成类的类数据【key=类名,value=类数据】
+     */
+    public SyntheticClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+        super(parent);
+        this.classes = new HashMap<>(classes);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] classData = classes.get(name);
+        if(classData==null) throw new ClassNotFoundException(name);
+        return defineClass(name, classData, 0, classData.length);
+    }
+}
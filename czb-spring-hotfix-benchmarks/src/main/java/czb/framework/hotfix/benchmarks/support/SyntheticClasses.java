@@ -0,0 +1,185 @@
+package czb.framework.hotfix.benchmarks.support;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.source.MemoryPatchSource;
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.FieldVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 生成基准测试用的合成类和 mapper.xml
+ * <p>所有类都用 ASM 在内存中生成，补丁通过 {@link MemoryPatchSource} 提供，基准测试不依赖磁盘上的补丁文件，也不需要访问网络。</p>
+ * @author chenzhuobin
+ */
+public final class SyntheticClasses {
+
+    private static final String OBJECT="java/lang/Object";
+
+    private static final String STRING_DESCRIPTOR="()Ljava/lang/String;";
+
+    private static final String MAPPER_DOCTYPE="<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">";
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * 生成一个有 methodCount 个返回字符串的方法的类
+     * @param className 类名
+     * @param methodCount 方法个数
+     */
+    public static byte[] generateClass(String className, int methodCount){
+        ClassWriter cw = newClass(className);
+        for (int i = 0; i < methodCount; i++) {
+            returnString(cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, STRING_DESCRIPTOR, null, null), className + "#method" + i);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 生成一个有 endpointCount 个 GET 接口的 RestController，接口路径为 pathPrefix/i
+     * @param className 类名
+     * @param pathPrefix 接口路径前缀，不同的 Controller 使用不同的前缀
+     * @param endpointCount 接口个数
+     */
+    public static byte[] generateController(String className, String pathPrefix, int endpointCount){
+        ClassWriter cw = newClass(className);
+        cw.visitAnnotation("Lorg/springframework/web/bind/annotation/RestController;", true).visitEnd();
+        for (int i = 0; i < endpointCount; i++) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "endpoint" + i, STRING_DESCRIPTOR, null, null);
+            AnnotationVisitor mapping = mv.visitAnnotation("Lorg/springframework/web/bind/annotation/GetMapping;", true);
+            AnnotationVisitor paths = mapping.visitArray("value");
+            paths.visit(null, pathPrefix + "/" + i);
+            paths.visitEnd();
+            mapping.visitEnd();
+            returnString(mv, className + "#endpoint" + i);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 生成一个被 Repository 注解修饰的 Mapper 接口，有 methodCount 个 selectI(Long id) 方法，对应 {@link #generateMapperXml(String, int)} 中的语句
+     * @param className 接口名
+     * @param methodCount 方法个数
+     */
+    public static byte[] generateMapper(String className, int methodCount){
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, internalName(className), null, OBJECT, null);
+        cw.visitAnnotation("Lorg/springframework/stereotype/Repository;", true).visitEnd();
+        for (int i = 0; i < methodCount; i++) {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "select" + i, "(Ljava/lang/Long;)Ljava/util/Map;", null, null).visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 生成命名空间为 namespace 的 mapper.xml，有 statementCount 个 select 语句
+     * @param namespace 命名空间，即 Mapper 接口名
+     * @param statementCount 语句个数
+     */
+    public static String generateMapperXml(String namespace, int statementCount){
+        StringBuilder xml=new StringBuilder(256+statementCount*96);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n").append(MAPPER_DOCTYPE).append('\n');
+        xml.append("<mapper namespace=\"").append(namespace).append("\">\n");
+        xml.append("  <resultMap id=\"row\" type=\"map\">\n    <id column=\"id\" property=\"id\"/>\n  </resultMap>\n");
+        for (int i = 0; i < statementCount; i++) {
+            xml.append("  <select id=\"select").append(i).append("\" resultMap=\"row\">")
+                    .append("select * from t_").append(i).append(" where id = #{id}</select>\n");
+        }
+        xml.append("</mapper>\n");
+        return xml.toString();
+    }
+
+    /**
+     * 生成一个依赖方类，每个属性都被 Autowired 修饰
+     * @param className 类名
+     * @param fields 属性【key=属性名,value=属性类型】
+     */
+    public static byte[] generateDependent(String className, Map<String,Class<?>> fields){
+        ClassWriter cw = newClass(className);
+        fields.forEach((fieldName, fieldType) -> {
+            FieldVisitor fv = cw.visitField(Opcodes.ACC_PRIVATE, fieldName, "L" + internalName(fieldType.getName()) + ";", null, null);
+            fv.visitAnnotation("Lorg/springframework/beans/factory/annotation/Autowired;", true).visitEnd();
+            fv.visitEnd();
+        });
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 读取 cls 在 classpath 上的类数据，用于把一个已经编译好的类作为补丁重新定义
+     * @param cls 类
+     */
+    public static byte[] readClassBytes(Class<?> cls){
+        String path = internalName(cls.getName()) + ".class";
+        try (InputStream inputStream = cls.getClassLoader().getResourceAsStream(path)) {
+            if(inputStream==null) throw new HotFixException(" class file "+path+" not found");
+            return StreamUtils.copyToByteArray(inputStream);
+        } catch (IOException e) {
+            throw new HotFixException(" read class file "+path+" fail",e);
+        }
+    }
+
+    /**
+     * 把类数据和资源组装成内存中的热修复补丁
+     * @param location 补丁的位置，用于日志输出
+     * @param classes 类数据【key=类名,value=类数据】
+     * @param resources 其他资源【key=资源路径,value=资源内容】，如 mapper.xml，可以为空
+     */
+    public static MemoryPatchSource toPatchSource(String location, Map<String,byte[]> classes, Map<String,String> resources){
+        Map<String,ByteBuffer> patchResources=new LinkedHashMap<>();
+        classes.forEach((className, classData) -> patchResources.put(internalName(className) + ".class", ByteBuffer.wrap(classData).asReadOnlyBuffer()));
+        if(resources!=null){
+            resources.forEach((path, content) -> patchResources.put(path, ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer()));
+        }
+        return new MemoryPatchSource(location, patchResources);
+    }
+
+    /**
+     * 获取 类名对应的 mapper.xml 在补丁中的路径
+     * @param className Mapper 接口名
+     */
+    public static String getMapperXmlPath(String className){
+        return internalName(className) + ".xml";
+    }
+
+    private static String internalName(String className){
+        return className.replace('.', '/');
+    }
+
+    /**
+     * 新建一个只有默认构造方法的类
+     */
+    private static ClassWriter newClass(String className){
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName(className), null, OBJECT, null);
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        return cw;
+    }
+
+    private static void returnString(MethodVisitor mv, String value){
+        mv.visitCode();
+        mv.visitLdcInsn(value);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
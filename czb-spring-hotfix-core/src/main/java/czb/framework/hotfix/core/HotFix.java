@@ -3,31 +3,64 @@ package czb.framework.hotfix.core;
 import czb.framework.hotfix.core.classloader.HotFixClassLoader;
 import czb.framework.hotfix.core.config.HotFixProperties;
 import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.generation.PatchGenerationRegistry;
+import czb.framework.hotfix.core.helper.BeanInjectionMetadata;
+import czb.framework.hotfix.core.helper.BeanTypeIndex;
+import czb.framework.hotfix.core.helper.DependentBeanIndex;
+import czb.framework.hotfix.core.helper.PatchDigestHelper;
 import czb.framework.hotfix.core.helper.RefNewBeanHelper;
+import czb.framework.hotfix.core.job.HotFixJob;
+import czb.framework.hotfix.core.job.HotFixJobScheduler;
+import czb.framework.hotfix.core.listener.HotFixListener;
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+import czb.framework.hotfix.core.scrub.DefaultStaleCacheScrubber;
+import czb.framework.hotfix.core.scrub.StaleCacheScrubber;
+import czb.framework.hotfix.core.source.DeltaPatchSource;
+import czb.framework.hotfix.core.source.MemoryPatchSource;
+import czb.framework.hotfix.core.source.PatchSource;
+import czb.framework.hotfix.core.source.PatchSources;
+import czb.framework.hotfix.core.strategy.HotFixAction;
 import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
 import czb.framework.hotfix.core.strategy.impl.DefaultHotFixBeanGenerator;
+import czb.framework.hotfix.core.swap.HotSwappableBeanRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
-import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * 热修复main类
  * @author chenzhuobin
  */
-public class HotFix implements ApplicationContextAware {
+public class HotFix implements ApplicationContextAware, SmartInitializingSingleton, DisposableBean {
 
     private Logger log= LoggerFactory.getLogger(HotFix.class);
 
+    /**
+     * 抽象/接口类名 - 实现类名 的映射 properties文件在补丁中的路径
+     */
+    private static final String HOFIX_CLASS_MAP_PROP="hofix-class-map.properties";
+
     /**
      * 当前应用程序上下文
      */
@@ -44,9 +77,60 @@ public class HotFix implements ApplicationContextAware {
     private RefNewBeanHelper refNewBeanHelper;
 
     /**
-     * 热修复Bean对象生成器，默认为 {@link DefaultHotFixBeanGenerator}
+     * 热修复Bean对象生成器
+     */
+    private DefaultHotFixBeanGenerator hotFixBeanGenerator;
+
+    /**
+     * 热修复补丁内容摘要的帮助类，用于增量热修复
+     */
+    private PatchDigestHelper patchDigestHelper;
+
+    /**
+     * 已经生效的热修复Bean对象【key=热修复类名,value=热修复Bean对象】
+     */
+    private Map<String,Object> appliedHotFixBeans=new ConcurrentHashMap<>();
+
+    /**
+     * Bean 的反向依赖索引，用于找出所有注入了被热修复 Bean 的单例对象
+     */
+    private DependentBeanIndex dependentBeanIndex;
+
+    /**
+     * 补丁代的注册表，跟踪每次热修复生成的类加载器是否被回收
+     */
+    private final PatchGenerationRegistry generationRegistry=new PatchGenerationRegistry();
+
+    /**
+     * 框架缓存清理器，默认为 {@link DefaultStaleCacheScrubber}
+     */
+    private StaleCacheScrubber staleCacheScrubber;
+
+    /**
+     * 当前生效的热修复类及其 mapper.xml、hofix-class-map.properties【key=资源路径,value=资源数据】，
+     * 每次热修复生效时用补丁中的内容覆盖，用于合并补丁，见 {@link #prepareCompaction()}
+     */
+    private final Map<String,ByteBuffer> effectiveResources=new LinkedHashMap<>();
+
+    /**
+     * 已生效的版本号，每生效一个热修复计划加一，用于判断热修复计划是否已经过时
+     */
+    private volatile long appliedVersion=0;
+
+    /**
+     * 最近一次热修复【包括合并补丁】的执行报告，失败时只包含已经完成的阶段
      */
-    private HotFixBeanGenerator hotFixBeanGenerator;
+    private volatile HotFixReport lastReport;
+
+    /**
+     * 热修复过程的监听器
+     */
+    private final List<HotFixListener> listeners=new CopyOnWriteArrayList<>();
+
+    /**
+     * 异步执行热修复的任务调度器，见 {@link #submit()}
+     */
+    private final HotFixJobScheduler jobScheduler;
 
     /**
      * 新建一个 HotFix 实例，建议使用配置成单例Bean对象。
@@ -55,44 +139,369 @@ public class HotFix implements ApplicationContextAware {
     public HotFix(HotFixProperties hotFixProperties) {
         this.hotFixProperties = hotFixProperties;
         this.refNewBeanHelper=new RefNewBeanHelper();
+        this.patchDigestHelper=new PatchDigestHelper(HotFix.class.getClassLoader());
+        this.jobScheduler=new HotFixJobScheduler(this::exec);
+        addListener(jobScheduler);
+    }
+
+    /**
+     * 启动热修复，相当于 commit(prepare())
+     * @return 热修复执行报告
+     */
+    public HotFixReport exec(){
+        return commit(prepare());
+    }
+
+    /**
+     * 异步启动热修复，在专用的后台线程上执行 {@link #exec()}，不占用调用线程
+     * <p>同一时间只有一个热修复在执行，执行期间的请求合并成一个排队的任务，见 {@link HotFixJobScheduler}</p>
+     * @return 热修复任务，用于查询执行进度和结果
+     */
+    public HotFixJob submit(){
+        return jobScheduler.submit();
     }
 
     /**
-     * 启动热修复
+     * 准备热修复计划
+     * <p>完成加载类、实例化热修复Bean对象、解析接口信息、找出要修改引用的属性等工作，不会对运行中的应用程序产生任何影响，
+     * 所以准备失败时不需要任何恢复操作。</p>
+     * @return 热修复计划，交由 {@link #commit(HotFixPlan)} 生效，不打算生效时需要调用 {@link HotFixPlan#close()} 放弃
      */
-    public void exec(){
+    public HotFixPlan prepare(){
         if(log.isInfoEnabled()){
             log.info(" hotfix start ... ");
         }
-        Properties properties = loadHofixClassMapProp();
+        HotFixReport report=new HotFixReport();
+        report.setStartTime(System.currentTimeMillis());
+        long baseVersion=appliedVersion;
+        return prepare(() -> PatchSources.open(hotFixProperties), report, baseVersion, Boolean.TRUE.equals(hotFixProperties.getIncremental()));
+    }
+
+    /**
+     * 合并补丁，相当于 commit(prepareCompaction())
+     * @return 热修复执行报告
+     */
+    public HotFixReport compact(){
+        return commit(prepareCompaction());
+    }
+
+    /**
+     * 准备合并补丁的计划
+     * <p>多次热修复之后，每次热修复都留下了一代类加载器，有的类被热修复了多次。合并补丁把当前生效的所有热修复类【每个类最后生效的版本】
+     * 重新加载到新的一代类加载器中，生效后 Bean、接口注册信息、Mybatis 的 Mapper 都指向新的一代，之前所有的补丁代都被取代，
+     * 可以被回收。</p>
+     * <p>与普通的热修复计划一样，准备阶段不会对运行中的应用程序产生任何影响，生效只是短暂的引用替换；准备期间有其他热修复生效时
+     * 该计划会过时而无法生效，所以可以在流量低的时候在后台执行。</p>
+     * @return 合并补丁的计划，交由 {@link #commit(HotFixPlan)} 生效
+     */
+    public HotFixPlan prepareCompaction(){
+        if(log.isInfoEnabled()){
+            log.info(" hotfix compaction start ... ");
+        }
+        HotFixReport report=new HotFixReport();
+        report.setStartTime(System.currentTimeMillis());
+        long baseVersion;
+        PatchSource patchSource;
+        //生效内容与版本号需要一致
+        synchronized (this){
+            if(effectiveResources.isEmpty()){
+                throw new HotFixException("no applied hotfix to compact");
+            }
+            baseVersion=appliedVersion;
+            patchSource=new MemoryPatchSource("compaction of version "+baseVersion, new LinkedHashMap<>(effectiveResources));
+        }
+        //所有类都要重新加载，不跳过没有变化的类
+        return prepare(() -> patchSource, report, baseVersion, false);
+    }
+
+    /**
+     * 打开补丁并准备热修复计划，准备失败时关闭补丁
+     * @param patchSourceSupplier 打开热修复补丁来源，打开补丁【如扫描补丁目录】的耗时算在扫描阶段内
+     * @param report 热修复执行报告
+     * @param baseVersion 准备计划时已生效的版本号
+     * @param incremental 是否跳过没有变化的类
+     */
+    private HotFixPlan prepare(Supplier<PatchSource> patchSourceSupplier, HotFixReport report, long baseVersion, boolean incremental){
+        PatchSource patchSource=null;
+        try {
+            //元空间剩余空间不足时，在打开补丁之前就拒绝
+            if(hotFixProperties.getMinMetaspaceHeadroom()!=null){
+                generationRegistry.checkMetaspaceHeadroom(hotFixProperties.getMinMetaspaceHeadroom().toBytes());
+            }
+            long scanStart = startPhase(report, HotFixPhase.SCAN);
+            patchSource = patchSourceSupplier.get();
+            HotFixPlan plan = preparePlan(patchSource, report, baseVersion, incremental, scanStart);
+            report.setPrepareCostTime(System.currentTimeMillis()-report.getStartTime());
+            if(log.isInfoEnabled()){
+                log.info(" hotfix prepared ... {} classes, {} class loaders, metaspace {} KB, cost {} ms",plan.getHotFixClassNames().size(),
+                        report.getClassLoaderCount(),report.getLoadMetaspaceBytes()/1024,report.getPrepareCostTime());
+            }
+            return plan;
+        } catch (RuntimeException e) {
+            if(patchSource!=null){
+                try {
+                    patchSource.close();
+                } catch (IOException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            lastReport=report;
+            fireEvent(listener -> listener.onFailure(report, e));
+            throw e;
+        }
+    }
+
+    /**
+     * 使热修复计划生效，只做代价很小的引用替换：覆盖接口注册信息、替换 Mybatis 元数据、修改依赖属性的引用等
+     * <p>计划生成后如果有其他计划先生效了，该计划会被认为已经过时而抛出 {@link HotFixException}，需要重新准备。
+     * 无论是否生效成功，计划都会被关闭。</p>
+     * <p>生效是全有或全无的：生成器缓冲的变更【Controller 的接口注册信息、Mybatis 的影子 Configuration】只有在所有热修复动作
+     * 都生效成功之后才会一起提交；任何一个动作失败时都会丢弃缓冲的变更，依赖属性不会被修改，已生效的版本号、摘要与补丁代也保持不变。
+     * 所以直接生效的 {@link HotFixAction#commit()} 【如替换可热替换 Bean 的目标对象】应该在准备阶段完成所有检查，保证生效时不会失败。</p>
+     * <p>所有动作生效成功后才提交缓冲的变更，提交本身不是原子的：某个生成器提交失败时，所有生成器还没有提交的变更都会被丢弃，
+     * 但已经提交的生成器的变更【以及同一个生成器中已经提交的批次】无法撤回，此时只有部分变更生效，且版本号、摘要与补丁代保持不变，
+     * 需要修复问题后重新热修复整个补丁。</p>
+     * @param plan 由 {@link #prepare()} 生成的热修复计划
+     * @return 热修复执行报告
+     */
+    public synchronized HotFixReport commit(HotFixPlan plan){
+        HotFixReport report = plan.getReport();
+        try {
+            if(plan.isClosed()){
+                throw new HotFixException("hotfix plan of patch ["+report.getPatchLocation()+"] has been committed or discarded");
+            }
+            if(plan.getBaseVersion()!=appliedVersion){
+                throw new HotFixException("hotfix plan of patch ["+report.getPatchLocation()+"] is stale ,cause another plan has been committed ,please prepare again");
+            }
+            long start = startPhase(report, HotFixPhase.COMMIT);
+            DefaultHotFixBeanGenerator generator = getHotFixBeanGenerator(getBeanFactory());
+            try {
+                for (HotFixAction action : plan.getHotFixActions().values()) {
+                    action.commit();
+                }
+            } catch (RuntimeException e) {
+                //有动作生效失败时不能提交部分缓冲的变更
+                generator.discard();
+                throw e;
+            }
+            //所有动作都生效成功后，提交生效过程中缓冲起来的变更，如 Controller 的接口注册信息；提交失败时会丢弃所有生成器还没有提交的变更
+            generator.flush(report.getFlushCostNanos());
+            //热修复的类有可能会有互相依赖的情况，这里对依赖的属性覆盖成热修复的类
+            long fieldRefStart = System.nanoTime();
+            for (RefNewBeanHelper.FieldRef fieldRef : plan.getFieldRefs()) {
+                fieldRef.apply();
+            }
+            report.setFieldRefCount(plan.getFieldRefs().size());
+            report.setFieldRefCostNanos(System.nanoTime()-fieldRefStart);
+            for (Map.Entry<String, HotFixAction> entry : plan.getHotFixActions().entrySet()) {
+                Object retiredHotFixBean = appliedHotFixBeans.put(entry.getKey(), entry.getValue().getBean());
+                //被替换掉的热修复 Bean 对象的类加载器已经废弃，清除它加载的类的注入元数据
+                if(retiredHotFixBean!=null && HotFixClassLoader.isHotFixClass(retiredHotFixBean.getClass())){
+                    BeanInjectionMetadata.evict(retiredHotFixBean.getClass().getClassLoader());
+                }
+            }
+            getDependentBeanIndex().markApplied(getReplacedBeans(plan.getHotFixActions()));
+            patchDigestHelper.markApplied(plan.getDigests());
+            applyEffectiveResources(plan.getEffectiveResources());
+            generationRegistry.register(plan.getGeneration());
+            appliedVersion++;
+            report.setCommitCostNanos(endPhase(report, HotFixPhase.COMMIT, start));
+            //清理框架缓存中被取代的补丁类，使被取代的补丁代可以被回收，清理的耗时同样不算在生效的时间窗口内
+            if(Boolean.TRUE.equals(hotFixProperties.getScrubStaleCaches())){
+                long scrubStart = startPhase(report, HotFixPhase.SCRUB);
+                scrubStaleCaches();
+                report.setScrubCostNanos(endPhase(report, HotFixPhase.SCRUB, scrubStart));
+            }
+            //生效之后再预热，预热的耗时不算在生效的时间窗口内
+            long warmUpStart = startPhase(report, HotFixPhase.WARM_UP);
+            generator.warmUp();
+            report.setWarmUpCostNanos(endPhase(report, HotFixPhase.WARM_UP, warmUpStart));
+        } catch (RuntimeException e) {
+            lastReport=report;
+            fireEvent(listener -> listener.onFailure(report, e));
+            throw e;
+        } finally {
+            plan.close();
+        }
+        report.setCostTime(System.currentTimeMillis()-report.getStartTime());
+        if(log.isInfoEnabled()){
+            log.info(" hotfix complete ... applied {} classes, skipped {} unchanged classes, prepare {} ms, commit {} us, scrub {} us, warm up {} us, cost {} ms",
+                    report.getAppliedClassNames().size(),report.getSkippedClassNames().size(),report.getPrepareCostTime(),
+                    report.getCommitCostNanos()/1000,report.getScrubCostNanos()/1000,report.getWarmUpCostNanos()/1000,report.getCostTime());
+        }
+        lastReport=report;
+        fireEvent(listener -> listener.onComplete(report));
+        return report;
+    }
+
+    /**
+     * 使用 patchSource 准备热修复计划
+     * @param patchSource 热修复补丁来源
+     * @param report 热修复执行报告
+     * @param baseVersion 准备计划时已生效的版本号
+     * @param incremental 是否跳过没有变化的类
+     * @param scanStart 扫描阶段的开始时间【纳秒】
+     */
+    private HotFixPlan preparePlan(PatchSource patchSource, HotFixReport report, long baseVersion, boolean incremental, long scanStart){
+        if(log.isInfoEnabled()){
+            log.info(" load patch [{}] , class size = {}",patchSource.getLocation(),patchSource.getClassNames().size());
+        }
+        report.setPatchLocation(patchSource.getLocation());
+        //补丁中所有类的类名集合
+        Set<String> patchClassNames=new HashSet<>(patchSource.getClassNames());
+        //补丁中的类/mapper.xml 的摘要，热修复成功后记录下来，用于下一次的增量热修复
+        Map<String,String> digests=new HashMap<>();
+        PatchSource deltaPatchSource=diffPatchSource(patchSource,digests,report,incremental);
+        HotFixPlan plan=new HotFixPlan(deltaPatchSource,report,baseVersion,digests);
+        copyEffectiveResources(deltaPatchSource,plan.getEffectiveResources());
+        Properties properties = loadHofixClassMapProp(deltaPatchSource);
+        endPhase(report, HotFixPhase.SCAN, scanStart);
         DefaultListableBeanFactory beanFactory = getBeanFactory();
         //加载需要热部署的类加载器
-        HotFixClassLoader hotFixClassLoader=new HotFixClassLoader(HotFix.class.getClassLoader(), hotFixProperties);
+        long defineStart = startPhase(report, HotFixPhase.DEFINE);
+        HotFixClassLoader hotFixClassLoader=new HotFixClassLoader(HotFix.class.getClassLoader(), hotFixProperties, deltaPatchSource);
+        report.setClassLoaderCount(hotFixClassLoader.getClassLoaderCount());
+        report.setDefinedClassCount(hotFixClassLoader.getClassLoaderMap().size());
+        report.setLoadMetaspaceBytes(hotFixClassLoader.getMetaspaceUsedBytes());
+        plan.setGeneration(new PatchGeneration(patchSource.getLocation(), hotFixClassLoader.getClassLoaderMap(), hotFixClassLoader.getMetaspaceUsedBytes()));
+        plan.getGeneration().setContentHash(patchDigestHelper.digest(digests));
+        endPhase(report, HotFixPhase.DEFINE, defineStart);
         //需要热修复的类的类名集合
         Set<String> hotFixClassNameList = hotFixClassLoader.getClassLoaderMap().keySet();
         //存放 实例化后的需要热修复的Bean映射关系，key=hotFixBeanName,value=hotFixBeanName对应的已经初始化的Bean
         Map<String,Object> hotFixMap=new HashMap<>(hotFixClassNameList.size());
+        DefaultHotFixBeanGenerator generator = getHotFixBeanGenerator(beanFactory);
+        //每种生成器处理的类名，记录到补丁代中
+        Map<String,List<String>> generatedClassNames=new LinkedHashMap<>();
+        long generateStart = startPhase(report, HotFixPhase.GENERATE);
         for (String hotFixClassName : hotFixClassNameList) {
             try {
                 //加载要热修复的类，并实例化和使用 Spring 初始化它
                 Class<?> hotFixClass = hotFixClassLoader.loadClass(hotFixClassName);
                 if(log.isInfoEnabled()){
-                    log.info("generate class name [{}]..",hotFixClassName);
+                    log.info("prepare class name [{}]..",hotFixClassName);
                 }
-                Object hotFixObj=getHotFixBeanGenerator(beanFactory).generate(hotFixClass);
-                if(hotFixObj==null) continue;
-                hotFixMap.put(hotFixClassName,hotFixObj);
+                HotFixBeanGenerator handler = generator.getGenerator(hotFixClass);
+                if(handler==null) continue;
+                long start = System.nanoTime();
+                HotFixAction action=handler.prepare(hotFixClass);
+                report.getGenerateCostNanos().merge(handler.getType(), System.nanoTime()-start, Long::sum);
+                generatedClassNames.computeIfAbsent(handler.getType(), k -> new ArrayList<>()).add(hotFixClassName);
+                if(action==null || action.getBean()==null) continue;
+                plan.getHotFixActions().put(hotFixClassName,action);
+                hotFixMap.put(hotFixClassName,action.getBean());
             } catch (ClassNotFoundException e) {
                 if(log.isWarnEnabled()){
                     log.warn(" className = {} not found ",hotFixClassName,e);
                 }
             }
         }
-        //热修复的类有可能会有互相依赖的情况，这里对依赖的属性覆盖成热修复的类
-        refHotFixObj(hotFixMap,properties,hotFixClassNameList);
-        if(log.isInfoEnabled()){
-            log.info(" hotfix complete ... ");
+        plan.getGeneration().setGeneratedClassNames(generatedClassNames);
+        plan.getGeneration().setReplacedBeanNames(getReplacedBeanNames(hotFixMap));
+        endPhase(report, HotFixPhase.GENERATE, generateStart);
+        long rewireStart = startPhase(report, HotFixPhase.REWIRE);
+        //找出注入了被热修复的原 Bean 的单例对象，需要改成引用热修复 Bean 对象
+        plan.getFieldRefs().addAll(planRefDependentBeans(hotFixMap));
+        //热修复的类有可能会有互相依赖的情况，这里找出需要覆盖成热修复的类的依赖属性
+        plan.getFieldRefs().addAll(planRefHotFixObj(hotFixMap,properties,patchClassNames));
+        endPhase(report, HotFixPhase.REWIRE, rewireStart);
+        return plan;
+    }
+
+    /**
+     * 对比补丁中每个类及其 mapper.xml 的摘要，找出有变化的类
+     * <p>类与其 mapper.xml 只要有一个有变化，该类就需要热修复。如果不是增量热修复，则所有类都需要热修复。
+     * 增量热修复时，有变化的类直接或间接引用的补丁中的新增类【以及同一个外部类的内部类】即使没有变化也要一起热修复，
+     * 否则新的类加载器中找不到它们，见 {@link HotFixClassLoader#findRequiredReferences(PatchSource, Collection, ClassLoader)}。</p>
+     * @param patchSource 热修复补丁来源
+     * @param digests 用于存放补丁中的类/mapper.xml 的摘要
+     * @param report 热修复执行报告
+     * @param incremental 是否增量热修复，见 {@link HotFixProperties#getIncremental()}
+     * @return 只包含有变化的类的热修复补丁
+     */
+    private PatchSource diffPatchSource(PatchSource patchSource, Map<String,String> digests, HotFixReport report, boolean incremental){
+        List<String> changedClassNames=new ArrayList<>();
+        for (String className : patchSource.getClassNames()) {
+            String resourcePrefix = className.replace('.', '/');
+            boolean changed = diffResource(patchSource, resourcePrefix + ".class", digests, report);
+            changed = diffResource(patchSource, resourcePrefix + ".xml", digests, report) || changed;
+            if(changed || !incremental){
+                changedClassNames.add(className);
+            }else{
+                report.getSkippedClassNames().add(className);
+            }
+        }
+        if(incremental && !changedClassNames.isEmpty() && !report.getSkippedClassNames().isEmpty()){
+            Set<String> requiredClassNames = HotFixClassLoader.findRequiredReferences(patchSource, changedClassNames, HotFix.class.getClassLoader());
+            if(!requiredClassNames.isEmpty()){
+                if(log.isInfoEnabled()){
+                    log.info(" reapply unchanged classes {} referenced by changed classes",requiredClassNames);
+                }
+                report.getSkippedClassNames().removeAll(requiredClassNames);
+                //按补丁中类的顺序排列
+                Set<String> changedClassNameSet = new HashSet<>(changedClassNames);
+                changedClassNames.clear();
+                for (String className : patchSource.getClassNames()) {
+                    if(changedClassNameSet.contains(className) || requiredClassNames.contains(className)) changedClassNames.add(className);
+                }
+            }
+        }
+        report.getAppliedClassNames().addAll(changedClassNames);
+        if(!incremental) return patchSource;
+        if(log.isInfoEnabled() && !report.getSkippedClassNames().isEmpty()){
+            log.info(" skip unchanged classes {}",report.getSkippedClassNames());
+        }
+        return new DeltaPatchSource(patchSource,changedClassNames);
+    }
+
+    /**
+     * 计算补丁中资源的摘要，并判断是否有变化
+     * @param patchSource 热修复补丁来源
+     * @param path 资源路径
+     * @param digests 用于存放摘要
+     * @param report 热修复执行报告，累计读取的字节数
+     * @return 资源存在且有变化时返回 true
+     */
+    private boolean diffResource(PatchSource patchSource, String path, Map<String,String> digests, HotFixReport report){
+        ByteBuffer resource = patchSource.getResource(path);
+        if(resource==null) return false;
+        report.setPatchBytes(report.getPatchBytes()+resource.remaining());
+        String digest = patchDigestHelper.digest(resource);
+        digests.put(path,digest);
+        return patchDigestHelper.isChanged(path,digest);
+    }
+
+    /**
+     * 拷贝补丁中要热修复的类及其 mapper.xml、hofix-class-map.properties，生效后记录为当前生效的内容
+     * <p>补丁文件之后可能会被修改或者删除，所以拷贝到堆内</p>
+     * @param patchSource 只包含要热修复的类的热修复补丁
+     * @param resources 用于存放拷贝的资源
+     */
+    private void copyEffectiveResources(PatchSource patchSource, Map<String,ByteBuffer> resources){
+        List<String> paths=new ArrayList<>();
+        for (String className : patchSource.getClassNames()) {
+            String resourcePrefix = className.replace('.', '/');
+            paths.add(resourcePrefix + ".class");
+            paths.add(resourcePrefix + ".xml");
+        }
+        paths.add(HOFIX_CLASS_MAP_PROP);
+        for (String path : paths) {
+            ByteBuffer resource = patchSource.getResource(path);
+            if(resource!=null) resources.put(path, MemoryPatchSource.copyOf(resource));
+        }
+    }
+
+    /**
+     * 用生效的热修复计划中的内容覆盖当前生效的内容，补丁中没有 mapper.xml 的类也要移除之前生效的 mapper.xml
+     * @param resources 生效的热修复计划中的内容
+     */
+    private void applyEffectiveResources(Map<String,ByteBuffer> resources){
+        for (String path : resources.keySet()) {
+            if(path.endsWith(".class")){
+                effectiveResources.remove(path.substring(0, path.length() - ".class".length()) + ".xml");
+            }
         }
+        effectiveResources.putAll(resources);
     }
 
     @Override
@@ -101,42 +510,234 @@ public class HotFix implements ApplicationContextAware {
     }
 
     /**
-     * 热修复的类有可能会有互相依赖的情况，这里对依赖的属性覆盖成热修复的类
+     * 所有单例 Bean 初始化完成后就创建热修复Bean对象生成器，生成器会解析并校验需要访问的框架内部属性【如 Mybatis 的 Configuration】，
+     * 框架版本不支持时在启动时就失败，而不是等到热修复时才失败
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        getHotFixBeanGenerator(getBeanFactory());
+    }
+
+    /**
+     * 应用上下文关闭时停止任务调度器
+     */
+    @Override
+    public void destroy() {
+        jobScheduler.shutdown();
+    }
+
+    /**
+     * 找出注入了被热修复的原 Bean 的单例对象的属性，以及热修复 Bean 对象中还引用着之前已经热修复过的原单例对象的属性，但不会修改它们
+     * <p>依赖方通过 {@link DependentBeanIndex} 查找，代价只与依赖方的数量有关。可热替换的 Bean 通过替换代理对象的目标对象生效，
+     * 不需要修改依赖方。</p>
+     * @param hotFixMap 存放 实例化后的需要热修复的Bean映射关系，key=hotFixBeanName,value=hotFixBeanName对应的已经初始化的Bean
+     * @return 需要修改引用的属性
+     */
+    private List<RefNewBeanHelper.FieldRef> planRefDependentBeans(Map<String, Object> hotFixMap){
+        List<RefNewBeanHelper.FieldRef> fieldRefs=new ArrayList<>();
+        DependentBeanIndex index = getDependentBeanIndex();
+        for (Map.Entry<String, Object> entry : getReplacedBeans(hotFixMap).entrySet()) {
+            fieldRefs.addAll(index.planRefCurrentBeans(entry.getKey(),entry.getValue()));
+            fieldRefs.addAll(index.planRefNewBean(entry.getKey(),entry.getValue()));
+        }
+        return fieldRefs;
+    }
+
+    /**
+     * 找出替换了容器中原单例对象的热修复 Bean 对象，忽略新增的类、Mapper 以及可热替换的 Bean
+     * @param hotFixBeans key=热修复类名,value=热修复 Bean 对象或者 {@link HotFixAction}
+     * @return key=被热修复的原 Bean 名,value=热修复 Bean 对象
+     */
+    private Map<String,Object> getReplacedBeans(Map<String, ?> hotFixBeans){
+        DefaultListableBeanFactory beanFactory = getBeanFactory();
+        HotSwappableBeanRegistry hotSwappableBeanRegistry = beanFactory.getBeanProvider(HotSwappableBeanRegistry.class).getIfAvailable();
+        BeanTypeIndex beanTypeIndex = BeanTypeIndex.of(beanFactory);
+        Map<String,Object> replacedBeans=new LinkedHashMap<>();
+        for (Object value : hotFixBeans.values()) {
+            Object hotFixBean = value instanceof HotFixAction ? ((HotFixAction) value).getBean() : value;
+            if(hotFixBean==null || hotFixBean==RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG) continue;
+            for (String beanName : beanTypeIndex.getBeanNames(AopUtils.getTargetClass(hotFixBean))) {
+                if(!beanFactory.containsSingleton(beanName)) continue;
+                if(hotSwappableBeanRegistry!=null && hotSwappableBeanRegistry.contains(beanName)) continue;
+                replacedBeans.put(beanName,hotFixBean);
+            }
+        }
+        return replacedBeans;
+    }
+
+    /**
+     * 找出被热修复 Bean 对象替换的原 Bean 名，包括可热替换的 Bean，用于记录每代补丁替换了哪些 Bean
+     * @param hotFixMap key=热修复类名,value=热修复 Bean 对象
+     */
+    private List<String> getReplacedBeanNames(Map<String, Object> hotFixMap){
+        DefaultListableBeanFactory beanFactory = getBeanFactory();
+        BeanTypeIndex beanTypeIndex = BeanTypeIndex.of(beanFactory);
+        List<String> replacedBeanNames=new ArrayList<>();
+        for (Object hotFixBean : hotFixMap.values()) {
+            if(hotFixBean==RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG) continue;
+            for (String beanName : beanTypeIndex.getBeanNames(AopUtils.getTargetClass(hotFixBean))) {
+                if(beanFactory.containsSingleton(beanName)) replacedBeanNames.add(beanName);
+            }
+        }
+        return replacedBeanNames;
+    }
+
+    /**
+     * 热修复的类有可能会有互相依赖的情况，这里找出需要覆盖成热修复的类的依赖属性，但不会修改它们
+     * <p>增量热修复时，没有变化的类不会重新生成热修复Bean对象，所以除了本次生成的热修复Bean对象，之前已经生效的热修复Bean对象
+     * 也会参与依赖属性的覆盖：本次生成的热修复Bean对象可以引用之前已经生效的热修复Bean对象，之前已经生效的热修复Bean对象
+     * 也会改成引用本次生成的热修复Bean对象。</p>
+     * <p>依赖属性的类型对应的热修复Bean对象按以下顺序查找：类名相同的热修复Bean对象、properties 中指定的实现类、
+     * 唯一实现了该类型的热修复Bean对象【由 {@link BeanTypeIndex#indexImplementations(Collection)} 索引】，有多个实现时必须在 properties 中指定。</p>
      * @param hotFixMap 存放 实例化后的需要热修复的Bean映射关系，key=hotFixBeanName,value=hotFixBeanName对应的已经初始化的Bean
      * @param properties 抽象/接口类名 - 实现类名 的映射
-     * @param hotFixClassNameList  需要热修复的类的类名集合
+     * @param hotFixClassNameList  补丁中所有类的类名集合
+     * @return 需要修改引用的属性
      */
-    private void refHotFixObj(Map<String, Object> hotFixMap, Properties properties, Set<String> hotFixClassNameList) {
-        for (Map.Entry<String, Object> entry : hotFixMap.entrySet()) {
+    private List<RefNewBeanHelper.FieldRef> planRefHotFixObj(Map<String, Object> hotFixMap, Properties properties, Set<String> hotFixClassNameList) {
+        List<RefNewBeanHelper.FieldRef> fieldRefs=new ArrayList<>();
+        Map<String,Object> effectiveHotFixMap=new HashMap<>(appliedHotFixBeans);
+        effectiveHotFixMap.putAll(hotFixMap);
+        Set<Object> newHotFixBeans=Collections.newSetFromMap(new IdentityHashMap<>());
+        newHotFixBeans.addAll(hotFixMap.values());
+        //接口/父类名 - 实现了它的热修复类名
+        List<Class<?>> hotFixBeanClasses=new ArrayList<>(effectiveHotFixMap.size());
+        for (Object hotFixBean : effectiveHotFixMap.values()) {
+            if(hotFixBean!=RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG) hotFixBeanClasses.add(AopUtils.getTargetClass(hotFixBean));
+        }
+        Map<String, Set<String>> implementations = BeanTypeIndex.indexImplementations(hotFixBeanClasses);
+        HotSwappableBeanRegistry hotSwappableBeanRegistry = getBeanFactory().getBeanProvider(HotSwappableBeanRegistry.class).getIfAvailable();
+        for (Map.Entry<String, Object> entry : effectiveHotFixMap.entrySet()) {
             Object hotFixBean = entry.getValue();
             String hotFixBeanClassName = entry.getKey();
+            if(hotFixBean==RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG){
+                continue;
+            }
+            boolean isNewHotFixBean = newHotFixBeans.contains(hotFixBean);
             //将 依赖Bean 的成员变量修改成引用 hotFixBean
             for (String dependentBeanName : refNewBeanHelper.findDependentBeanNames(hotFixBean)) {
-                if(hotFixClassNameList.contains(dependentBeanName)){//属于热修复的类名
-                    Object toRefBean = hotFixMap.get(dependentBeanName);
+                Set<String> implClassNames = implementations.getOrDefault(dependentBeanName, Collections.emptySet());
+                if(hotFixClassNameList.contains(dependentBeanName) || !implClassNames.isEmpty()){//属于热修复的类名或者有热修复的实现类
+                    Object toRefBean = effectiveHotFixMap.get(dependentBeanName);
                     if(toRefBean==null && properties!=null){
                         String classNameImpl = properties.getProperty(dependentBeanName);
-                        toRefBean=hotFixMap.get(classNameImpl);
+                        if(classNameImpl!=null) toRefBean=effectiveHotFixMap.get(classNameImpl);
                     }
-                    if(toRefBean==null){
-                        int lastDotIndex=dependentBeanName.lastIndexOf(".");
-                        if(lastDotIndex!=-1){
-                            String packageName = dependentBeanName.substring(0,lastDotIndex)+".impl.";
-                            String clasNameImpl = dependentBeanName.substring(lastDotIndex + 1)+"Impl";
-                            toRefBean=hotFixMap.get(packageName+clasNameImpl);
-                        }
+                    if(toRefBean==null && implClassNames.size()==1){
+                        toRefBean=effectiveHotFixMap.get(implClassNames.iterator().next());
                     }
-                    if(hotFixBean==RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG){
-                        continue;
+                    if(toRefBean==null && implClassNames.size()>1) {
+                        throw new HotFixException("found hotFixBeanClassName["+hotFixBeanClassName+"] depend on dependentBeanName ["+
+                                dependentBeanName+"],but found multiple hot fix implementations "+implClassNames+" ,please specify one in "+HOFIX_CLASS_MAP_PROP);
                     }
                     if(toRefBean==null) {
                         throw new HotFixException("found hotFixBeanClassName["+hotFixBeanClassName+"] depend on dependentBeanName ["+
                                 dependentBeanName+"],but not found dependentBeanName instance");
                     }
-                    refNewBeanHelper.refNewBean(hotFixBeanClassName,hotFixBean,dependentBeanName, toRefBean);
+                    //之前已经生效的热修复Bean对象之间的引用关系没有变化
+                    if(!isNewHotFixBean && !newHotFixBeans.contains(toRefBean)){
+                        continue;
+                    }
+                    //可热替换的 Bean 通过替换代理对象的目标对象生效，依赖方持有的是代理对象，不需要修改引用
+                    if(hotSwappableBeanRegistry!=null && hotSwappableBeanRegistry.getBeanName(AopUtils.getTargetClass(toRefBean))!=null){
+                        continue;
+                    }
+                    RefNewBeanHelper.FieldRef fieldRef = refNewBeanHelper.planRefNewBean(hotFixBeanClassName, hotFixBean, dependentBeanName, toRefBean);
+                    if(fieldRef!=null) fieldRefs.add(fieldRef);
                 }
             }
         }
+        return fieldRefs;
+    }
+
+    /**
+     * 清理框架缓存中由被取代的补丁代加载的类
+     */
+    private void scrubStaleCaches(){
+        Set<ClassLoader> supersededClassLoaders = generationRegistry.getSupersededClassLoaders();
+        if(supersededClassLoaders.isEmpty()) return;
+        getStaleCacheScrubber(getBeanFactory()).scrub(supersededClassLoaders);
+        if(log.isDebugEnabled()){
+            log.debug(" scrub stale caches of {} superseded class loaders",supersededClassLoaders.size());
+        }
+    }
+
+    /**
+     * 阶段开始，通知监听器
+     * @param report 热修复执行报告
+     * @param phase 阶段
+     * @return 阶段的开始时间【纳秒】
+     */
+    private long startPhase(HotFixReport report, HotFixPhase phase){
+        report.setPhase(phase);
+        fireEvent(listener -> listener.onPhaseStart(report, phase));
+        return System.nanoTime();
+    }
+
+    /**
+     * 阶段结束，记录阶段耗时并通知监听器
+     * @param report 热修复执行报告
+     * @param phase 阶段
+     * @param start 阶段的开始时间【纳秒】
+     * @return 阶段耗时【纳秒】
+     */
+    private long endPhase(HotFixReport report, HotFixPhase phase, long start){
+        long costNanos = System.nanoTime() - start;
+        report.getPhaseCostNanos().put(phase,costNanos);
+        fireEvent(listener -> listener.onPhaseEnd(report, phase, costNanos));
+        return costNanos;
+    }
+
+    /**
+     * 通知所有监听器，监听器抛出的异常不影响热修复
+     */
+    private void fireEvent(Consumer<HotFixListener> event){
+        for (HotFixListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                if(log.isWarnEnabled()){
+                    log.warn(" hotfix listener {} fail",listener,e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 注册热修复过程的监听器
+     * @param listener 监听器
+     */
+    public void addListener(HotFixListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除热修复过程的监听器
+     * @param listener 监听器
+     */
+    public void removeListener(HotFixListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * 获取 异步执行热修复的任务调度器，用于查询任务
+     */
+    public HotFixJobScheduler getJobScheduler() {
+        return jobScheduler;
+    }
+
+    /**
+     * 获取 最近一次热修复【包括合并补丁】的执行报告，还没有执行过时返回null
+     */
+    public HotFixReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * 获取 补丁代的注册表
+     */
+    public PatchGenerationRegistry getGenerationRegistry() {
+        return generationRegistry;
     }
 
     /**
@@ -150,30 +751,57 @@ public class HotFix implements ApplicationContextAware {
         return (DefaultListableBeanFactory) autowireCapableBeanFactory;
     }
 
+    /**
+     * 获取 Bean 的反向依赖索引
+     */
+    private synchronized DependentBeanIndex getDependentBeanIndex(){
+        if(dependentBeanIndex==null){
+            dependentBeanIndex=new DependentBeanIndex(getBeanFactory());
+        }
+        return dependentBeanIndex;
+    }
+
     /**
      * 获取 热修复Bean对象生成器
      * @param beanFactory 当前上下文的Bean工厂
      */
-    private HotFixBeanGenerator getHotFixBeanGenerator(DefaultListableBeanFactory beanFactory){
+    private DefaultHotFixBeanGenerator getHotFixBeanGenerator(DefaultListableBeanFactory beanFactory){
         if(hotFixBeanGenerator==null){
             hotFixBeanGenerator=new DefaultHotFixBeanGenerator(beanFactory, hotFixProperties);
         }
         return hotFixBeanGenerator;
     }
 
+    /**
+     * 获取 框架缓存清理器
+     * @param beanFactory 当前上下文的Bean工厂
+     */
+    private StaleCacheScrubber getStaleCacheScrubber(DefaultListableBeanFactory beanFactory){
+        if(staleCacheScrubber==null){
+            staleCacheScrubber=new DefaultStaleCacheScrubber(beanFactory, Boolean.TRUE.equals(hotFixProperties.getScrubGlobalCaches()));
+        }
+        return staleCacheScrubber;
+    }
+
     /**
      * 获取 抽象/接口类名 - 实现类名 的映射 properties文件
+     * @param patchSource 热修复补丁来源
      */
-    private Properties loadHofixClassMapProp(){
-        String loadPath = hotFixProperties.getLoadPath()+"hofix-class-map.properties";
-        try {
-            InputStream inputStream = new BufferedInputStream(new FileInputStream(new File(loadPath)));
+    private Properties loadHofixClassMapProp(PatchSource patchSource){
+        InputStream inputStream = patchSource.getResourceAsStream(HOFIX_CLASS_MAP_PROP);
+        if(inputStream==null){
+            if(log.isInfoEnabled()){
+                log.info("properties file [{}] not found in [{}] ,so use default..",HOFIX_CLASS_MAP_PROP,patchSource.getLocation());
+            }
+            return null;
+        }
+        try(Reader reader=new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
             Properties prop = new Properties();
-            prop.load(new InputStreamReader(inputStream, "UTF-8"));
+            prop.load(reader);
             return prop;
         } catch (IOException e) {
             if(log.isInfoEnabled()){
-                log.info("load properties file [{}] fail ,so use default..,e = {}",e.getMessage());
+                log.info("load properties file [{}] fail ,so use default..,e = {}",HOFIX_CLASS_MAP_PROP,e.getMessage());
             }
         }
         return null;
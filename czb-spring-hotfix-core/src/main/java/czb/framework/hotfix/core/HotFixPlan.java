@@ -0,0 +1,144 @@
+package czb.framework.hotfix.core;
+
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.helper.RefNewBeanHelper;
+import czb.framework.hotfix.core.report.HotFixReport;
+import czb.framework.hotfix.core.source.PatchSource;
+import czb.framework.hotfix.core.strategy.HotFixAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * 热修复计划，由 {@link HotFix#prepare()} 生成，交由 {@link HotFix#commit(HotFixPlan)} 生效
+ * <p>生成计划时已经完成了加载类、实例化热修复Bean对象、解析接口信息、找出要修改引用的属性等代价较大的工作，且没有对运行中的应用程序
+ * 产生任何影响，生效时只需要做代价很小的引用替换。</p>
+ * <p>计划持有打开的热修复补丁，生效后会自动关闭；如果不打算生效，需要调用 {@link #close()} 放弃该计划。</p>
+ * @author chenzhuobin
+ */
+public class HotFixPlan implements Closeable {
+
+    private Logger log= LoggerFactory.getLogger(HotFixPlan.class);
+
+    /**
+     * 热修复补丁来源
+     */
+    private final PatchSource patchSource;
+
+    /**
+     * 热修复执行报告
+     */
+    private final HotFixReport report;
+
+    /**
+     * 生成计划时 {@link HotFix} 已生效的版本号，生效时版本号不一致说明该计划已经过时
+     */
+    private final long baseVersion;
+
+    /**
+     * 补丁中的类/mapper.xml 的摘要【key=资源路径,value=摘要】
+     */
+    private final Map<String,String> digests;
+
+    /**
+     * 补丁中热修复的类及其 mapper.xml、hofix-class-map.properties 的拷贝【key=资源路径,value=资源数据】，
+     * 生效后记录为当前生效的内容，用于合并补丁
+     */
+    private final Map<String,ByteBuffer> effectiveResources=new LinkedHashMap<>();
+
+    /**
+     * 热修复动作【key=热修复类名,value=热修复动作】
+     */
+    private final Map<String,HotFixAction> hotFixActions=new LinkedHashMap<>();
+
+    /**
+     * 热修复的类互相依赖时，需要修改引用的属性
+     */
+    private final List<RefNewBeanHelper.FieldRef> fieldRefs=new ArrayList<>();
+
+    /**
+     * 该计划加载的补丁代，生效时注册到 {@link czb.framework.hotfix.core.generation.PatchGenerationRegistry}
+     */
+    private PatchGeneration generation;
+
+    /**
+     * 是否已经生效或者已经放弃
+     */
+    private boolean closed=false;
+
+    HotFixPlan(PatchSource patchSource, HotFixReport report, long baseVersion, Map<String, String> digests) {
+        this.patchSource = patchSource;
+        this.report = report;
+        this.baseVersion = baseVersion;
+        this.digests = digests;
+    }
+
+    /**
+     * 获取 热修复执行报告
+     */
+    public HotFixReport getReport() {
+        return report;
+    }
+
+    /**
+     * 获取 本次要热修复的类名
+     */
+    public Set<String> getHotFixClassNames(){
+        return Collections.unmodifiableSet(hotFixActions.keySet());
+    }
+
+    /**
+     * 是否已经生效或者已经放弃
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    long getBaseVersion() {
+        return baseVersion;
+    }
+
+    Map<String, String> getDigests() {
+        return digests;
+    }
+
+    Map<String, ByteBuffer> getEffectiveResources() {
+        return effectiveResources;
+    }
+
+    Map<String, HotFixAction> getHotFixActions() {
+        return hotFixActions;
+    }
+
+    List<RefNewBeanHelper.FieldRef> getFieldRefs() {
+        return fieldRefs;
+    }
+
+    PatchGeneration getGeneration() {
+        return generation;
+    }
+
+    void setGeneration(PatchGeneration generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * 放弃该计划，关闭热修复补丁。已经生效的计划调用该方法没有任何影响
+     */
+    @Override
+    public void close() {
+        if(closed) return;
+        closed=true;
+        try {
+            patchSource.close();
+        } catch (IOException e) {
+            if(log.isWarnEnabled()){
+                log.warn("close patch [{}] fail",patchSource.getLocation(),e);
+            }
+        }
+    }
+}
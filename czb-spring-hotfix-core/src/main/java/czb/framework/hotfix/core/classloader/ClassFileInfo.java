@@ -0,0 +1,211 @@
+package czb.framework.hotfix.core.classloader;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * class 文件的头部信息：类名、父类名、接口名以及常量池中引用的类名
+ * <p>只解析常量池以及紧跟其后的 this_class、super_class、interfaces，不解析属性和方法，直接读取 {@link ByteBuffer}，
+ * 补丁包中不压缩的类不需要拷贝到堆内。常量池中引用的类名来自 CONSTANT_Class 项，数组类型取其元素类型，基本类型数组忽略。</p>
+ * @author chenzhuobin
+ */
+final class ClassFileInfo {
+
+    private static final int MAGIC=0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8=1;
+    private static final int CONSTANT_INTEGER=3;
+    private static final int CONSTANT_FLOAT=4;
+    private static final int CONSTANT_LONG=5;
+    private static final int CONSTANT_DOUBLE=6;
+    private static final int CONSTANT_CLASS=7;
+    private static final int CONSTANT_STRING=8;
+    private static final int CONSTANT_FIELDREF=9;
+    private static final int CONSTANT_METHODREF=10;
+    private static final int CONSTANT_INTERFACE_METHODREF=11;
+    private static final int CONSTANT_NAME_AND_TYPE=12;
+    private static final int CONSTANT_METHOD_HANDLE=15;
+    private static final int CONSTANT_METHOD_TYPE=16;
+    private static final int CONSTANT_DYNAMIC=17;
+    private static final int CONSTANT_INVOKE_DYNAMIC=18;
+    private static final int CONSTANT_MODULE=19;
+    private static final int CONSTANT_PACKAGE=20;
+
+    /**
+     * 类名
+     */
+    private final String className;
+
+    /**
+     * 父类名，java.lang.Object 为null
+     */
+    private final String superClassName;
+
+    /**
+     * 直接实现的接口名
+     */
+    private final List<String> interfaceNames;
+
+    /**
+     * 常量池中引用的类名，不包括自身
+     */
+    private final Set<String> referencedClassNames;
+
+    private ClassFileInfo(String className, String superClassName, List<String> interfaceNames, Set<String> referencedClassNames) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = interfaceNames;
+        this.referencedClassNames = referencedClassNames;
+    }
+
+    /**
+     * 解析 class 文件，不会改变 classData 的 position
+     * @param classData 类数据
+     */
+    static ClassFileInfo parse(ByteBuffer classData){
+        ByteBuffer buffer = classData.duplicate();
+        try {
+            if(buffer.getInt()!=MAGIC){
+                throw new HotFixException(" parse class file fail , bad magic number");
+            }
+            //minor_version,major_version
+            buffer.position(buffer.position()+4);
+            int constantPoolCount = buffer.getShort() & 0xFFFF;
+            //常量池中 Utf8 项的位置，以及 Class 项指向的 Utf8 项的下标
+            int[] utf8Offsets=new int[constantPoolCount];
+            int[] classNameIndexes=new int[constantPoolCount];
+            for (int i = 1; i < constantPoolCount; i++) {
+                int tag = buffer.get() & 0xFF;
+                switch (tag){
+                    case CONSTANT_UTF8:
+                        utf8Offsets[i]=buffer.position();
+                        buffer.position(buffer.position()+2+(buffer.getShort() & 0xFFFF));
+                        break;
+                    case CONSTANT_CLASS:
+                        classNameIndexes[i]=buffer.getShort() & 0xFFFF;
+                        break;
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        buffer.position(buffer.position()+2);
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        buffer.position(buffer.position()+3);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        buffer.position(buffer.position()+4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        //占两个常量池下标
+                        buffer.position(buffer.position()+8);
+                        i++;
+                        break;
+                    default:
+                        throw new HotFixException(" parse class file fail , unknown constant pool tag "+tag+" at index "+i);
+                }
+            }
+            //access_flags
+            buffer.getShort();
+            String className = readClassName(buffer, utf8Offsets, classNameIndexes, buffer.getShort() & 0xFFFF);
+            int superClassIndex = buffer.getShort() & 0xFFFF;
+            String superClassName = superClassIndex==0?null:readClassName(buffer, utf8Offsets, classNameIndexes, superClassIndex);
+            int interfaceCount = buffer.getShort() & 0xFFFF;
+            List<String> interfaceNames=new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaceNames.add(readClassName(buffer, utf8Offsets, classNameIndexes, buffer.getShort() & 0xFFFF));
+            }
+            Set<String> referencedClassNames=new HashSet<>();
+            for (int i = 1; i < constantPoolCount; i++) {
+                if(classNameIndexes[i]==0) continue;
+                String referencedClassName = toClassName(readUtf8(buffer, utf8Offsets[classNameIndexes[i]]));
+                if(referencedClassName!=null && !referencedClassName.equals(className)){
+                    referencedClassNames.add(referencedClassName);
+                }
+            }
+            return new ClassFileInfo(className,superClassName,interfaceNames,referencedClassNames);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new HotFixException(" parse class file fail , truncated or malformed class data",e);
+        }
+    }
+
+    private static String readClassName(ByteBuffer buffer, int[] utf8Offsets, int[] classNameIndexes, int classIndex){
+        return readUtf8(buffer, utf8Offsets[classNameIndexes[classIndex]]).replace('/','.');
+    }
+
+    /**
+     * 把 CONSTANT_Class 中的内部类名转换成类名，数组类型取其元素类型，基本类型数组返回null
+     * @param internalName 内部类名，如 java/lang/String、[Ljava/lang/String;、[I
+     */
+    private static String toClassName(String internalName){
+        if(internalName.charAt(0)!='['){
+            return internalName.replace('/','.');
+        }
+        int start = internalName.lastIndexOf('[') + 1;
+        if(internalName.charAt(start)!='L') return null;
+        return internalName.substring(start+1,internalName.length()-1).replace('/','.');
+    }
+
+    /**
+     * 读取常量池中的 Utf8 项【modified UTF-8 编码】
+     * @param buffer class 文件数据
+     * @param offset Utf8 项长度的位置
+     */
+    private static String readUtf8(ByteBuffer buffer, int offset){
+        int length = buffer.getShort(offset) & 0xFFFF;
+        char[] chars=new char[length];
+        int charCount=0;
+        int index=offset+2;
+        int end=index+length;
+        while (index<end){
+            int b = buffer.get(index++) & 0xFF;
+            if(b<0x80){
+                chars[charCount++]=(char) b;
+            }else if(b<0xE0){
+                chars[charCount++]=(char) (((b & 0x1F) << 6) | (buffer.get(index++) & 0x3F));
+            }else{
+                chars[charCount++]=(char) (((b & 0x0F) << 12) | ((buffer.get(index++) & 0x3F) << 6) | (buffer.get(index++) & 0x3F));
+            }
+        }
+        return new String(chars,0,charCount);
+    }
+
+    /**
+     * 获取 类名
+     */
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * 获取 父类名，java.lang.Object 为null
+     */
+    String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * 获取 直接实现的接口名
+     */
+    List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * 获取 常量池中引用的类名，不包括自身
+     */
+    Set<String> getReferencedClassNames() {
+        return referencedClassNames;
+    }
+}
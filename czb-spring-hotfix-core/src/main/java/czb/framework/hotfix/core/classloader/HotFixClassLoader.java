@@ -1,16 +1,25 @@
 package czb.framework.hotfix.core.classloader;
 
+import czb.framework.hotfix.core.config.ClassLoaderPartition;
 import czb.framework.hotfix.core.config.HotFixProperties;
 import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.helper.MetaspaceHelper;
+import czb.framework.hotfix.core.source.PatchSource;
+import czb.framework.hotfix.core.source.PatchSources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 热修复ClassLoader
@@ -19,10 +28,28 @@ import java.util.Map;
  * 因为HotFixClassLoader是破坏了双亲委派机制的类加载器，所以如果出现 需要热修复的两个类有依赖关系时，依赖的类中的被依赖类的field的
  * 类对象与原类对象不是同一个，导致Spring的自动装配功能在匹配类型时因classLoader不是同一个而失败。
  * </p>
+ * <p>HotFixClassLoader 与 InnerHotFixClassLoader 都注册为可并行加载的类加载器【{@link ClassLoader#registerAsParallelCapable()}】，
+ * 加载类时按类名加锁，请求线程并发加载不同的类时不会互相阻塞。{@link #classLoaderMap} 在构造完成后就不会再变化，
+ * 请求线程读取时不需要加锁，新的补丁总是创建新的 HotFixClassLoader，不会与正在使用的 HotFixClassLoader 竞争。</p>
  * @author chenzhuobin
  */
 public class HotFixClassLoader extends ClassLoader{
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * 往父级ClassLoader定义类时使用的分段锁，按类名的哈希值选择，同名的类使用同一把锁
+     */
+    private static final Object[] PARENT_DEFINE_LOCKS=new Object[64];
+
+    static {
+        for (int i = 0; i < PARENT_DEFINE_LOCKS.length; i++) {
+            PARENT_DEFINE_LOCKS[i]=new Object();
+        }
+    }
+
     private Logger log= LoggerFactory.getLogger(HotFixClassLoader.class);
 
     /**
@@ -32,12 +59,14 @@ public class HotFixClassLoader extends ClassLoader{
 
     /**
      * ClassLoader映射【key=热修复类名,value= InnerHotFixClassLoader 对象】
-     * <p><b>为什么要每个热修复类对应一个 InnerHotFixClassLoader 对象呢？</b></p>
+     * <p><b>为什么不把所有热修复类都放在同一个 InnerHotFixClassLoader 对象上呢？</b></p>
      * <p>因为如果将所有热修复类都放在同一个 ClassLoader 上时，如果热修复类中有引用热修复类
      * 的字段时会导致该字段类型与 父类加载器的类 不匹配，导致Spring的字段装配或者需要设置 父类加载器的类 的对象
-     * 到该字段时报转换错误。最典型的情况就是Mybatis的Mapper接口。</p>
+     * 到该字段时报转换错误。最典型的情况就是Mybatis的Mapper接口。所以只有 {@link PatchClassGraph#partition(ClassLoaderPartition)}
+     * 划分到同一组的类才会共用一个 InnerHotFixClassLoader 对象。</p>
+     * <p>构造时在局部的 Map 中构建好，再以不可修改的 Map 发布，之后只读</p>
      */
-    Map<String,InnerHotFixClassLoader> classLoaderMap=new HashMap<>();
+    private final Map<String,InnerHotFixClassLoader> classLoaderMap;
 
     /**
      * 父级类加载器
@@ -45,32 +74,170 @@ public class HotFixClassLoader extends ClassLoader{
     private ClassLoader parent;
 
     /**
-     * 新建一个 {@link HotFixClassLoader} 对象
+     * 每个热修复类的加载耗时【key=热修复类名,value=定义该类所花费的纳秒数】
+     */
+    private Map<String,Long> classLoadCostMap=new ConcurrentHashMap<>();
+
+    /**
+     * 热修复补丁来源
+     */
+    private PatchSource patchSource;
+
+    /**
+     * 创建的 InnerHotFixClassLoader 数量
+     */
+    private int classLoaderCount;
+
+    /**
+     * 加载热修复类前后元空间已使用大小的差值【字节】
+     */
+    private long metaspaceUsedBytes;
+
+    /**
+     * 新建一个 {@link HotFixClassLoader} 对象，根据 {@link HotFixProperties#getLoadPath()} 打开热修复补丁
      * @param classLoader 父级类记载器
      * @param hotFixProperties 热修复参数配置
      */
     public HotFixClassLoader(ClassLoader classLoader, HotFixProperties hotFixProperties) {
+        this(classLoader, hotFixProperties, PatchSources.open(hotFixProperties));
+    }
+
+    /**
+     * 新建一个 {@link HotFixClassLoader} 对象
+     * <p>先按 {@link PatchClassGraph} 的分层把需要定义到父级类加载器中的类定义好，再为每一组热修复类创建一个 InnerHotFixClassLoader，
+     * 各组之间互不依赖。开启 {@link HotFixProperties#getParallelLoad()} 时，同一层/各组之间交由有界的 ForkJoinPool 并行定义。</p>
+     * @param classLoader 父级类记载器
+     * @param hotFixProperties 热修复参数配置
+     * @param patchSource 热修复补丁来源
+     */
+    public HotFixClassLoader(ClassLoader classLoader, HotFixProperties hotFixProperties, PatchSource patchSource) {
         super(classLoader);
         parent=classLoader;
-        File classLocalPath = new File(hotFixProperties.getLoadPath());
         this.hotFixProperties = hotFixProperties;
-        recursionClassFile(classLocalPath);
+        this.patchSource = patchSource;
+        long metaspaceUsedBefore = MetaspaceHelper.getUsedBytes();
+        List<String> classNames = patchSource.getClassNames();
+        Map<String,InnerHotFixClassLoader> classLoaderMap=new HashMap<>();
+        ForkJoinPool forkJoinPool = Boolean.TRUE.equals(hotFixProperties.getParallelLoad()) ? new ForkJoinPool(hotFixProperties.getLoadParallelism()) : null;
+        try {
+            PatchClassGraph graph = forkJoinPool==null ? PatchClassGraph.build(patchSource, classNames, parent, false)
+                    : forkJoinPool.submit(() -> PatchClassGraph.build(patchSource, classNames, parent, true)).get();
+            //先把需要定义到父级类加载器中的类按层定义好，其他热修复类定义时才能找到它们
+            for (List<String> level : graph.getLevels()) {
+                List<String> parentClassNames = level.stream().filter(className -> isDefineInParent(graph, className)).collect(Collectors.toList());
+                map(forkJoinPool, parentClassNames, className -> {
+                    invokeParent_defineClass(className, graph.getClassData(className));
+                    return className;
+                });
+            }
+            ClassLoaderPartition partition = hotFixProperties.getClassLoaderPartition()==null ? ClassLoaderPartition.PER_CLASS : hotFixProperties.getClassLoaderPartition();
+            List<InnerHotFixClassLoader> innerClassLoaders = map(forkJoinPool, graph.partition(partition), group -> newInnerClassLoader(group, graph));
+            for (InnerHotFixClassLoader innerClassLoader : innerClassLoaders) {
+                for (String className : innerClassLoader.getClassNames()) {
+                    classLoaderMap.put(className,innerClassLoader);
+                }
+            }
+            classLoaderCount=innerClassLoaders.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HotFixException(" parallel load class file interrupted",e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof HotFixException){
+                throw (HotFixException) cause;
+            }
+            throw new HotFixException(" parallel load class file fail",cause);
+        } finally {
+            if(forkJoinPool!=null) forkJoinPool.shutdown();
+        }
+        this.classLoaderMap=Collections.unmodifiableMap(classLoaderMap);
+        metaspaceUsedBytes=Math.max(0,MetaspaceHelper.getUsedBytes()-metaspaceUsedBefore);
+        if(log.isDebugEnabled()){
+            log.debug("load {} classes with {} class loaders , metaspace used {} KB",classNames.size(),classLoaderCount,metaspaceUsedBytes/1024);
+        }
     }
 
     /**
-     * 遍历项目的class文件
+     * 对 items 逐个执行 function，forkJoinPool 不为null时并行执行
      */
-    private void recursionClassFile(File classLocalPath) {
-        if (classLocalPath.isDirectory()) {
-            File[] files = classLocalPath.listFiles();
-            if(files==null) return;
-            for (int i = 0; i < files.length; i++) {
-                File file = files[i];
-                recursionClassFile(file);
-            }
-        } else if (classLocalPath.isFile() && classLocalPath.getName().endsWith(".class") ) {
-            InnerHotFixClassLoader classLoader=new InnerHotFixClassLoader(hotFixProperties,classLocalPath,parent);
-            classLoaderMap.put(classLoader.getClassName(),classLoader);
+    private <T,R> List<R> map(ForkJoinPool forkJoinPool, Collection<T> items, Function<T,R> function) throws ExecutionException, InterruptedException {
+        if(forkJoinPool==null){
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+        return forkJoinPool.submit(() -> items.parallelStream().map(function).collect(Collectors.toList())).get();
+    }
+
+    /**
+     * 为一组热修复类创建 InnerHotFixClassLoader 并定义它们
+     * @param classNames 共用一个类加载器的热修复类名
+     * @param graph 补丁中热修复类之间的依赖关系图
+     */
+    private InnerHotFixClassLoader newInnerClassLoader(Set<String> classNames, PatchClassGraph graph){
+        Map<String,ByteBuffer> classDataMap=new HashMap<>();
+        for (String className : classNames) {
+            //已经定义到父级类加载器中的类，InnerHotFixClassLoader 直接委托给父级类加载器
+            if(!isDefineInParent(graph, className)) classDataMap.put(className,graph.getClassData(className));
+        }
+        return new InnerHotFixClassLoader(patchSource,classNames,classDataMap,parent,classLoadCostMap);
+    }
+
+    /**
+     * className 是否定义到父级类加载器中：补丁中其他类依赖的新增父类/接口，或者在 {@link HotFixProperties#getShouldLoadInAppClassLoaderPackage()} 包下
+     */
+    private boolean isDefineInParent(PatchClassGraph graph, String className){
+        return graph.isDefineInParent(className) || shouldLoadInAppClassLoader(className);
+    }
+
+    /**
+     * 是否应该调用
+     * @param className 类名
+     */
+    private boolean shouldLoadInAppClassLoader(String className){
+        List<String> shouldLoadInAppClassLoaderPackages = hotFixProperties.getShouldLoadInAppClassLoaderPackage();
+        if(shouldLoadInAppClassLoaderPackages==null) return false;
+        int lastDotIndex=className.lastIndexOf(".");
+        String packageName = className.substring(0, lastDotIndex);
+        return shouldLoadInAppClassLoaderPackages.stream().filter(str->str.equals(packageName)).count()==1;
+    }
+
+    /**
+     * 调用父级ClassLoader的 defineClass(String name, ByteBuffer b, ProtectionDomain protectionDomain) 方法
+     * <p>可能有多个 HotFixClassLoader 同时往父级ClassLoader定义同一个类，所以需要按类名加锁，
+     * 避免重复定义抛出 {@link LinkageError}；不同的类使用不同的锁，可以并行定义</p>
+     */
+    private void invokeParent_defineClass(String name, ByteBuffer b){
+        long start = System.nanoTime();
+        synchronized (PARENT_DEFINE_LOCKS[(name.hashCode() & Integer.MAX_VALUE) % PARENT_DEFINE_LOCKS.length]){
+            doInvokeParent_defineClass(name, b);
+        }
+        classLoadCostMap.put(name,System.nanoTime()-start);
+    }
+
+    private void doInvokeParent_defineClass(String name, ByteBuffer b){
+        //检查是否已经加载过
+        boolean loaded=false;
+        try {
+            parent.loadClass(name);
+            loaded=true;
+        } catch (ClassNotFoundException e) {
+            //ignore
+        }
+        if(loaded) return;
+        //反射调用 defineClass(String name, ByteBuffer b, ProtectionDomain protectionDomain)
+        try {
+            Method defineClassMethod = ClassLoader.class.getDeclaredMethod("defineClass",
+                    String.class, ByteBuffer.class, ProtectionDomain.class);
+            defineClassMethod.setAccessible(true);
+            defineClassMethod.invoke(parent,name,b,null);
+        } catch (NoSuchMethodException e) {
+           throw new HotFixException("no found parent ClassLoader["+ClassLoader.class.getName()+"] # " +
+                   "'defineClass(String name, ByteBuffer b, ProtectionDomain protectionDomain)' method");
+        } catch (IllegalAccessException e) {
+           throw new HotFixException("no access permission to parent ClassLoader["+ClassLoader.class.getName()+"] # " +
+                    "'defineClass(String name, ByteBuffer b, ProtectionDomain protectionDomain)' method");
+        } catch (InvocationTargetException e) {
+            throw new HotFixException("invoke parent ClassLoader["+ClassLoader.class.getName()+"] # " +
+                    "'defineClass(String name, ByteBuffer b, ProtectionDomain protectionDomain)' method fail",e);
         }
     }
 
@@ -91,170 +258,172 @@ public class HotFixClassLoader extends ClassLoader{
     }
 
     /**
-     * 获取 ClassLoader映射
+     * 获取 ClassLoader映射，不可修改
      */
     public Map<String, InnerHotFixClassLoader> getClassLoaderMap() {
         return classLoaderMap;
     }
 
+    /**
+     * 获取 热修复补丁来源
+     */
+    public PatchSource getPatchSource() {
+        return patchSource;
+    }
+
+    /**
+     * 获取热修复类所在补丁中的资源，如 mapper.xml
+     * <p>与 {@link ClassLoader#getResourceAsStream(String)} 不同，该方法只会读取补丁中的资源，不会读取父级类加载器的资源</p>
+     * @param hotFixClass 热修复类
+     * @param path 资源路径，使用 '/' 作为分隔符
+     * @return 资源输入流，如果 hotFixClass 不是热修复类或者补丁中不存在该资源，返回 null
+     */
+    public static InputStream getPatchResourceAsStream(Class<?> hotFixClass, String path){
+        ClassLoader classLoader = hotFixClass.getClassLoader();
+        if(!(classLoader instanceof InnerHotFixClassLoader)) return null;
+        return ((InnerHotFixClassLoader) classLoader).patchSource.getResourceAsStream(path);
+    }
+
+    /**
+     * 找出 classNames 直接或间接引用的、必须与它们一起重新定义的补丁中的其他类，见 {@link PatchClassGraph#findRequiredReferences(PatchSource, Collection, ClassLoader)}
+     * <p>增量热修复只重新定义有变化的类，它们引用的没有变化的新增类只存在于上一次热修复的类加载器中，需要一起重新定义</p>
+     * @param patchSource 热修复补丁来源
+     * @param classNames 要重新定义的类名
+     * @param parent 父级类加载器
+     * @return 需要一起重新定义的其他类名，不包括 classNames 自己
+     */
+    public static Set<String> findRequiredReferences(PatchSource patchSource, Collection<String> classNames, ClassLoader parent){
+        return PatchClassGraph.findRequiredReferences(patchSource, classNames, parent);
+    }
+
+    /**
+     * cls 是否是由热修复类加载器定义的类【定义到父级类加载器中的类不算】
+     * @param cls 类
+     */
+    public static boolean isHotFixClass(Class<?> cls){
+        return cls.getClassLoader() instanceof InnerHotFixClassLoader;
+    }
+
+    /**
+     * 获取 每个热修复类的加载耗时【key=热修复类名,value=定义该类所花费的纳秒数】
+     */
+    public Map<String, Long> getClassLoadCostMap() {
+        return classLoadCostMap;
+    }
+
+    /**
+     * 获取 创建的 InnerHotFixClassLoader
+     */
+    public Collection<ClassLoader> getClassLoaders() {
+        Set<ClassLoader> classLoaders=Collections.newSetFromMap(new IdentityHashMap<>());
+        classLoaders.addAll(classLoaderMap.values());
+        return classLoaders;
+    }
+
+    /**
+     * 获取 创建的 InnerHotFixClassLoader 数量
+     */
+    public int getClassLoaderCount() {
+        return classLoaderCount;
+    }
+
+    /**
+     * 获取 加载热修复类前后元空间已使用大小的差值【字节】，并行加载或者同时有其他类在加载时只是一个估算值
+     */
+    public long getMetaspaceUsedBytes() {
+        return metaspaceUsedBytes;
+    }
+
 
     /**
-     * 内部 热修复专业类加载器【一个热修复类对应一个 InnerHotFixClassLoader 】
+     * 内部 热修复专业类加载器【一组热修复类对应一个 InnerHotFixClassLoader 】
      *
      * @author chenzhuobin
      */
     private static class InnerHotFixClassLoader extends ClassLoader{
 
-        private Logger log= LoggerFactory.getLogger(InnerHotFixClassLoader.class);
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
 
         /**
-         * 热修复参数配置
+         * 热修复补丁来源
          */
-        private HotFixProperties hotFixProperties;
+        private PatchSource patchSource;
 
         /**
-         * 类名
+         * 该类加载器负责的类名，包括委托给父级类加载器的类
          */
-        private String className;
+        private Set<String> classNames;
 
         /**
-         * 父级类加载器
-         */
-        private ClassLoader parent;
-        /**
-         * 新建一个 InnerHotFixClassLoader 对象
-         * @param hotFixProperties 热修复参数配置
-         * @param classPathFile 热修复类文件
-         * @param parent 父级类加载器
+         * 还没有定义的类的类数据【key=类名,value=类数据】，定义后移除，不同的类可能被并发定义
          */
-        public InnerHotFixClassLoader(HotFixProperties hotFixProperties, File classPathFile, ClassLoader parent){
-            super(parent);
-            this.parent=parent;
-            this.hotFixProperties = hotFixProperties;
-            getClassData(classPathFile);
-        }
-        /**
-         * 获取热修复类文件的类数据
-         */
-        private void getClassData(File classPathFile) {
-            try(InputStream fin = new FileInputStream(classPathFile)){
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int bufferSize = 4096;
-                byte[] buffer = new byte[bufferSize];
-                int byteNumRead = 0;
-                while ((byteNumRead = fin.read(buffer)) != -1) {
-                    bos.write(buffer, 0, byteNumRead);
-                }
-                byte[] classBytes = bos.toByteArray();
-                className = getClassName(classPathFile);
-                //是否应该调用
-                if(shouldLoadInAppClassLoader(className)){
-                    invokeParent_defineClass(className,classBytes,0,classBytes.length);
-                }else{
-                    defineClass(className, classBytes, 0, classBytes.length);
-                }
-            } catch (IOException e) {
-               throw new HotFixException(" load class File "+classPathFile.getAbsolutePath()+" fail",e);
-            } catch (NoClassDefFoundError e){
-                if(log.isWarnEnabled()){
-                    log.warn("throw NoClassDefFoundError cause [{}] depend [{}],but maybe can use parent classLoader load this",className,e.getMessage());
-                }
-                //有可能是 新热修复类，所以尝试使用父级ClassLoader进行加载，只有通过父级ClassLoader加载才能
-                // 使得 该类加载器找到该热修复类。
-                getClassDataToParent(hotFixProperties.getLoadPath()+e.getMessage()+".class");
-                getClassData(classPathFile);
-            }
-        }
+        private Map<String,ByteBuffer> classDataMap;
 
         /**
-         * 是否应该调用
-         * @param className 类名
+         * 每个热修复类的加载耗时
          */
-        private boolean shouldLoadInAppClassLoader(String className){
-            List<String> shouldLoadInAppClassLoaderPackages = hotFixProperties.getShouldLoadInAppClassLoaderPackage();
-            if(shouldLoadInAppClassLoaderPackages==null) return false;
-            int lastDotIndex=className.lastIndexOf(".");
-            String packageName = className.substring(0, lastDotIndex);
-            return shouldLoadInAppClassLoaderPackages.stream().filter(str->str.equals(packageName)).count()==1;
-        }
+        private Map<String,Long> classLoadCostMap;
 
         /**
-         * 获取 class 文件数据，交由父级Classloader进行定义
-         * @param classPath class文件路径
+         * 新建一个 InnerHotFixClassLoader 对象，并定义 classDataMap 中所有的类
+         * @param patchSource 热修复补丁来源
+         * @param classNames 该类加载器负责的类名
+         * @param classDataMap 需要由该类加载器定义的类的类数据
+         * @param parent 父级类加载器
+         * @param classLoadCostMap 每个热修复类的加载耗时
          */
-        private void getClassDataToParent(String classPath){
-            File classPathFile=new File(classPath);
-            try(InputStream fin = new FileInputStream(classPathFile);){
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int bufferSize = 4096;
-                byte[] buffer = new byte[bufferSize];
-                int byteNumRead = 0;
-                while ((byteNumRead = fin.read(buffer)) != -1) {
-                    bos.write(buffer, 0, byteNumRead);
+        public InnerHotFixClassLoader(PatchSource patchSource, Set<String> classNames, Map<String,ByteBuffer> classDataMap,
+                                      ClassLoader parent, Map<String,Long> classLoadCostMap){
+            super(parent);
+            this.patchSource = patchSource;
+            this.classNames = classNames;
+            this.classDataMap = new ConcurrentHashMap<>(classDataMap);
+            this.classLoadCostMap = classLoadCostMap;
+            for (String className : new ArrayList<>(classDataMap.keySet())) {
+                synchronized (getClassLoadingLock(className)){
+                    if(findLoadedClass(className)==null) defineClassData(className);
                 }
-                byte[] classBytes = bos.toByteArray();
-                className = getClassName(classPathFile);
-                invokeParent_defineClass(className, classBytes, 0, classBytes.length);
-            } catch (IOException e) {
-                throw new HotFixException(" load class File "+classPathFile.getAbsolutePath()+" fail",e);
-            }
-        }
-
-        /**
-         * 调用父级ClassLoader的 defineClass(String name, byte[] b, int off, int len) 方法
-         */
-        private void invokeParent_defineClass(String name, byte[] b, int off, int len){
-            //检查是否已经加载过
-            boolean loaded=false;
-            try {
-                parent.loadClass(name);
-                loaded=true;
-            } catch (ClassNotFoundException e) {
-                //ignore
-            }
-            if(loaded) return;
-            //反射调用 defineClass(String name, byte[] b, int off, int len)
-            try {
-                Method defineClassMethod = ClassLoader.class.getDeclaredMethod("defineClass",
-                        String.class, byte[].class, int.class, int.class);
-                defineClassMethod.setAccessible(true);
-                defineClassMethod.invoke(parent,name,b,off,len);
-            } catch (NoSuchMethodException e) {
-               throw new HotFixException("no found parent ClassLoader["+ClassLoader.class.getName()+"] # " +
-                       "'defineClass(String name, byte[] b, int off, int len)' method");
-            } catch (IllegalAccessException e) {
-               throw new HotFixException("no access permission to parent ClassLoader["+ClassLoader.class.getName()+"] # " +
-                        "'defineClass(String name, byte[] b, int off, int len)' method");
-            } catch (InvocationTargetException e) {
-                throw new HotFixException("invoke parent ClassLoader["+ClassLoader.class.getName()+"] # " +
-                        "'defineClass(String name, byte[] b, int off, int len)' method fail",e);
             }
         }
 
         /**
-         * 获取类文件
+         * 定义热修复类
+         * <p>类数据直接以 {@link ByteBuffer} 的形式交给 defineClass，补丁包中不压缩的类不会拷贝到堆内。
+         * 定义时 JVM 会通过 {@link #loadClass(String, boolean)} 加载父类/接口，同组的父类/接口会先被定义；
+         * 补丁中的新增父类/接口已经按 {@link PatchClassGraph} 的顺序先定义到父级ClassLoader中了，所以这里不会再因为找不到它们而失败。</p>
+         * @param className 类名
          */
-        public String getClassName(File classPathFile) {
-            String dirPath = classPathFile.getParent();
-            String loadPath = hotFixProperties.getLoadPath();
-            String packagePath=dirPath.replace(loadPath,"");
-            if ("".equals(packagePath)) {
-                throw new HotFixException(" please set package name path ! classPathFile = "+classPathFile.toString());
+        private Class<?> defineClassData(String className) {
+            ByteBuffer classData = classDataMap.remove(className);
+            long start = System.nanoTime();
+            try{
+                Class<?> cls = defineClass(className, classData, null);
+                classLoadCostMap.put(className,System.nanoTime()-start);
+                return cls;
+            } catch (NoClassDefFoundError e){
+                throw new HotFixException(" define class "+className+" fail , depend class "+e.getMessage()+" not found in "+patchSource.getLocation()+" or parent classLoader",e);
             }
-            packagePath=packagePath.replace(File.separator,".");
-            String className = classPathFile.getName().replace(".class", "");
-            return packagePath+'.'+className;
         }
 
         /**
-         * 加载 name 的类对象，该方法会破坏 Java 的双亲委派机制。
+         * 加载 name 的类对象，该方法会破坏 Java 的双亲委派机制：同组的热修复类由该类加载器定义，其他类委托给父级类加载器。
+         * <p>已经定义的类不加锁直接返回，还没有定义的类按类名加锁定义</p>
          * @param name 类名
          * @param resolve 如果为true，则解析该类
          */
         @Override
         protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-            Class<?> cls = null;
-            cls = findLoadedClass(name);
+            Class<?> cls = findLoadedClass(name);
+            if (cls == null && classDataMap.containsKey(name)) {
+                synchronized (getClassLoadingLock(name)){
+                    cls = findLoadedClass(name);
+                    if (cls == null) {
+                        cls = defineClassData(name);
+                    }
+                }
+            }
             if (cls == null) {
                 try{
                     cls=getParent().loadClass(name);
@@ -274,10 +443,10 @@ public class HotFixClassLoader extends ClassLoader{
         }
 
         /**
-         * 获取类名
+         * 获取 该类加载器负责的类名
          */
-        public String getClassName() {
-            return className;
+        public Set<String> getClassNames() {
+            return classNames;
         }
 
 
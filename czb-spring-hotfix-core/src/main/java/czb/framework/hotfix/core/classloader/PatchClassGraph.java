@@ -0,0 +1,344 @@
+package czb.framework.hotfix.core.classloader;
+
+import czb.framework.hotfix.core.config.ClassLoaderPartition;
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.source.PatchSource;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 补丁中热修复类之间的依赖关系图
+ * <p>定义类之前先解析每个热修复类的常量池 {@link ClassFileInfo}，找出它引用的补丁中的类。定义一个类时 JVM 会立即加载它的父类和接口，
+ * 其他引用的类要到第一次使用时才会加载，所以只有父类和接口会影响定义的顺序：父类/接口是补丁中的新增类【父级类加载器中不存在】时，
+ * 必须先定义到父级类加载器中，依赖它的类才能定义成功。</p>
+ * <p>按这个关系对热修复类分层【拓扑排序】，每一层的类只依赖前面层的类，同一层的类互不依赖可以并行定义，
+ * 所以定义类时不需要再通过捕获 {@link NoClassDefFoundError} 去重试。</p>
+ * <p>热修复类按 {@link #partition(ClassLoaderPartition)} 划分到类加载器：同一个类加载器中的类互相引用时看到的是补丁中的类，
+ * 所以默认只有内部类与其外部类，以及补丁中的新增类与引用它的类才会放到一起，其他类引用父级类加载器中已有的类时看到的仍然是父级类加载器中的类。</p>
+ * @author chenzhuobin
+ */
+final class PatchClassGraph {
+
+    /**
+     * 热修复类的类数据【key=热修复类名,value=类数据】，预解析时读取一次，定义时直接使用
+     */
+    private final Map<String,ByteBuffer> classDataMap;
+
+    /**
+     * 热修复类引用的补丁中的其他类【key=热修复类名,value=常量池中引用的补丁中的类名】
+     */
+    private final Map<String,Set<String>> references;
+
+    /**
+     * 需要定义到父级类加载器中的类名【补丁中的新增类，且是补丁中其他类的父类或者接口】
+     */
+    private final Set<String> parentClassNames;
+
+    /**
+     * 补丁中的新增类名【构建时父级类加载器中不存在】
+     */
+    private final Set<String> newClassNames;
+
+    /**
+     * 按定义顺序分层的类名
+     */
+    private final List<List<String>> levels;
+
+    private PatchClassGraph(Map<String, ByteBuffer> classDataMap, Map<String, Set<String>> references, Set<String> parentClassNames,
+                            Set<String> newClassNames, List<List<String>> levels) {
+        this.classDataMap = classDataMap;
+        this.references = references;
+        this.parentClassNames = parentClassNames;
+        this.newClassNames = newClassNames;
+        this.levels = levels;
+    }
+
+    /**
+     * 读取并解析补丁中的类，构建依赖关系图
+     * @param patchSource 热修复补丁来源
+     * @param classNames 热修复类名
+     * @param parent 父级类加载器
+     * @param parallel 是否并行读取和解析，并行时使用调用线程所在的 ForkJoinPool
+     */
+    static PatchClassGraph build(PatchSource patchSource, List<String> classNames, ClassLoader parent, boolean parallel){
+        Stream<String> stream = parallel ? classNames.parallelStream() : classNames.stream();
+        Map<String, ByteBuffer> classDataMap = stream.collect(Collectors.toMap(className -> className, className -> readClassData(patchSource, className)));
+        Map<String, ClassFileInfo> classFiles = new LinkedHashMap<>();
+        for (String className : classNames) {
+            classFiles.put(className, ClassFileInfo.parse(classDataMap.get(className)));
+        }
+        //父级类加载器中的类在定义到父级类加载器之后就不再是新增类了，所以构建时记录下来
+        Set<String> newClassNames=new HashSet<>();
+        for (String className : classNames) {
+            if(isNewClass(parent, className)) newClassNames.add(className);
+        }
+        Map<String,Set<String>> references=new LinkedHashMap<>();
+        //定义时的依赖【key=热修复类名,value=需要先定义到父级类加载器中的父类/接口】
+        Map<String,Set<String>> defineDependencies=new HashMap<>();
+        Set<String> parentClassNames=new HashSet<>();
+        for (Map.Entry<String, ClassFileInfo> entry : classFiles.entrySet()) {
+            String className = entry.getKey();
+            ClassFileInfo classFile = entry.getValue();
+            Set<String> patchReferences=new HashSet<>();
+            for (String referencedClassName : classFile.getReferencedClassNames()) {
+                if(classFiles.containsKey(referencedClassName)) patchReferences.add(referencedClassName);
+            }
+            references.put(className,patchReferences);
+            List<String> superTypeNames=new ArrayList<>(classFile.getInterfaceNames());
+            if(classFile.getSuperClassName()!=null) superTypeNames.add(classFile.getSuperClassName());
+            Set<String> dependencies=new HashSet<>();
+            for (String superTypeName : superTypeNames) {
+                if(newClassNames.contains(superTypeName)){
+                    dependencies.add(superTypeName);
+                    parentClassNames.add(superTypeName);
+                }
+            }
+            defineDependencies.put(className,dependencies);
+        }
+        return new PatchClassGraph(classDataMap, references, parentClassNames, newClassNames, sortLevels(classFiles.keySet(), defineDependencies));
+    }
+
+    /**
+     * 找出 classNames 通过常量池直接或间接引用的、必须一起定义的补丁中的其他类
+     * <p>引用的类是补丁中的新增类【父级类加载器中不存在】，或者与引用方是同一个最外层类的内部类/外部类时，引用方只能在同一次定义的类中找到它，
+     * 只定义引用方会导致运行时出现 {@link NoClassDefFoundError} 或者看到父级类加载器中的旧类。父级类加载器中已有的其他类，引用方看到的
+     * 本来就是父级类加载器中的类，不需要一起定义。</p>
+     * @param patchSource 热修复补丁来源
+     * @param classNames 要定义的类名
+     * @param parent 父级类加载器
+     * @return 需要一起定义的其他类名，不包括 classNames 自己
+     */
+    static Set<String> findRequiredReferences(PatchSource patchSource, Collection<String> classNames, ClassLoader parent){
+        Set<String> patchClassNames=new HashSet<>(patchSource.getClassNames());
+        Set<String> visited=new HashSet<>(classNames);
+        Set<String> required=new LinkedHashSet<>();
+        Deque<String> queue=new ArrayDeque<>(classNames);
+        while (!queue.isEmpty()){
+            String className = queue.poll();
+            String outerClassName = getOuterClassName(className);
+            for (String referencedClassName : ClassFileInfo.parse(readClassData(patchSource, className)).getReferencedClassNames()) {
+                if(!patchClassNames.contains(referencedClassName) || visited.contains(referencedClassName)) continue;
+                String referencedOuterClassName = getOuterClassName(referencedClassName);
+                boolean sameOuterClass = Objects.equals(outerClassName == null ? className : outerClassName,
+                        referencedOuterClassName == null ? referencedClassName : referencedOuterClassName);
+                if(sameOuterClass || isNewClass(parent, referencedClassName)){
+                    visited.add(referencedClassName);
+                    required.add(referencedClassName);
+                    queue.add(referencedClassName);
+                }
+            }
+        }
+        return required;
+    }
+
+    private static ByteBuffer readClassData(PatchSource patchSource, String className){
+        ByteBuffer classData = patchSource.getClassData(className);
+        if(classData==null){
+            throw new HotFixException(" load class "+className+" fail , not found in "+patchSource.getLocation());
+        }
+        return classData;
+    }
+
+    /**
+     * className 是否是父级类加载器中不存在的新增类
+     */
+    private static boolean isNewClass(ClassLoader parent, String className){
+        return parent.getResource(className.replace('.','/')+".class")==null;
+    }
+
+    /**
+     * 按定义时的依赖拓扑排序分层
+     * @param classNames 所有类名
+     * @param defineDependencies 定义时的依赖
+     */
+    private static List<List<String>> sortLevels(Collection<String> classNames, Map<String,Set<String>> defineDependencies){
+        Map<String,Integer> inDegrees=new HashMap<>();
+        Map<String,List<String>> dependents=new HashMap<>();
+        List<String> level=new ArrayList<>();
+        for (String className : classNames) {
+            Set<String> dependencies = defineDependencies.get(className);
+            inDegrees.put(className,dependencies.size());
+            for (String dependency : dependencies) {
+                dependents.computeIfAbsent(dependency,k->new ArrayList<>()).add(className);
+            }
+            if(dependencies.isEmpty()) level.add(className);
+        }
+        List<List<String>> levels=new ArrayList<>();
+        int sortedCount=0;
+        while (!level.isEmpty()){
+            levels.add(level);
+            sortedCount+=level.size();
+            List<String> nextLevel=new ArrayList<>();
+            for (String className : level) {
+                for (String dependent : dependents.getOrDefault(className, Collections.emptyList())) {
+                    if(inDegrees.merge(dependent,-1,Integer::sum)==0) nextLevel.add(dependent);
+                }
+            }
+            level=nextLevel;
+        }
+        if(sortedCount!=classNames.size()){
+            List<String> cyclicClassNames=new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : inDegrees.entrySet()) {
+                if(entry.getValue()>0) cyclicClassNames.add(entry.getKey());
+            }
+            throw new HotFixException(" cyclic inheritance found in patch classes "+cyclicClassNames);
+        }
+        return levels;
+    }
+
+    /**
+     * 把热修复类划分成共用类加载器的分组，分组按补丁中类的顺序排列
+     * <p>两种划分方式都会把内部类与其最外层的类放在一起，把补丁中的新增类与引用它的类放在一起【新增类不在父级类加载器中，
+     * 分开后引用方无法加载它】；{@link ClassLoaderPartition#COMPONENT} 还会把互相引用的类放在一起。</p>
+     * @param partition 划分方式
+     */
+    List<Set<String>> partition(ClassLoaderPartition partition){
+        //初始分组【key=类名,value=分组下标】
+        Map<String,Integer> groupIndexes;
+        if(partition==ClassLoaderPartition.COMPONENT){
+            groupIndexes=findStronglyConnectedComponents();
+        }else {
+            groupIndexes=new HashMap<>();
+            for (String className : references.keySet()) {
+                groupIndexes.put(className,groupIndexes.size());
+            }
+        }
+        int[] parents=new int[references.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i]=i;
+        }
+        for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+            String className = entry.getKey();
+            //内部类与其最外层的类放在一起
+            String outerClassName = getOuterClassName(className);
+            if(outerClassName!=null && references.containsKey(outerClassName)){
+                union(parents,groupIndexes.get(className),groupIndexes.get(outerClassName));
+            }
+            //已经定义到父级类加载器中的新增类，引用方通过父级类加载器就能加载到
+            for (String referencedClassName : entry.getValue()) {
+                if(newClassNames.contains(referencedClassName) && !parentClassNames.contains(referencedClassName)){
+                    union(parents,groupIndexes.get(className),groupIndexes.get(referencedClassName));
+                }
+            }
+        }
+        Map<Integer,Set<String>> groupMap=new LinkedHashMap<>();
+        for (String className : references.keySet()) {
+            groupMap.computeIfAbsent(find(parents,groupIndexes.get(className)),k->new LinkedHashSet<>()).add(className);
+        }
+        return new ArrayList<>(groupMap.values());
+    }
+
+    /**
+     * 使用 Tarjan 算法【非递归】找出引用关系的强连通分量
+     * @return key=类名,value=分量下标
+     */
+    private Map<String,Integer> findStronglyConnectedComponents(){
+        Map<String,Integer> indexes=new HashMap<>();
+        Map<String,Integer> lowLinks=new HashMap<>();
+        Deque<String> stack=new ArrayDeque<>();
+        Set<String> onStack=new HashSet<>();
+        Map<String,Integer> componentIndexes=new HashMap<>();
+        int componentCount=0;
+        for (String root : references.keySet()) {
+            if(indexes.containsKey(root)) continue;
+            Deque<String> callStack=new ArrayDeque<>();
+            Deque<Iterator<String>> iterators=new ArrayDeque<>();
+            indexes.put(root,indexes.size());
+            lowLinks.put(root,indexes.get(root));
+            stack.push(root);
+            onStack.add(root);
+            callStack.push(root);
+            iterators.push(getReferences(root).iterator());
+            while (!callStack.isEmpty()){
+                String node = callStack.peek();
+                Iterator<String> iterator = iterators.peek();
+                if(iterator.hasNext()){
+                    String next = iterator.next();
+                    if(!indexes.containsKey(next)){
+                        indexes.put(next,indexes.size());
+                        lowLinks.put(next,indexes.get(next));
+                        stack.push(next);
+                        onStack.add(next);
+                        callStack.push(next);
+                        iterators.push(getReferences(next).iterator());
+                    }else if(onStack.contains(next)){
+                        lowLinks.put(node,Math.min(lowLinks.get(node),indexes.get(next)));
+                    }
+                    continue;
+                }
+                callStack.pop();
+                iterators.pop();
+                if(!callStack.isEmpty()){
+                    String caller = callStack.peek();
+                    lowLinks.put(caller,Math.min(lowLinks.get(caller),lowLinks.get(node)));
+                }
+                if(lowLinks.get(node).equals(indexes.get(node))){
+                    String member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        componentIndexes.put(member,componentCount);
+                    } while (!member.equals(node));
+                    componentCount++;
+                }
+            }
+        }
+        return componentIndexes;
+    }
+
+    /**
+     * 获取 内部类最外层的类名，不是内部类时返回null
+     * @param className 类名，如 a.Foo$Bar$1 的最外层类名为 a.Foo
+     */
+    private static String getOuterClassName(String className){
+        int simpleNameIndex = className.lastIndexOf('.') + 1;
+        int index = className.indexOf('$', simpleNameIndex);
+        return index<=simpleNameIndex?null:className.substring(0,index);
+    }
+
+    private static int find(int[] parents, int i){
+        while (parents[i]!=i){
+            parents[i]=parents[parents[i]];
+            i=parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j){
+        parents[find(parents,i)]=find(parents,j);
+    }
+
+    /**
+     * 获取 热修复类的类数据
+     * @param className 热修复类名
+     */
+    ByteBuffer getClassData(String className){
+        return classDataMap.get(className);
+    }
+
+    /**
+     * className 是否需要定义到父级类加载器中
+     * @param className 热修复类名
+     */
+    boolean isDefineInParent(String className){
+        return parentClassNames.contains(className);
+    }
+
+    /**
+     * 获取 热修复类常量池中引用的补丁中的其他类
+     * @param className 热修复类名
+     */
+    Set<String> getReferences(String className){
+        return references.getOrDefault(className,Collections.emptySet());
+    }
+
+    /**
+     * 获取 按定义顺序分层的类名，每一层的类只依赖前面层的类
+     */
+    List<List<String>> getLevels() {
+        return levels;
+    }
+}
@@ -0,0 +1,20 @@
+package czb.framework.hotfix.core.config;
+
+/**
+ * 热修复类划分到 InnerHotFixClassLoader 的方式
+ * @author chenzhuobin
+ */
+public enum ClassLoaderPartition {
+
+    /**
+     * 默认方式，每个热修复类一个类加载器，只有内部类与其外部类、补丁中的新增类与引用它的类共用一个类加载器，
+     * 热修复类引用父级类加载器中已有的类时看到的都是父级类加载器中的类
+     */
+    PER_CLASS,
+
+    /**
+     * 在 {@link #PER_CLASS} 的基础上，互相引用【常量池引用关系的强连通分量】的热修复类也共用一个类加载器，类加载器更少，
+     * 但同一组内的类互相引用时看到的是补丁中的类，与父级类加载器中的同名类不是同一个类型，需要显式开启
+     */
+    COMPONENT
+}
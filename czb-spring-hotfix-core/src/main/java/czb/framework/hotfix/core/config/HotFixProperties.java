@@ -1,6 +1,7 @@
 package czb.framework.hotfix.core.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import java.io.File;
 import java.util.List;
@@ -24,6 +25,7 @@ public class HotFixProperties {
      * 本地文件加载地址
      * <p>loadPath后面必须是包名路径，class文件不可以随便乱放，必须要按照包名路径存放。</p>
      * <p>mapper层的 mapper.xml必须放在对应 mapper接口的class文件同一目录下</p>
+     * <p>loadPath 也可以是一个 .jar/.zip 的补丁包文件，包内的目录结构与上述一致，补丁包会以内存映射的方式读取。</p>
      */
     private String loadPath;
 
@@ -38,6 +40,74 @@ public class HotFixProperties {
      */
     private List<String> shouldLoadInAppClassLoaderPackage;
 
+    /**
+     * 是否并行加载热修复类
+     * <p>开启后，扫描 {@link #loadPath} 得到的class文件会交由有界的 ForkJoinPool 并行读取和定义，适用于一次热修复几百上千个类的情况。</p>
+     */
+    private Boolean parallelLoad=false;
+
+    /**
+     * 并行加载热修复类的并行度，为空时默认为 {@link Runtime#availableProcessors()}
+     */
+    private Integer loadParallelism;
+
+    /**
+     * 是否增量热修复
+     * <p>开启后，与上一次热修复内容一致的类/mapper.xml，或者从没有热修复过且与 classpath 上原内容一致的类/mapper.xml 会被跳过，
+     * 只热修复有变化的部分。</p>
+     */
+    private Boolean incremental=true;
+
+    /**
+     * 热修复 Controller 时，覆盖 RequestMappingInfoHandlerMapping 注册表的批次范围，默认为 {@link MappingSwapScope#CONTROLLER}
+     * <p>新的接口注册信息会先在锁外构建好，然后在同一次写锁内一次性覆盖，避免多次获取写锁阻塞请求线程查找接口，
+     * 也避免接口在覆盖的间隙中短暂丢失而返回 404。</p>
+     */
+    private MappingSwapScope mappingSwapScope=MappingSwapScope.CONTROLLER;
+
+    /**
+     * 热修复 Mapper 后是否预热
+     * <p>开启后，在热修复报告返回之前，重新构建热修复 Mapper 有变化的方法的 MapperMethod 缓存，并解析对应的 MappedStatement
+     * 【动态SQL、结果映射的反射信息】，避免热修复后第一次调用这些方法时的延迟抖动。</p>
+     */
+    private Boolean mybatisWarmUp=false;
+
+    /**
+     * 需要包装成可热替换代理对象的 Bean 所在的包名，为空时不开启
+     * <p>这些包下有业务接口的 Bean 会被包装成只实现业务接口的代理对象，热修复时只替换代理对象的目标对象，
+     * 依赖方不需要反射修改属性就能看到热修复 Bean 对象。依赖方必须通过接口注入这些 Bean。</p>
+     */
+    private List<String> hotSwappablePackages;
+
+    /**
+     * 热修复类划分到类加载器的方式，默认为 {@link ClassLoaderPartition#PER_CLASS}
+     * <p>每个类加载器都有自己的元空间块和簿记开销，内部类与外部类、新增类与引用它的类总是共用类加载器。
+     * {@link ClassLoaderPartition#COMPONENT} 还会合并互相引用的类，可以进一步减少类加载器的数量，
+     * 但组内的类互相引用时看到的是补丁中的类型，依赖方按父级类加载器中的类型装配时会报转换错误，所以需要显式开启。</p>
+     */
+    private ClassLoaderPartition classLoaderPartition=ClassLoaderPartition.PER_CLASS;
+
+    /**
+     * 元空间剩余空间的下限，为空时不检查
+     * <p>每次热修复都会创建新的类加载器，被取代的补丁如果还被引用着就无法卸载。加载补丁前元空间剩余空间【MaxMetaspaceSize、
+     * CompressedClassSpaceSize 中较小的剩余空间】低于该值时拒绝热修复，避免元空间耗尽导致应用程序不可用。</p>
+     */
+    private DataSize minMetaspaceHeadroom;
+
+    /**
+     * 热修复生效后是否清理框架缓存中被取代的补丁类，默认开启
+     * <p>Spring 的反射/注解/内省缓存、Spring MVC 的 @InitBinder/@ModelAttribute/@SessionAttributes/@ExceptionHandler 缓存、
+     * Jackson 的序列化器缓存、Mybatis 的 Reflector 缓存都以类为键，它们引用着被取代的补丁类时，补丁的类加载器无法被回收。</p>
+     */
+    private Boolean scrubStaleCaches=true;
+
+    /**
+     * 清理框架缓存时是否同时整体清空没有按类移除方法的全局缓存，默认关闭
+     * <p>Spring AnnotationUtils 的缓存以及不是由 Spring 内省的 JDK Introspector BeanInfo 没有按类移除的方法，整体清空会让整个应用程序重新构建这些缓存。
+     * 这些缓存是弱引用/软引用的，不清空时被取代的补丁类只会晚一些被回收，只有在需要尽快回收元空间时才开启。</p>
+     */
+    private Boolean scrubGlobalCaches=false;
+
     public List<String> getShouldLoadInAppClassLoaderPackage() {
         return shouldLoadInAppClassLoaderPackage;
     }
@@ -55,10 +125,11 @@ public class HotFixProperties {
     }
 
     /**
-     * 如果 {@link #loadPath} 不是 {@link File#separator} 结尾，会自动加上 {@link File#separator}
+     * 如果 {@link #loadPath} 不是 {@link File#separator} 结尾，会自动加上 {@link File#separator}；
+     * 补丁包文件【见 {@link #isBundleLoadPath()}】则原样返回
      */
     public String getLoadPath() {
-        if(loadPath.endsWith(File.separator)){
+        if(isBundleLoadPath() || loadPath.endsWith(File.separator)){
             return loadPath;
         }else{
             loadPath=loadPath+File.separator;
@@ -70,6 +141,15 @@ public class HotFixProperties {
         this.loadPath = loadPath;
     }
 
+    /**
+     * {@link #loadPath} 是否是 .jar/.zip 的补丁包文件
+     */
+    public boolean isBundleLoadPath() {
+        if(loadPath==null) return false;
+        String lowerCaseLoadPath = loadPath.toLowerCase();
+        return lowerCaseLoadPath.endsWith(".jar") || lowerCaseLoadPath.endsWith(".zip");
+    }
+
     public Boolean getEnable() {
         return enable;
     }
@@ -77,4 +157,90 @@ public class HotFixProperties {
     public void setEnable(Boolean enable) {
         this.enable = enable;
     }
+
+    public Boolean getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(Boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public DataSize getMinMetaspaceHeadroom() {
+        return minMetaspaceHeadroom;
+    }
+
+    public void setMinMetaspaceHeadroom(DataSize minMetaspaceHeadroom) {
+        this.minMetaspaceHeadroom = minMetaspaceHeadroom;
+    }
+
+    public Boolean getScrubGlobalCaches() {
+        return scrubGlobalCaches;
+    }
+
+    public void setScrubGlobalCaches(Boolean scrubGlobalCaches) {
+        this.scrubGlobalCaches = scrubGlobalCaches;
+    }
+
+    public Boolean getScrubStaleCaches() {
+        return scrubStaleCaches;
+    }
+
+    public void setScrubStaleCaches(Boolean scrubStaleCaches) {
+        this.scrubStaleCaches = scrubStaleCaches;
+    }
+
+    public ClassLoaderPartition getClassLoaderPartition() {
+        return classLoaderPartition;
+    }
+
+    public void setClassLoaderPartition(ClassLoaderPartition classLoaderPartition) {
+        this.classLoaderPartition = classLoaderPartition;
+    }
+
+    public MappingSwapScope getMappingSwapScope() {
+        return mappingSwapScope;
+    }
+
+    public void setMappingSwapScope(MappingSwapScope mappingSwapScope) {
+        this.mappingSwapScope = mappingSwapScope;
+    }
+
+    public Boolean getParallelLoad() {
+        return parallelLoad;
+    }
+
+    public void setParallelLoad(Boolean parallelLoad) {
+        this.parallelLoad = parallelLoad;
+    }
+
+    /**
+     * 如果 {@link #loadParallelism} 为空，则返回 {@link Runtime#availableProcessors()}
+     */
+    public Integer getLoadParallelism() {
+        if(loadParallelism==null || loadParallelism<1){
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return loadParallelism;
+    }
+
+    public void setLoadParallelism(Integer loadParallelism) {
+        this.loadParallelism = loadParallelism;
+    }
+
+    public Boolean getMybatisWarmUp() {
+        return mybatisWarmUp;
+    }
+
+    public void setMybatisWarmUp(Boolean mybatisWarmUp) {
+        this.mybatisWarmUp = mybatisWarmUp;
+    }
+
+    public List<String> getHotSwappablePackages() {
+        return hotSwappablePackages;
+    }
+
+    public void setHotSwappablePackages(List<String> hotSwappablePackages) {
+        this.hotSwappablePackages = hotSwappablePackages;
+    }
 }
@@ -0,0 +1,23 @@
+package czb.framework.hotfix.core.config;
+
+/**
+ * 热修复 Controller 时，覆盖 RequestMappingInfoHandlerMapping 注册表的批次范围
+ * @author chenzhuobin
+ */
+public enum MappingSwapScope {
+
+    /**
+     * 每个接口方法单独覆盖，每次覆盖都会分别获取两次注册表的写锁
+     */
+    METHOD,
+
+    /**
+     * 一个 Controller 的所有接口方法在同一次写锁内覆盖
+     */
+    CONTROLLER,
+
+    /**
+     * 整个补丁所有 Controller 的接口方法在同一次写锁内覆盖
+     */
+    PATCH
+}
@@ -0,0 +1,288 @@
+package czb.framework.hotfix.core.generation;
+
+import czb.framework.hotfix.core.helper.GarbageCollectorHelper;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * 一次热修复生成的类加载器【一代补丁】
+ * <p>通过弱引用持有该代补丁的类加载器，不会阻止它们被回收。该代补丁的类都被之后的补丁热修复后，该代补丁就被取代了，
+ * 这时如果它的类加载器仍然可达，说明有对象【被替换的 Bean、接口注册表、Mybatis 的 knownMappers、框架的缓存等】还在引用它的类，
+ * 它占用的元空间无法释放。</p>
+ * @author chenzhuobin
+ */
+public class PatchGeneration {
+
+    /**
+     * 无法读取GC次数时，被取代后经过该时长【毫秒】仍然可达才疑似泄漏
+     */
+    static final long LEAK_GRACE_MILLIS=60_000;
+
+    /**
+     * 代号，由 {@link PatchGenerationRegistry} 注册时分配，从1开始递增
+     */
+    private long id;
+
+    /**
+     * 补丁的位置
+     */
+    private final String patchLocation;
+
+    /**
+     * 创建时间
+     */
+    private final long createTime=System.currentTimeMillis();
+
+    /**
+     * 该代补丁加载的类的数量
+     */
+    private final int classCount;
+
+    /**
+     * 该代补丁加载的类名
+     */
+    private final List<String> classNames;
+
+    /**
+     * 补丁内容的摘要，内容相同的补丁摘要相同，可以用来比较不同实例上生效的补丁
+     */
+    private volatile String contentHash;
+
+    /**
+     * 每种生成器处理的类名【key=生成器类型,value=类名】，如 controller 为热修复的 Controller，mybatis 为热修复的 Mapper 命名空间
+     */
+    private volatile Map<String,List<String>> generatedClassNames=Collections.emptyMap();
+
+    /**
+     * 被该代补丁的热修复 Bean 对象替换的原 Bean 名
+     */
+    private volatile List<String> replacedBeanNames=Collections.emptyList();
+
+    /**
+     * 该代补丁的类加载器
+     */
+    private final List<WeakReference<ClassLoader>> classLoaders;
+
+    /**
+     * 该代补丁每个类所在的类加载器【key=类名,value=类加载器的弱引用】，只有通过 {@link #PatchGeneration(String, Map, long)} 创建时才有
+     */
+    private final Map<String,WeakReference<ClassLoader>> classLoaderRefs;
+
+    /**
+     * 加载该代补丁时元空间已使用大小的增量【字节】，是一个估算值
+     */
+    private final long metaspaceBytes;
+
+    /**
+     * 还没有被之后的补丁热修复的类名
+     */
+    private final Set<String> liveClassNames;
+
+    /**
+     * 取代该代补丁的代号，没有被取代时为0
+     */
+    private volatile long supersededBy;
+
+    /**
+     * 被取代的时间
+     */
+    private volatile long supersededTime;
+
+    /**
+     * 被取代时JVM的GC总次数，无法读取时为-1
+     */
+    private volatile long supersededCollectionCount;
+
+    /**
+     * 新建一个 PatchGeneration 对象
+     * @param patchLocation 补丁的位置
+     * @param classNames 该代补丁加载的类名
+     * @param classLoaders 该代补丁的类加载器
+     * @param metaspaceBytes 加载该代补丁时元空间已使用大小的增量【字节】
+     */
+    public PatchGeneration(String patchLocation, Collection<String> classNames, Collection<? extends ClassLoader> classLoaders, long metaspaceBytes) {
+        this.patchLocation = patchLocation;
+        this.classCount = classNames.size();
+        this.classNames = Collections.unmodifiableList(new ArrayList<>(classNames));
+        this.liveClassNames = new HashSet<>(classNames);
+        this.classLoaders = new ArrayList<>(classLoaders.size());
+        for (ClassLoader classLoader : classLoaders) {
+            this.classLoaders.add(new WeakReference<>(classLoader));
+        }
+        this.classLoaderRefs = Collections.emptyMap();
+        this.metaspaceBytes = metaspaceBytes;
+    }
+
+    /**
+     * 新建一个 PatchGeneration 对象，并记录每个类所在的类加载器，注册后可以通过 {@link PatchGenerationRegistry#getClassLoader(String)} 查找
+     * @param patchLocation 补丁的位置
+     * @param classLoaderMap 该代补丁每个类所在的类加载器【key=类名,value=类加载器】
+     * @param metaspaceBytes 加载该代补丁时元空间已使用大小的增量【字节】
+     */
+    public PatchGeneration(String patchLocation, Map<String, ? extends ClassLoader> classLoaderMap, long metaspaceBytes) {
+        this.patchLocation = patchLocation;
+        this.classCount = classLoaderMap.size();
+        this.classNames = Collections.unmodifiableList(new ArrayList<>(classLoaderMap.keySet()));
+        this.liveClassNames = new HashSet<>(classLoaderMap.keySet());
+        this.classLoaders = new ArrayList<>();
+        this.classLoaderRefs = new HashMap<>(classLoaderMap.size());
+        Map<ClassLoader,WeakReference<ClassLoader>> references=new IdentityHashMap<>();
+        for (Map.Entry<String, ? extends ClassLoader> entry : classLoaderMap.entrySet()) {
+            WeakReference<ClassLoader> reference = references.computeIfAbsent(entry.getValue(), WeakReference::new);
+            classLoaderRefs.put(entry.getKey(), reference);
+        }
+        this.classLoaders.addAll(references.values());
+        this.metaspaceBytes = metaspaceBytes;
+    }
+
+    Set<String> getLiveClassNames() {
+        return liveClassNames;
+    }
+
+    Map<String, WeakReference<ClassLoader>> getClassLoaderRefs() {
+        return classLoaderRefs;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * 之后的补丁 generation 热修复了该代补丁的类，所有类都被热修复后该代补丁被取代
+     * @param generation 之后的补丁
+     * @param classNames generation 加载的类名
+     * @return 是否因此被取代
+     */
+    boolean supersede(PatchGeneration generation, Collection<String> classNames){
+        if(isSuperseded()) return false;
+        liveClassNames.removeAll(classNames);
+        if(!liveClassNames.isEmpty()) return false;
+        supersededTime=System.currentTimeMillis();
+        supersededCollectionCount=GarbageCollectorHelper.getCollectionCount();
+        supersededBy=generation.getId();
+        return true;
+    }
+
+    /**
+     * 该代补丁的类加载器是否还有可达的
+     */
+    public boolean isReachable(){
+        for (WeakReference<ClassLoader> classLoader : classLoaders) {
+            if(classLoader.get()!=null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取 该代补丁还没有被回收的类加载器
+     */
+    public List<ClassLoader> getReachableClassLoaders(){
+        List<ClassLoader> reachableClassLoaders=new ArrayList<>(classLoaders.size());
+        for (WeakReference<ClassLoader> classLoader : classLoaders) {
+            ClassLoader reachableClassLoader = classLoader.get();
+            if(reachableClassLoader!=null) reachableClassLoaders.add(reachableClassLoader);
+        }
+        return reachableClassLoaders;
+    }
+
+    /**
+     * 是否已经被之后的补丁取代
+     */
+    public boolean isSuperseded(){
+        return supersededBy!=0;
+    }
+
+    /**
+     * 是否疑似泄漏：已经被取代，且被取代后至少经过了一次GC，类加载器仍然可达
+     * <p>刚被取代时还没有发生过GC，这时可达不能说明有泄漏；无法读取GC次数时，改为被取代后超过 {@link #LEAK_GRACE_MILLIS} 仍然可达</p>
+     */
+    public boolean isLeakSuspected(){
+        return isSuperseded() && isCollectedSinceSuperseded() && isReachable();
+    }
+
+    /**
+     * 被取代后是否已经发生过GC
+     */
+    private boolean isCollectedSinceSuperseded(){
+        long collectionCount = GarbageCollectorHelper.getCollectionCount();
+        if(supersededCollectionCount<0 || collectionCount<0){
+            return System.currentTimeMillis()-supersededTime>=LEAK_GRACE_MILLIS;
+        }
+        return collectionCount>supersededCollectionCount;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPatchLocation() {
+        return patchLocation;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Map<String, List<String>> getGeneratedClassNames() {
+        return generatedClassNames;
+    }
+
+    public void setGeneratedClassNames(Map<String, List<String>> generatedClassNames) {
+        this.generatedClassNames = generatedClassNames;
+    }
+
+    public List<String> getReplacedBeanNames() {
+        return replacedBeanNames;
+    }
+
+    public void setReplacedBeanNames(List<String> replacedBeanNames) {
+        this.replacedBeanNames = replacedBeanNames;
+    }
+
+    public int getClassLoaderCount() {
+        return classLoaders.size();
+    }
+
+    public long getMetaspaceBytes() {
+        return metaspaceBytes;
+    }
+
+    public long getSupersededBy() {
+        return supersededBy;
+    }
+
+    public long getSupersededTime() {
+        return supersededTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PatchGeneration{" +
+                "id=" + id +
+                ", patchLocation='" + patchLocation + '\'' +
+                ", contentHash='" + contentHash + '\'' +
+                ", classCount=" + classCount +
+                ", classLoaderCount=" + getClassLoaderCount() +
+                ", metaspaceBytes=" + metaspaceBytes +
+                ", supersededBy=" + supersededBy +
+                ", reachable=" + isReachable() +
+                '}';
+    }
+}
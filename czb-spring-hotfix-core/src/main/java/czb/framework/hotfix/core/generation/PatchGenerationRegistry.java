@@ -0,0 +1,165 @@
+package czb.framework.hotfix.core.generation;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.helper.MetaspaceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * 补丁代的注册表
+ * <p>每次热修复生效时注册一代补丁，记录它的类加载器、类数量以及估算的元空间占用；之后的补丁热修复了它的所有类后，它就被取代了。
+ * 类加载器都已经被回收的补丁代会从注册表中移除，只记录数量。</p>
+ * <p>每个类当前生效的类加载器以写时复制的不可修改 Map 发布，请求线程通过 {@link #getClassLoader(String)} 查找时不需要加锁，
+ * 新的补丁代注册时复制一份修改后再整体替换。</p>
+ * <p>被取代后仍然可达的补丁代会被标记为疑似泄漏，元空间剩余空间低于配置的下限时拒绝加载新的补丁，
+ * 见 {@link #checkMetaspaceHeadroom(long)}。</p>
+ * @author chenzhuobin
+ */
+public class PatchGenerationRegistry {
+
+    private Logger log= LoggerFactory.getLogger(PatchGenerationRegistry.class);
+
+    /**
+     * 还没有被回收的补丁代，按代号排列
+     */
+    private final List<PatchGeneration> generations=new ArrayList<>();
+
+    /**
+     * 每个类当前生效的类加载器【key=类名,value=类加载器的弱引用】，只读，注册新的补丁代时整体替换
+     */
+    private volatile Map<String,WeakReference<ClassLoader>> effectiveClassLoaders=Collections.emptyMap();
+
+    /**
+     * 最后分配的代号
+     */
+    private long lastId;
+
+    /**
+     * 已经被回收的补丁代的数量
+     */
+    private long collectedCount;
+
+    /**
+     * 注册新的一代补丁，并标记被它取代的补丁代
+     * @param generation 新的一代补丁
+     */
+    public synchronized void register(PatchGeneration generation){
+        generation.setId(++lastId);
+        Set<String> classNames = new HashSet<>(generation.getLiveClassNames());
+        for (PatchGeneration oldGeneration : generations) {
+            if(oldGeneration.supersede(generation, classNames) && log.isDebugEnabled()){
+                log.debug("patch generation [{}] is superseded by generation [{}]",oldGeneration.getId(),generation.getId());
+            }
+        }
+        generations.add(generation);
+        if(!generation.getClassLoaderRefs().isEmpty()){
+            Map<String,WeakReference<ClassLoader>> newEffectiveClassLoaders=new HashMap<>(effectiveClassLoaders);
+            newEffectiveClassLoaders.putAll(generation.getClassLoaderRefs());
+            effectiveClassLoaders=Collections.unmodifiableMap(newEffectiveClassLoaders);
+        }
+        removeCollected();
+        if(log.isWarnEnabled()){
+            for (PatchGeneration oldGeneration : generations) {
+                //取代后经过了GC仍然可达
+                if(oldGeneration.isLeakSuspected()){
+                    log.warn("patch generation [{}] of patch [{}] is still reachable after superseded by generation [{}] , {} classes and about {} KB metaspace can not be released",
+                            oldGeneration.getId(),oldGeneration.getPatchLocation(),oldGeneration.getSupersededBy(),oldGeneration.getClassCount(),oldGeneration.getMetaspaceBytes()/1024);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取 类 className 当前生效的热修复类加载器，不加锁
+     * @param className 类名
+     * @return 最近一次热修复了该类的补丁代中该类所在的类加载器，没有热修复过或者已经被回收时返回null
+     */
+    public ClassLoader getClassLoader(String className){
+        WeakReference<ClassLoader> reference = effectiveClassLoaders.get(className);
+        return reference==null?null:reference.get();
+    }
+
+    /**
+     * 获取 还没有被回收的补丁代
+     */
+    public synchronized List<PatchGeneration> getGenerations(){
+        removeCollected();
+        return new ArrayList<>(generations);
+    }
+
+    /**
+     * 获取 疑似泄漏的补丁代：已经被取代，且被取代后经过了GC类加载器仍然可达，见 {@link PatchGeneration#isLeakSuspected()}
+     */
+    public synchronized List<PatchGeneration> getLeakSuspectedGenerations(){
+        removeCollected();
+        List<PatchGeneration> leakSuspectedGenerations=new ArrayList<>();
+        for (PatchGeneration generation : generations) {
+            if(generation.isLeakSuspected()) leakSuspectedGenerations.add(generation);
+        }
+        return leakSuspectedGenerations;
+    }
+
+    /**
+     * 获取 已经被取代的补丁代中还没有被回收的类加载器，框架缓存中由它们加载的类都已经过时，见 {@link czb.framework.hotfix.core.scrub.StaleCacheScrubber}
+     */
+    public synchronized Set<ClassLoader> getSupersededClassLoaders(){
+        removeCollected();
+        Set<ClassLoader> supersededClassLoaders=Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PatchGeneration generation : generations) {
+            if(generation.isSuperseded()) supersededClassLoaders.addAll(generation.getReachableClassLoaders());
+        }
+        return supersededClassLoaders;
+    }
+
+    /**
+     * 获取 还没有被回收的补丁代估算占用的元空间大小【字节】
+     */
+    public synchronized long getRetainedMetaspaceBytes(){
+        removeCollected();
+        long retainedMetaspaceBytes=0;
+        for (PatchGeneration generation : generations) {
+            retainedMetaspaceBytes+=generation.getMetaspaceBytes();
+        }
+        return retainedMetaspaceBytes;
+    }
+
+    /**
+     * 获取 已经被回收的补丁代的数量
+     */
+    public synchronized long getCollectedCount(){
+        removeCollected();
+        return collectedCount;
+    }
+
+    /**
+     * 检查元空间剩余空间，低于 minHeadroomBytes 时抛出 {@link HotFixException} 拒绝加载新的补丁
+     * @param minHeadroomBytes 元空间剩余空间的下限【字节】，小于等于0时不检查
+     */
+    public void checkMetaspaceHeadroom(long minHeadroomBytes){
+        if(minHeadroomBytes<=0) return;
+        long headroomBytes = MetaspaceHelper.getHeadroomBytes();
+        if(headroomBytes>=minHeadroomBytes) return;
+        List<Long> leakSuspectedIds=new ArrayList<>();
+        for (PatchGeneration generation : getLeakSuspectedGenerations()) {
+            leakSuspectedIds.add(generation.getId());
+        }
+        throw new HotFixException("metaspace headroom "+headroomBytes/1024+" KB is below min-metaspace-headroom "+minHeadroomBytes/1024+
+                " KB , refuse to load patch , leak suspected patch generations "+leakSuspectedIds);
+    }
+
+    /**
+     * 移除类加载器都已经被回收的补丁代
+     */
+    private void removeCollected(){
+        Iterator<PatchGeneration> iterator = generations.iterator();
+        while (iterator.hasNext()){
+            if(!iterator.next().isReachable()){
+                iterator.remove();
+                collectedCount++;
+            }
+        }
+    }
+}
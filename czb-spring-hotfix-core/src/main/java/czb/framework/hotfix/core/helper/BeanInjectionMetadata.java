@@ -0,0 +1,231 @@
+package czb.framework.hotfix.core.helper;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import javax.annotation.Resource;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个类的注入元数据：被 {@link Autowired}、{@link Resource} 修饰的属性和 setter 方法，以及所有可以引用其他 Bean 的属性
+ * <p>包括父类中声明的属性和方法，每个属性/方法的访问器【{@link MethodHandle}】在构建元数据时就已经准备好，所以修改引用时不需要再反射查找和
+ * 调用 setAccessible。</p>
+ * <p>元数据按类缓存在软引用的 {@link ConcurrentReferenceHashMap} 中，多次热修复之间共用。缓存项只被缓存引用，弱引用在每次GC后都会被清除，
+ * 所以使用软引用，只在内存不足时才会被清除；过时的元数据不依赖GC，类加载器被废弃时由 {@link #evict(ClassLoader)} 清除该类加载器加载的类的元数据。</p>
+ * @author chenzhuobin
+ */
+public class BeanInjectionMetadata {
+
+    /**
+     * 类 - 注入元数据 的缓存
+     */
+    private static final Map<Class<?>,BeanInjectionMetadata> CACHE=new ConcurrentReferenceHashMap<>(256, ConcurrentReferenceHashMap.ReferenceType.SOFT);
+
+    private static final MethodHandles.Lookup LOOKUP=MethodHandles.lookup();
+
+    /**
+     * 被 {@link Autowired}、{@link Resource} 修饰的属性和 setter 方法
+     */
+    private final List<InjectedElement> injectedElements;
+
+    /**
+     * 所有非静态、非基本类型的属性
+     */
+    private final List<InjectedElement> referenceFields;
+
+    private BeanInjectionMetadata(List<InjectedElement> injectedElements, List<InjectedElement> referenceFields) {
+        this.injectedElements = Collections.unmodifiableList(injectedElements);
+        this.referenceFields = Collections.unmodifiableList(referenceFields);
+    }
+
+    /**
+     * 获取 cls 的注入元数据，第一次获取时构建
+     * @param cls 类
+     */
+    public static BeanInjectionMetadata forClass(Class<?> cls){
+        return CACHE.computeIfAbsent(cls, BeanInjectionMetadata::build);
+    }
+
+    /**
+     * 清除 classLoader 加载的类的注入元数据
+     * @param classLoader 被废弃的类加载器
+     */
+    public static void evict(ClassLoader classLoader){
+        if(classLoader==null) return;
+        CACHE.keySet().removeIf(cls -> cls.getClassLoader()==classLoader);
+    }
+
+    /**
+     * 获取 被 {@link Autowired}、{@link Resource} 修饰的属性和 setter 方法，子类的在前
+     */
+    public List<InjectedElement> getInjectedElements() {
+        return injectedElements;
+    }
+
+    /**
+     * 获取 所有非静态、非基本类型的属性，子类的在前
+     */
+    public List<InjectedElement> getReferenceFields() {
+        return referenceFields;
+    }
+
+    private static BeanInjectionMetadata build(Class<?> cls){
+        List<InjectedElement> injectedElements=new ArrayList<>();
+        List<InjectedElement> referenceFields=new ArrayList<>();
+        Class<?> current=cls;
+        while (current!=null && current!=Object.class){
+            for (Field field : current.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive() || field.isSynthetic()) continue;
+                InjectedElement element = InjectedElement.ofField(field);
+                if(element==null) continue;
+                referenceFields.add(element);
+                if(isInjected(field.getAnnotation(Autowired.class),field.getAnnotation(Resource.class))){
+                    injectedElements.add(element);
+                }
+            }
+            for (Method method : current.getDeclaredMethods()) {
+                if(Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getParameterCount()!=1) continue;
+                if(isInjected(method.getAnnotation(Autowired.class),method.getAnnotation(Resource.class))){
+                    InjectedElement element = InjectedElement.ofMethod(method);
+                    if(element!=null) injectedElements.add(element);
+                }
+            }
+            current=current.getSuperclass();
+        }
+        return new BeanInjectionMetadata(injectedElements,referenceFields);
+    }
+
+    private static boolean isInjected(Autowired autowired, Resource resource){
+        return autowired!=null || resource!=null;
+    }
+
+    /**
+     * 一个注入点：属性或者 setter 方法，以及预先准备好的访问器
+     */
+    public static class InjectedElement {
+
+        /**
+         * 属性名，setter 方法为去掉 set 前缀的属性名
+         */
+        private final String name;
+
+        /**
+         * 注入的类型
+         */
+        private final Class<?> type;
+
+        /**
+         * 属性或者方法
+         */
+        private final Member member;
+
+        /**
+         * 读取属性的访问器，setter 方法为null
+         */
+        private final MethodHandle getter;
+
+        /**
+         * 注入的访问器，final 属性为null，此时通过反射修改
+         */
+        private final MethodHandle setter;
+
+        private InjectedElement(String name, Class<?> type, Member member, MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.member = member;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /**
+         * 构建属性的注入点，无法访问【如 JDK 模块内的类】时返回null
+         * @param field 属性
+         */
+        private static InjectedElement ofField(Field field){
+            try {
+                field.setAccessible(true);
+                MethodHandle getter = LOOKUP.unreflectGetter(field);
+                MethodHandle setter = Modifier.isFinal(field.getModifiers()) ? null : LOOKUP.unreflectSetter(field);
+                return new InjectedElement(field.getName(),field.getType(),field,getter,setter);
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 构建 setter 方法的注入点，无法访问时返回null
+         * @param method setter 方法
+         */
+        private static InjectedElement ofMethod(Method method){
+            String name = method.getName();
+            if(name.startsWith("set") && name.length()>3){
+                name=Character.toLowerCase(name.charAt(3))+name.substring(4);
+            }
+            try {
+                method.setAccessible(true);
+                return new InjectedElement(name,method.getParameterTypes()[0],method,null,LOOKUP.unreflect(method));
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 读取 bean 中该属性的值，setter 方法不支持读取，返回null
+         * @param bean 对象
+         */
+        public Object get(Object bean){
+            if(getter==null) return null;
+            try {
+                return getter.invoke(bean);
+            } catch (Throwable e) {
+                throw new HotFixException(" get ["+member+"] value fail ",e);
+            }
+        }
+
+        /**
+         * 将 value 注入到 bean 中
+         * @param bean 对象
+         * @param value 注入的值
+         */
+        public void inject(Object bean, Object value){
+            try {
+                if(setter!=null){
+                    setter.invoke(bean,value);
+                }else{
+                    ((Field) member).set(bean,value);
+                }
+            } catch (Throwable e) {
+                throw new HotFixException(" inject value to ["+member+"] fail ",e);
+            }
+        }
+
+        /**
+         * 是否是属性
+         */
+        public boolean isField(){
+            return member instanceof Field;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Member getMember() {
+            return member;
+        }
+    }
+}
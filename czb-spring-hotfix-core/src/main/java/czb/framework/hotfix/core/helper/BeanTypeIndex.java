@@ -0,0 +1,185 @@
+package czb.framework.hotfix.core.helper;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.util.ClassUtils;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Bean 的类型索引：类名 - Bean名，接口/抽象类名 - 实现类名
+ * <p>根据 {@link DefaultListableBeanFactory} 中的 Bean 定义以及手动注册的单例对象构建，热修复类与原类的类名一样，所以按类名精确查找就能找到
+ * 热修复类对应的原 Bean，不依赖 Bean 的命名规则【自定义 Bean 名、{@code @Bean} 方法名都可以找到】。</p>
+ * <p>索引在第一次使用时构建，Bean 定义或者单例对象的数量变化时重新构建，查找的代价与容器中 Bean 的总数无关。
+ * 每个 Bean 工厂共享一个索引，通过 {@link #of(DefaultListableBeanFactory)} 获取。索引只弱引用 Bean 工厂，不会阻止已经关闭的应用上下文被回收。</p>
+ * @author chenzhuobin
+ */
+public class BeanTypeIndex {
+
+    /**
+     * 每个 Bean 工厂的索引，Bean 工厂被回收后索引也会被回收
+     * <p>{@link WeakHashMap} 的值被强引用，所以索引只能弱引用 Bean 工厂，否则 Bean 工厂永远不会被回收</p>
+     */
+    private static final Map<DefaultListableBeanFactory,BeanTypeIndex> INDEXES=new WeakHashMap<>();
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private final WeakReference<DefaultListableBeanFactory> beanFactory;
+
+    /**
+     * 类名 - Bean名
+     */
+    private Map<String,List<String>> beanNamesByClassName=Collections.emptyMap();
+
+    /**
+     * 接口/抽象类名 - 实现类名
+     */
+    private Map<String,Set<String>> implementations=Collections.emptyMap();
+
+    /**
+     * 构建索引时 Bean 定义的数量
+     */
+    private int indexedBeanDefinitionCount=-1;
+
+    /**
+     * 构建索引时单例对象的数量
+     */
+    private int indexedSingletonCount=-1;
+
+    private BeanTypeIndex(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory = new WeakReference<>(beanFactory);
+    }
+
+    /**
+     * 获取 beanFactory 的类型索引
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public static BeanTypeIndex of(DefaultListableBeanFactory beanFactory){
+        synchronized (INDEXES){
+            return INDEXES.computeIfAbsent(beanFactory,BeanTypeIndex::new);
+        }
+    }
+
+    /**
+     * 获取 类 cls 对应的 Bean 名，按类名精确匹配，没有时返回null
+     * <p>同一个类有多个 Bean 时，优先返回 primary 的 Bean，否则返回第一个注册的 Bean</p>
+     * @param cls 类，可以是热修复类
+     */
+    public String getBeanName(Class<?> cls){
+        List<String> beanNames = getBeanNames(cls);
+        if(beanNames.isEmpty()) return null;
+        DefaultListableBeanFactory beanFactory = this.beanFactory.get();
+        if(beanNames.size()>1 && beanFactory!=null){
+            for (String beanName : beanNames) {
+                if(beanFactory.containsBeanDefinition(beanName) && beanFactory.getMergedBeanDefinition(beanName).isPrimary()){
+                    return beanName;
+                }
+            }
+        }
+        return beanNames.get(0);
+    }
+
+    /**
+     * 获取 类 cls 对应的所有 Bean 名，按类名精确匹配
+     * @param cls 类，可以是热修复类
+     */
+    public synchronized List<String> getBeanNames(Class<?> cls){
+        refreshIfNecessary();
+        return beanNamesByClassName.getOrDefault(cls.getName(),Collections.emptyList());
+    }
+
+    /**
+     * 获取 接口/抽象类 typeName 在容器中的实现类名
+     * @param typeName 接口/抽象类名
+     */
+    public synchronized Set<String> getImplementations(String typeName){
+        refreshIfNecessary();
+        return implementations.getOrDefault(typeName,Collections.emptySet());
+    }
+
+    /**
+     * 构建 classes 的 接口/父类名 - 实现类名 索引，接口/抽象类自身不作为实现类
+     * @param classes 类，例如补丁中的热修复类
+     */
+    public static Map<String,Set<String>> indexImplementations(Collection<Class<?>> classes){
+        Map<String,Set<String>> index=new HashMap<>();
+        for (Class<?> cls : classes) {
+            if(cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) continue;
+            for (Class<?> superType : ClassUtils.getAllInterfacesForClassAsSet(cls)) {
+                index.computeIfAbsent(superType.getName(),k->new LinkedHashSet<>()).add(cls.getName());
+            }
+            for (Class<?> superClass = cls.getSuperclass(); superClass!=null && superClass!=Object.class; superClass=superClass.getSuperclass()) {
+                index.computeIfAbsent(superClass.getName(),k->new LinkedHashSet<>()).add(cls.getName());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Bean 定义或者单例对象的数量变化时重新构建索引
+     */
+    private void refreshIfNecessary(){
+        DefaultListableBeanFactory beanFactory = this.beanFactory.get();
+        //Bean 工厂已经被回收，保留最后一次的索引
+        if(beanFactory==null) return;
+        int beanDefinitionCount = beanFactory.getBeanDefinitionCount();
+        int singletonCount = beanFactory.getSingletonCount();
+        if(beanDefinitionCount==indexedBeanDefinitionCount && singletonCount==indexedSingletonCount) return;
+        Map<String,List<String>> newBeanNamesByClassName=new HashMap<>();
+        Map<String,Class<?>> beanClasses=new LinkedHashMap<>();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            for (Class<?> beanClass : getBeanClasses(beanFactory,beanName)) {
+                addBeanName(newBeanNamesByClassName,beanClass.getName(),beanName);
+                beanClasses.putIfAbsent(beanClass.getName(),beanClass);
+            }
+        }
+        for (String beanName : beanFactory.getSingletonNames()) {
+            if(beanFactory.containsBeanDefinition(beanName)) continue;
+            Class<?> beanClass = AopUtils.getTargetClass(beanFactory.getSingleton(beanName));
+            addBeanName(newBeanNamesByClassName,beanClass.getName(),beanName);
+            beanClasses.putIfAbsent(beanClass.getName(),beanClass);
+        }
+        beanNamesByClassName=newBeanNamesByClassName;
+        implementations=indexImplementations(beanClasses.values());
+        indexedBeanDefinitionCount=beanDefinitionCount;
+        indexedSingletonCount=singletonCount;
+    }
+
+    /**
+     * 获取 beanName 的类：Bean 定义中解析出的目标类，以及已经创建的单例对象的目标类【被代理时取被代理的类】
+     * @param beanFactory 当前应用上下文的Bean工厂
+     * @param beanName Bean名
+     */
+    private Set<Class<?>> getBeanClasses(DefaultListableBeanFactory beanFactory, String beanName){
+        Set<Class<?>> beanClasses=new LinkedHashSet<>();
+        try {
+            BeanDefinition beanDefinition = beanFactory.getMergedBeanDefinition(beanName);
+            if(beanDefinition.isAbstract()) return beanClasses;
+            if(beanDefinition instanceof RootBeanDefinition){
+                Class<?> targetType = ((RootBeanDefinition) beanDefinition).getTargetType();
+                if(targetType!=null) beanClasses.add(ClassUtils.getUserClass(targetType));
+            }
+            Object singleton = beanFactory.containsSingleton(beanName)?beanFactory.getSingleton(beanName):null;
+            if(singleton!=null){
+                beanClasses.add(AopUtils.getTargetClass(singleton));
+            }else if(beanClasses.isEmpty()){
+                Class<?> type = beanFactory.getType(beanName, false);
+                if(type!=null) beanClasses.add(ClassUtils.getUserClass(type));
+            }
+        } catch (NoSuchBeanDefinitionException e) {
+            //构建索引的过程中 Bean 定义被删除了，忽略
+        }
+        return beanClasses;
+    }
+
+    private void addBeanName(Map<String,List<String>> beanNamesByClassName, String className, String beanName){
+        List<String> beanNames = beanNamesByClassName.computeIfAbsent(className, k -> new ArrayList<>(1));
+        if(!beanNames.contains(beanName)) beanNames.add(beanName);
+    }
+}
@@ -0,0 +1,199 @@
+package czb.framework.hotfix.core.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.*;
+
+/**
+ * Bean 的反向依赖索引：Bean名 - 注入了该 Bean 的 Bean 对象及其属性
+ * <p>根据 Bean 工厂记录的依赖关系【{@link DefaultListableBeanFactory#getDependentBeans(String)}】找出依赖方，再比较依赖方属性的值
+ * 是否就是该 Bean 对象【属性来自 {@link BeanInjectionMetadata} 的缓存】，所以构造器注入、setter 注入、父类的属性都能找到。索引按 Bean 名在第一次使用时构建，
+ * 之后由 {@link #markApplied(Map)} 随热修复增量更新，所以找出依赖方的代价只与依赖方的数量有关，与容器中 Bean 的总数无关。</p>
+ * <p>热修复过的 Bean 名，当前对象是最后一次生效的热修复 Bean 对象，而不是 Bean 工厂中注册的原单例对象。</p>
+ * @author chenzhuobin
+ */
+public class DependentBeanIndex {
+
+    private Logger log= LoggerFactory.getLogger(DependentBeanIndex.class);
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private final DefaultListableBeanFactory beanFactory;
+
+    /**
+     * 已经构建的索引【key=Bean名,value=注入了该 Bean 的属性】
+     */
+    private final Map<String,List<InjectionPoint>> injectionPoints=new HashMap<>();
+
+    /**
+     * 热修复过的 Bean 名的当前对象【key=Bean名,value=最后一次生效的热修复 Bean 对象】
+     */
+    private final Map<String,Object> currentBeans=new HashMap<>();
+
+    /**
+     * 新建一个 DependentBeanIndex 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public DependentBeanIndex(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * 找出注入了 beanName 当前对象的所有属性，规划成引用 newBean，但不会修改它们
+     * @param beanName 被热修复的原 Bean 名
+     * @param newBean 热修复 Bean 对象
+     * @return 待执行的属性引用，属性类型不能接收 newBean 的会被忽略
+     */
+    public synchronized List<RefNewBeanHelper.FieldRef> planRefNewBean(String beanName, Object newBean){
+        List<RefNewBeanHelper.FieldRef> fieldRefs=new ArrayList<>();
+        for (InjectionPoint injectionPoint : getInjectionPoints(beanName)) {
+            if(!injectionPoint.element.getType().isInstance(newBean)){
+                if(log.isWarnEnabled()){
+                    log.warn(" can not ref new bean [{}] to field [{}] of bean [{}] ,cause type mismatch",beanName,injectionPoint.element.getMember(),injectionPoint.dependentBeanName);
+                }
+                continue;
+            }
+            fieldRefs.add(new RefNewBeanHelper.FieldRef(injectionPoint.dependentBeanName,injectionPoint.dependentBean,injectionPoint.element,beanName,newBean));
+        }
+        return fieldRefs;
+    }
+
+    /**
+     * 找出 newBean 中还引用着已经被热修复过的原单例对象的属性，规划成引用其当前对象，但不会修改它们
+     * <p>newBean 由 Bean 工厂填充属性时，注入的是 Bean 工厂中注册的原单例对象，而不是之前已经生效的热修复 Bean 对象</p>
+     * @param beanName 被热修复的原 Bean 名
+     * @param newBean 热修复 Bean 对象
+     */
+    public synchronized List<RefNewBeanHelper.FieldRef> planRefCurrentBeans(String beanName, Object newBean){
+        List<RefNewBeanHelper.FieldRef> fieldRefs=new ArrayList<>();
+        Object newTarget = getTarget(newBean);
+        for (String dependencyBeanName : beanFactory.getDependenciesForBean(beanName)) {
+            Object currentBean = currentBeans.get(dependencyBeanName);
+            if(currentBean==null) continue;
+            List<InjectionPoint> points=new ArrayList<>();
+            addInjectionPoints(points,beanName,newTarget,beanFactory.getSingleton(dependencyBeanName));
+            for (InjectionPoint point : points) {
+                if(point.element.getType().isInstance(currentBean)){
+                    fieldRefs.add(new RefNewBeanHelper.FieldRef(beanName,newTarget,point.element,dependencyBeanName,currentBean));
+                }
+            }
+        }
+        return fieldRefs;
+    }
+
+    /**
+     * 热修复生效后更新索引：Bean 名的当前对象改成热修复 Bean 对象，热修复 Bean 对象代替原来的对象作为它所依赖的 Bean 的依赖方
+     * @param appliedBeans 已经生效的热修复 Bean 对象【key=被热修复的原 Bean 名,value=热修复 Bean 对象】
+     */
+    public synchronized void markApplied(Map<String,Object> appliedBeans){
+        Map<String,Object> oldTargets=new HashMap<>();
+        //先更新所有当前对象，同一次热修复的 Bean 之间的依赖才能正确索引
+        for (Map.Entry<String, Object> entry : appliedBeans.entrySet()) {
+            oldTargets.put(entry.getKey(),getTarget(getCurrentBean(entry.getKey())));
+            currentBeans.put(entry.getKey(),entry.getValue());
+        }
+        for (Map.Entry<String, Object> entry : appliedBeans.entrySet()) {
+            String beanName = entry.getKey();
+            Object oldTarget = oldTargets.get(beanName);
+            Object newTarget = getTarget(entry.getValue());
+            for (String dependencyBeanName : beanFactory.getDependenciesForBean(beanName)) {
+                List<InjectionPoint> points = injectionPoints.get(dependencyBeanName);
+                if(points==null) continue;
+                points.removeIf(point -> point.dependentBean==oldTarget);
+                addInjectionPoints(points,beanName,newTarget,getCurrentBean(dependencyBeanName));
+            }
+        }
+    }
+
+    /**
+     * 获取 beanName 的当前对象：热修复过的是最后一次生效的热修复 Bean 对象，否则是 Bean 工厂中的单例对象
+     * @param beanName Bean名
+     */
+    public synchronized Object getCurrentBean(String beanName){
+        Object currentBean = currentBeans.get(beanName);
+        return currentBean!=null?currentBean:beanFactory.getSingleton(beanName);
+    }
+
+    /**
+     * 获取 注入了 beanName 当前对象的属性，第一次使用时构建
+     * @param beanName Bean名
+     */
+    private List<InjectionPoint> getInjectionPoints(String beanName){
+        List<InjectionPoint> points = injectionPoints.get(beanName);
+        if(points!=null) return points;
+        points=new ArrayList<>();
+        Object bean = getCurrentBean(beanName);
+        if(bean!=null){
+            for (String dependentBeanName : beanFactory.getDependentBeans(beanName)) {
+                Object dependentBean = getCurrentBean(dependentBeanName);
+                if(dependentBean==null) continue;
+                addInjectionPoints(points,dependentBeanName,getTarget(dependentBean),bean);
+            }
+        }
+        injectionPoints.put(beanName,points);
+        return points;
+    }
+
+    /**
+     * 找出 dependentBean 中值为 bean 的属性，加入到 points 中
+     * @param points 注入点集合
+     * @param dependentBeanName 依赖方的 Bean 名
+     * @param dependentBean 依赖方【已经去掉 AOP 代理】
+     * @param bean 被依赖的 Bean 对象
+     */
+    private void addInjectionPoints(List<InjectionPoint> points, String dependentBeanName, Object dependentBean, Object bean){
+        if(dependentBean==null || bean==null) return;
+        for (BeanInjectionMetadata.InjectedElement element : BeanInjectionMetadata.forClass(dependentBean.getClass()).getReferenceFields()) {
+            if(!element.getType().isInstance(bean)) continue;
+            try {
+                if(element.get(dependentBean)==bean){
+                    points.add(new InjectionPoint(dependentBeanName,dependentBean,element));
+                }
+            } catch (RuntimeException e) {
+                if(log.isDebugEnabled()){
+                    log.debug(" can not access field [{}] of bean [{}]",element.getMember(),dependentBeanName,e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 去掉 AOP 代理，获取真正持有属性的目标对象；目标对象不是固定的【如原型、池化】时返回代理对象本身
+     * @param bean Bean对象
+     */
+    private Object getTarget(Object bean){
+        if(!(bean instanceof Advised) || !AopUtils.isAopProxy(bean)) return bean;
+        TargetSource targetSource = ((Advised) bean).getTargetSource();
+        if(!targetSource.isStatic()) return bean;
+        try {
+            Object target = targetSource.getTarget();
+            return target==null?bean:getTarget(target);
+        } catch (Exception e) {
+            return bean;
+        }
+    }
+
+    /**
+     * 注入点：依赖方及其注入了被依赖 Bean 的属性
+     */
+    private static class InjectionPoint {
+
+        private final String dependentBeanName;
+
+        private final Object dependentBean;
+
+        private final BeanInjectionMetadata.InjectedElement element;
+
+        private InjectionPoint(String dependentBeanName, Object dependentBean, BeanInjectionMetadata.InjectedElement element) {
+            this.dependentBeanName = dependentBeanName;
+            this.dependentBean = dependentBean;
+            this.element = element;
+        }
+    }
+}
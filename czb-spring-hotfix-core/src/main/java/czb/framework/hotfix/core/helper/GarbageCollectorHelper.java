@@ -0,0 +1,28 @@
+package czb.framework.hotfix.core.helper;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * GC 次数
+ * <p>通过 {@link GarbageCollectorMXBean} 读取，累加所有收集器的次数，用来判断某个时刻之后是否发生过GC</p>
+ * @author chenzhuobin
+ */
+public class GarbageCollectorHelper {
+
+    private GarbageCollectorHelper() {
+    }
+
+    /**
+     * 获取 JVM 启动以来所有收集器的GC总次数，没有收集器提供次数时返回-1
+     */
+    public static long getCollectionCount(){
+        long collectionCount=-1;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long count = garbageCollector.getCollectionCount();
+            if(count<0) continue;
+            collectionCount=Math.max(collectionCount,0)+count;
+        }
+        return collectionCount;
+    }
+}
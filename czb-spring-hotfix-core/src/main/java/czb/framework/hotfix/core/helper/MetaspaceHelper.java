@@ -0,0 +1,50 @@
+package czb.framework.hotfix.core.helper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+
+/**
+ * 元空间使用情况
+ * <p>通过名称为 Metaspace 的 {@link MemoryPoolMXBean} 读取，没有该内存池的 JVM【如 JDK 7】已使用大小返回0；
+ * 剩余空间同时考虑 Metaspace 和 Compressed Class Space 两个内存池的上限，取较小者。</p>
+ * @author chenzhuobin
+ */
+public class MetaspaceHelper {
+
+    private static final String METASPACE_POOL_NAME="Metaspace";
+
+    private static final String COMPRESSED_CLASS_SPACE_POOL_NAME="Compressed Class Space";
+
+    private MetaspaceHelper() {
+    }
+
+    /**
+     * 获取 元空间已使用的大小【字节】
+     */
+    public static long getUsedBytes(){
+        MemoryPoolMXBean metaspacePool = getMetaspacePool();
+        return metaspacePool==null?0:metaspacePool.getUsage().getUsed();
+    }
+
+    /**
+     * 获取 元空间剩余可用的大小【字节】，没有设置上限时返回 {@link Long#MAX_VALUE}
+     */
+    public static long getHeadroomBytes(){
+        long headroom=Long.MAX_VALUE;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(!METASPACE_POOL_NAME.equals(memoryPool.getName()) && !COMPRESSED_CLASS_SPACE_POOL_NAME.equals(memoryPool.getName())) continue;
+            MemoryUsage usage = memoryPool.getUsage();
+            if(usage.getMax()<0) continue;
+            headroom=Math.min(headroom,Math.max(0,usage.getMax()-usage.getUsed()));
+        }
+        return headroom;
+    }
+
+    private static MemoryPoolMXBean getMetaspacePool(){
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(METASPACE_POOL_NAME.equals(memoryPool.getName())) return memoryPool;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,146 @@
+package czb.framework.hotfix.core.helper;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 热修复补丁内容摘要的帮助类，用于增量热修复
+ * <p>分别记录了两种摘要：</p>
+ * <ol>
+ *  <li>上一次成功热修复的类/mapper.xml 的摘要</li>
+ *  <li>应用程序 classpath 上原类/原资源的摘要，classpath 不会变化，所以只计算一次</li>
+ * </ol>
+ * <p>补丁中的类/mapper.xml 如果与上一次热修复的内容一致，或者从没有热修复过且与 classpath 上的原内容一致，就不需要再热修复。</p>
+ * @author chenzhuobin
+ */
+public class PatchDigestHelper {
+
+    /**
+     * classpath 上不存在该资源时的摘要
+     */
+    private static final String ABSENT_DIGEST="";
+
+    private static final char[] HEX_CHARS="0123456789abcdef".toCharArray();
+
+    /**
+     * 应用程序原来的类加载器
+     */
+    private final ClassLoader baseClassLoader;
+
+    /**
+     * 上一次成功热修复的摘要【key=资源路径,value=摘要】
+     */
+    private final Map<String,String> appliedDigests=new ConcurrentHashMap<>();
+
+    /**
+     * classpath 上原资源的摘要【key=资源路径,value=摘要】
+     */
+    private final Map<String,String> baseDigests=new ConcurrentHashMap<>();
+
+    /**
+     * 新建一个 PatchDigestHelper 对象
+     * @param baseClassLoader 应用程序原来的类加载器
+     */
+    public PatchDigestHelper(ClassLoader baseClassLoader) {
+        this.baseClassLoader = baseClassLoader;
+    }
+
+    /**
+     * 计算 data 的摘要，不会改变 data 的 position
+     * @param data 数据
+     */
+    public String digest(ByteBuffer data){
+        MessageDigest messageDigest = newMessageDigest();
+        messageDigest.update(data.duplicate());
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * 计算一组资源摘要的整体摘要，用于标识补丁的内容，与资源的顺序无关
+     * @param digests 资源摘要【key=资源路径,value=摘要】
+     */
+    public String digest(Map<String,String> digests){
+        MessageDigest messageDigest = newMessageDigest();
+        for (Map.Entry<String, String> entry : new TreeMap<>(digests).entrySet()) {
+            messageDigest.update((entry.getKey()+"="+entry.getValue()+"\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * 内容是否有变化
+     * @param path 资源路径
+     * @param digest 补丁中该资源的摘要
+     * @return 与上一次热修复的内容不一致，或者从没有热修复过且与 classpath 上的原内容不一致时返回 true
+     */
+    public boolean isChanged(String path, String digest){
+        String appliedDigest = appliedDigests.get(path);
+        if(appliedDigest!=null){
+            return !appliedDigest.equals(digest);
+        }
+        return !digest.equals(getBaseDigest(path));
+    }
+
+    /**
+     * 记录成功热修复的摘要
+     * @param digests 成功热修复的摘要【key=资源路径,value=摘要】
+     */
+    public void markApplied(Map<String,String> digests){
+        appliedDigests.putAll(digests);
+    }
+
+    /**
+     * 获取上一次成功热修复的摘要
+     */
+    public Map<String, String> getAppliedDigests() {
+        return appliedDigests;
+    }
+
+    /**
+     * 获取 classpath 上原资源的摘要，不存在时返回 {@link #ABSENT_DIGEST}
+     * @param path 资源路径
+     */
+    private String getBaseDigest(String path){
+        return baseDigests.computeIfAbsent(path, key -> {
+            InputStream inputStream = baseClassLoader.getResourceAsStream(key);
+            if(inputStream==null) return ABSENT_DIGEST;
+            MessageDigest messageDigest = newMessageDigest();
+            try(InputStream in=inputStream){
+                byte[] buffer=new byte[4096];
+                int byteNumRead;
+                while ((byteNumRead=in.read(buffer))!=-1){
+                    messageDigest.update(buffer,0,byteNumRead);
+                }
+            } catch (IOException e) {
+                throw new HotFixException(" read classpath resource "+key+" fail",e);
+            }
+            return toHex(messageDigest.digest());
+        });
+    }
+
+    private MessageDigest newMessageDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new HotFixException(" SHA-256 digest is not supported",e);
+        }
+    }
+
+    private static String toHex(byte[] bytes){
+        char[] chars=new char[bytes.length*2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i*2]=HEX_CHARS[(bytes[i]>>4) & 0xf];
+            chars[i*2+1]=HEX_CHARS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -4,7 +4,6 @@ import czb.framework.hotfix.core.exception.HotFixException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.StringUtils;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,62 +26,57 @@ public class RefNewBeanHelper {
      * @param toRefBean 要引用的 Bean 对象
      */
     public void refNewBean(String dependentBeanName, Object dependentBean, String toRefBeanName, Object toRefBean) {
-        Class<?> dependentBeanClass = dependentBean.getClass();
-        //找到在 dependentBean 可能引用 toRefBean 的候选 Field 对象
-        Field[] declaredFields = dependentBeanClass.getDeclaredFields();
-        List<Field> candidateFields=new ArrayList<>();
-        for (Field field : declaredFields) {
-            Class<?> declaringClass = field.getType();
-            if(field.getAnnotation(Autowired.class)!=null && declaringClass.isAssignableFrom(toRefBean.getClass())){
-                candidateFields.add(field);
+        FieldRef fieldRef = planRefNewBean(dependentBeanName, dependentBean, toRefBeanName, toRefBean);
+        if(fieldRef!=null) fieldRef.apply();
+    }
+
+    /**
+     * 找到 dependentBean 中用于引用 toRefBean 的 Field 对象，但不会修改它
+     * @param dependentBeanName 依赖的 Bean 名
+     * @param dependentBean 依赖的 Bean 对象
+     * @param toRefBeanName 要引用的 Bean 名 【热修复 Bean 的原 Bean 名】
+     * @param toRefBean 要引用的 Bean 对象
+     * @return 待执行的属性引用；没有可以引用 toRefBean 的 Field 对象时返回null
+     */
+    public FieldRef planRefNewBean(String dependentBeanName, Object dependentBean, String toRefBeanName, Object toRefBean) {
+        //找到在 dependentBean 可能引用 toRefBean 的候选注入点【包括父类的属性和 setter 方法】
+        List<BeanInjectionMetadata.InjectedElement> candidateElements=new ArrayList<>();
+        for (BeanInjectionMetadata.InjectedElement element : BeanInjectionMetadata.forClass(dependentBean.getClass()).getInjectedElements()) {
+            if(element.getType().isAssignableFrom(toRefBean.getClass())){
+                candidateElements.add(element);
             }
         }
-        int candidateFileSize = candidateFields.size();
-        if(candidateFileSize==0) return;
-        //如果候选 Field 对象不只有一个，就加上 toRefBeanName 与 Field 对象名的匹配过滤
-        if(candidateFields.size()!=1){
+        int candidateFileSize = candidateElements.size();
+        if(candidateFileSize==0) return null;
+        BeanInjectionMetadata.InjectedElement suitableElement = null;
+        //如果候选注入点不只有一个，就加上 toRefBeanName 与属性名的匹配过滤
+        if(candidateElements.size()!=1){
             String fieldName = getFieldName(toRefBean.getClass().getSimpleName());
-            Field suitableField = null;
-            for (Field field : candidateFields) {
-                if(field.getName().equals(fieldName)){
-                    suitableField=field;
+            for (BeanInjectionMetadata.InjectedElement element : candidateElements) {
+                if(element.getName().equals(fieldName)){
+                    suitableElement=element;
                     break;
                 }
             }
-            //如果依然没有找到合适的 Field 对象，只能抛出异常。
-            if(suitableField==null){
+            //如果依然没有找到合适的注入点，只能抛出异常。
+            if(suitableElement==null){
                 throw new HotFixException("found more than one candidate field ,"+dependentBeanName+" dependent on "+toRefBeanName);
             }
-            try {
-                suitableField.setAccessible(true);
-                suitableField.set(dependentBean,toRefBean);
-            } catch (IllegalAccessException e) {
-                throw new HotFixException("ref new bean["+toRefBeanName+"] to file["+suitableField.getName()+"] fail in dependentBeanName["+dependentBeanName
-                        +"] ,cause can not access it ",e);
-            }
-        }else{//只有一个候选Field 的情况
-            Field suitableField = candidateFields.get(0);
-            try {
-                suitableField.setAccessible(true);
-                suitableField.set(dependentBean,toRefBean);
-            } catch (IllegalAccessException e) {
-                throw new HotFixException("ref new bean["+toRefBeanName+"] to file["+suitableField.getName()+"] fail in dependentBeanName["+dependentBeanName
-                        +"] ,cause can not access it ",e);
-            }
+        }else{//只有一个候选注入点的情况
+            suitableElement = candidateElements.get(0);
         }
+        return new FieldRef(dependentBeanName,dependentBean,suitableElement,toRefBeanName,toRefBean);
     }
 
     /**
-     * 找出被 {@link Autowired} 注解修饰的 Field对象的类名
+     * 找出被 {@link Autowired} 注解修饰的属性和 setter 方法【包括父类的】所注入的类名
      * @param hotFixObj 热修复对象
      */
     public List<String> findDependentBeanNames(Object hotFixObj){
-        Field[] declaredFields = hotFixObj.getClass().getDeclaredFields();
-        List<String> candidateFieldNames=new ArrayList<>();
-        for (Field field : declaredFields) {
-            if(field.getAnnotation(Autowired.class)!=null){
-                candidateFieldNames.add(field.getType().getName());
-            }
+        List<BeanInjectionMetadata.InjectedElement> injectedElements = BeanInjectionMetadata.forClass(hotFixObj.getClass()).getInjectedElements();
+        List<String> candidateFieldNames=new ArrayList<>(injectedElements.size());
+        for (BeanInjectionMetadata.InjectedElement element : injectedElements) {
+            candidateFieldNames.add(element.getType().getName());
         }
         return candidateFieldNames;
     }
@@ -99,4 +93,40 @@ public class RefNewBeanHelper {
         }
         return uncapitalize;
     }
+
+    /**
+     * 待执行的属性引用：将 dependentBean 的 element 注入点修改成引用 toRefBean
+     */
+    public static class FieldRef {
+
+        private final String dependentBeanName;
+
+        private final Object dependentBean;
+
+        private final BeanInjectionMetadata.InjectedElement element;
+
+        private final String toRefBeanName;
+
+        private final Object toRefBean;
+
+        FieldRef(String dependentBeanName, Object dependentBean, BeanInjectionMetadata.InjectedElement element, String toRefBeanName, Object toRefBean) {
+            this.dependentBeanName = dependentBeanName;
+            this.dependentBean = dependentBean;
+            this.element = element;
+            this.toRefBeanName = toRefBeanName;
+            this.toRefBean = toRefBean;
+        }
+
+        /**
+         * 执行属性引用
+         */
+        public void apply(){
+            try {
+                element.inject(dependentBean,toRefBean);
+            } catch (HotFixException e) {
+                throw new HotFixException("ref new bean["+toRefBeanName+"] to file["+element.getName()+"] fail in dependentBeanName["+dependentBeanName
+                        +"] ,cause can not access it ",e);
+            }
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package czb.framework.hotfix.core.job;
+
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步执行的热修复任务，由 {@link HotFixJobScheduler#submit()} 返回，用于查询执行进度和结果
+ * @author chenzhuobin
+ */
+public class HotFixJob {
+
+    /**
+     * 任务编号，从1开始递增
+     */
+    private final long id;
+
+    /**
+     * 任务状态
+     */
+    private volatile HotFixJobStatus status=HotFixJobStatus.QUEUED;
+
+    /**
+     * 正在执行或者最后执行的阶段，还没开始执行时为null
+     */
+    private volatile HotFixPhase phase;
+
+    /**
+     * 提交时间【毫秒时间戳】
+     */
+    private final long submitTime;
+
+    /**
+     * 开始执行时间【毫秒时间戳】，还没开始执行时为0
+     */
+    private volatile long startTime;
+
+    /**
+     * 结束时间【毫秒时间戳】，还没结束时为0
+     */
+    private volatile long endTime;
+
+    /**
+     * 合并到该任务的请求数，包括创建该任务的请求
+     */
+    private final AtomicInteger requestCount=new AtomicInteger(1);
+
+    /**
+     * 热修复执行报告，开始执行后才有，执行中时只包含已经完成的阶段
+     */
+    private volatile HotFixReport report;
+
+    /**
+     * 失败原因
+     */
+    private volatile String errorMessage;
+
+    private final CompletableFuture<HotFixReport> future=new CompletableFuture<>();
+
+    HotFixJob(long id) {
+        this.id = id;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取 任务结束时完成的 Future，执行失败时以失败原因异常完成
+     * <p>返回的是一个副本，完成或者取消它不会影响任务</p>
+     */
+    public CompletableFuture<HotFixReport> toFuture(){
+        return future.thenApply(report -> report);
+    }
+
+    /**
+     * 任务是否已经结束
+     */
+    public boolean isDone(){
+        return future.isDone();
+    }
+
+    void addRequest(){
+        requestCount.incrementAndGet();
+    }
+
+    void start(){
+        startTime=System.currentTimeMillis();
+        status=HotFixJobStatus.RUNNING;
+    }
+
+    void succeed(HotFixReport report){
+        this.report=report;
+        endTime=System.currentTimeMillis();
+        status=HotFixJobStatus.SUCCEEDED;
+        future.complete(report);
+    }
+
+    void fail(Throwable error){
+        errorMessage=String.valueOf(error.getMessage());
+        endTime=System.currentTimeMillis();
+        status=HotFixJobStatus.FAILED;
+        future.completeExceptionally(error);
+    }
+
+    void setPhase(HotFixPhase phase) {
+        this.phase = phase;
+    }
+
+    void setReport(HotFixReport report) {
+        this.report = report;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public HotFixJobStatus getStatus() {
+        return status;
+    }
+
+    public HotFixPhase getPhase() {
+        return phase;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public HotFixReport getReport() {
+        return report;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "HotFixJob{" +
+                "id=" + id +
+                ", status=" + status +
+                ", phase=" + phase +
+                ", requestCount=" + requestCount +
+                ", errorMessage='" + errorMessage + '\'' +
+                '}';
+    }
+}
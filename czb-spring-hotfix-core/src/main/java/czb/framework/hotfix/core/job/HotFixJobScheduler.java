@@ -0,0 +1,181 @@
+package czb.framework.hotfix.core.job;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.listener.HotFixListener;
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 热修复任务调度器，在专用的后台线程上异步执行热修复，调用方【如 Tomcat 的请求线程】不会被占用
+ * <p>同一时间最多只有一个任务在执行，另外最多有一个任务在排队：执行期间提交的请求都合并到排队的任务中，
+ * 排队的任务在执行中的任务结束之后才开始扫描补丁，所以能看到这些请求提交之前的补丁内容。
+ * 还没开始执行的任务也会合并之后的请求，所以并发的请求不会同时操作 Mybatis 的 Configuration、接口注册信息等。</p>
+ * <p>调度器同时是一个 {@link HotFixListener}，通过执行线程上的回调更新任务正在执行的阶段。</p>
+ * @author chenzhuobin
+ */
+public class HotFixJobScheduler implements HotFixListener {
+
+    private Logger log= LoggerFactory.getLogger(HotFixJobScheduler.class);
+
+    /**
+     * 保留的最近任务数量，用于按编号查询
+     */
+    private static final int MAX_RECENT_JOBS=16;
+
+    /**
+     * 执行一次热修复，如 {@link czb.framework.hotfix.core.HotFix#exec()}
+     */
+    private final Supplier<HotFixReport> task;
+
+    /**
+     * 单线程的执行器，队列只需要容纳一个排队的任务
+     */
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong jobIdGenerator=new AtomicLong();
+
+    /**
+     * 最近的任务【key=任务编号,value=任务】
+     */
+    private final Map<Long,HotFixJob> recentJobs=new LinkedHashMap<Long,HotFixJob>(){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, HotFixJob> eldest) {
+            return size()>MAX_RECENT_JOBS;
+        }
+    };
+
+    /**
+     * 排队中的任务，用于合并请求
+     */
+    private HotFixJob queuedJob;
+
+    /**
+     * 执行中的任务及其执行线程，只处理执行线程上的回调
+     */
+    private volatile HotFixJob runningJob;
+    private volatile Thread runningThread;
+
+    /**
+     * 新建一个任务调度器
+     * @param task 执行一次热修复
+     */
+    public HotFixJobScheduler(Supplier<HotFixReport> task) {
+        this.task = task;
+        this.executor=new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, "hotfix-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //空闲时不保留线程
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交一次热修复请求，立即返回
+     * <p>已经有任务在排队时合并到该任务，返回该任务；否则新建一个任务，执行中的任务结束后开始执行。</p>
+     * @return 执行该请求的任务
+     */
+    public synchronized HotFixJob submit(){
+        if(queuedJob!=null){
+            queuedJob.addRequest();
+            if(log.isInfoEnabled()){
+                log.info(" hotfix request coalesced into queued job {}",queuedJob.getId());
+            }
+            return queuedJob;
+        }
+        HotFixJob job=new HotFixJob(jobIdGenerator.incrementAndGet());
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            throw new HotFixException("hotfix job scheduler has been shut down",e);
+        }
+        queuedJob=job;
+        recentJobs.put(job.getId(),job);
+        return job;
+    }
+
+    private void run(HotFixJob job){
+        synchronized (this){
+            if(queuedJob==job) queuedJob=null;
+        }
+        runningThread=Thread.currentThread();
+        runningJob=job;
+        job.start();
+        try {
+            job.succeed(task.get());
+        } catch (Throwable e) {
+            if(log.isErrorEnabled()){
+                log.error(" hotfix job {} failed",job.getId(),e);
+            }
+            job.fail(e);
+        } finally {
+            runningJob=null;
+            runningThread=null;
+        }
+    }
+
+    /**
+     * 获取 最近的任务
+     * @param id 任务编号
+     * @return 任务，编号不存在或者已经不在最近的任务中时返回null
+     */
+    public synchronized HotFixJob getJob(long id){
+        return recentJobs.get(id);
+    }
+
+    /**
+     * 获取 最近的任务，按提交顺序排列
+     */
+    public synchronized List<HotFixJob> getRecentJobs(){
+        return new ArrayList<>(recentJobs.values());
+    }
+
+    /**
+     * 获取 执行中的任务，没有时返回null
+     */
+    public HotFixJob getRunningJob(){
+        return runningJob;
+    }
+
+    /**
+     * 停止调度器，排队中的任务不再执行，以失败结束；执行中的任务会被中断
+     */
+    public void shutdown(){
+        HotFixJob cancelledJob;
+        synchronized (this){
+            executor.shutdownNow();
+            cancelledJob=queuedJob;
+            queuedJob=null;
+        }
+        if(cancelledJob!=null) cancelledJob.fail(new HotFixException("hotfix job scheduler has been shut down"));
+    }
+
+    @Override
+    public void onPhaseStart(HotFixReport report, HotFixPhase phase) {
+        HotFixJob job = getCurrentJob();
+        if(job==null) return;
+        job.setReport(report);
+        job.setPhase(phase);
+    }
+
+    @Override
+    public void onFailure(HotFixReport report, Throwable error) {
+        HotFixJob job = getCurrentJob();
+        if(job==null) return;
+        job.setReport(report);
+    }
+
+    /**
+     * 获取 当前线程上执行中的任务，直接调用 HotFix 执行热修复时返回null
+     */
+    private HotFixJob getCurrentJob(){
+        return runningThread==Thread.currentThread()?runningJob:null;
+    }
+}
@@ -0,0 +1,28 @@
+package czb.framework.hotfix.core.job;
+
+/**
+ * 热修复任务的状态
+ * @author chenzhuobin
+ */
+public enum HotFixJobStatus {
+
+    /**
+     * 排队中，等待正在执行的任务结束
+     */
+    QUEUED,
+
+    /**
+     * 执行中
+     */
+    RUNNING,
+
+    /**
+     * 执行成功
+     */
+    SUCCEEDED,
+
+    /**
+     * 执行失败，或者还没执行就被取消
+     */
+    FAILED
+}
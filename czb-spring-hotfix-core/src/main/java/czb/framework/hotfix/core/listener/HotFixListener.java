@@ -0,0 +1,43 @@
+package czb.framework.hotfix.core.listener;
+
+import czb.framework.hotfix.core.report.HotFixReport;
+
+/**
+ * 热修复过程的监听器，通过 {@link czb.framework.hotfix.core.HotFix#addListener(HotFixListener)} 注册
+ * <p>在执行热修复的线程上同步回调，实现需要尽快返回；回调抛出的异常只会打印日志，不会影响热修复。</p>
+ * @author chenzhuobin
+ */
+public interface HotFixListener {
+
+    /**
+     * 阶段开始
+     * @param report 热修复执行报告
+     * @param phase 阶段
+     */
+    default void onPhaseStart(HotFixReport report, HotFixPhase phase){
+    }
+
+    /**
+     * 阶段结束，阶段失败时不会回调，而是回调 {@link #onFailure(HotFixReport, Throwable)}
+     * @param report 热修复执行报告
+     * @param phase 阶段
+     * @param costNanos 阶段耗时【纳秒】
+     */
+    default void onPhaseEnd(HotFixReport report, HotFixPhase phase, long costNanos){
+    }
+
+    /**
+     * 热修复生效完成
+     * @param report 热修复执行报告
+     */
+    default void onComplete(HotFixReport report){
+    }
+
+    /**
+     * 热修复准备或者生效失败
+     * @param report 热修复执行报告
+     * @param error 失败原因
+     */
+    default void onFailure(HotFixReport report, Throwable error){
+    }
+}
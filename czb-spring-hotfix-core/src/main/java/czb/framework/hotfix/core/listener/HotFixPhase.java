@@ -0,0 +1,43 @@
+package czb.framework.hotfix.core.listener;
+
+/**
+ * 热修复的阶段
+ * @author chenzhuobin
+ */
+public enum HotFixPhase {
+
+    /**
+     * 扫描补丁：列出补丁中的类，对比摘要找出有变化的类
+     */
+    SCAN,
+
+    /**
+     * 定义类：解析类之间的依赖关系，创建类加载器并定义热修复类
+     */
+    DEFINE,
+
+    /**
+     * 生成热修复Bean对象：实例化、初始化热修复类，解析 Controller 接口信息、Mapper 元数据等
+     */
+    GENERATE,
+
+    /**
+     * 找出需要改成引用热修复Bean对象的依赖属性
+     */
+    REWIRE,
+
+    /**
+     * 生效：覆盖接口注册信息、替换 Mybatis 元数据、修改依赖属性的引用
+     */
+    COMMIT,
+
+    /**
+     * 清理框架缓存中被取代的补丁类
+     */
+    SCRUB,
+
+    /**
+     * 预热生效后的变更
+     */
+    WARM_UP
+}
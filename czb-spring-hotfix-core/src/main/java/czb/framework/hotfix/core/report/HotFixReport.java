@@ -0,0 +1,288 @@
+package czb.framework.hotfix.core.report;
+
+import czb.framework.hotfix.core.listener.HotFixPhase;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次热修复的执行报告
+ * @author chenzhuobin
+ */
+public class HotFixReport {
+
+    /**
+     * 热修复补丁的位置
+     */
+    private String patchLocation;
+
+    /**
+     * 开始时间【毫秒时间戳】
+     */
+    private long startTime;
+
+    /**
+     * 总耗时【毫秒】
+     */
+    private long costTime;
+
+    /**
+     * 准备阶段耗时【毫秒】，包括加载类、实例化和解析，该阶段不会对运行中的应用程序产生影响
+     */
+    private long prepareCostTime;
+
+    /**
+     * 生效阶段耗时【纳秒】，即运行中的应用程序被修改的时间窗口
+     */
+    private long commitCostNanos;
+
+    /**
+     * 清理框架缓存中被取代的补丁类的耗时【纳秒】，见 {@link czb.framework.hotfix.core.scrub.StaleCacheScrubber}，没有需要清理的补丁代时为0
+     */
+    private long scrubCostNanos;
+
+    /**
+     * 预热阶段耗时【纳秒】，见 {@link czb.framework.hotfix.core.strategy.HotFixBeanGenerator#warmUp()}，没有开启预热时为0
+     */
+    private long warmUpCostNanos;
+
+    /**
+     * 正在执行或者最后执行的阶段，失败时即为失败的阶段
+     */
+    private HotFixPhase phase;
+
+    /**
+     * 每个阶段的耗时【纳秒】，只包含已经完成的阶段
+     */
+    private Map<HotFixPhase,Long> phaseCostNanos=new EnumMap<>(HotFixPhase.class);
+
+    /**
+     * 每种生成器准备热修复动作的耗时【key=生成器类型,value=纳秒】，如 mybatis 为解析 mapper.xml 和接口注解到影子 Configuration 的耗时
+     */
+    private Map<String,Long> generateCostNanos=new LinkedHashMap<>();
+
+    /**
+     * 每种生成器在生效阶段提交缓冲变更的耗时【key=生成器类型,value=纳秒】，如 mybatis 为替换运行中 Configuration 元数据的耗时，
+     * controller 为覆盖接口注册信息的耗时
+     */
+    private Map<String,Long> flushCostNanos=new LinkedHashMap<>();
+
+    /**
+     * 生效阶段修改引用的依赖属性数量
+     */
+    private int fieldRefCount;
+
+    /**
+     * 生效阶段修改依赖属性引用的耗时【纳秒】
+     */
+    private long fieldRefCostNanos;
+
+    /**
+     * 扫描补丁时读取的类和 mapper.xml 的字节数
+     */
+    private long patchBytes;
+
+    /**
+     * 定义的热修复类数量
+     */
+    private int definedClassCount;
+
+    /**
+     * 加载热修复类创建的类加载器数量
+     */
+    private int classLoaderCount;
+
+    /**
+     * 加载热修复类前后元空间已使用大小的差值【字节】，是一个估算值
+     */
+    private long loadMetaspaceBytes;
+
+    /**
+     * 本次热修复的类名
+     */
+    private List<String> appliedClassNames=new ArrayList<>();
+
+    /**
+     * 因为没有变化而跳过的类名
+     * <p>与上一次热修复的内容一致，或者与 classpath 上的原类一致</p>
+     */
+    private List<String> skippedClassNames=new ArrayList<>();
+
+    public String getPatchLocation() {
+        return patchLocation;
+    }
+
+    public void setPatchLocation(String patchLocation) {
+        this.patchLocation = patchLocation;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getCostTime() {
+        return costTime;
+    }
+
+    public void setCostTime(long costTime) {
+        this.costTime = costTime;
+    }
+
+    public long getPrepareCostTime() {
+        return prepareCostTime;
+    }
+
+    public void setPrepareCostTime(long prepareCostTime) {
+        this.prepareCostTime = prepareCostTime;
+    }
+
+    public long getCommitCostNanos() {
+        return commitCostNanos;
+    }
+
+    public void setCommitCostNanos(long commitCostNanos) {
+        this.commitCostNanos = commitCostNanos;
+    }
+
+    public long getScrubCostNanos() {
+        return scrubCostNanos;
+    }
+
+    public void setScrubCostNanos(long scrubCostNanos) {
+        this.scrubCostNanos = scrubCostNanos;
+    }
+
+    public long getWarmUpCostNanos() {
+        return warmUpCostNanos;
+    }
+
+    public void setWarmUpCostNanos(long warmUpCostNanos) {
+        this.warmUpCostNanos = warmUpCostNanos;
+    }
+
+    public HotFixPhase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(HotFixPhase phase) {
+        this.phase = phase;
+    }
+
+    public Map<HotFixPhase, Long> getPhaseCostNanos() {
+        return phaseCostNanos;
+    }
+
+    public void setPhaseCostNanos(Map<HotFixPhase, Long> phaseCostNanos) {
+        this.phaseCostNanos = phaseCostNanos;
+    }
+
+    public Map<String, Long> getGenerateCostNanos() {
+        return generateCostNanos;
+    }
+
+    public void setGenerateCostNanos(Map<String, Long> generateCostNanos) {
+        this.generateCostNanos = generateCostNanos;
+    }
+
+    public Map<String, Long> getFlushCostNanos() {
+        return flushCostNanos;
+    }
+
+    public void setFlushCostNanos(Map<String, Long> flushCostNanos) {
+        this.flushCostNanos = flushCostNanos;
+    }
+
+    public int getFieldRefCount() {
+        return fieldRefCount;
+    }
+
+    public void setFieldRefCount(int fieldRefCount) {
+        this.fieldRefCount = fieldRefCount;
+    }
+
+    public long getFieldRefCostNanos() {
+        return fieldRefCostNanos;
+    }
+
+    public void setFieldRefCostNanos(long fieldRefCostNanos) {
+        this.fieldRefCostNanos = fieldRefCostNanos;
+    }
+
+    public long getPatchBytes() {
+        return patchBytes;
+    }
+
+    public void setPatchBytes(long patchBytes) {
+        this.patchBytes = patchBytes;
+    }
+
+    public int getDefinedClassCount() {
+        return definedClassCount;
+    }
+
+    public void setDefinedClassCount(int definedClassCount) {
+        this.definedClassCount = definedClassCount;
+    }
+
+    public int getClassLoaderCount() {
+        return classLoaderCount;
+    }
+
+    public void setClassLoaderCount(int classLoaderCount) {
+        this.classLoaderCount = classLoaderCount;
+    }
+
+    public long getLoadMetaspaceBytes() {
+        return loadMetaspaceBytes;
+    }
+
+    public void setLoadMetaspaceBytes(long loadMetaspaceBytes) {
+        this.loadMetaspaceBytes = loadMetaspaceBytes;
+    }
+
+    public List<String> getAppliedClassNames() {
+        return appliedClassNames;
+    }
+
+    public void setAppliedClassNames(List<String> appliedClassNames) {
+        this.appliedClassNames = appliedClassNames;
+    }
+
+    public List<String> getSkippedClassNames() {
+        return skippedClassNames;
+    }
+
+    public void setSkippedClassNames(List<String> skippedClassNames) {
+        this.skippedClassNames = skippedClassNames;
+    }
+
+    @Override
+    public String toString() {
+        return "HotFixReport{" +
+                "patchLocation='" + patchLocation + '\'' +
+                ", costTime=" + costTime +
+                ", prepareCostTime=" + prepareCostTime +
+                ", commitCostNanos=" + commitCostNanos +
+                ", scrubCostNanos=" + scrubCostNanos +
+                ", warmUpCostNanos=" + warmUpCostNanos +
+                ", phaseCostNanos=" + phaseCostNanos +
+                ", generateCostNanos=" + generateCostNanos +
+                ", flushCostNanos=" + flushCostNanos +
+                ", fieldRefCount=" + fieldRefCount +
+                ", fieldRefCostNanos=" + fieldRefCostNanos +
+                ", patchBytes=" + patchBytes +
+                ", definedClassCount=" + definedClassCount +
+                ", classLoaderCount=" + classLoaderCount +
+                ", loadMetaspaceBytes=" + loadMetaspaceBytes +
+                ", appliedClassNames=" + appliedClassNames +
+                ", skippedClassNames=" + skippedClassNames +
+                '}';
+    }
+}
@@ -0,0 +1,80 @@
+package czb.framework.hotfix.core.scrub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 默认的 StaleCacheScrubber
+ * <p>依次调用应用程序依赖了的框架的清理器，一个清理器失败不影响其他清理器</p>
+ * @author chenzhuobin
+ */
+public class DefaultStaleCacheScrubber implements StaleCacheScrubber {
+
+    private Logger log= LoggerFactory.getLogger(DefaultStaleCacheScrubber.class);
+
+    private final static String SPRING_MVC_MAIN_CLASS="org.springframework.web.servlet.DispatcherServlet";
+
+    private final static String JACKSON_MAIN_CLASS="com.fasterxml.jackson.databind.ObjectMapper";
+
+    private final static String MYBATIS_MAIN_CLASS="org.apache.ibatis.session.Configuration";
+
+    /**
+     * StaleCacheScrubber 集合
+     */
+    private List<StaleCacheScrubber> staleCacheScrubbers=new ArrayList<>();
+
+    /**
+     * 新建一个只按类/类加载器清理的 DefaultStaleCacheScrubber 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public DefaultStaleCacheScrubber(DefaultListableBeanFactory beanFactory) {
+        this(beanFactory,false);
+    }
+
+    /**
+     * 新建一个 DefaultStaleCacheScrubber 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     * @param scrubGlobalCaches 是否整体清空没有按类移除方法的全局缓存，见 {@link SpringStaleCacheScrubber}
+     */
+    public DefaultStaleCacheScrubber(DefaultListableBeanFactory beanFactory, boolean scrubGlobalCaches) {
+        loadStaleCacheScrubbers(beanFactory,scrubGlobalCaches);
+    }
+
+    @Override
+    public void scrub(Set<ClassLoader> staleClassLoaders) {
+        for (StaleCacheScrubber staleCacheScrubber : staleCacheScrubbers) {
+            try {
+                staleCacheScrubber.scrub(staleClassLoaders);
+            } catch (RuntimeException e) {
+                if(log.isWarnEnabled()){
+                    log.warn("scrub stale caches by {} fail",staleCacheScrubber.getClass().getName(),e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 加载应用程序依赖了的框架的清理器
+     * @param beanFactory 当前应用上下文的Bean工厂
+     * @param scrubGlobalCaches 是否整体清空没有按类移除方法的全局缓存
+     */
+    private void loadStaleCacheScrubbers(DefaultListableBeanFactory beanFactory, boolean scrubGlobalCaches){
+        ClassLoader classLoader = getClass().getClassLoader();
+        staleCacheScrubbers.add(new SpringStaleCacheScrubber(scrubGlobalCaches));
+        if(ClassUtils.isPresent(SPRING_MVC_MAIN_CLASS, classLoader)){
+            staleCacheScrubbers.add(new WebMvcStaleCacheScrubber(beanFactory));
+        }
+        if(ClassUtils.isPresent(JACKSON_MAIN_CLASS, classLoader)){
+            staleCacheScrubbers.add(new JacksonStaleCacheScrubber(beanFactory));
+        }
+        if(ClassUtils.isPresent(MYBATIS_MAIN_CLASS, classLoader)){
+            staleCacheScrubbers.add(new MybatisStaleCacheScrubber(beanFactory));
+        }
+    }
+}
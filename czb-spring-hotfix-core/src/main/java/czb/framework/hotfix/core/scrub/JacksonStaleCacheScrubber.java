@@ -0,0 +1,111 @@
+package czb.framework.hotfix.core.scrub;
+
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.DeserializerCache;
+import com.fasterxml.jackson.databind.ser.SerializerCache;
+import com.fasterxml.jackson.databind.ser.impl.ReadOnlyClassToSerializerMap;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.LRUMap;
+import com.fasterxml.jackson.databind.util.TypeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Jackson {@link ObjectMapper} 的类型、序列化器、反序列化器缓存的清理器
+ * <p>热修复的 Controller 返回/接收补丁中的 DTO 后，ObjectMapper 会缓存这些类的 JavaType 以及序列化器/反序列化器。
+ * 所有缓存都只按类型【包括泛型参数、元素类型】移除过时的缓存项，其他类型的缓存不受影响，不会让所有请求重新构建序列化器。</p>
+ * @author chenzhuobin
+ */
+public class JacksonStaleCacheScrubber implements StaleCacheScrubber {
+
+    private Logger log= LoggerFactory.getLogger(JacksonStaleCacheScrubber.class);
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private DefaultListableBeanFactory beanFactory;
+
+    /**
+     * 新建一个 JacksonStaleCacheScrubber 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public JacksonStaleCacheScrubber(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void scrub(Set<ClassLoader> staleClassLoaders) {
+        for (ObjectMapper objectMapper : beanFactory.getBeansOfType(ObjectMapper.class, false, false).values()) {
+            int removedCount=scrubTypeCache(objectMapper.getTypeFactory(), staleClassLoaders);
+            removedCount+=scrubSerializers(objectMapper.getSerializerProvider(), staleClassLoaders);
+            DeserializationContext deserializationContext = objectMapper.getDeserializationContext();
+            DeserializerCache deserializerCache = StaleCaches.getCache(DeserializationContext.class, "_cache", deserializationContext);
+            if(deserializerCache!=null){
+                LRUMap<JavaType,?> cachedDeserializers = StaleCaches.getCache(DeserializerCache.class, "_cachedDeserializers", deserializerCache);
+                removedCount+=StaleCaches.removeStaleKeys(getMap(cachedDeserializers), type -> isStale(type, staleClassLoaders));
+            }
+            Map<JavaType,?> rootDeserializers = StaleCaches.getCache(ObjectMapper.class, "_rootDeserializers", objectMapper);
+            removedCount+=StaleCaches.removeStaleKeys(rootDeserializers, type -> isStale(type, staleClassLoaders));
+            if(log.isDebugEnabled()){
+                log.debug("scrub {} stale types, serializers and deserializers of {}",removedCount,objectMapper);
+            }
+        }
+    }
+
+    /**
+     * 移除 TypeFactory 中解析结果是过时类型的缓存项，缓存的键可能是类也可能是类与泛型参数的组合，所以按值判断
+     * @param typeFactory 类型工厂
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private int scrubTypeCache(TypeFactory typeFactory, Set<ClassLoader> staleClassLoaders){
+        LRUMap<Object,JavaType> typeCache = StaleCaches.getCache(TypeFactory.class, "_typeCache", typeFactory);
+        return StaleCaches.removeStaleValues(getMap(typeCache), type -> isStale(type, staleClassLoaders));
+    }
+
+    /**
+     * 移除 SerializerCache 中过时类型的序列化器
+     * <p>SerializerCache 的共享缓存是在 SerializerCache 对象上加锁的 HashMap，移除后还需要丢弃只读的快照，
+     * 之后创建的 SerializerProvider 会重新生成快照。</p>
+     * @param serializerProvider ObjectMapper 的 SerializerProvider 蓝本
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private int scrubSerializers(SerializerProvider serializerProvider, Set<ClassLoader> staleClassLoaders){
+        SerializerCache serializerCache = StaleCaches.getCache(SerializerProvider.class, "_serializerCache", serializerProvider);
+        if(serializerCache==null) return 0;
+        Map<TypeKey,?> sharedMap = StaleCaches.getCache(SerializerCache.class, "_sharedMap", serializerCache);
+        AtomicReference<ReadOnlyClassToSerializerMap> readOnlyMap = StaleCaches.getCache(SerializerCache.class, "_readOnlyMap", serializerCache);
+        if(sharedMap==null || readOnlyMap==null) return 0;
+        synchronized (serializerCache){
+            int size = sharedMap.size();
+            sharedMap.keySet().removeIf(key -> StaleCaches.isStale(key.getRawType(), staleClassLoaders)
+                    || (key.getType()!=null && isStale(key.getType(), staleClassLoaders)));
+            if(size!=sharedMap.size()) readOnlyMap.set(null);
+            return size-sharedMap.size();
+        }
+    }
+
+    private static <K,V> Map<K,V> getMap(LRUMap<K,V> lruMap){
+        return lruMap==null ? null : StaleCaches.getCache(LRUMap.class, "_map", lruMap);
+    }
+
+    /**
+     * type 或者它的泛型参数、元素类型是否由 staleClassLoaders 加载
+     * @param type Jackson 类型，如 List&lt;UserVO&gt;
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private static boolean isStale(JavaType type, Set<ClassLoader> staleClassLoaders){
+        if(StaleCaches.isStale(type.getRawClass(), staleClassLoaders)) return true;
+        for (int i = 0; i < type.containedTypeCount(); i++) {
+            if(isStale(type.containedType(i), staleClassLoaders)) return true;
+        }
+        return type.getContentType()!=null && isStale(type.getContentType(), staleClassLoaders);
+    }
+}
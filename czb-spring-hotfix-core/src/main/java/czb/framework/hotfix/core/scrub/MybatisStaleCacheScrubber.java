@@ -0,0 +1,69 @@
+package czb.framework.hotfix.core.scrub;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mybatis 反射信息缓存的清理器
+ * <p>Mybatis 按类缓存 {@link org.apache.ibatis.reflection.Reflector}【参数、结果对象的属性和 getter/setter】，
+ * Mybatis-Plus 还按类缓存了实体类的属性以及表信息，热修复的实体类、VO 被使用过后就会一直被这些缓存引用。</p>
+ * @author chenzhuobin
+ */
+public class MybatisStaleCacheScrubber implements StaleCacheScrubber {
+
+    private Logger log= LoggerFactory.getLogger(MybatisStaleCacheScrubber.class);
+
+    private final static String MYBATIS_PLUS_REFLECTION_KIT="com.baomidou.mybatisplus.core.toolkit.ReflectionKit";
+
+    private final static String MYBATIS_PLUS_TABLE_INFO_HELPER="com.baomidou.mybatisplus.core.metadata.TableInfoHelper";
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private DefaultListableBeanFactory beanFactory;
+
+    /**
+     * Mybatis-Plus 按类缓存的静态属性【ReflectionKit 的属性缓存、TableInfoHelper 的表信息缓存】，没有依赖 Mybatis-Plus 时为空
+     */
+    private final List<Map<Class<?>,?>> mybatisPlusCaches=new ArrayList<>();
+
+    /**
+     * 新建一个 MybatisStaleCacheScrubber 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public MybatisStaleCacheScrubber(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+        ClassLoader classLoader = getClass().getClassLoader();
+        if(ClassUtils.isPresent(MYBATIS_PLUS_REFLECTION_KIT, classLoader) && ClassUtils.isPresent(MYBATIS_PLUS_TABLE_INFO_HELPER, classLoader)){
+            mybatisPlusCaches.add(StaleCaches.getCache(ClassUtils.resolveClassName(MYBATIS_PLUS_REFLECTION_KIT, classLoader), "CLASS_FIELD_CACHE", null));
+            mybatisPlusCaches.add(StaleCaches.getCache(ClassUtils.resolveClassName(MYBATIS_PLUS_TABLE_INFO_HELPER, classLoader), "TABLE_INFO_CACHE", null));
+        }
+    }
+
+    @Override
+    public void scrub(Set<ClassLoader> staleClassLoaders) {
+        int removedCount=0;
+        for (SqlSessionFactory sqlSessionFactory : beanFactory.getBeansOfType(SqlSessionFactory.class, false, false).values()) {
+            ReflectorFactory reflectorFactory = sqlSessionFactory.getConfiguration().getReflectorFactory();
+            if(!(reflectorFactory instanceof DefaultReflectorFactory)) continue;
+            Map<Class<?>,?> reflectorMap = StaleCaches.getCache(DefaultReflectorFactory.class, "reflectorMap", reflectorFactory);
+            removedCount+=StaleCaches.removeStaleClassKeys(reflectorMap, staleClassLoaders);
+        }
+        for (Map<Class<?>, ?> mybatisPlusCache : mybatisPlusCaches) {
+            removedCount+=StaleCaches.removeStaleClassKeys(mybatisPlusCache, staleClassLoaders);
+        }
+        if(log.isDebugEnabled()){
+            log.debug("scrub {} stale entries from mybatis reflection caches",removedCount);
+        }
+    }
+}
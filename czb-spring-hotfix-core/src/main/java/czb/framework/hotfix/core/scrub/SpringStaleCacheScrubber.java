@@ -0,0 +1,193 @@
+package czb.framework.hotfix.core.scrub;
+
+import org.springframework.beans.CachedIntrospectionResults;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spring 的反射、注解、类型解析以及 JavaBean 内省缓存的清理器
+ * <p>{@link ReflectionUtils} 的方法/属性缓存、{@link ResolvableType} 及其包装类型代理的缓存按类移除，{@link CachedIntrospectionResults} 按类加载器清理，
+ * 它内省过的过时类同时从 JDK {@link Introspector} 的 BeanInfo 缓存中移除。这些缓存大多是软引用的，System.gc() 不会清理软引用，不移除时被取代的类加载器会一直存活到内存不足。</p>
+ * <p>{@link AnnotationUtils} 的缓存以及不是由 Spring 内省的 BeanInfo 没有按类移除的方法，只有开启了全局清理时才整体清空。
+ * 整体清空会让整个应用程序重新构建这些缓存，所以默认关闭。</p>
+ * @author chenzhuobin
+ */
+public class SpringStaleCacheScrubber implements StaleCacheScrubber {
+
+    private static final String[] REFLECTION_UTILS_CACHE_NAMES={"declaredMethodsCache","declaredFieldsCache"};
+
+    private static final String[] INTROSPECTION_CACHE_NAMES={"strongClassCache","softClassCache"};
+
+    /**
+     * 包装属性、方法参数类型的工具类，不是public的，它的缓存中的代理通过 TypeProvider 引用着属性、方法参数
+     */
+    private static final String SERIALIZABLE_TYPE_WRAPPER="org.springframework.core.SerializableTypeWrapper";
+
+    /**
+     * ResolvableType 中的类型，可能是 SerializableTypeWrapper 包装类型的代理
+     */
+    private static final String TYPE_FIELD_NAME="type";
+
+    /**
+     * ResolvableType 中解析类型变量的 VariableResolver，它的 getSource 返回所有者类型
+     */
+    private static final String VARIABLE_RESOLVER_FIELD_NAME="variableResolver";
+
+    /**
+     * SerializableTypeWrapper 的代理以及 TypeProvider 中上一级的 TypeProvider
+     */
+    private static final String TYPE_PROVIDER_FIELD_NAME="provider";
+
+    private static final String TYPE_PROVIDER_SOURCE_METHOD_NAME="getSource";
+
+    /**
+     * 沿着所有者类型、TypeProvider 向上判断的最大层数，防止自引用的泛型类型死循环
+     */
+    private static final int MAX_DEPTH=8;
+
+    /**
+     * 是否整体清空没有按类移除方法的全局缓存
+     */
+    private final boolean scrubGlobalCaches;
+
+    /**
+     * 新建一个只按类/类加载器清理的 SpringStaleCacheScrubber 对象
+     */
+    public SpringStaleCacheScrubber() {
+        this(false);
+    }
+
+    /**
+     * 新建一个 SpringStaleCacheScrubber 对象
+     * @param scrubGlobalCaches 是否整体清空没有按类移除方法的全局缓存
+     */
+    public SpringStaleCacheScrubber(boolean scrubGlobalCaches) {
+        this.scrubGlobalCaches = scrubGlobalCaches;
+    }
+
+    @Override
+    public void scrub(Set<ClassLoader> staleClassLoaders) {
+        for (String cacheName : REFLECTION_UTILS_CACHE_NAMES) {
+            Map<Class<?>,?> cache = StaleCaches.getCache(ReflectionUtils.class, cacheName, null);
+            StaleCaches.removeStaleClassKeys(cache, staleClassLoaders);
+        }
+        //不同代补丁中相等的类型共用同一个包装代理，先移除代理，否则 ResolvableType 重新解析时还会拿到过时的代理
+        Map<Type,Type> typeProxyCache = StaleCaches.getCache(ClassUtils.resolveClassName(SERIALIZABLE_TYPE_WRAPPER, ResolvableType.class.getClassLoader()), "cache", null);
+        StaleCaches.removeStaleValues(typeProxyCache, typeProxy -> isStaleSource(typeProxy, staleClassLoaders));
+        Map<ResolvableType,?> resolvableTypeCache = StaleCaches.getCache(ResolvableType.class, "cache", null);
+        StaleCaches.removeStaleKeys(resolvableTypeCache, type -> isStale(type, staleClassLoaders));
+        scrubIntrospectionResults(staleClassLoaders);
+        if(scrubGlobalCaches){
+            AnnotationUtils.clearCache();
+            Introspector.flushCaches();
+        }
+    }
+
+    /**
+     * 按类加载器清理 {@link CachedIntrospectionResults}，Spring 内省时 JDK 的 {@link Introspector} 也会缓存 BeanInfo，BeanInfo 强引用着类，
+     * 所以先把缓存中的过时类及其父类从 Introspector 中移除
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private void scrubIntrospectionResults(Set<ClassLoader> staleClassLoaders){
+        Set<Class<?>> staleClasses=new HashSet<>();
+        for (String cacheName : INTROSPECTION_CACHE_NAMES) {
+            Map<Class<?>,?> cache = StaleCaches.getCache(CachedIntrospectionResults.class, cacheName, null);
+            if(cache==null) continue;
+            for (Class<?> cls : cache.keySet()) {
+                if(StaleCaches.isStale(cls, staleClassLoaders)) staleClasses.add(cls);
+            }
+        }
+        for (Class<?> staleClass : staleClasses) {
+            for (Class<?> cls = staleClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+                Introspector.flushFromCaches(cls);
+            }
+        }
+        for (ClassLoader staleClassLoader : staleClassLoaders) {
+            CachedIntrospectionResults.clearClassLoader(staleClassLoader);
+        }
+    }
+
+    /**
+     * 解析的类、泛型参数的类、来源【属性、方法参数】的声明类或者解析类型变量的所有者类型是否由 staleClassLoaders 加载
+     * <p>方法返回值、属性的泛型参数【如 Class&lt;?&gt; 中的 ?】本身解析不到补丁类，但它们通过所有者类型或者包装类型的代理引用着补丁类，
+     * 而且不同代补丁的 ? 是相等的，不移除时会一直留着第一次缓存它的那一代，所以沿着所有者类型、代理的来源向上判断。</p>
+     * @param type 类型
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private boolean isStale(ResolvableType type, Set<ClassLoader> staleClassLoaders){
+        for (int depth = 0; type != null && depth < MAX_DEPTH; depth++) {
+            if(StaleCaches.isStale(type.resolve(), staleClassLoaders)) return true;
+            //getType() 返回的是去掉代理后的类型，所以直接读取 type 属性
+            if(isStaleSource(type.getSource(), staleClassLoaders) || isStaleSource(getField(type, TYPE_FIELD_NAME), staleClassLoaders)) return true;
+            if(type.getType() instanceof ParameterizedType){
+                //不能用 getGenerics()，它会把泛型参数的 ResolvableType 重新放入正在清理的缓存
+                for (Type typeArgument : ((ParameterizedType) type.getType()).getActualTypeArguments()) {
+                    if(typeArgument instanceof Class && StaleCaches.isStale((Class<?>) typeArgument, staleClassLoaders)) return true;
+                }
+            }
+            type = getOwner(type);
+        }
+        return false;
+    }
+
+    /**
+     * 类型的来源是否是过时的属性、方法参数，来源是 SerializableTypeWrapper 包装类型的代理时沿着它的 TypeProvider 向上判断
+     * @param source 类型的来源
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    private boolean isStaleSource(Object source, Set<ClassLoader> staleClassLoaders){
+        Object typeProvider = source instanceof Proxy ? getField(Proxy.getInvocationHandler(source), TYPE_PROVIDER_FIELD_NAME) : null;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            if(source instanceof Member) return StaleCaches.isStale(((Member) source).getDeclaringClass(), staleClassLoaders);
+            if(source instanceof MethodParameter) return StaleCaches.isStale(((MethodParameter) source).getContainingClass(), staleClassLoaders);
+            if(typeProvider==null) return false;
+            source = invoke(typeProvider, TYPE_PROVIDER_SOURCE_METHOD_NAME);
+            typeProvider = getField(typeProvider, TYPE_PROVIDER_FIELD_NAME);
+        }
+        return false;
+    }
+
+    /**
+     * 获取解析 type 中类型变量所用的所有者类型，没有时返回null
+     * @param type 类型
+     */
+    private ResolvableType getOwner(ResolvableType type){
+        Object variableResolver = getField(type, VARIABLE_RESOLVER_FIELD_NAME);
+        Object owner = variableResolver==null ? null : invoke(variableResolver, TYPE_PROVIDER_SOURCE_METHOD_NAME);
+        return owner instanceof ResolvableType ? (ResolvableType) owner : null;
+    }
+
+    /**
+     * 反射获取 target 中名为 fieldName 的属性值，没有时返回null
+     */
+    private static Object getField(Object target, String fieldName){
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if(field==null) return null;
+        ReflectionUtils.makeAccessible(field);
+        return ReflectionUtils.getField(field, target);
+    }
+
+    /**
+     * 反射调用 target 中名为 methodName 的无参方法，没有时返回null
+     */
+    private static Object invoke(Object target, String methodName){
+        Method method = ReflectionUtils.findMethod(target.getClass(), methodName);
+        if(method==null) return null;
+        ReflectionUtils.makeAccessible(method);
+        return ReflectionUtils.invokeMethod(method, target);
+    }
+}
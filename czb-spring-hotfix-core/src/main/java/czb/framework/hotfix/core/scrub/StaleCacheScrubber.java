@@ -0,0 +1,19 @@
+package czb.framework.hotfix.core.scrub;
+
+import java.util.Set;
+
+/**
+ * 框架缓存清理器
+ * <p>热修复生效后调用，移除框架缓存中以被取代的补丁类为键的缓存项。这些缓存会一直引用被取代的补丁类，
+ * 使补丁的类加载器和它加载的所有类都无法被回收，每次热修复都会让元空间增长一点。</p>
+ * @author chenzhuobin
+ */
+public interface StaleCacheScrubber {
+
+    /**
+     * 移除缓存中由 staleClassLoaders 加载的类的缓存项
+     * <p>只在 staleClassLoaders 不为空时调用，清理失败时只打印日志，不能影响已经生效的热修复。</p>
+     * @param staleClassLoaders 被取代的补丁代的类加载器【按引用比较】
+     */
+    void scrub(Set<ClassLoader> staleClassLoaders);
+}
@@ -0,0 +1,107 @@
+package czb.framework.hotfix.core.scrub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * 清理缓存的工具方法
+ * @author chenzhuobin
+ */
+final class StaleCaches {
+
+    private static Logger log= LoggerFactory.getLogger(StaleCaches.class);
+
+    private StaleCaches() {
+    }
+
+    /**
+     * cls 是否由 staleClassLoaders 加载，数组取其元素类型
+     * @param cls 类
+     * @param staleClassLoaders 被取代的补丁代的类加载器
+     */
+    static boolean isStale(Class<?> cls, Set<ClassLoader> staleClassLoaders){
+        if(cls==null) return false;
+        while (cls.isArray()){
+            cls=cls.getComponentType();
+        }
+        return staleClassLoaders.contains(cls.getClassLoader());
+    }
+
+    /**
+     * 移除 cache 中过时的缓存项
+     * @param cache 缓存，不是 {@link ConcurrentMap} 时在 cache 上加锁
+     * @param isStaleKey 键是否过时
+     * @return 移除的缓存项数量
+     */
+    static <K> int removeStaleKeys(Map<K,?> cache, Predicate<? super K> isStaleKey){
+        if(cache==null || cache.isEmpty()) return 0;
+        if(cache instanceof ConcurrentMap){
+            return doRemoveStaleKeys(cache, isStaleKey);
+        }
+        synchronized (cache){
+            return doRemoveStaleKeys(cache, isStaleKey);
+        }
+    }
+
+    private static <K> int doRemoveStaleKeys(Map<K,?> cache, Predicate<? super K> isStaleKey){
+        int size = cache.size();
+        cache.keySet().removeIf(isStaleKey);
+        return size-cache.size();
+    }
+
+    /**
+     * 移除 cache 中值过时的缓存项
+     * @param cache 缓存，不是 {@link ConcurrentMap} 时在 cache 上加锁
+     * @param isStaleValue 值是否过时
+     * @return 移除的缓存项数量
+     */
+    static <V> int removeStaleValues(Map<?,V> cache, Predicate<? super V> isStaleValue){
+        if(cache==null || cache.isEmpty()) return 0;
+        if(cache instanceof ConcurrentMap){
+            return doRemoveStaleValues(cache, isStaleValue);
+        }
+        synchronized (cache){
+            return doRemoveStaleValues(cache, isStaleValue);
+        }
+    }
+
+    private static <V> int doRemoveStaleValues(Map<?,V> cache, Predicate<? super V> isStaleValue){
+        int size = cache.size();
+        cache.values().removeIf(isStaleValue);
+        return size-cache.size();
+    }
+
+    /**
+     * 移除 cache 中键是由 staleClassLoaders 加载的类的缓存项
+     * @see #removeStaleKeys(Map, Predicate)
+     */
+    static int removeStaleClassKeys(Map<Class<?>,?> cache, Set<ClassLoader> staleClassLoaders){
+        return removeStaleKeys(cache, cls -> isStale(cls, staleClassLoaders));
+    }
+
+    /**
+     * 反射获取 declaringClass 中名为 fieldName 的缓存属性，获取不到时打印日志并返回null
+     * @param declaringClass 声明属性的类
+     * @param fieldName 属性名
+     * @param target 对象，静态属性为null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T getCache(Class<?> declaringClass, String fieldName, Object target){
+        try {
+            Field field = declaringClass.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return (T) field.get(target);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            if(log.isWarnEnabled()){
+                log.warn("no found cache '{}' of {} ,so skip scrub it",fieldName,declaringClass.getName(),e);
+            }
+            return null;
+        }
+    }
+}
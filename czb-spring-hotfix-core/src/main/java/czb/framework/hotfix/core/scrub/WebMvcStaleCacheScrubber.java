@@ -0,0 +1,76 @@
+package czb.framework.hotfix.core.scrub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.handler.HandlerExceptionResolverComposite;
+import org.springframework.web.servlet.mvc.method.annotation.ExceptionHandlerExceptionResolver;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spring MVC 按 Controller 类缓存的方法解析结果的清理器
+ * <p>{@link RequestMappingHandlerAdapter} 按 Controller 类缓存了 @InitBinder、@ModelAttribute 方法以及 @SessionAttributes 的处理器，
+ * {@link ExceptionHandlerExceptionResolver} 按 Controller 类缓存了 @ExceptionHandler 方法，热修复的 Controller 处理过请求后
+ * 就会被缓存，且永远不会移除。</p>
+ * @author chenzhuobin
+ */
+public class WebMvcStaleCacheScrubber implements StaleCacheScrubber {
+
+    private Logger log= LoggerFactory.getLogger(WebMvcStaleCacheScrubber.class);
+
+    private static final String[] HANDLER_ADAPTER_CACHE_NAMES={"initBinderCache","modelAttributeCache","sessionAttributesHandlerCache"};
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private DefaultListableBeanFactory beanFactory;
+
+    /**
+     * 新建一个 WebMvcStaleCacheScrubber 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public WebMvcStaleCacheScrubber(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void scrub(Set<ClassLoader> staleClassLoaders) {
+        int removedCount=0;
+        for (RequestMappingHandlerAdapter handlerAdapter : beanFactory.getBeansOfType(RequestMappingHandlerAdapter.class, false, false).values()) {
+            for (String cacheName : HANDLER_ADAPTER_CACHE_NAMES) {
+                Map<Class<?>,?> cache = StaleCaches.getCache(RequestMappingHandlerAdapter.class, cacheName, handlerAdapter);
+                removedCount+=StaleCaches.removeStaleClassKeys(cache, staleClassLoaders);
+            }
+        }
+        for (ExceptionHandlerExceptionResolver exceptionResolver : getExceptionHandlerExceptionResolvers()) {
+            Map<Class<?>,?> cache = StaleCaches.getCache(ExceptionHandlerExceptionResolver.class, "exceptionHandlerCache", exceptionResolver);
+            removedCount+=StaleCaches.removeStaleClassKeys(cache, staleClassLoaders);
+        }
+        if(log.isDebugEnabled()){
+            log.debug("scrub {} stale entries from spring mvc handler caches",removedCount);
+        }
+    }
+
+    /**
+     * 获取 ExceptionHandlerExceptionResolver，包括 {@link HandlerExceptionResolverComposite} 中组合的
+     * 【Spring MVC 默认配置只把组合后的 HandlerExceptionResolverComposite 注册为 Bean】
+     */
+    private Set<ExceptionHandlerExceptionResolver> getExceptionHandlerExceptionResolvers(){
+        Set<ExceptionHandlerExceptionResolver> exceptionResolvers=Collections.newSetFromMap(new IdentityHashMap<>());
+        exceptionResolvers.addAll(beanFactory.getBeansOfType(ExceptionHandlerExceptionResolver.class, false, false).values());
+        for (HandlerExceptionResolverComposite composite : beanFactory.getBeansOfType(HandlerExceptionResolverComposite.class, false, false).values()) {
+            for (HandlerExceptionResolver exceptionResolver : composite.getExceptionResolvers()) {
+                if(exceptionResolver instanceof ExceptionHandlerExceptionResolver){
+                    exceptionResolvers.add((ExceptionHandlerExceptionResolver) exceptionResolver);
+                }
+            }
+        }
+        return exceptionResolvers;
+    }
+}
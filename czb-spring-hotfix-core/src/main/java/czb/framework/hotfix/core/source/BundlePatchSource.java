@@ -0,0 +1,267 @@
+package czb.framework.hotfix.core.source;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 单文件形式的热修复补丁包【jar/zip】
+ * <p>整个补丁包通过 {@link FileChannel#map} 只读映射到内存，打开时只解析一次 zip 的中央目录作为索引，
+ * 之后读取类数据不再有任何系统调用：</p>
+ * <ol>
+ *  <li>不压缩存放【STORED，如 jar -c0f】的条目直接从映射中切片，不会拷贝到堆内</li>
+ *  <li>压缩存放【DEFLATED】的条目需要解压到堆内</li>
+ * </ol>
+ * <p>补丁包的 META-INF/MANIFEST.MF 作为补丁清单，可以通过 {@link #getManifest()} 读取。</p>
+ * <p>注意实现：不支持 zip64 和加密的补丁包。</p>
+ * @author chenzhuobin
+ */
+public class BundlePatchSource implements PatchSource {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE=0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE=0x02014b50;
+    private static final int LOCAL_FILE_HEADER_SIGNATURE=0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE=22;
+    private static final int LOCAL_FILE_HEADER_SIZE=30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE=46;
+    private static final int METHOD_STORED=0;
+    private static final int METHOD_DEFLATED=8;
+
+    /**
+     * 补丁包文件
+     */
+    private final Path bundleFile;
+
+    /**
+     * 补丁包文件通道
+     */
+    private final FileChannel channel;
+
+    /**
+     * 补丁包的只读内存映射
+     */
+    private final MappedByteBuffer mapped;
+
+    /**
+     * 中央目录索引【key=条目路径,value=条目】
+     */
+    private final Map<String,Entry> entries;
+
+    /**
+     * 补丁包中所有热修复类的类名
+     */
+    private final List<String> classNames;
+
+    /**
+     * 打开补丁包，映射到内存并解析中央目录
+     * @param bundleFile 补丁包文件
+     */
+    public BundlePatchSource(Path bundleFile) {
+        this.bundleFile=bundleFile;
+        try {
+            channel = FileChannel.open(bundleFile, StandardOpenOption.READ);
+            long size = channel.size();
+            if(size>Integer.MAX_VALUE){
+                throw new HotFixException(" patch bundle "+bundleFile+" is too large , size = "+size);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new HotFixException(" open patch bundle "+bundleFile+" fail",e);
+        }
+        entries = readCentralDirectory();
+        List<String> names=new ArrayList<>();
+        for (String path : entries.keySet()) {
+            if(path.endsWith(".class") && !path.startsWith("META-INF/") && !path.endsWith("module-info.class")){
+                names.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+            }
+        }
+        classNames=Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    @Override
+    public ByteBuffer getClassData(String className) {
+        return getResource(className.replace('.', '/') + ".class");
+    }
+
+    @Override
+    public ByteBuffer getResource(String path) {
+        Entry entry = entries.get(path);
+        if(entry==null) return null;
+        int dataOffset = getDataOffset(entry);
+        if(entry.method==METHOD_STORED){
+            return slice(dataOffset, entry.size);
+        }
+        return ByteBuffer.wrap(inflate(entry, slice(dataOffset, entry.compressedSize)));
+    }
+
+    @Override
+    public String getLocation() {
+        return bundleFile.toString();
+    }
+
+    /**
+     * 关闭文件通道，已经映射的内存在没有引用后由 GC 回收
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 获取补丁包的条目数
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * 从映射中切片，返回的 ByteBuffer 与映射共享数据
+     * @param offset 偏移量
+     * @param length 长度
+     */
+    private ByteBuffer slice(int offset, int length){
+        ByteBuffer duplicate = mapped.duplicate();
+        ((Buffer) duplicate).position(offset);
+        ((Buffer) duplicate).limit(offset + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * 解压 DEFLATED 条目
+     * @param entry 条目
+     * @param compressed 压缩数据
+     */
+    private byte[] inflate(Entry entry, ByteBuffer compressed){
+        byte[] input=new byte[compressed.remaining()];
+        compressed.get(input);
+        byte[] output=new byte[entry.size];
+        Inflater inflater=new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int offset=0;
+            while (offset<output.length && !inflater.finished()){
+                int inflated = inflater.inflate(output, offset, output.length - offset);
+                if(inflated==0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                offset+=inflated;
+            }
+            if(offset!=output.length){
+                throw new HotFixException(" inflate entry "+entry.path+" of patch bundle "+bundleFile+" fail , size mismatch");
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new HotFixException(" inflate entry "+entry.path+" of patch bundle "+bundleFile+" fail",e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 根据本地文件头算出条目数据的偏移量
+     * @param entry 条目
+     */
+    private int getDataOffset(Entry entry){
+        int headerOffset = entry.localHeaderOffset;
+        if(mapped.getInt(headerOffset)!=LOCAL_FILE_HEADER_SIGNATURE){
+            throw new HotFixException(" patch bundle "+bundleFile+" is broken , bad local header of entry "+entry.path);
+        }
+        int nameLength = mapped.getShort(headerOffset + 26) & 0xffff;
+        int extraLength = mapped.getShort(headerOffset + 28) & 0xffff;
+        return headerOffset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * 解析中央目录，构建条目索引
+     */
+    private Map<String,Entry> readCentralDirectory(){
+        int eocdOffset = findEndOfCentralDirectory();
+        int entryCount = mapped.getShort(eocdOffset + 10) & 0xffff;
+        long centralDirectoryOffset = mapped.getInt(eocdOffset + 16) & 0xffffffffL;
+        if(entryCount==0xffff || centralDirectoryOffset==0xffffffffL){
+            throw new HotFixException(" zip64 patch bundle is not supported : "+bundleFile);
+        }
+        Map<String,Entry> index=new HashMap<>(entryCount*4/3+1);
+        int offset=(int) centralDirectoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if(mapped.getInt(offset)!=CENTRAL_DIRECTORY_SIGNATURE){
+                throw new HotFixException(" patch bundle "+bundleFile+" is broken , bad central directory header");
+            }
+            int flag = mapped.getShort(offset + 8) & 0xffff;
+            int method = mapped.getShort(offset + 10) & 0xffff;
+            int compressedSize = mapped.getInt(offset + 20);
+            int size = mapped.getInt(offset + 24);
+            int nameLength = mapped.getShort(offset + 28) & 0xffff;
+            int extraLength = mapped.getShort(offset + 30) & 0xffff;
+            int commentLength = mapped.getShort(offset + 32) & 0xffff;
+            int localHeaderOffset = mapped.getInt(offset + 42);
+            byte[] nameBytes=new byte[nameLength];
+            ByteBuffer nameBuffer = slice(offset + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+            nameBuffer.get(nameBytes);
+            String path=new String(nameBytes, StandardCharsets.UTF_8);
+            offset+=CENTRAL_DIRECTORY_HEADER_SIZE+nameLength+extraLength+commentLength;
+            if(path.endsWith("/")) continue;
+            if((flag & 1)!=0){
+                throw new HotFixException(" encrypted entry "+path+" of patch bundle "+bundleFile+" is not supported");
+            }
+            if(method!=METHOD_STORED && method!=METHOD_DEFLATED){
+                throw new HotFixException(" compression method "+method+" of entry "+path+" is not supported");
+            }
+            index.put(path,new Entry(path,method,compressedSize,size,localHeaderOffset));
+        }
+        return index;
+    }
+
+    /**
+     * 从文件末尾往前查找中央目录结束记录
+     */
+    private int findEndOfCentralDirectory(){
+        int limit = mapped.limit();
+        int minOffset = Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_SIZE - 0xffff);
+        for (int offset = limit - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= minOffset; offset--) {
+            if(mapped.getInt(offset)==END_OF_CENTRAL_DIRECTORY_SIGNATURE){
+                return offset;
+            }
+        }
+        throw new HotFixException(" "+bundleFile+" is not a zip/jar patch bundle");
+    }
+
+    /**
+     * 中央目录中的条目
+     */
+    private static class Entry {
+
+        private final String path;
+
+        private final int method;
+
+        private final int compressedSize;
+
+        private final int size;
+
+        private final int localHeaderOffset;
+
+        private Entry(String path, int method, int compressedSize, int size, int localHeaderOffset) {
+            this.path = path;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package czb.framework.hotfix.core.source;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * 读取 {@link ByteBuffer} 的输入流，不会拷贝 ByteBuffer 的数据
+ * @author chenzhuobin
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        if(!buffer.hasRemaining()) return -1;
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if(len==0) return 0;
+        if(!buffer.hasRemaining()) return -1;
+        int readLen = Math.min(len, buffer.remaining());
+        buffer.get(b, off, readLen);
+        return readLen;
+    }
+
+    @Override
+    public long skip(long n) {
+        if(n<=0) return 0;
+        int skipLen = (int) Math.min(n, buffer.remaining());
+        ((Buffer) buffer).position(buffer.position() + skipLen);
+        return skipLen;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,65 @@
+package czb.framework.hotfix.core.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.jar.Manifest;
+
+/**
+ * 增量热修复补丁
+ * <p>只列出需要重新热修复的类：有变化的类，以及它们直接或间接引用的补丁中没有变化的新增类【这些类只存在于上一次热修复的类加载器中，
+ * 必须与引用方一起重新定义】。读取类数据和资源时委托给原补丁。</p>
+ * @author chenzhuobin
+ */
+public class DeltaPatchSource implements PatchSource {
+
+    /**
+     * 原补丁
+     */
+    private final PatchSource delegate;
+
+    /**
+     * 需要重新热修复的类名
+     */
+    private final List<String> changedClassNames;
+
+    /**
+     * 新建一个 DeltaPatchSource 对象
+     * @param delegate 原补丁
+     * @param changedClassNames 需要重新热修复的类名，由调用方补全有变化的类引用的新增类
+     */
+    public DeltaPatchSource(PatchSource delegate, List<String> changedClassNames) {
+        this.delegate = delegate;
+        this.changedClassNames = changedClassNames;
+    }
+
+    @Override
+    public List<String> getClassNames() {
+        return changedClassNames;
+    }
+
+    @Override
+    public ByteBuffer getClassData(String className) {
+        return delegate.getClassData(className);
+    }
+
+    @Override
+    public ByteBuffer getResource(String path) {
+        return delegate.getResource(path);
+    }
+
+    @Override
+    public String getLocation() {
+        return delegate.getLocation();
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+        return delegate.getManifest();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,102 @@
+package czb.framework.hotfix.core.source;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 目录形式的热修复补丁
+ * <p>class文件和资源文件按包名路径存放在根目录下</p>
+ * @author chenzhuobin
+ */
+public class DirectoryPatchSource implements PatchSource {
+
+    /**
+     * 补丁根目录
+     */
+    private final Path root;
+
+    /**
+     * 根目录下所有热修复类的类名
+     */
+    private final List<String> classNames;
+
+    /**
+     * 新建一个 DirectoryPatchSource 对象，并使用 NIO 遍历根目录下所有的class文件
+     * @param root 补丁根目录
+     */
+    public DirectoryPatchSource(Path root) {
+        this.root = root;
+        this.classNames = scanClassNames();
+    }
+
+    @Override
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    @Override
+    public ByteBuffer getClassData(String className) {
+        return getResource(className.replace('.', '/') + ".class");
+    }
+
+    @Override
+    public ByteBuffer getResource(String path) {
+        Path file = root.resolve(path);
+        if(!Files.isRegularFile(file)) return null;
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new HotFixException(" load file "+file+" fail",e);
+        }
+    }
+
+    @Override
+    public String getLocation() {
+        return root.toString();
+    }
+
+    /**
+     * 遍历根目录下所有的class文件，并根据其相对路径得出类名
+     */
+    private List<String> scanClassNames() {
+        List<String> names=new ArrayList<>();
+        if(!Files.isDirectory(root)) return names;
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(attrs.isRegularFile() && file.getFileName().toString().endsWith(".class")){
+                        names.add(getClassName(file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new HotFixException(" scan class file in "+root+" fail",e);
+        }
+        return names;
+    }
+
+    /**
+     * 根据class文件相对根目录的路径得出类名
+     * @param classFile class文件
+     */
+    private String getClassName(Path classFile) {
+        Path relativePath = root.relativize(classFile);
+        if (relativePath.getNameCount()<2) {
+            throw new HotFixException(" please set package name path ! classPathFile = "+classFile);
+        }
+        StringBuilder className=new StringBuilder();
+        for (Path name : relativePath) {
+            if(className.length()>0) className.append('.');
+            className.append(name.toString());
+        }
+        return className.substring(0, className.length() - ".class".length());
+    }
+}
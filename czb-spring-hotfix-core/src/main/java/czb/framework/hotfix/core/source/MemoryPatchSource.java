@@ -0,0 +1,79 @@
+package czb.framework.hotfix.core.source;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * 内存中的热修复补丁
+ * <p>类数据和资源都保存在堆内，不依赖原补丁文件是否还存在，用于把多次热修复生效的内容合并成一个补丁重新加载，
+ * 见 {@link czb.framework.hotfix.core.HotFix#prepareCompaction()}。</p>
+ * @author chenzhuobin
+ */
+public class MemoryPatchSource implements PatchSource {
+
+    private static final String CLASS_SUFFIX=".class";
+
+    /**
+     * 补丁的位置，用于日志输出
+     */
+    private final String location;
+
+    /**
+     * 资源【key=资源路径,value=只读的资源数据】，类数据也按 class 文件路径存放
+     */
+    private final Map<String,ByteBuffer> resources;
+
+    /**
+     * 所有热修复类的类名
+     */
+    private final List<String> classNames;
+
+    /**
+     * 新建一个 MemoryPatchSource 对象
+     * @param location 补丁的位置，用于日志输出
+     * @param resources 资源【key=资源路径,value=资源数据】，不会被拷贝，调用者之后不能再修改
+     */
+    public MemoryPatchSource(String location, Map<String, ByteBuffer> resources) {
+        this.location = location;
+        this.resources = resources;
+        List<String> classNames=new ArrayList<>();
+        for (String path : resources.keySet()) {
+            if(path.endsWith(CLASS_SUFFIX)){
+                classNames.add(path.substring(0,path.length()-CLASS_SUFFIX.length()).replace('/','.'));
+            }
+        }
+        this.classNames = Collections.unmodifiableList(classNames);
+    }
+
+    /**
+     * 把 resource 拷贝到堆内，返回只读的 ByteBuffer，不会改变 resource 的 position
+     * @param resource 资源数据，可以是直接内存或者内存映射的 ByteBuffer
+     */
+    public static ByteBuffer copyOf(ByteBuffer resource){
+        ByteBuffer source = resource.duplicate();
+        byte[] bytes=new byte[source.remaining()];
+        source.get(bytes);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    @Override
+    public ByteBuffer getClassData(String className) {
+        return getResource(className.replace('.', '/') + CLASS_SUFFIX);
+    }
+
+    @Override
+    public ByteBuffer getResource(String path) {
+        ByteBuffer resource = resources.get(path);
+        return resource==null?null:resource.duplicate();
+    }
+
+    @Override
+    public String getLocation() {
+        return location;
+    }
+}
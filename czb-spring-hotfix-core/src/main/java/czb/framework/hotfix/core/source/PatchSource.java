@@ -0,0 +1,74 @@
+package czb.framework.hotfix.core.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.jar.Manifest;
+
+/**
+ * 热修复补丁来源
+ * <p>热修复补丁既可以是 {@link czb.framework.hotfix.core.config.HotFixProperties#getLoadPath()} 下按包名路径存放的目录，
+ * 也可以是打包好的单文件补丁包【jar/zip】。所有读取补丁内容的地方都统一通过该接口读取。</p>
+ * <p>资源路径统一使用 '/' 作为分隔符，且不以 '/' 开头，如：czb/framework/hotfix/demo/mapper/UserMapper.xml</p>
+ * @author chenzhuobin
+ */
+public interface PatchSource extends Closeable {
+
+    /**
+     * 补丁清单文件的路径
+     */
+    String MANIFEST_PATH="META-INF/MANIFEST.MF";
+
+    /**
+     * 获取补丁中所有热修复类的类名
+     */
+    List<String> getClassNames();
+
+    /**
+     * 获取热修复类的类数据
+     * <p>每次调用都返回一个新的 ByteBuffer，position 为0，limit 为类数据的长度，调用者可以随意消费</p>
+     * @param className 类名
+     * @return 类数据，如果补丁中不存在该类，返回 null
+     */
+    ByteBuffer getClassData(String className);
+
+    /**
+     * 获取补丁中的资源，如 mapper.xml,hofix-class-map.properties
+     * @param path 资源路径
+     * @return 资源数据，如果补丁中不存在该资源，返回 null
+     */
+    ByteBuffer getResource(String path);
+
+    /**
+     * 获取补丁的位置，用于日志输出
+     */
+    String getLocation();
+
+    /**
+     * 以流的方式获取补丁中的资源
+     * @param path 资源路径
+     * @return 资源输入流，如果补丁中不存在该资源，返回 null
+     */
+    default InputStream getResourceAsStream(String path){
+        ByteBuffer resource = getResource(path);
+        return resource==null?null:new ByteBufferInputStream(resource);
+    }
+
+    /**
+     * 获取补丁清单 {@link #MANIFEST_PATH}
+     * @return 补丁清单，不存在时返回 null
+     */
+    default Manifest getManifest() throws IOException {
+        InputStream inputStream = getResourceAsStream(MANIFEST_PATH);
+        if(inputStream==null) return null;
+        try(InputStream in=inputStream){
+            return new Manifest(in);
+        }
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,27 @@
+package czb.framework.hotfix.core.source;
+
+import czb.framework.hotfix.core.config.HotFixProperties;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@link PatchSource} 的工厂类
+ * @author chenzhuobin
+ */
+public abstract class PatchSources {
+
+    /**
+     * 根据 {@link HotFixProperties#getLoadPath()} 打开热修复补丁
+     * <p>如果 loadPath 是 jar/zip 文件，返回 {@link BundlePatchSource}；否则返回 {@link DirectoryPatchSource}</p>
+     * @param hotFixProperties 热修复参数配置
+     */
+    public static PatchSource open(HotFixProperties hotFixProperties){
+        Path loadPath = Paths.get(hotFixProperties.getLoadPath());
+        if(hotFixProperties.isBundleLoadPath() && Files.isRegularFile(loadPath)){
+            return new BundlePatchSource(loadPath);
+        }
+        return new DirectoryPatchSource(loadPath);
+    }
+}
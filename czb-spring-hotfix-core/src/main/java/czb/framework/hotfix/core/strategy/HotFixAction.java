@@ -0,0 +1,48 @@
+package czb.framework.hotfix.core.strategy;
+
+/**
+ * 热修复Bean对象生成器准备好的一个热修复动作
+ * <p>由 {@link HotFixBeanGenerator#prepare(Class)} 生成，此时热修复Bean对象已经构建好，但还没有对运行中的应用程序产生任何影响；
+ * 调用 {@link #commit()} 时才会真正生效，所以 {@link #commit()} 应该只做代价很小的引用替换。</p>
+ * @author chenzhuobin
+ */
+public interface HotFixAction {
+
+    /**
+     * 获取 热修复Bean对象
+     * @return 热修复Bean对象;返回null时，跳过对依赖原来Bean对象的Bean更新热修复Bean的操作。
+     */
+    Object getBean();
+
+    /**
+     * 使热修复Bean对象在运行中的应用程序中生效
+     */
+    void commit();
+
+    /**
+     * 新建一个不需要额外生效动作的 HotFixAction
+     * @param bean 热修复Bean对象
+     */
+    static HotFixAction of(Object bean){
+        return of(bean,null);
+    }
+
+    /**
+     * 新建一个 HotFixAction
+     * @param bean 热修复Bean对象
+     * @param commitAction 生效动作，可以为null
+     */
+    static HotFixAction of(Object bean, Runnable commitAction){
+        return new HotFixAction() {
+            @Override
+            public Object getBean() {
+                return bean;
+            }
+
+            @Override
+            public void commit() {
+                if(commitAction!=null) commitAction.run();
+            }
+        };
+    }
+}
@@ -7,15 +7,54 @@ package czb.framework.hotfix.core.strategy;
 public interface HotFixBeanGenerator {
 
     /**
-     * 生成 hotFixBeanClass 的实例
+     * 生成 hotFixBeanClass 的实例，并立即生效
      * @param hotFixBeanClass 热修复Bean类
      * @return hotFixBeanClass 的实例;返回null时，跳过对依赖原来Bean对象的Bean更新热修复Bean的操作。
      */
     Object generate(Class<?>  hotFixBeanClass);
 
+    /**
+     * 准备 hotFixBeanClass 的热修复动作
+     * <p>应该在这里完成所有代价较大的工作，如实例化、解析等，且不能对运行中的应用程序产生任何影响，真正生效的操作放到
+     * {@link HotFixAction#commit()} 中。</p>
+     * <p>默认实现是为了兼容只实现了 {@link #generate(Class)} 的生成器：直接调用 {@link #generate(Class)}，
+     * 此时热修复Bean对象在准备阶段就已经生效。</p>
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    default HotFixAction prepare(Class<?> hotFixBeanClass){
+        return HotFixAction.of(generate(hotFixBeanClass));
+    }
+
     /**
      * 是否可以接受处理 hotFixBeanClass 去生成对应的实例
      * @param hotFixBeanClass 热修复Bean类
      */
     boolean canHandle(Class<?>  hotFixBeanClass);
+
+    /**
+     * 获取 生成器类型，如 mybatis、controller，用于按类型统计生成和提交的耗时
+     */
+    default String getType(){
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 将生成过程中缓冲起来的变更一次性提交，在一次热修复的所有热修复Bean对象生成之后调用
+     */
+    default void flush(){
+    }
+
+    /**
+     * 丢弃生成过程中缓冲起来还没有提交的变更，在一次热修复的某个热修复动作生效失败时代替 {@link #flush()} 调用
+     * <p>缓冲的变更只会随整个补丁一起提交，生效失败时不能把已经缓冲的部分提交出去。</p>
+     */
+    default void discard(){
+    }
+
+    /**
+     * 预热 {@link #flush()} 提交的变更，在热修复生效之后、报告返回之前调用
+     * <p>用于提前构建原来在第一次调用时才懒加载的缓存，预热失败不会影响已经生效的热修复。</p>
+     */
+    default void warmUp(){
+    }
 }
@@ -1,14 +1,16 @@
 package czb.framework.hotfix.core.strategy.impl;
 
+import czb.framework.hotfix.core.helper.BeanTypeIndex;
+import czb.framework.hotfix.core.strategy.HotFixAction;
 import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
-import org.springframework.util.StringUtils;
 
 /**
  * 通用热修复 Bean 对象生成器
- * <p>构建热修复 Bean 对象，该对象会经过 {@link DefaultListableBeanFactory#configureBean(Object, String)}方法填充属性</p>
+ * <p>构建热修复 Bean 对象，该对象会经过 {@link DefaultListableBeanFactory#configureBean(Object, String)}方法填充属性，
+ * 原 Bean 名通过 {@link BeanTypeIndex} 按类名查找</p>
  * @author chenzhuobin
  */
 public class CommonHotFixBeanGenerator implements HotFixBeanGenerator {
@@ -29,13 +31,30 @@ public class CommonHotFixBeanGenerator implements HotFixBeanGenerator {
 
     @Override
     public Object generate(Class<?> hotFixBeanClass) {
+        return prepare(hotFixBeanClass).getBean();
+    }
+
+    /**
+     * 构建热修复 Bean 对象，构建好的对象只有被依赖原 Bean 对象的 Bean 对象引用后才会生效，所以不需要额外的生效动作
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    @Override
+    public HotFixAction prepare(Class<?> hotFixBeanClass) {
+        return HotFixAction.of(newHotFixBean(hotFixBeanClass));
+    }
+
+    /**
+     * 构建热修复 Bean 对象
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    private Object newHotFixBean(Class<?> hotFixBeanClass) {
         if(hotFixBeanClass.isInterface()||hotFixBeanClass.isAnnotation()||hotFixBeanClass.isEnum()){
             return null;
         }
         Object hotFixBean= null;
         try {
-            String beanName = StringUtils.uncapitalize(hotFixBeanClass.getSimpleName());
-            if(beanFactory.containsBean(beanName)){
+            String beanName = BeanTypeIndex.of(beanFactory).getBeanName(hotFixBeanClass);
+            if(beanName!=null){
                 hotFixBean = hotFixBeanClass.newInstance();
                 beanFactory.configureBean(hotFixBean, beanName);
             }else{
@@ -53,6 +72,11 @@ public class CommonHotFixBeanGenerator implements HotFixBeanGenerator {
         return hotFixBean;
     }
 
+    @Override
+    public String getType() {
+        return "common";
+    }
+
     @Override
     public boolean canHandle(Class<?> hotFixBeanClass) {
         return true;
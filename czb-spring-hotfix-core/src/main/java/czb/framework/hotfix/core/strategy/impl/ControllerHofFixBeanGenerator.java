@@ -1,6 +1,10 @@
 package czb.framework.hotfix.core.strategy.impl;
 
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.config.MappingSwapScope;
 import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.helper.BeanTypeIndex;
+import czb.framework.hotfix.core.strategy.HotFixAction;
 import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,13 +17,21 @@ import org.springframework.stereotype.Controller;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.handler.AbstractHandlerMethodMapping;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 /**
  * Spring MVC Controller 热修复Bean对象生成器
@@ -51,13 +63,51 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
     private Method getMappingForMethod;
 
     /**
-     * 新建一个 ControllerHofFixBeanGenerator 实例
+     * requestMappingHandlerMapping 注册表的读写锁，查找接口时会获取读锁，注册/注销接口时会获取写锁。
+     * <p>因为 ReentrantReadWriteLock 的写锁是可重入的，所以持有写锁时调用 注册/注销接口 不会再阻塞，
+     * 这样就可以在同一次写锁内覆盖多个接口。获取不到时为 null，只能退化成每个接口方法单独覆盖。</p>
+     */
+    private Lock mappingRegistryWriteLock;
+
+    /**
+     * 覆盖注册表的批次范围
+     */
+    private MappingSwapScope mappingSwapScope;
+
+    /**
+     * 缓冲起来等待 {@link #flush()} 的接口注册信息，每个元素是一个 Controller 的所有接口
+     */
+    private final List<List<PendingMapping>> pendingMappings=new ArrayList<>();
+
+    /**
+     * 最近一次覆盖注册表时持有写锁的纳秒数，即请求线程查找接口最多被阻塞的时间
+     */
+    private volatile long lastSwapStallNanos;
+
+    /**
+     * 累计覆盖注册表时持有写锁的纳秒数
+     */
+    private final AtomicLong totalSwapStallNanos=new AtomicLong();
+
+    /**
+     * 新建一个 ControllerHofFixBeanGenerator 实例，使用 {@link MappingSwapScope#CONTROLLER} 覆盖注册表
      * @param beanFactory 当前上下文Bean工厂
      */
     public ControllerHofFixBeanGenerator(DefaultListableBeanFactory beanFactory) {
+        this(beanFactory, new HotFixProperties());
+    }
+
+    /**
+     * 新建一个 ControllerHofFixBeanGenerator 实例
+     * @param beanFactory 当前上下文Bean工厂
+     * @param hotFixProperties 热修复参数配置
+     */
+    public ControllerHofFixBeanGenerator(DefaultListableBeanFactory beanFactory, HotFixProperties hotFixProperties) {
         this.beanFactory = beanFactory;
+        this.mappingSwapScope = hotFixProperties.getMappingSwapScope()==null?MappingSwapScope.CONTROLLER:hotFixProperties.getMappingSwapScope();
         getHandlerMethodMapping();
         getMethodForGetMappingForMethod();
+        getMappingRegistryWriteLock();
     }
 
     /**
@@ -68,17 +118,34 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
      */
     @Override
     public Object generate(Class<?> hotFixBeanClass) {
+        HotFixAction action = prepare(hotFixBeanClass);
+        action.commit();
+        flush();
+        return action.getBean();
+    }
 
-        String beanName = StringUtils.uncapitalize(hotFixBeanClass.getSimpleName());
+    /**
+     * 创建 热修复Controller 对象，并在锁外构建好它所有的接口注册信息
+     * <p>生效时只缓冲接口注册信息，{@link #flush()} 时才覆盖 原来Controller 注册到 {@link RequestMappingInfoHandlerMapping} Bean 对象里的接口信息</p>
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    @Override
+    public HotFixAction prepare(Class<?> hotFixBeanClass) {
+        String beanName = BeanTypeIndex.of(beanFactory).getBeanName(hotFixBeanClass);
         Object controller=null;
-        if(beanFactory.containsBean(beanName)){
+        if(beanName!=null){
             controller=newController(hotFixBeanClass);
             beanFactory.configureBean(controller, beanName);
         }else{
             controller = beanFactory.createBean(hotFixBeanClass);
         }
-        coverRegisterMapping(controller,hotFixBeanClass);
-        return controller;
+        List<PendingMapping> controllerMappings = buildMappings(controller, hotFixBeanClass);
+        return HotFixAction.of(controller, () -> coverRegisterMapping(controllerMappings));
+    }
+
+    @Override
+    public String getType() {
+        return "controller";
     }
 
     /**
@@ -111,11 +178,12 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 筛选handlerType合适作为接口的Method对象，构建 RequestMappingInfo 对象.然后覆盖 原Controller 已注册的接口信息。
+     * 筛选handlerType合适作为接口的Method对象，构建 RequestMappingInfo 对象
      * @param controller 热修复Controller 对象
      * @param handlerType 热修复Bean类
+     * @return 接口注册信息
      */
-    private void coverRegisterMapping(Object controller, Class<?> handlerType){
+    private List<PendingMapping> buildMappings(Object controller, Class<?> handlerType){
         Class<?> userType = ClassUtils.getUserClass(handlerType);
         //筛选handlerType合适作为接口的Method对象
         Map<Method, RequestMappingInfo> methods = MethodIntrospector.selectMethods(userType,
@@ -129,15 +197,132 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
                                 userType.getName() + "]: " + method, ex);
                     }
                 });
-        //覆盖 原Controller 已注册的接口信息。
+        List<PendingMapping> controllerMappings=new ArrayList<>(methods.size());
         methods.forEach((method, mapping) -> {
             Method invocableMethod = AopUtils.selectInvocableMethod(method, userType);
-            invokeRegisterHandlerMethod(controller, invocableMethod, mapping);
+            controllerMappings.add(new PendingMapping(mapping, controller, invocableMethod));
         });
+        return controllerMappings;
+    }
+
+    /**
+     * 缓冲 原Controller 要覆盖的接口信息，等待 {@link #flush()} 时再覆盖，所以其他热修复动作生效失败时原来的接口保持不变
+     * @param controllerMappings 已经在锁外构建好的接口注册信息
+     */
+    private void coverRegisterMapping(List<PendingMapping> controllerMappings){
+        pendingMappings.add(controllerMappings);
+    }
+
+    /**
+     * 提交缓冲起来的接口注册信息，按 {@link MappingSwapScope} 分批覆盖：{@link MappingSwapScope#PATCH} 时整个补丁所有 Controller 的接口
+     * 在同一次写锁内覆盖，否则每个 Controller 分别覆盖。
+     * <p>每一批覆盖失败时会恢复该批原来的接口，但不是 {@link MappingSwapScope#PATCH} 时之前已经覆盖的批次不会恢复</p>
+     */
+    @Override
+    public void flush() {
+        if(pendingMappings.isEmpty()) return;
+        try {
+            if(mappingSwapScope==MappingSwapScope.PATCH){
+                List<PendingMapping> mappings=new ArrayList<>();
+                for (List<PendingMapping> controllerMappings : pendingMappings) {
+                    mappings.addAll(controllerMappings);
+                }
+                swapMappings(mappings);
+            }else{
+                for (List<PendingMapping> controllerMappings : new ArrayList<>(pendingMappings)) {
+                    swapMappings(controllerMappings);
+                }
+            }
+        } finally {
+            pendingMappings.clear();
+        }
+    }
+
+    /**
+     * 丢弃缓冲起来的接口注册信息，原来的接口保持不变
+     */
+    @Override
+    public void discard() {
+        pendingMappings.clear();
     }
 
     /**
      * 覆盖 原Controller 已注册的接口信息。
+     * <p>如果获取到注册表的写锁，且批次范围不是 {@link MappingSwapScope#METHOD}，所有接口在同一次写锁内覆盖；覆盖失败时会恢复原来的接口。</p>
+     * @param mappings 已经构建好的接口注册信息
+     */
+    private void swapMappings(List<PendingMapping> mappings){
+        if(mappings.isEmpty()) return;
+        if(mappingRegistryWriteLock==null || mappingSwapScope==MappingSwapScope.METHOD){
+            for (PendingMapping pendingMapping : mappings) {
+                invokeRegisterHandlerMethod(pendingMapping.handler,pendingMapping.method,pendingMapping.mapping);
+            }
+            return;
+        }
+        //在锁外找到将被覆盖的原接口，用于覆盖失败时恢复
+        Map<RequestMappingInfo, HandlerMethod> handlerMethods = requestMappingHandlerMapping.getHandlerMethods();
+        Map<RequestMappingInfo, HandlerMethod> originalHandlerMethods=new LinkedHashMap<>();
+        for (PendingMapping pendingMapping : mappings) {
+            HandlerMethod originalHandlerMethod = handlerMethods.get(pendingMapping.mapping);
+            if(originalHandlerMethod!=null){
+                originalHandlerMethods.put(pendingMapping.mapping,originalHandlerMethod);
+            }
+        }
+        long start = System.nanoTime();
+        mappingRegistryWriteLock.lock();
+        try {
+            List<PendingMapping> registeredMappings=new ArrayList<>(mappings.size());
+            try {
+                for (PendingMapping pendingMapping : mappings) {
+                    invokeRegisterHandlerMethod(pendingMapping.handler,pendingMapping.method,pendingMapping.mapping);
+                    registeredMappings.add(pendingMapping);
+                }
+            } catch (RuntimeException e) {
+                rollbackMappings(registeredMappings,originalHandlerMethods);
+                throw e;
+            }
+        } finally {
+            mappingRegistryWriteLock.unlock();
+            long stallNanos = System.nanoTime() - start;
+            lastSwapStallNanos = stallNanos;
+            totalSwapStallNanos.addAndGet(stallNanos);
+            if(log.isInfoEnabled()){
+                log.info("swap {} request mappings in one write lock , stall {} us",mappings.size(),stallNanos/1000);
+            }
+        }
+    }
+
+    /**
+     * 覆盖失败时，注销已经覆盖的接口，恢复原来的接口
+     * @param registeredMappings 已经覆盖的接口
+     * @param originalHandlerMethods 原来的接口
+     */
+    private void rollbackMappings(List<PendingMapping> registeredMappings, Map<RequestMappingInfo, HandlerMethod> originalHandlerMethods){
+        for (PendingMapping registeredMapping : registeredMappings) {
+            requestMappingHandlerMapping.unregisterMapping(registeredMapping.mapping);
+        }
+        originalHandlerMethods.forEach((mapping, handlerMethod) -> {
+            requestMappingHandlerMapping.unregisterMapping(mapping);
+            requestMappingHandlerMapping.registerMapping(mapping,handlerMethod.getBean(),handlerMethod.getMethod());
+        });
+    }
+
+    /**
+     * 获取 最近一次覆盖注册表时持有写锁的纳秒数，即请求线程查找接口最多被阻塞的时间
+     */
+    public long getLastSwapStallNanos() {
+        return lastSwapStallNanos;
+    }
+
+    /**
+     * 获取 累计覆盖注册表时持有写锁的纳秒数
+     */
+    public long getTotalSwapStallNanos() {
+        return totalSwapStallNanos.get();
+    }
+
+    /**
+     * 覆盖 原Controller 已注册的一个接口信息。
      * @param controller 热修复 Controller 对象
      * @param invocableMethod 要注册的可作为接口调用的合适Method对象
      * @param mapping 根据 controller,invocableMethod构建出来的RequestMappingInfo对象
@@ -177,6 +362,24 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
         }
     }
 
+    /**
+     * 反射获取 requestMappingHandlerMapping # mappingRegistry # readWriteLock 的写锁
+     */
+    private void getMappingRegistryWriteLock(){
+        try {
+            Field mappingRegistryField = AbstractHandlerMethodMapping.class.getDeclaredField("mappingRegistry");
+            mappingRegistryField.setAccessible(true);
+            Object mappingRegistry = mappingRegistryField.get(requestMappingHandlerMapping);
+            Field readWriteLockField = mappingRegistry.getClass().getDeclaredField("readWriteLock");
+            readWriteLockField.setAccessible(true);
+            mappingRegistryWriteLock = ((ReadWriteLock) readWriteLockField.get(mappingRegistry)).writeLock();
+        } catch (NoSuchFieldException | IllegalAccessException | ClassCastException e) {
+            if(log.isWarnEnabled()){
+                log.warn("no found readWriteLock of 'requestMappingHandlerMapping' mapping registry ,so swap request mapping one by one",e);
+            }
+        }
+    }
+
     private Method getMethodForGetMappingForMethod(){
         Method[] declaredMethods = requestMappingHandlerMapping.getClass().getDeclaredMethods();
         for (Method declaredMethod : declaredMethods) {
@@ -191,4 +394,22 @@ public class ControllerHofFixBeanGenerator implements HotFixBeanGenerator {
         getMappingForMethod.setAccessible(true);
         return getMappingForMethod;
     }
+
+    /**
+     * 已经构建好，等待覆盖到注册表的接口注册信息
+     */
+    private static class PendingMapping {
+
+        private final RequestMappingInfo mapping;
+
+        private final Object handler;
+
+        private final Method method;
+
+        private PendingMapping(RequestMappingInfo mapping, Object handler, Method method) {
+            this.mapping = mapping;
+            this.handler = handler;
+            this.method = method;
+        }
+    }
 }
@@ -1,11 +1,13 @@
 package czb.framework.hotfix.core.strategy.impl;
 
 import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.strategy.HotFixAction;
 import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 默认的 HotFixBeanGenerator
@@ -53,11 +55,44 @@ public class DefaultHotFixBeanGenerator implements HotFixBeanGenerator {
         return null;
     }
 
+    /**
+     * 找到 可接收处理 hotFixbeanClass 的 HotFixBeanGenerator 准备热修复动作，如果找不到就返回 null
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    @Override
+    public HotFixAction prepare(Class<?> hotFixBeanClass) {
+        for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
+            if(hotFixBeanGenerator.canHandle(hotFixBeanClass)){
+                return hotFixBeanGenerator.prepare(hotFixBeanClass);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 找到 可接收处理 hotFixbeanClass 的 HotFixBeanGenerator，如果找不到就返回 null
+     * <p>用于直接调用匹配到的生成器，并按生成器类型统计耗时</p>
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    public HotFixBeanGenerator getGenerator(Class<?> hotFixBeanClass) {
+        for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
+            if(hotFixBeanGenerator.canHandle(hotFixBeanClass)){
+                return hotFixBeanGenerator;
+            }
+        }
+        return null;
+    }
+
     /**
      * 是否有 可接收处理 hotFixbeanClass 的 HotFixBeanGenerator
      * @param hotFixBeanClass 热修复Bean类
      * @return true，表示找到了；否则返回false
      */
+    @Override
+    public String getType() {
+        return "default";
+    }
+
     @Override
     public boolean canHandle(Class<?> hotFixBeanClass) {
         for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
@@ -68,6 +103,64 @@ public class DefaultHotFixBeanGenerator implements HotFixBeanGenerator {
         return false;
     }
 
+    /**
+     * 提交所有 HotFixBeanGenerator 缓冲起来的变更
+     * <p>某个生成器提交失败时，丢弃所有生成器还没有提交的变更，不会留到下一次热修复；已经提交的生成器的变更无法撤回，
+     * 所以提交失败时可能只有部分变更生效。</p>
+     */
+    @Override
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * 提交所有 HotFixBeanGenerator 缓冲起来的变更，并记录每个生成器的提交耗时，如替换 Mybatis 元数据、覆盖接口注册信息的耗时
+     * <p>提交失败时的处理同 {@link #flush()}</p>
+     * @param costNanos 用于存放提交耗时【key=生成器类型,value=纳秒】，为null时不记录
+     */
+    public void flush(Map<String,Long> costNanos) {
+        boolean flushed = false;
+        try {
+            for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
+                long start = System.nanoTime();
+                try {
+                    hotFixBeanGenerator.flush();
+                } finally {
+                    if(costNanos!=null) costNanos.merge(hotFixBeanGenerator.getType(), System.nanoTime() - start, Long::sum);
+                }
+            }
+            flushed = true;
+        } finally {
+            if(!flushed) discard();
+        }
+    }
+
+    /**
+     * 丢弃所有 HotFixBeanGenerator 缓冲起来的变更，某个生成器丢弃失败时依然会丢弃其他生成器的变更
+     */
+    @Override
+    public void discard() {
+        RuntimeException failure = null;
+        for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
+            try {
+                hotFixBeanGenerator.discard();
+            } catch (RuntimeException e) {
+                if(failure==null) failure=e; else failure.addSuppressed(e);
+            }
+        }
+        if(failure!=null) throw failure;
+    }
+
+    /**
+     * 预热所有 HotFixBeanGenerator 提交的变更
+     */
+    @Override
+    public void warmUp() {
+        for (HotFixBeanGenerator hotFixBeanGenerator : hotFixBeanGenerators) {
+            hotFixBeanGenerator.warmUp();
+        }
+    }
+
     /**
      * 加载默认的 热修复Bean对象生成器
      * @param beanFactory bean工厂
@@ -75,7 +168,8 @@ public class DefaultHotFixBeanGenerator implements HotFixBeanGenerator {
      */
     private void loadHotFixBeanGenerators(DefaultListableBeanFactory beanFactory, HotFixProperties hotFixProperties){
         hotFixBeanGenerators.add(new MybatisHotFixBeanGenerator(beanFactory, hotFixProperties));
-        hotFixBeanGenerators.add(new ControllerHofFixBeanGenerator(beanFactory));
+        hotFixBeanGenerators.add(new ControllerHofFixBeanGenerator(beanFactory, hotFixProperties));
+        hotFixBeanGenerators.add(new SwappableHotFixBeanGenerator(beanFactory));
         hotFixBeanGenerators.add(new CommonHotFixBeanGenerator(beanFactory));
     }
 
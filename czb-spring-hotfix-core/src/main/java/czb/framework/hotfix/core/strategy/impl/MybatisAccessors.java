@@ -0,0 +1,294 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import org.apache.ibatis.binding.MapperProxy;
+import org.apache.ibatis.binding.MapperProxyFactory;
+import org.apache.ibatis.binding.MapperRegistry;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mybatis / Mybatis-Plus 内部属性、方法的访问器注册表
+ * <p>热修复 Mapper 需要通过反射访问 {@link Configuration}、MapperRegistry、MapperProxyFactory 等类的内部属性，这里按类缓存解析好的
+ * {@link MethodHandle} 访问器，每个属性/方法只需要查找和 setAccessible 一次，热修复时不再有反射查找的开销。</p>
+ * <p>{@link #validate(ClassLoader)} 在启动时解析热修复需要的所有内部属性和方法，Mybatis / Mybatis-Plus 的版本不支持时
+ * 直接抛出 {@link HotFixException}，而不是等到热修复到一半才失败。</p>
+ * @author chenzhuobin
+ */
+final class MybatisAccessors {
+
+    private static Logger log= LoggerFactory.getLogger(MybatisAccessors.class);
+
+    private static final MethodHandles.Lookup LOOKUP=MethodHandles.lookup();
+
+    /**
+     * 热修复需要访问的 Configuration 属性
+     */
+    static final List<String> CONFIGURATION_FIELD_NAMES=Collections.unmodifiableList(Arrays.asList("caches","resultMaps","parameterMaps",
+            "keyGenerators","sqlFragments","mappedStatements","loadedResources","cacheRefMap","incompleteStatements","incompleteCacheRefs",
+            "incompleteResultMaps","incompleteMethods"));
+
+    private static final String MYBATIS_PLUS_CONFIGURATION="com.baomidou.mybatisplus.core.MybatisConfiguration";
+
+    private static final String MYBATIS_PLUS_MAPPER_REGISTRY="com.baomidou.mybatisplus.core.MybatisMapperRegistry";
+
+    private static final String MYBATIS_PLUS_MAPPER_PROXY_FACTORY="com.baomidou.mybatisplus.core.override.MybatisMapperProxyFactory";
+
+    private static final String MYBATIS_PLUS_MAPPER_PROXY="com.baomidou.mybatisplus.core.override.MybatisMapperProxy";
+
+    private static final String MYBATIS_PLUS_GLOBAL_CONFIG_UTILS="com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils";
+
+    /**
+     * 类 - 属性名 - 该类及其父类中所有同名属性的访问器【子类的在前】
+     */
+    private static final Map<Class<?>,Map<String,List<FieldAccessor>>> FIELDS=new ConcurrentHashMap<>();
+
+    /**
+     * 类 - 该类及其父类所有非静态属性的访问器
+     */
+    private static final Map<Class<?>,List<FieldAccessor>> ALL_FIELDS=new ConcurrentHashMap<>();
+
+    /**
+     * 类 - 方法签名 - 方法访问器
+     */
+    private static final Map<Class<?>,Map<String,MethodHandle>> METHODS=new ConcurrentHashMap<>();
+
+    private MybatisAccessors() {
+    }
+
+    /**
+     * 解析热修复 Mapper 需要的所有内部属性和方法，并校验 Mybatis / Mybatis-Plus 的版本是否支持
+     * @param classLoader 加载 Mybatis 的类加载器
+     * @throws HotFixException 有内部属性或方法找不到时
+     */
+    static void validate(ClassLoader classLoader){
+        List<String> missing=new ArrayList<>();
+        resolveConfiguration(Configuration.class,missing);
+        resolveField(MapperRegistry.class,"knownMappers",missing);
+        resolveField(MapperProxyFactory.class,"methodCache",missing);
+        resolveMethod(MapperProxyFactory.class,"getMapperInterface",missing);
+        resolveMethod(MapperProxyFactory.class,"newInstance",missing,SqlSession.class);
+        resolveMethod(MapperProxy.class,"cachedInvoker",missing,Method.class);
+        resolveField(MappedStatement.class,"cache",missing);
+        boolean mybatisPlus = ClassUtils.isPresent(MYBATIS_PLUS_CONFIGURATION, classLoader);
+        if(mybatisPlus){
+            resolveConfiguration(ClassUtils.resolveClassName(MYBATIS_PLUS_CONFIGURATION,classLoader),missing);
+            resolveField(ClassUtils.resolveClassName(MYBATIS_PLUS_MAPPER_REGISTRY,classLoader),"knownMappers",missing);
+            Class<?> mapperProxyFactoryClass = ClassUtils.resolveClassName(MYBATIS_PLUS_MAPPER_PROXY_FACTORY, classLoader);
+            resolveField(mapperProxyFactoryClass,"methodCache",missing);
+            resolveMethod(mapperProxyFactoryClass,"getMapperInterface",missing);
+            resolveMethod(mapperProxyFactoryClass,"newInstance",missing,SqlSession.class);
+            resolveMethod(ClassUtils.resolveClassName(MYBATIS_PLUS_MAPPER_PROXY,classLoader),"cachedInvoker",missing,Method.class);
+            resolveField(ClassUtils.resolveClassName(MYBATIS_PLUS_GLOBAL_CONFIG_UTILS,classLoader),"GLOBAL_CONFIG",missing);
+        }
+        String version = "MyBatis "+Configuration.class.getPackage().getImplementationVersion()
+                +(mybatisPlus?" ,MyBatis-Plus "+ClassUtils.resolveClassName(MYBATIS_PLUS_CONFIGURATION,classLoader).getPackage().getImplementationVersion():"");
+        if(!missing.isEmpty()){
+            throw new HotFixException(" unsupported "+version+" ,can not hotfix mapper ,missing "+missing);
+        }
+        if(log.isInfoEnabled()){
+            log.info(" mybatis accessors resolved for {}",version);
+        }
+    }
+
+    private static void resolveConfiguration(Class<?> configurationClass, List<String> missing){
+        for (String fieldName : CONFIGURATION_FIELD_NAMES) {
+            resolveField(configurationClass,fieldName,missing);
+        }
+        allFields(configurationClass);
+    }
+
+    private static void resolveField(Class<?> cls, String fieldName, List<String> missing){
+        try {
+            fields(cls,fieldName);
+        } catch (HotFixException e) {
+            missing.add(cls.getName()+"#"+fieldName);
+        }
+    }
+
+    private static void resolveMethod(Class<?> cls, String methodName, List<String> missing, Class<?>... parameterTypes){
+        try {
+            method(cls,methodName,parameterTypes);
+        } catch (HotFixException e) {
+            missing.add(cls.getName()+"#"+methodName+Arrays.toString(parameterTypes));
+        }
+    }
+
+    /**
+     * 获取 cls 及其父类中第一个名为 fieldName 的属性的访问器
+     * @param cls 类
+     * @param fieldName 属性名
+     * @throws HotFixException 找不到时
+     */
+    static FieldAccessor field(Class<?> cls, String fieldName){
+        return fields(cls,fieldName).get(0);
+    }
+
+    /**
+     * 获取 cls 及其父类中所有名为 fieldName 的属性的访问器【子类的在前】，如 Mybatis-Plus 的 MybatisConfiguration 会重新定义同名的集合
+     * @param cls 类
+     * @param fieldName 属性名
+     * @throws HotFixException 找不到时
+     */
+    static List<FieldAccessor> fields(Class<?> cls, String fieldName){
+        List<FieldAccessor> accessors = FIELDS.computeIfAbsent(cls, k -> new ConcurrentHashMap<>()).computeIfAbsent(fieldName, name -> {
+            List<FieldAccessor> found=new ArrayList<>(2);
+            Class<?> current=cls;
+            while (current!=null && current!=Object.class){
+                try {
+                    found.add(new FieldAccessor(current.getDeclaredField(name)));
+                } catch (NoSuchFieldException e) {
+                    //ignore
+                }
+                current=current.getSuperclass();
+            }
+            return Collections.unmodifiableList(found);
+        });
+        if(accessors.isEmpty()){
+            throw new HotFixException(cls.getName()+" no found '"+fieldName+"' field");
+        }
+        return accessors;
+    }
+
+    /**
+     * 获取 cls 及其父类所有非静态属性的访问器
+     * @param cls 类
+     */
+    static List<FieldAccessor> allFields(Class<?> cls){
+        return ALL_FIELDS.computeIfAbsent(cls, key -> {
+            List<FieldAccessor> accessors=new ArrayList<>();
+            Class<?> current=key;
+            while (current!=null && current!=Object.class){
+                for (Field field : current.getDeclaredFields()) {
+                    if(Modifier.isStatic(field.getModifiers())) continue;
+                    accessors.add(new FieldAccessor(field));
+                }
+                current=current.getSuperclass();
+            }
+            return Collections.unmodifiableList(accessors);
+        });
+    }
+
+    /**
+     * 获取 cls 及其父类中的方法的访问器，私有方法也可以访问
+     * @param cls 类
+     * @param methodName 方法名
+     * @param parameterTypes 参数类型
+     * @throws HotFixException 找不到时
+     */
+    static MethodHandle method(Class<?> cls, String methodName, Class<?>... parameterTypes){
+        String signature = methodName + Arrays.toString(parameterTypes);
+        Map<String, MethodHandle> methods = METHODS.computeIfAbsent(cls, k -> new ConcurrentHashMap<>());
+        MethodHandle methodHandle = methods.get(signature);
+        if(methodHandle!=null) return methodHandle;
+        Method method = ReflectionUtils.findMethod(cls, methodName, parameterTypes);
+        if(method==null){
+            throw new HotFixException(cls.getName()+" no found '"+signature+"' method");
+        }
+        try {
+            method.setAccessible(true);
+            methodHandle=LOOKUP.unreflect(method);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new HotFixException(cls.getName()+" can not access '"+signature+"' method",e);
+        }
+        methods.put(signature,methodHandle);
+        return methodHandle;
+    }
+
+    /**
+     * 一个属性的访问器
+     */
+    static final class FieldAccessor {
+
+        private final Field field;
+
+        private final MethodHandle getter;
+
+        /**
+         * final 属性在部分 JDK 上不能生成写访问器，此时为null，通过 {@link Field#set(Object, Object)} 修改
+         */
+        private final MethodHandle setter;
+
+        private final boolean isStatic;
+
+        private FieldAccessor(Field field) {
+            this.field = field;
+            this.isStatic = Modifier.isStatic(field.getModifiers());
+            try {
+                field.setAccessible(true);
+                this.getter = LOOKUP.unreflectGetter(field);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new HotFixException(field.getDeclaringClass().getName()+" can not access '"+field.getName()+"' field",e);
+            }
+            MethodHandle fieldSetter;
+            try {
+                fieldSetter = isStatic && Modifier.isFinal(field.getModifiers()) ? null : LOOKUP.unreflectSetter(field);
+            } catch (IllegalAccessException e) {
+                fieldSetter = null;
+            }
+            this.setter = fieldSetter;
+        }
+
+        String getName(){
+            return field.getName();
+        }
+
+        Class<?> getDeclaringClass(){
+            return field.getDeclaringClass();
+        }
+
+        Class<?> getType(){
+            return field.getType();
+        }
+
+        /**
+         * 读取 obj 的属性值，并转换成 type 类型
+         * @param obj 对象，静态属性为null
+         * @param type 属性值要匹配的类型，匹配失败会抛出 {@link HotFixException}
+         */
+        <T> T get(Object obj, Class<T> type){
+            Object value;
+            try {
+                value = isStatic ? getter.invoke() : getter.invoke(obj);
+            } catch (Throwable e) {
+                throw new HotFixException(field.getDeclaringClass().getName()+" get '"+field.getName()+"' field value fail",e);
+            }
+            if(value!=null && !type.isInstance(value)){
+                throw new HotFixException(" the '"+field.getName()+"' field of "+field.getDeclaringClass().getName()+" is not "+type.getName());
+            }
+            return type.cast(value);
+        }
+
+        /**
+         * 修改 obj 的属性值
+         * @param obj 对象
+         * @param value 属性值
+         */
+        void set(Object obj, Object value){
+            try {
+                if(setter==null){
+                    field.set(obj,value);
+                }else if(isStatic){
+                    setter.invoke(value);
+                }else{
+                    setter.invoke(obj,value);
+                }
+            } catch (Throwable e) {
+                throw new HotFixException(field.getDeclaringClass().getName()+" set '"+field.getName()+"' field value fail",e);
+            }
+        }
+    }
+}
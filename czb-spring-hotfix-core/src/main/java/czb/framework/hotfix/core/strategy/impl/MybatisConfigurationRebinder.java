@@ -0,0 +1,107 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import czb.framework.hotfix.core.strategy.impl.MybatisAccessors.FieldAccessor;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandler;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * 将解析到影子 Configuration 中的元数据改成引用运行中的 Configuration
+ * <p>MappedStatement、ResultMap、ResultMapping、ParameterMapping、DynamicSqlSource、StaticSqlSource、ProviderSqlSource、
+ * ForEachSqlNode、TrimSqlNode 等元数据在解析时都保存了所属的 Configuration，如果不改掉，生效后的元数据
+ * {@code getConfiguration()} 得到的是影子 Configuration，每次热修复的影子 Configuration 也会通过元数据一直被引用，无法回收。</p>
+ * <p>通过反射遍历元数据的对象图，只进入 Mybatis / Mybatis-Plus 的类、{@link SqlSource}、{@link SqlNode}、{@link KeyGenerator}
+ * 的实现以及它们中的集合和数组，不进入以下对象：</p>
+ * <ol>
+ *  <li>{@link Configuration}：只做引用替换</li>
+ *  <li>{@link Cache}、{@link Log}、{@link TypeHandler}：与运行中的 Configuration 共享，或者与 Configuration 无关</li>
+ *  <li>Lambda 等合成类：它们的属性不能修改</li>
+ * </ol>
+ * @author chenzhuobin
+ */
+class MybatisConfigurationRebinder {
+
+    private static final List<String> TRAVERSED_PACKAGE_PREFIXES=Arrays.asList("org.apache.ibatis.","com.baomidou.mybatisplus.");
+
+    private static final List<String> SKIPPED_PACKAGE_PREFIXES=Arrays.asList("org.apache.ibatis.reflection.","org.apache.ibatis.type.",
+            "org.apache.ibatis.logging.","org.apache.ibatis.cache.","org.apache.ibatis.io.");
+
+    private final Configuration from;
+
+    private final Configuration to;
+
+    private final Set<Object> visited=Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param from 影子 Configuration
+     * @param to 运行中的 Configuration
+     */
+    MybatisConfigurationRebinder(Configuration from, Configuration to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * 将 metadata 对象图中引用 from 的属性改成引用 to
+     * @param metadata MappedStatement、ResultMap、ParameterMap、KeyGenerator 等元数据
+     */
+    void rebind(Object metadata){
+        if(metadata==null || !visited.add(metadata)) return;
+        Class<?> cls = metadata.getClass();
+        if(cls.isArray()){
+            if(cls.getComponentType().isPrimitive()) return;
+            for (int i = 0; i < Array.getLength(metadata); i++) {
+                Object element = Array.get(metadata, i);
+                if(element==from){
+                    Array.set(metadata,i,to);
+                }else if(isTraversable(element)){
+                    rebind(element);
+                }
+            }
+        }else if(metadata instanceof Collection){
+            for (Object element : (Collection<?>) metadata) {
+                if(isTraversable(element)) rebind(element);
+            }
+        }else if(metadata instanceof Map){
+            for (Object value : ((Map<?, ?>) metadata).values()) {
+                if(isTraversable(value)) rebind(value);
+            }
+        }else{
+            for (FieldAccessor field : MybatisAccessors.allFields(cls)) {
+                if(field.getType().isPrimitive()) continue;
+                Object value = field.get(metadata, Object.class);
+                if(value==from){
+                    field.set(metadata,to);
+                }else if(isTraversable(value)){
+                    rebind(value);
+                }
+            }
+        }
+    }
+
+    private static boolean isTraversable(Object value){
+        if(value==null || value instanceof Configuration || value instanceof Cache || value instanceof Log || value instanceof TypeHandler
+                || value instanceof Class || value instanceof CharSequence || value instanceof Enum){
+            return false;
+        }
+        Class<?> cls = value.getClass();
+        if(cls.isArray() || value instanceof Collection || value instanceof Map) return true;
+        if(cls.isSynthetic() || cls.getName().contains("$$Lambda")) return false;
+        if(value instanceof SqlSource || value instanceof SqlNode || value instanceof KeyGenerator) return true;
+        String className = cls.getName();
+        for (String prefix : SKIPPED_PACKAGE_PREFIXES) {
+            if(className.startsWith(prefix)) return false;
+        }
+        for (String prefix : TRAVERSED_PACKAGE_PREFIXES) {
+            if(className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+}
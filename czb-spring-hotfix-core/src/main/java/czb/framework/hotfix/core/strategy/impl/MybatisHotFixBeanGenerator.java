@@ -1,33 +1,48 @@
 package czb.framework.hotfix.core.strategy.impl;
 
 import com.baomidou.mybatisplus.core.MybatisMapperAnnotationBuilder;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
 import czb.framework.hotfix.core.config.HotFixProperties;
 import czb.framework.hotfix.core.exception.HotFixException;
 import czb.framework.hotfix.core.helper.RefNewBeanHelper;
+import czb.framework.hotfix.core.strategy.HotFixAction;
 import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.annotation.MapperAnnotationBuilder;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.ClassUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.WeakHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Mybatis Mapper对象 热修复Bean对象生成器
- * <p>通过反射方式 {@link Configuration} 清除原 Mapper 注册的信息</p>
+ * <p>将热修复 Mapper 解析到影子 {@link Configuration} 中，生效时通过反射方式一次性替换原 Mapper 注册的信息</p>
  * <p>并不会构建热修复Mapper对象，因为原 Mapper 对象是个代理对象，当调用Mapper方法，代理会从 {@link Configuration} 中获取对应的
  * SQL 脚本去执行。所以执行要解析热修复 Mapper 类的原信息然后覆盖已注册到 {@link Configuration} 里的记录以达到热修复效果。</p>
  * <p>热修复后的Mapper支持：
@@ -73,10 +88,40 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     private final static String MYBATIS_MAIN_CLASS="org.apache.ibatis.session.Configuration";
 
     /**
-     * 是否有依赖 Mybatis-Plus 框架
+     * Mybatis-Plus 的 Mapper 注解解析器类名，用于判断是否有依赖 Mybatis-Plus 框架
+     */
+    private final static String MYBATIS_PLUS_ANNOTATION_BUILDER_CLASS="com.baomidou.mybatisplus.core.MybatisMapperAnnotationBuilder";
+
+    /**
+     * 是否有依赖 Mybatis 框架
      */
     private boolean isDependentMyBatis=false;
 
+    /**
+     * 是否有依赖 Mybatis-Plus 框架，启动时判断一次
+     */
+    private boolean isDependentMybatisPlus=false;
+
+    /**
+     * 每个运行中的 Configuration 的 命名空间 - key 索引
+     */
+    private final Map<Configuration,MybatisNamespaceIndex> namespaceIndexes=Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 已经生效但还没有提交的影子 Configuration，在 {@link #flush()} 时一起替换到运行中的 Configuration
+     */
+    private final List<MybatisStagingConfiguration> pendingStagingConfigurations=new ArrayList<>();
+
+    /**
+     * 等待 {@link #flush()} 后清除缓存的 Mapper 代理工厂【key=影子 Configuration,value=原 Mapper 的代理工厂】
+     */
+    private final Map<MybatisStagingConfiguration,Object> pendingMapperProxyFactories=new IdentityHashMap<>();
+
+    /**
+     * 等待 {@link #warmUp()} 预热的 Mapper，只有开启了 {@link HotFixProperties#getMybatisWarmUp()} 才会有
+     */
+    private final List<WarmUpTarget> pendingWarmUpTargets=new ArrayList<>();
+
     /**
      * 新建一个 MybatisHotFixBeanGenerator 对象
      * @param beanFactory 当前应用上下文的Bean工厂
@@ -84,11 +129,12 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     public MybatisHotFixBeanGenerator(DefaultListableBeanFactory beanFactory, HotFixProperties hotFixProperties) {
         this.beanFactory=beanFactory;
         this.hotFixProperties = hotFixProperties;
-        try {
-            getClass().getClassLoader().loadClass(MYBATIS_MAIN_CLASS);
-            isDependentMyBatis=true;
-        } catch (ClassNotFoundException e) {
-            //ignore
+        ClassLoader classLoader = getClass().getClassLoader();
+        isDependentMyBatis=ClassUtils.isPresent(MYBATIS_MAIN_CLASS, classLoader);
+        if(isDependentMyBatis){
+            isDependentMybatisPlus=ClassUtils.isPresent(MYBATIS_PLUS_ANNOTATION_BUILDER_CLASS, classLoader);
+            //启动时解析所有需要访问的 Mybatis 内部属性，版本不支持时直接失败
+            MybatisAccessors.validate(classLoader);
         }
     }
 
@@ -98,22 +144,111 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
      * @param hotFixBeanClass 热修复Bean类
      * @return null,因为不需要生成热修复 Mapper 对象，所以不需要对依赖原来Bean对象的Bean更新热修复Bean的操作。
      */
-    @SuppressWarnings("rawtypes")
     @Override
     public Object generate(Class<?> hotFixBeanClass) {
+        HotFixAction action = prepare(hotFixBeanClass);
+        action.commit();
+        flush();
+        return action.getBean();
+    }
+
+    /**
+     * 准备热修复 Mapper 的动作
+     * <p>热修复 Mapper 的 mapper.xml 和接口注解都解析到影子 Configuration【见 {@link MybatisStagingConfiguration}】中，
+     * 生效时先缓冲起来，在 {@link #flush()} 时所有 Mapper 一起替换运行中的 {@link Configuration} 的元数据，并清除Mapper代理对象的缓存。</p>
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public HotFixAction prepare(Class<?> hotFixBeanClass) {
         DefaultSqlSessionFactory sqlSessionFactory = (DefaultSqlSessionFactory) beanFactory.getBean("sqlSessionFactory");
         Configuration configuration = sqlSessionFactory.getConfiguration();
-        //删除 hotFixBeanClass 在 configuration 中的元数据信息
-        removeMybatisMedata(configuration,hotFixBeanClass);
-        //加载 Mappper.xml
-        loadXmlMapper(hotFixBeanClass,configuration);
-        //加载接口上的方法
-        if(isHaveMybatisPlusDependent()){
-            new MybatisMapperAnnotationBuilder(configuration, hotFixBeanClass).parse();
-        }else{
-            new MapperAnnotationBuilder(configuration,hotFixBeanClass).parse();
+        //在影子 Configuration 中删除 hotFixBeanClass 的元数据信息
+        MybatisNamespaceIndex namespaceIndex = namespaceIndexes.computeIfAbsent(configuration, key -> new MybatisNamespaceIndex());
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, namespaceIndex, hotFixBeanClass.getName(),
+                getKeyPrefixs(hotFixBeanClass), Arrays.asList(hotFixBeanClass.toString(), generateXmlMapper(hotFixBeanClass)));
+        try {
+            //加载 Mappper.xml
+            loadXmlMapper(hotFixBeanClass,stagingConfiguration.getConfiguration());
+            //加载接口上的方法
+            if(isDependentMybatisPlus){
+                new MybatisMapperAnnotationBuilder(stagingConfiguration.getConfiguration(), hotFixBeanClass).parse();
+            }else{
+                new MapperAnnotationBuilder(stagingConfiguration.getConfiguration(),hotFixBeanClass).parse();
+            }
+        } finally {
+            stagingConfiguration.seal();
+        }
+        Object originalMapperProxyFactory = getMapperProxyFactory(getRegistryMapper(configuration.getMapperRegistry()),hotFixBeanClass.getName());
+        return HotFixAction.of(RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG, () -> {
+            pendingStagingConfigurations.add(stagingConfiguration);
+            if(originalMapperProxyFactory!=null){
+                pendingMapperProxyFactories.put(stagingConfiguration,originalMapperProxyFactory);
+            }
+        });
+    }
+
+    /**
+     * 将缓冲起来的所有影子 Configuration 一起替换到运行中的 Configuration，然后清除Mapper代理对象中有变化的语句对应方法的缓存
+     */
+    @Override
+    public void flush() {
+        if(pendingStagingConfigurations.isEmpty()) return;
+        try {
+            MybatisStagingConfiguration.commit(pendingStagingConfigurations);
+            boolean warmUp = Boolean.TRUE.equals(hotFixProperties.getMybatisWarmUp());
+            for (MybatisStagingConfiguration stagingConfiguration : pendingStagingConfigurations) {
+                Set<String> changedStatementIds = stagingConfiguration.getChangedStatementIds();
+                Object mapperProxyFactory = pendingMapperProxyFactories.get(stagingConfiguration);
+                if(mapperProxyFactory!=null){
+                    removeMethodCache(mapperProxyFactory, changedStatementIds);
+                }
+                if(warmUp && !changedStatementIds.isEmpty()){
+                    pendingWarmUpTargets.add(new WarmUpTarget(stagingConfiguration.getLiveConfiguration(),mapperProxyFactory,changedStatementIds));
+                }
+            }
+        } finally {
+            pendingStagingConfigurations.clear();
+            pendingMapperProxyFactories.clear();
         }
-        return RefNewBeanHelper.IGNORE_REF_NEW_BEAN_FLAG;
+    }
+
+    /**
+     * 丢弃缓冲起来的影子 Configuration，运行中的 Configuration 保持不变
+     */
+    @Override
+    public void discard() {
+        pendingStagingConfigurations.clear();
+        pendingMapperProxyFactories.clear();
+        pendingWarmUpTargets.clear();
+    }
+
+    /**
+     * 预热 {@link #flush()} 替换过的 Mapper
+     * <p>重新构建有变化的方法的 MapperMethod 缓存，并解析对应的 MappedStatement：触发 Configuration 中未完成的语句解析、
+     * 预先执行一次动态SQL的解析、构建结果映射和参数类型的反射信息。这些工作原本由热修复后第一次调用该方法的请求承担。</p>
+     * <p>预热只是尽力而为，失败时记录日志后跳过，不会影响已经生效的热修复。</p>
+     */
+    @Override
+    public void warmUp() {
+        if(pendingWarmUpTargets.isEmpty()) return;
+        try {
+            for (WarmUpTarget target : pendingWarmUpTargets) {
+                if(target.mapperProxyFactory!=null){
+                    warmUpMethodCache(target.configuration,target.mapperProxyFactory,getChangedMethodNames(target.changedStatementIds));
+                }
+                for (String statementId : target.changedStatementIds) {
+                    warmUpStatement(target.configuration,statementId);
+                }
+            }
+        } finally {
+            pendingWarmUpTargets.clear();
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "mybatis";
     }
 
     @Override
@@ -123,73 +258,137 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 删除 hotFixBeanClass 在 configuration 中的元数据信息
-     * @param configuration Mybatis 配置中心
-     * @param hotFixBeanClass 热修复Bean类
+     * 只清除Mapper代理对象中有变化的语句对应方法的缓存，没有变化的方法继续使用已经缓存的 MapperMethod
+     * @param mapperProxyFactory 原 Mapper 的代理工厂
+     * @param changedStatementIds 有变化的 MappedStatement 的 id
+     */
+    @SuppressWarnings("unchecked")
+    private void removeMethodCache(Object mapperProxyFactory, Set<String> changedStatementIds){
+        if(changedStatementIds.isEmpty()) return;
+        Set<String> changedMethodNames=getChangedMethodNames(changedStatementIds);
+        Map<Method,?> methodCache = getMethodCache(mapperProxyFactory);
+        methodCache.keySet().removeIf(method -> changedMethodNames.contains(method.getName()));
+        if(log.isInfoEnabled()){
+            log.info(" changed statements {} ",changedStatementIds);
+        }
+    }
+
+    /**
+     * 获取 有变化的 MappedStatement 对应的 Mapper 方法名
+     * @param changedStatementIds 有变化的 MappedStatement 的 id
      */
-    private void removeMybatisMedata(Configuration configuration, Class<?> hotFixBeanClass){
-        MapperRegistry mapperRegistry = configuration.getMapperRegistry();
-        //删除hotFixBean原来的缓存
-        Map<Class<?>,?> registryMapper = getRegistryMapper(mapperRegistry);
-        Object originalMapperProxyFactory = getMapperProxyFactory(registryMapper,hotFixBeanClass.getName());
-        //清除Mapper代理对象的缓存
-        if(originalMapperProxyFactory==null) {
-            return ;
+    private Set<String> getChangedMethodNames(Set<String> changedStatementIds){
+        Set<String> changedMethodNames=new HashSet<>();
+        for (String statementId : changedStatementIds) {
+            String methodName = statementId.substring(statementId.lastIndexOf('.') + 1);
+            int selectKeyIndex = methodName.indexOf('!');
+            changedMethodNames.add(selectKeyIndex==-1?methodName:methodName.substring(0,selectKeyIndex));
         }
-        Map methodCache = getMethodCache(originalMapperProxyFactory);
-        methodCache.clear();
-        //删除configuration#loadedResources的缓存
-        Set loadResource = getLoadResource(configuration);
-        loadResource.remove(hotFixBeanClass.toString());
-        loadResource.remove(generateXmlMapper(hotFixBeanClass));
-        // mapper 中的 key
-        List<String> keyPreFixs=getKeyPrefixs(hotFixBeanClass);
-        //删除 configuration # mappedStatements 的 originalClass 缓存
-        Map<String,?> mappedStatements = getMappedStatements(configuration);
-        removeMappedStatements(mappedStatements,keyPreFixs);
-        //删除 configuration # caches 的 originalClass 缓存
-        Map<String,?> caches = getCaches(configuration);
-        removeKey(caches,hotFixBeanClass.getName());
-        //删除 configuration # resultMaps 的 originalClass 缓存
-        Map<String,?> resultMaps = getResultMaps(configuration);
-        removeKey(resultMaps,hotFixBeanClass.getName());
-        //删除 configuration # parameterMap 的 originalClass 缓存
-        Map<String,?> parameterMap = getParameterMap(configuration);
-        removeKey(parameterMap,hotFixBeanClass.getName()+".");
-        //删除 configuration # keyGenerator 的 originalClass 缓存
-        Map<String, ?> keyGenerator = getKeyGenerator(configuration);
-        removeSelectKey(keyGenerator,keyPreFixs);
+        return changedMethodNames;
     }
 
     /**
-     * 是否有依赖 Mybatis-Plus 框架
+     * 重新构建 Mapper 代理对象中 changedMethodNames 方法的 MapperMethod 缓存
+     * <p>通过 mapperProxyFactory 创建一个只提供 {@link Configuration} 的 MapperProxy，调用它的 cachedInvoker(Method) 方法构建缓存，
+     * 构建 MapperMethod 只需要 Configuration，所以不会打开数据库连接。</p>
+     * @param configuration 运行中的 Configuration
+     * @param mapperProxyFactory 原 Mapper 的代理工厂
+     * @param changedMethodNames 有变化的方法名
      */
-    private boolean isHaveMybatisPlusDependent(){
-        boolean haveMybatisPlusDependent=false;
+    private void warmUpMethodCache(Configuration configuration, Object mapperProxyFactory, Set<String> changedMethodNames){
+        Class<?> mapperInterface;
+        Object mapperProxy;
         try {
-            getClass().getClassLoader().loadClass("org.apache.ibatis.builder.annotation.MapperAnnotationBuilder");
-            haveMybatisPlusDependent=true;
-        } catch (ClassNotFoundException e) {
-            //ignore
+            mapperInterface = (Class<?>) MybatisAccessors.method(mapperProxyFactory.getClass(), "getMapperInterface").invoke(mapperProxyFactory);
+            mapperProxy = MybatisAccessors.method(mapperProxyFactory.getClass(), "newInstance", SqlSession.class)
+                    .invoke(mapperProxyFactory, newWarmUpSqlSession(configuration));
+        } catch (Throwable e) {
+            if(log.isDebugEnabled()){
+                log.debug(" warm up mapper proxy factory [{}] fail ",mapperProxyFactory,e);
+            }
+            return;
+        }
+        if(mapperInterface==null || mapperProxy==null || !Proxy.isProxyClass(mapperProxy.getClass())) return;
+        InvocationHandler invocationHandler = Proxy.getInvocationHandler(mapperProxy);
+        MethodHandle cachedInvoker = MybatisAccessors.method(invocationHandler.getClass(), "cachedInvoker", Method.class);
+        for (Method method : mapperInterface.getMethods()) {
+            if(!changedMethodNames.contains(method.getName())) continue;
+            try {
+                cachedInvoker.invoke(invocationHandler,method);
+            } catch (Throwable e) {
+                //如删除了语句的方法，第一次调用时才会抛出异常
+                if(log.isDebugEnabled()){
+                    log.debug(" warm up method [{}] fail ",method,e);
+                }
+            }
         }
-        return haveMybatisPlusDependent;
+    }
+
+    /**
+     * 解析 statementId 对应的 MappedStatement
+     * <p>预先执行一次动态SQL的解析，并构建结果映射和参数类型的反射信息</p>
+     * @param configuration 运行中的 Configuration
+     * @param statementId MappedStatement 的 id
+     */
+    private void warmUpStatement(Configuration configuration, String statementId){
+        try {
+            //hasStatement 会先完成 Configuration 中未完成的语句解析，被删除的语句直接跳过
+            if(!configuration.hasStatement(statementId)) return;
+            MappedStatement mappedStatement = configuration.getMappedStatement(statementId);
+            ReflectorFactory reflectorFactory = configuration.getReflectorFactory();
+            if(mappedStatement.getParameterMap()!=null){
+                findReflector(reflectorFactory, mappedStatement.getParameterMap().getType());
+            }
+            for (ResultMap resultMap : mappedStatement.getResultMaps()) {
+                findReflector(reflectorFactory, resultMap.getType());
+                for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+                    findReflector(reflectorFactory, resultMapping.getJavaType());
+                }
+            }
+            if(mappedStatement.getSqlSource() instanceof DynamicSqlSource){
+                mappedStatement.getBoundSql(null);
+            }
+        } catch (RuntimeException e) {
+            //动态SQL依赖参数时，没有参数会解析失败，第一次调用时再解析
+            if(log.isDebugEnabled()){
+                log.debug(" warm up statement [{}] fail ",statementId,e);
+            }
+        }
+    }
+
+    /**
+     * 构建 type 的反射信息并缓存到 reflectorFactory 中
+     * @param reflectorFactory Mybatis 反射信息工厂
+     * @param type 参数、结果的类型
+     */
+    private void findReflector(ReflectorFactory reflectorFactory, Class<?> type){
+        if(type==null || type.isPrimitive() || type.isArray() || type.getName().startsWith("java.")) return;
+        reflectorFactory.findForClass(type);
+    }
+
+    /**
+     * 创建预热用的 SqlSession，只支持 {@link SqlSession#getConfiguration()}，其他方法都会抛出 {@link UnsupportedOperationException}
+     * @param configuration 运行中的 Configuration
+     */
+    private SqlSession newWarmUpSqlSession(Configuration configuration){
+        return (SqlSession) Proxy.newProxyInstance(SqlSession.class.getClassLoader(), new Class<?>[]{SqlSession.class}, (proxy, method, args) -> {
+            if("getConfiguration".equals(method.getName())) return configuration;
+            throw new UnsupportedOperationException("warm up sqlSession not support " + method.getName());
+        });
     }
 
     /**
      * 加载 mapper.xml ,并将解析的数据注册到 {@link Configuration} 中
-     * <p>读取在 hotFixBeanClass 包里的 mapper.xml </p>
+     * <p>从 hotFixBeanClass 所在的热修复补丁中读取在 hotFixBeanClass 包里的 mapper.xml </p>
      * @param hotFixBeanClass 热修复Bean类
      * @param configuration Mybatis 配置中心
      */
     private void loadXmlMapper(Class<?> hotFixBeanClass,Configuration configuration){
         String xmlResource= generateXmlMapper(hotFixBeanClass);
-        try {
-            FileInputStream fin=new FileInputStream(new File(hotFixProperties.getLoadPath()+xmlResource));
-            XMLMapperBuilder xmlParser = new XMLMapperBuilder(fin, configuration, xmlResource, configuration.getSqlFragments(), hotFixBeanClass.getName());
-            xmlParser.parse();
-        } catch (FileNotFoundException e) {
-            //ignore
-        }
+        InputStream in = HotFixClassLoader.getPatchResourceAsStream(hotFixBeanClass, hotFixBeanClass.getName().replace('.', '/') + ".xml");
+        if(in==null) return;
+        XMLMapperBuilder xmlParser = new XMLMapperBuilder(in, configuration, xmlResource, configuration.getSqlFragments(), hotFixBeanClass.getName());
+        xmlParser.parse();
     }
 
     /**
@@ -217,90 +416,71 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
         return keyPreFixs;
     }
 
-    //—————————————————————————— 删除原 Mapper 类注册到 Configuration 对象的相关缓存数据————————————————
-
     /**
-     * 获取 原Mapper 对应的 MapperProxyFactory 对象
-     * <p>MapperProxyFactory 对象用于生成 Mapper接口的代理对象的工厂类</p>
-     * @param registryMapper 已注册的Mapper，key=原Mapper接口类，MapperProxyFactory 对象
-     * @param className 热修复Bean类名
+     * 等待预热的 Mapper
      */
-    private Object getMapperProxyFactory(Map<Class<?>,?> registryMapper,String className){
-        for (Map.Entry<Class<?>, ?> entry : registryMapper.entrySet()) {
-            if(entry.getKey().getName().equals(className)){
-                return entry.getValue();
-            }
+    private static class WarmUpTarget {
+
+        /**
+         * 运行中的 Configuration
+         */
+        private final Configuration configuration;
+
+        /**
+         * 原 Mapper 的代理工厂，可以为null
+         */
+        private final Object mapperProxyFactory;
+
+        /**
+         * 有变化的 MappedStatement 的 id
+         */
+        private final Set<String> changedStatementIds;
+
+        private WarmUpTarget(Configuration configuration, Object mapperProxyFactory, Set<String> changedStatementIds) {
+            this.configuration = configuration;
+            this.mapperProxyFactory = mapperProxyFactory;
+            this.changedStatementIds = changedStatementIds;
         }
-        return null;
-    }
-
-    /**
-     * 删除 在 map 中以 keyPreFix 作为前缀的元素
-     * @param map configuration # caches,configuration # resultMaps,configuration # parameterMap
-     * @param keyPreFix key前缀
-     */
-    private void removeKey(Map<String,?> map, String keyPreFix){
-        map.entrySet().removeIf(entry->entry.getKey().startsWith(keyPreFix));
     }
 
-    /**
-     * 删除 在 mappedStatements 中以 keyPreFixs 作为前缀的元素
-     * @param mappedStatements configuration # mappedStatements
-     * @param keyPreFixs key前缀集合
-     */
-    private void removeMappedStatements(Map<String,?> mappedStatements,List<String> keyPreFixs){
-        mappedStatements.entrySet().removeIf(entry -> {
-            String key=entry.getKey();
-            for (String keyPriFix : keyPreFixs) {
-                if(key.startsWith(keyPriFix)){
-                    return true;
-                }
-            }
-            return false;
-        });
-    }
+    //—————————————————————————— 原 Mapper 类注册到 Configuration 对象的相关缓存数据————————————————
 
     /**
-     * 删除 在 mappedStatements 中以 keyPreFixs 作为前缀的元素
-     * @param keyGenerator configuration # keyGenerator
-     * @param keyPreFixs key前缀集合
+     * 获取 原Mapper 对应的 MapperProxyFactory 对象
+     * <p>MapperProxyFactory 对象用于生成 Mapper接口的代理对象的工厂类</p>
+     * <p>通过 Bean 工厂的类加载器加载出原 Mapper 接口类，直接从 registryMapper 中查找；加载不到时说明是新增的 Mapper，没有原来的代理工厂</p>
+     * @param registryMapper 已注册的Mapper，key=原Mapper接口类，MapperProxyFactory 对象
+     * @param className 热修复Bean类名
      */
-    private void removeSelectKey(Map<String,?> keyGenerator, List<String> keyPreFixs){
-        keyGenerator.entrySet().removeIf(entry -> {
-            String key=entry.getKey();
-            for (String keyPriFix : keyPreFixs) {
-                if(key.startsWith(keyPriFix+"!selectKey")){
-                    return true;
-                }
-            }
-            return false;
-        });
+    private Object getMapperProxyFactory(Map<Class<?>,?> registryMapper,String className){
+        ClassLoader beanClassLoader = beanFactory.getBeanClassLoader();
+        if(!ClassUtils.isPresent(className, beanClassLoader)) return null;
+        return registryMapper.get(ClassUtils.resolveClassName(className, beanClassLoader));
     }
 
     //——————————————————————————————反射获取 Mybatis 中的缓存属性，如 Configuration的相关属性————————————————————
 
     /**
-     * 反射获取 Configuration # MapperRegistry # knownMappers 属性
+     * 获取 Configuration # MapperRegistry # knownMappers 属性
      * @param mapperRegistry Configuration # MapperRegistry对象
      */
-    @SuppressWarnings("rawtypes")
+    @SuppressWarnings({"rawtypes","unchecked"})
     protected Map<Class<?>,?> getRegistryMapper(MapperRegistry mapperRegistry){
-        return (Map) getFieldValue(mapperRegistry.getClass(),mapperRegistry,"knownMappers",Map.class);
+        return MybatisAccessors.field(mapperRegistry.getClass(),"knownMappers").get(mapperRegistry,Map.class);
     }
 
     /**
-     * 反射获取 Configuration # MapperRegistry # knownMappers 属性中 Mapper 类 对应的 MapperProxyFactory 对象的
+     * 获取 Configuration # MapperRegistry # knownMappers 属性中 Mapper 类 对应的 MapperProxyFactory 对象的
      * methodCache 属性
      * @param mapperProxyFactory Configuration # MapperRegistry # knownMappers 属性中 Mapper 类 对应的 MapperProxyFactory 对象
      */
     @SuppressWarnings("rawtypes")
     protected Map getMethodCache(Object mapperProxyFactory){
-        log.info(mapperProxyFactory.getClass().getName());
-        return (Map) getFieldValue(mapperProxyFactory.getClass(),mapperProxyFactory,"methodCache",Map.class);
+        return MybatisAccessors.field(mapperProxyFactory.getClass(),"methodCache").get(mapperProxyFactory,Map.class);
     }
 
     /**
-     * 反射获取 Configuration # loadedResources 属性
+     * 获取 Configuration # loadedResources 属性
      * @param configuartion {@link Configuration} 对象
      */
     @SuppressWarnings("rawtypes")
@@ -309,7 +489,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # mappedStatements 属性
+     * 获取 Configuration # mappedStatements 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getMappedStatements(Object configuartion){
@@ -317,7 +497,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # caches 属性
+     * 获取 Configuration # caches 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getCaches(Object configuartion){
@@ -325,7 +505,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # keyGenerators 属性
+     * 获取 Configuration # keyGenerators 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getKeyGenerators(Object configuartion){
@@ -333,7 +513,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # resultMaps 属性
+     * 获取 Configuration # resultMaps 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getResultMaps(Object configuartion){
@@ -341,7 +521,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # parameterMaps 属性
+     * 获取 Configuration # parameterMaps 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getParameterMap(Object configuartion){
@@ -349,7 +529,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
     }
 
     /**
-     * 反射获取 Configuration # parameterMaps 属性
+     * 获取 Configuration # parameterMaps 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getSqlFragments(Object configuartion){
@@ -358,7 +538,7 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
 
 
     /**
-     * 反射获取 Configuration # keyGenerators 属性
+     * 获取 Configuration # keyGenerators 属性
      * @param configuartion {@link Configuration} 对象
      */
     protected Map<String,?> getKeyGenerator(Object configuartion){
@@ -367,48 +547,24 @@ public class MybatisHotFixBeanGenerator implements HotFixBeanGenerator {
 
     /**
      * 获取 configuartion 属性中 fieldName 的属性，并进行 matchType 类型匹配
+     * <p>访问器在启动时已经解析并缓存【见 {@link MybatisAccessors}】，不会再反射查找属性</p>
      * @param configuartion configuartion 对象
      * @param fieldName 属性名
      * @param matchType 属性要匹配的类型，匹配失败会抛出 {@link HotFixException}
      */
     protected Object getConfigurateFieldValue(Object configuartion,String fieldName,Class<?> matchType){
-        Class<?> configuartionCls=configuartion.getClass();
-        Object fieldValue =null;
-        try{
-            fieldValue=getFieldValue(configuartionCls, configuartion, fieldName, matchType);
-            return fieldValue;
-        }catch (HotFixException e){
-            if(!(e.getCause() instanceof NoSuchFieldException)){
-                throw e;
-            }
-        }
-        if(configuartionCls.getSuperclass()==Configuration.class){
-            configuartionCls=Configuration.class;
-        }
-        return getFieldValue(configuartionCls, configuartion, fieldName, matchType);
+        return MybatisAccessors.field(configuartion.getClass(),fieldName).get(configuartion,matchType);
     }
 
     /**
-     * 从 cls中获取fieldName对应的Field对象，然后通过 obj 获取 fieldName 的属性，最后进行 matchType 类型匹配
-     * @param cls 要被获取 fieldName Field对象的cls
+     * 从 cls 及其父类中找到 fieldName 属性，然后获取 obj 的属性值，最后进行 matchType 类型匹配
+     * @param cls 要被获取 fieldName 属性的类
      * @param obj 要被获取 fieldName 属性值的 Object 对象
      * @param fieldName 属性名
      * @param matchType 属性要匹配的类型，匹配失败会抛出 {@link HotFixException}
      */
     protected Object getFieldValue(Class<?> cls,Object obj,String fieldName,Class<?> matchType){
-        try {
-            Field loadedResourcesField=cls.getDeclaredField(fieldName);
-            loadedResourcesField.setAccessible(true);
-            Object o = loadedResourcesField.get(obj);
-            if(o!=null && matchType==o.getClass()){
-                throw new HotFixException(" the '"+fieldName+"' field of "+cls.getName()+" is not "+Set.class.getName());
-            }
-            return  o;
-        } catch (NoSuchFieldException e) {
-            throw new HotFixException(cls.getName()+" no found '"+fieldName+"' field",e);
-        } catch (IllegalAccessException e) {
-            throw new HotFixException(cls.getName()+" get '"+fieldName+"' field value fail",e);
-        }
+        return MybatisAccessors.field(cls,fieldName).get(obj,matchType);
     }
 
 }
@@ -0,0 +1,187 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandler;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Mybatis 元数据的结构指纹，用于判断热修复前后的 MappedStatement、ResultMap、ParameterMap、KeyGenerator 是否有变化
+ * <p>通过反射遍历元数据的对象图生成指纹，包括 SqlSource【静态SQL、动态SQL节点树、参数映射】、结果映射、参数映射、主键生成器等，
+ * 忽略以下与结构无关的属性：</p>
+ * <ol>
+ *  <li>{@link Configuration}：所有元数据共享同一个 Configuration</li>
+ *  <li>{@link Cache}：二级缓存以命名空间为单位比较，见 {@link #ofCache(Cache)}</li>
+ *  <li>{@link Log}：由 MappedStatement 的 id 决定</li>
+ *  <li>MappedStatement#resource：热修复补丁中的 mapper.xml 路径与 classpath 上的不一样</li>
+ * </ol>
+ * <p>{@link TypeHandler} 只比较类名，{@link Set}、{@link Map} 排序后比较，保证相同结构得到相同指纹；JDK 中的其他类使用 toString 比较。</p>
+ * @author chenzhuobin
+ */
+class MybatisMetadataFingerprint {
+
+    /**
+     * MappedStatement 中忽略的属性名
+     */
+    private static final Set<String> IGNORED_MAPPED_STATEMENT_FIELDS=new HashSet<>(Collections.singletonList("resource"));
+
+    /**
+     * 缓存每个类需要参与指纹计算的属性
+     */
+    private static final Map<Class<?>,List<Field>> FIELDS_CACHE=new ConcurrentHashMap<>();
+
+    private MybatisMetadataFingerprint() {
+    }
+
+    /**
+     * 计算元数据的结构指纹
+     * @param metadata MappedStatement、ResultMap、ParameterMap、KeyGenerator 等元数据
+     */
+    static String of(Object metadata){
+        StringBuilder fingerprint=new StringBuilder(256);
+        append(fingerprint,metadata,Collections.newSetFromMap(new IdentityHashMap<>()));
+        return fingerprint.toString();
+    }
+
+    /**
+     * 计算二级缓存的配置指纹：缓存id + 装饰器链的类名
+     * <p>缓存的内容不参与计算，所以配置没有变化时热修复后可以继续使用原来的缓存</p>
+     * @param cache 二级缓存，可以为null
+     */
+    static String ofCache(Cache cache){
+        if(cache==null) return "null";
+        StringBuilder fingerprint=new StringBuilder(cache.getId());
+        Object current=cache;
+        Set<Object> visited=Collections.newSetFromMap(new IdentityHashMap<>());
+        while (current!=null && visited.add(current)){
+            fingerprint.append('>').append(current.getClass().getName());
+            current=getDelegate(current);
+        }
+        return fingerprint.toString();
+    }
+
+    private static Object getDelegate(Object cache){
+        for (Field field : getFields(cache.getClass())) {
+            if(Cache.class.isAssignableFrom(field.getType())){
+                try {
+                    return field.get(cache);
+                } catch (IllegalAccessException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void append(StringBuilder fingerprint, Object value, Set<Object> visited){
+        if(value==null){
+            fingerprint.append("null");
+            return;
+        }
+        Class<?> cls=value.getClass();
+        if(value instanceof CharSequence || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum || value instanceof Pattern){
+            fingerprint.append(value);
+            return;
+        }
+        if(value instanceof Class){
+            fingerprint.append(((Class<?>) value).getName());
+            return;
+        }
+        if(value instanceof TypeHandler){
+            fingerprint.append(cls.getName());
+            return;
+        }
+        if(value instanceof Configuration || value instanceof Cache || value instanceof Log){
+            return;
+        }
+        if(!visited.add(value)){
+            fingerprint.append("<cycle>");
+            return;
+        }
+        if(cls.isArray()){
+            fingerprint.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                append(fingerprint,Array.get(value,i),visited);
+                fingerprint.append(',');
+            }
+            fingerprint.append(']');
+        }else if(value instanceof Set){
+            List<String> elements=new ArrayList<>();
+            for (Object element : (Set<?>) value) {
+                StringBuilder elementFingerprint=new StringBuilder();
+                append(elementFingerprint,element,visited);
+                elements.add(elementFingerprint.toString());
+            }
+            Collections.sort(elements);
+            fingerprint.append(elements);
+        }else if(value instanceof Collection){
+            fingerprint.append('[');
+            for (Object element : (Collection<?>) value) {
+                append(fingerprint,element,visited);
+                fingerprint.append(',');
+            }
+            fingerprint.append(']');
+        }else if(value instanceof Map){
+            List<String> entries=new ArrayList<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                StringBuilder entryFingerprint=new StringBuilder();
+                append(entryFingerprint,entry.getKey(),visited);
+                entryFingerprint.append('=');
+                append(entryFingerprint,entry.getValue(),visited);
+                entries.add(entryFingerprint.toString());
+            }
+            Collections.sort(entries);
+            fingerprint.append(entries);
+        }else if(isJdkClass(cls)){
+            //JDK 内部的类不能反射访问，使用 toString，如果 toString 不稳定只会被当成有变化
+            fingerprint.append(cls.getName()).append(':').append(value);
+        }else{
+            fingerprint.append(cls.getName()).append('{');
+            for (Field field : getFields(cls)) {
+                if(value instanceof MappedStatement && IGNORED_MAPPED_STATEMENT_FIELDS.contains(field.getName())) continue;
+                fingerprint.append(field.getName()).append('=');
+                try {
+                    append(fingerprint,field.get(value),visited);
+                } catch (IllegalAccessException e) {
+                    fingerprint.append("<inaccessible>");
+                }
+                fingerprint.append(';');
+            }
+            fingerprint.append('}');
+        }
+    }
+
+    private static boolean isJdkClass(Class<?> cls){
+        String className = cls.getName();
+        return className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("sun.") || className.startsWith("jdk.");
+    }
+
+    /**
+     * 获取 cls 及其父类所有非静态属性
+     * @param cls 类
+     */
+    private static List<Field> getFields(Class<?> cls){
+        return FIELDS_CACHE.computeIfAbsent(cls, key -> {
+            List<Field> fields=new ArrayList<>();
+            Class<?> current=key;
+            while (current!=null && current!=Object.class){
+                for (Field field : current.getDeclaredFields()) {
+                    if(Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+                current=current.getSuperclass();
+            }
+            return fields;
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import czb.framework.hotfix.core.strategy.impl.MybatisAccessors.FieldAccessor;
+import org.apache.ibatis.session.Configuration;
+
+import java.util.*;
+
+/**
+ * {@link Configuration} 中元数据集合的 命名空间 - key 索引
+ * <p>热修复一个 Mapper 时，只需要通过索引找到它自己命名空间下的 key，不需要遍历整个集合逐个匹配 key 前缀，
+ * 所以删除一个 Mapper 元数据的代价与 Configuration 中元数据的总数无关。</p>
+ * <p>索引在第一次使用某个集合时构建，热修复生效替换集合后由 {@link #update(FieldAccessor, Map, Set, Set)} 增量更新；
+ * 如果发现集合被其他途径修改过【集合对象或者大小不一致】，会重新构建该集合的索引。</p>
+ * <p>key 的所属命名空间为最后一个 '.' 之前的部分，如 mappedStatements 的 "命名空间.方法名"、keyGenerators 的 "命名空间.方法名!selectKey"，
+ * caches 的 key 就是命名空间本身；没有 '.' 的短名称不会加入索引。</p>
+ * @author chenzhuobin
+ */
+class MybatisNamespaceIndex {
+
+    private static final String CACHES_FIELD_NAME="caches";
+
+    /**
+     * 每个集合的索引
+     */
+    private final Map<FieldAccessor,FieldIndex> fieldIndexes=new HashMap<>();
+
+    /**
+     * 获取 liveMap 中属于 namespace 命名空间【包括 namespace 本身以及以 namespace+"." 开头的命名空间】的 key
+     * @param field 集合对应的 Configuration 属性
+     * @param liveMap 运行中的集合
+     * @param namespace 命名空间
+     */
+    synchronized Set<String> getKeys(FieldAccessor field, Map<?,?> liveMap, String namespace){
+        FieldIndex fieldIndex = getFieldIndex(field, liveMap);
+        Set<String> keys=new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : fieldIndex.keysByOwner.subMap(namespace, true, namespace + ".\uffff", true).entrySet()) {
+            String owner = entry.getKey();
+            if(owner.equals(namespace) || owner.startsWith(namespace+".")){
+                keys.addAll(entry.getValue());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 热修复生效替换集合后，增量更新索引
+     * @param field 集合对应的 Configuration 属性
+     * @param newLiveMap 替换后的运行中的集合
+     * @param removedKeys 删除的 key
+     * @param addedKeys 新增的 key
+     */
+    synchronized void update(FieldAccessor field, Map<?,?> newLiveMap, Set<String> removedKeys, Set<String> addedKeys){
+        FieldIndex fieldIndex = fieldIndexes.get(field);
+        if(fieldIndex==null) return;
+        for (String key : removedKeys) {
+            fieldIndex.remove(key);
+        }
+        for (String key : addedKeys) {
+            fieldIndex.add(key);
+        }
+        fieldIndex.indexedMap=newLiveMap;
+        fieldIndex.indexedSize=newLiveMap.size();
+    }
+
+    private FieldIndex getFieldIndex(FieldAccessor field, Map<?,?> liveMap){
+        FieldIndex fieldIndex = fieldIndexes.get(field);
+        if(fieldIndex==null || fieldIndex.indexedMap!=liveMap || fieldIndex.indexedSize!=liveMap.size()){
+            fieldIndex=new FieldIndex(CACHES_FIELD_NAME.equals(field.getName()));
+            for (Object key : liveMap.keySet()) {
+                fieldIndex.add((String) key);
+            }
+            fieldIndex.indexedMap=liveMap;
+            fieldIndex.indexedSize=liveMap.size();
+            fieldIndexes.put(field,fieldIndex);
+        }
+        return fieldIndex;
+    }
+
+    /**
+     * 一个集合的索引
+     */
+    private static class FieldIndex {
+
+        /**
+         * key 本身是否就是命名空间
+         */
+        private final boolean keyIsNamespace;
+
+        /**
+         * 所属命名空间 - key 集合，按命名空间排序以便查找子命名空间
+         */
+        private final TreeMap<String,Set<String>> keysByOwner=new TreeMap<>();
+
+        /**
+         * 构建索引时的集合对象
+         */
+        private Map<?,?> indexedMap;
+
+        /**
+         * 构建索引时的集合大小
+         */
+        private int indexedSize;
+
+        private FieldIndex(boolean keyIsNamespace) {
+            this.keyIsNamespace = keyIsNamespace;
+        }
+
+        private void add(String key){
+            String owner = getOwner(key);
+            if(owner==null) return;
+            keysByOwner.computeIfAbsent(owner,k->new HashSet<>()).add(key);
+        }
+
+        private void remove(String key){
+            String owner = getOwner(key);
+            if(owner==null) return;
+            Set<String> keys = keysByOwner.get(owner);
+            if(keys==null) return;
+            keys.remove(key);
+            if(keys.isEmpty()) keysByOwner.remove(owner);
+        }
+
+        private String getOwner(String key){
+            if(keyIsNamespace) return key;
+            int lastDotIndex = key.lastIndexOf('.');
+            return lastDotIndex==-1?null:key.substring(0,lastDotIndex);
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.strategy.impl.MybatisAccessors.FieldAccessor;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * 热修复 Mapper 时使用的影子 {@link Configuration}
+ * <p>影子 Configuration 是运行中 Configuration 的浅拷贝。mappedStatements、caches、resultMaps、parameterMaps、keyGenerators、
+ * sqlFragments 这些会被解析过程修改的集合不会复制，而是换成覆盖在运行中集合之上的 {@link StrictMaps.StagedMap}：解析出来的新元数据
+ * 只写到它自己的集合中，读取时先查自己，再查运行中的集合，并隐藏热修复 Mapper 命名空间的旧元数据。loadedResources、cacheRefMap
+ * 每个 Mapper 只有几项，直接复制。热修复 Mapper 的 mapper.xml 和接口注解都解析到影子 Configuration 中，运行中的 Configuration
+ * 在解析期间不受任何影响。</p>
+ * <p>隐藏命名空间的元数据时通过 {@link MybatisNamespaceIndex} 只找出该命名空间自己的 key，不需要遍历整个集合匹配 key 前缀，
+ * 所以准备一个 Mapper 的代价与 Configuration 中元数据的总数无关。</p>
+ * <p>生效时，将运行中的集合复制一份，替换成新命名空间的元数据后，通过反射一次性替换集合的引用，同一次热修复的多个 Mapper 一起生效时每个集合只复制和替换一次，
+ * 所以请求线程不会看到命名空间被删除到重新注册之间的中间状态，也就不会出现 "Mapped Statements collection does not contain value" 异常。
+ * 替换顺序为：先在其他集合中加上新的元数据，再替换 mappedStatements，最后从其他集合中删除已经不存在的旧元数据，
+ * 保证任何时刻 MappedStatement 引用的 resultMap 等元数据都是存在的。</p>
+ * @author chenzhuobin
+ */
+class MybatisStagingConfiguration {
+
+    private static Logger log= LoggerFactory.getLogger(MybatisStagingConfiguration.class);
+
+    /**
+     * 需要在影子 Configuration 中复制出来的 Map 类型的属性名，mappedStatements 必须放在最后
+     */
+    private static final List<String> STAGED_MAP_FIELD_NAMES=Arrays.asList("caches","resultMaps","parameterMaps","keyGenerators","sqlFragments","mappedStatements");
+
+    private static final String MAPPED_STATEMENTS_FIELD_NAME="mappedStatements";
+
+    private static final String CACHES_FIELD_NAME="caches";
+
+    private static final String SQL_FRAGMENTS_FIELD_NAME="sqlFragments";
+
+    private static final String LOADED_RESOURCES_FIELD_NAME="loadedResources";
+
+    private static final String CACHE_REF_MAP_FIELD_NAME="cacheRefMap";
+
+    /**
+     * 影子 Configuration 中需要重新创建的，解析过程中存放未完成元数据的集合属性名
+     */
+    private static final List<String> INCOMPLETE_FIELD_NAMES=Arrays.asList("incompleteStatements","incompleteCacheRefs","incompleteResultMaps","incompleteMethods");
+
+    /**
+     * Mybatis-Plus 的 GlobalConfigUtils 类名，Mybatis-Plus 以 Integer.toHexString(Configuration#hashCode()) 为 key 保存每个 Configuration 的全局配置
+     */
+    private static final String MYBATIS_PLUS_GLOBAL_CONFIG_UTILS="com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils";
+
+    private static final ObjenesisStd OBJENESIS=new ObjenesisStd(true);
+
+    /**
+     * 运行中的 Configuration
+     */
+    private final Configuration liveConfiguration;
+
+    /**
+     * 影子 Configuration
+     */
+    private final Configuration stagingConfiguration;
+
+    /**
+     * 热修复 Mapper 的命名空间
+     */
+    private final String namespace;
+
+    /**
+     * 运行中的 Configuration 的 命名空间 - key 索引
+     */
+    private final MybatisNamespaceIndex namespaceIndex;
+
+    /**
+     * 复制出来的 Map 类型的属性，与 {@link #STAGED_MAP_FIELD_NAMES} 的顺序一致
+     */
+    private final List<FieldAccessor> stagedMapFields=new ArrayList<>();
+
+    /**
+     * 每个 Map 类型的属性中属于热修复 Mapper 命名空间的旧 key
+     */
+    private final Map<FieldAccessor,Set<String>> removedKeys=new HashMap<>();
+
+    /**
+     * 每个 Map 类型的属性中解析出来的新元数据，在 {@link #seal()} 时计算
+     */
+    private final Map<FieldAccessor,Map<String,Object>> addedEntries=new HashMap<>();
+
+    /**
+     * 新建一个影子 Configuration，并删除热修复 Mapper 命名空间的元数据
+     * @param liveConfiguration 运行中的 Configuration
+     * @param namespaceIndex 运行中的 Configuration 的 命名空间 - key 索引
+     * @param namespace 热修复 Mapper 的命名空间，即 Mapper 接口类名
+     * @param keyPrefixs 热修复 Mapper 自己定义的方法对应的 mappedStatements key 前缀【类名.方法名】
+     * @param resources 热修复 Mapper 在 loadedResources 中的资源名
+     */
+    MybatisStagingConfiguration(Configuration liveConfiguration, MybatisNamespaceIndex namespaceIndex, String namespace,
+                                List<String> keyPrefixs, Collection<String> resources) {
+        this.liveConfiguration = liveConfiguration;
+        this.namespaceIndex = namespaceIndex;
+        this.namespace = namespace;
+        this.stagingConfiguration = (Configuration) OBJENESIS.newInstance(liveConfiguration.getClass());
+        copyFields();
+        for (String fieldName : STAGED_MAP_FIELD_NAMES) {
+            for (FieldAccessor field : findFields(fieldName)) {
+                stageMap(field,keyPrefixs);
+            }
+        }
+        for (FieldAccessor field : findFields(LOADED_RESOURCES_FIELD_NAME)) {
+            Set<String> loadedResources = new HashSet<>(getSet(field, liveConfiguration));
+            loadedResources.removeAll(resources);
+            setValue(field,stagingConfiguration,loadedResources);
+        }
+        for (FieldAccessor field : findFields(CACHE_REF_MAP_FIELD_NAME)) {
+            setValue(field,stagingConfiguration,new HashMap<>(getMap(field, liveConfiguration)));
+        }
+        for (String fieldName : INCOMPLETE_FIELD_NAMES) {
+            for (FieldAccessor field : findFields(fieldName)) {
+                setValue(field,stagingConfiguration,new LinkedList<>());
+            }
+        }
+        registerGlobalConfig();
+    }
+
+    /**
+     * 获取 影子 Configuration，热修复 Mapper 的 mapper.xml 和接口注解都解析到该对象中
+     */
+    Configuration getConfiguration() {
+        return stagingConfiguration;
+    }
+
+    /**
+     * 获取 运行中的 Configuration
+     */
+    Configuration getLiveConfiguration() {
+        return liveConfiguration;
+    }
+
+    /**
+     * 解析完成后调用，计算出解析出来的新元数据，改成引用运行中的 Configuration，并注销影子 Configuration 在 Mybatis-Plus 中的全局配置
+     * <p>新元数据会与运行中的元数据逐个比较结构指纹【见 {@link MybatisMetadataFingerprint}】，没有变化的 MappedStatement、ResultMap、
+     * ParameterMap、KeyGenerator 继续使用运行中的对象，只替换真正有变化的部分。如果二级缓存的配置也没有变化，则继续使用运行中的二级缓存，
+     * 有变化的 MappedStatement 也会改成引用运行中的二级缓存，所以没有变化的语句的缓存内容不会丢失。</p>
+     */
+    void seal(){
+        unregisterGlobalConfig();
+        boolean cacheUnchanged = isCacheUnchanged();
+        for (FieldAccessor field : stagedMapFields) {
+            Map<?,?> liveMap = getValue(field, liveConfiguration, Map.class);
+            StrictMaps.StagedMap stagedMap = getValue(field, stagingConfiguration, StrictMaps.StagedMap.class);
+            Map<String,Object> added=new HashMap<>();
+            //影子集合自己只有解析出来的新元数据
+            for (Map.Entry<String, Object> entry : stagedMap.entrySet()) {
+                //StrictMap#get 找不到或者短名称有歧义时会抛出异常，getOrDefault 不会
+                if(liveMap.getOrDefault(entry.getKey(),null)!=entry.getValue()){
+                    added.put(entry.getKey(),stagedMap.toLiveValue(entry.getKey(),entry.getValue()));
+                }
+            }
+            removedKeys.get(field).removeAll(added.keySet());
+            if(CACHES_FIELD_NAME.equals(field.getName())){
+                if(cacheUnchanged) added.clear();
+            }else if(!SQL_FRAGMENTS_FIELD_NAME.equals(field.getName()) && (cacheUnchanged || !isMappedStatementsField(field))){
+                keepUnchanged(liveMap,added);
+            }
+            addedEntries.put(field,added);
+        }
+        if(cacheUnchanged){
+            useLiveCache();
+        }
+        rebindConfiguration();
+    }
+
+    /**
+     * 获取 有变化的 MappedStatement 的 id，包括新增、修改和删除的
+     */
+    Set<String> getChangedStatementIds(){
+        Set<String> changedStatementIds=new HashSet<>();
+        for (FieldAccessor field : stagedMapFields) {
+            if(!isMappedStatementsField(field)) continue;
+            for (String key : addedEntries.get(field).keySet()) {
+                if(key.indexOf('.')!=-1) changedStatementIds.add(key);
+            }
+            for (String key : removedKeys.get(field)) {
+                if(key.indexOf('.')!=-1) changedStatementIds.add(key);
+            }
+        }
+        return changedStatementIds;
+    }
+
+    /**
+     * 从 added 中去掉与运行中的元数据结构指纹一致的元数据，以及它们的短名称
+     * @param liveMap 运行中的集合
+     * @param added 解析出来的新元数据
+     */
+    private void keepUnchanged(Map<?,?> liveMap, Map<String,Object> added){
+        Set<Object> unchangedValues=Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<String, Object> entry : added.entrySet()) {
+            if(entry.getKey().indexOf('.')==-1) continue;
+            Object liveValue = liveMap.getOrDefault(entry.getKey(), null);
+            if(liveValue!=null && MybatisMetadataFingerprint.of(liveValue).equals(MybatisMetadataFingerprint.of(entry.getValue()))){
+                unchangedValues.add(entry.getValue());
+            }
+        }
+        if(unchangedValues.isEmpty()) return;
+        added.values().removeIf(unchangedValues::contains);
+        if(log.isDebugEnabled()){
+            log.debug(" namespace [{}] keep {} unchanged metadata",namespace,unchangedValues.size());
+        }
+    }
+
+    /**
+     * 命名空间的二级缓存配置是否没有变化
+     */
+    private boolean isCacheUnchanged(){
+        for (FieldAccessor field : stagedMapFields) {
+            if(!CACHES_FIELD_NAME.equals(field.getName())) continue;
+            Object liveCache = getMap(field, liveConfiguration).getOrDefault(namespace, null);
+            Object stagedCache = getMap(field, stagingConfiguration).getOrDefault(namespace, null);
+            if(!MybatisMetadataFingerprint.ofCache((Cache) liveCache).equals(MybatisMetadataFingerprint.ofCache((Cache) stagedCache))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 有变化的 MappedStatement 改成引用运行中的二级缓存
+     */
+    private void useLiveCache(){
+        Object liveCache=null;
+        for (FieldAccessor field : findFields(CACHES_FIELD_NAME)) {
+            liveCache = getMap(field, liveConfiguration).getOrDefault(namespace, null);
+            if(liveCache!=null) break;
+        }
+        if(liveCache==null) return;
+        FieldAccessor cacheField = getMappedStatementCacheField();
+        for (FieldAccessor field : stagedMapFields) {
+            if(!isMappedStatementsField(field)) continue;
+            for (Object value : addedEntries.get(field).values()) {
+                if(value instanceof MappedStatement && ((MappedStatement) value).getCache()!=null){
+                    setValue(cacheField,value,liveCache);
+                }
+            }
+        }
+    }
+
+    /**
+     * 新元数据改成引用运行中的 Configuration，见 {@link MybatisConfigurationRebinder}
+     * <p>Mybatis-Plus 解析时发现实体的表信息属于其他 Configuration，会重新生成一份引用影子 Configuration 的表信息，同样要改掉</p>
+     */
+    private void rebindConfiguration(){
+        MybatisConfigurationRebinder rebinder = new MybatisConfigurationRebinder(stagingConfiguration, liveConfiguration);
+        for (Map<String, Object> added : addedEntries.values()) {
+            for (Object value : added.values()) {
+                rebinder.rebind(value);
+            }
+        }
+        if(isMybatisPlusPresent()){
+            MybatisPlusSupport.rebindTableInfos(stagingConfiguration,liveConfiguration);
+        }
+    }
+
+    private FieldAccessor getMappedStatementCacheField(){
+        return MybatisAccessors.field(MappedStatement.class,"cache");
+    }
+
+    /**
+     * 以替换集合引用的方式，将新命名空间的元数据生效到运行中的 Configuration
+     */
+    void commit(){
+        commit(Collections.singletonList(this));
+    }
+
+    /**
+     * 以替换集合引用的方式，将多个 Mapper 的新命名空间的元数据一起生效到运行中的 Configuration，每个集合只需要复制和替换一次
+     * @param stagingConfigurations 已经解析完成的影子 Configuration
+     */
+    static void commit(List<MybatisStagingConfiguration> stagingConfigurations){
+        Map<Configuration,List<MybatisStagingConfiguration>> groups=new IdentityHashMap<>();
+        for (MybatisStagingConfiguration stagingConfiguration : stagingConfigurations) {
+            groups.computeIfAbsent(stagingConfiguration.liveConfiguration,k->new ArrayList<>()).add(stagingConfiguration);
+        }
+        for (List<MybatisStagingConfiguration> group : groups.values()) {
+            commitGroup(group);
+        }
+    }
+
+    /**
+     * 将同一个运行中的 Configuration 的多个影子 Configuration 一起生效
+     * @param stagingConfigurations 同一个运行中的 Configuration 的影子 Configuration
+     */
+    private static void commitGroup(List<MybatisStagingConfiguration> stagingConfigurations){
+        MybatisStagingConfiguration first = stagingConfigurations.get(0);
+        Map<FieldAccessor,Map<String,Object>> added=new HashMap<>();
+        Map<FieldAccessor,Set<String>> removed=new HashMap<>();
+        for (MybatisStagingConfiguration stagingConfiguration : stagingConfigurations) {
+            for (FieldAccessor field : stagingConfiguration.stagedMapFields) {
+                added.computeIfAbsent(field,k->new HashMap<>()).putAll(stagingConfiguration.addedEntries.get(field));
+                removed.computeIfAbsent(field,k->new HashSet<>()).addAll(stagingConfiguration.removedKeys.get(field));
+            }
+        }
+        for (Map.Entry<FieldAccessor, Set<String>> entry : removed.entrySet()) {
+            entry.getValue().removeAll(added.get(entry.getKey()).keySet());
+        }
+        //先在其他集合中加上新的元数据
+        for (FieldAccessor field : first.stagedMapFields) {
+            if(isMappedStatementsField(field)) continue;
+            first.swapMap(field,added.get(field),Collections.emptySet());
+        }
+        //再替换 mappedStatements
+        for (FieldAccessor field : first.stagedMapFields) {
+            if(!isMappedStatementsField(field)) continue;
+            first.swapMap(field,added.get(field),removed.get(field));
+        }
+        //最后从其他集合中删除已经不存在的旧元数据
+        for (FieldAccessor field : first.stagedMapFields) {
+            if(isMappedStatementsField(field) || removed.get(field).isEmpty()) continue;
+            first.swapMap(field,Collections.emptyMap(),removed.get(field));
+        }
+        //loadedResources，cacheRefMap 只在解析时使用，直接修改即可
+        for (MybatisStagingConfiguration stagingConfiguration : stagingConfigurations) {
+            for (FieldAccessor field : first.findFields(LOADED_RESOURCES_FIELD_NAME)) {
+                first.getSet(field,first.liveConfiguration).addAll(first.getSet(field,stagingConfiguration.stagingConfiguration));
+            }
+            for (FieldAccessor field : first.findFields(CACHE_REF_MAP_FIELD_NAME)) {
+                first.getMap(field,first.liveConfiguration).putAll(first.getMap(field,stagingConfiguration.stagingConfiguration));
+            }
+        }
+    }
+
+    /**
+     * 复制运行中的 Map 集合，替换成新命名空间的元数据后，替换集合的引用
+     * <p>Configuration 中的集合都是 {@link Configuration.StrictMap}，它继承了 {@link HashMap}，使用 {@link HashMap#clone()}
+     * 复制可以保留它的类型和冲突提示信息；不是 {@link HashMap} 时只能直接修改运行中的集合。</p>
+     * @param field Map 类型的属性
+     * @param added 新元数据
+     * @param removed 要删除的旧 key
+     */
+    private void swapMap(FieldAccessor field, Map<String,Object> added, Set<String> removed){
+        Map<String,Object> liveMap = getMap(field, liveConfiguration);
+        if(!(liveMap instanceof HashMap)){
+            if(log.isWarnEnabled()){
+                log.warn(" the '{}' field of {} is not HashMap ,so modify it in place",field.getName(),field.getDeclaringClass().getName());
+            }
+            liveMap.keySet().removeAll(removed);
+            liveMap.putAll(added);
+            namespaceIndex.update(field,liveMap,removed,added.keySet());
+            return;
+        }
+        //HashMap#putAll 不会经过 StrictMap#put 的重复检查
+        Map<String,Object> newMap = cloneMap((HashMap<String,Object>) liveMap);
+        newMap.keySet().removeAll(removed);
+        newMap.putAll(added);
+        setValue(field,liveConfiguration,newMap);
+        namespaceIndex.update(field,newMap,removed,added.keySet());
+    }
+
+    /**
+     * 在影子 Configuration 中用覆盖在运行中集合之上的 {@link StrictMaps.StagedMap} 代替 Map 集合，并隐藏热修复 Mapper 命名空间的元数据
+     * @param field Map 类型的属性
+     * @param keyPrefixs 热修复 Mapper 自己定义的方法对应的 mappedStatements key 前缀
+     */
+    private void stageMap(FieldAccessor field, List<String> keyPrefixs){
+        Map<String,Object> liveMap = getMap(field, liveConfiguration);
+        Set<String> removed=new HashSet<>();
+        //通过索引只找出热修复 Mapper 命名空间下的 key
+        for (String key : namespaceIndex.getKeys(field, liveMap, namespace)) {
+            if(!isNamespaceKey(field.getName(),key,keyPrefixs)) continue;
+            Object value = liveMap.getOrDefault(key,null);
+            removed.add(key);
+            //StrictMap 还会以不带命名空间的短名称保存一份，同样需要隐藏
+            String shortKey = key.substring(key.lastIndexOf('.') + 1);
+            if(value!=null && !shortKey.equals(key) && liveMap.getOrDefault(shortKey,null)==value){
+                removed.add(shortKey);
+            }
+        }
+        setValue(field,stagingConfiguration,new StrictMaps.StagedMap(field.getName(),liveMap,new HashSet<>(removed)));
+        stagedMapFields.add(field);
+        removedKeys.put(field,removed);
+    }
+
+    /**
+     * key 是否属于热修复 Mapper 的命名空间
+     * @param fieldName Map 类型的属性名
+     * @param key Map 中的 key
+     * @param keyPrefixs 热修复 Mapper 自己定义的方法对应的 mappedStatements key 前缀
+     */
+    private boolean isNamespaceKey(String fieldName, String key, List<String> keyPrefixs){
+        if(MAPPED_STATEMENTS_FIELD_NAME.equals(fieldName)){
+            for (String keyPrefix : keyPrefixs) {
+                if(key.startsWith(keyPrefix)) return true;
+            }
+            return false;
+        }
+        if("keyGenerators".equals(fieldName)){
+            for (String keyPrefix : keyPrefixs) {
+                if(key.startsWith(keyPrefix+"!selectKey")) return true;
+            }
+            return false;
+        }
+        return key.equals(namespace) || key.startsWith(namespace+".");
+    }
+
+    private static boolean isMappedStatementsField(FieldAccessor field){
+        return MAPPED_STATEMENTS_FIELD_NAME.equals(field.getName());
+    }
+
+    /**
+     * 将运行中 Configuration 所有的非静态属性浅拷贝到影子 Configuration
+     */
+    private void copyFields(){
+        for (FieldAccessor field : MybatisAccessors.allFields(liveConfiguration.getClass())) {
+            setValue(field,stagingConfiguration,getValue(field,liveConfiguration,Object.class));
+        }
+    }
+
+    /**
+     * 找到 Configuration 及其子类中所有名为 fieldName 的属性，如 Mybatis-Plus 的 MybatisConfiguration 会重新定义同名的集合
+     * @param fieldName 属性名
+     */
+    private List<FieldAccessor> findFields(String fieldName){
+        return MybatisAccessors.fields(liveConfiguration.getClass(),fieldName);
+    }
+
+    private <T> T getValue(FieldAccessor field, Object obj, Class<T> type){
+        return field.get(obj,type);
+    }
+
+    /**
+     * 获取 Map 类型的属性，Configuration 中的元数据集合的 key 都是字符串
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String,Object> getMap(FieldAccessor field, Object obj){
+        return field.get(obj,Map.class);
+    }
+
+    /**
+     * 获取 Set 类型的属性，即 loadedResources
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getSet(FieldAccessor field, Object obj){
+        return field.get(obj,Set.class);
+    }
+
+    /**
+     * 复制 HashMap，{@link HashMap#clone()} 返回的是 Object
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String,Object> cloneMap(HashMap<String,Object> map){
+        return (Map<String,Object>) map.clone();
+    }
+
+    private void setValue(FieldAccessor field, Object obj, Object value){
+        field.set(obj,value);
+    }
+
+    /**
+     * 让影子 Configuration 使用运行中 Configuration 在 Mybatis-Plus 中的全局配置，否则解析时会得到一份默认的全局配置
+     */
+    private void registerGlobalConfig(){
+        if(!isMybatisPlusPresent()) return;
+        MybatisPlusSupport.share(liveConfiguration,stagingConfiguration);
+    }
+
+    /**
+     * 注销影子 Configuration 在 Mybatis-Plus 中的全局配置，防止内存泄漏
+     */
+    private void unregisterGlobalConfig(){
+        if(!isMybatisPlusPresent()) return;
+        MybatisPlusSupport.remove(stagingConfiguration);
+    }
+
+    private boolean isMybatisPlusPresent(){
+        return ClassUtils.isPresent(MYBATIS_PLUS_GLOBAL_CONFIG_UTILS,liveConfiguration.getClass().getClassLoader());
+    }
+
+    /**
+     * 继承 {@link Configuration} 只是为了访问它 protected 的 StrictMap，不会被实例化
+     */
+    private abstract static class StrictMaps extends Configuration {
+
+        /**
+         * 覆盖在运行中集合之上的影子集合
+         * <p>自己的集合中只保存解析出来的新元数据，查找时自己没有的 key 再到运行中的集合中查找，被隐藏的旧元数据除外，
+         * 所以 StrictMap 的重复检查、找不到时抛出异常、短名称冲突时标记为有歧义等行为与复制整个集合时一致。
+         * 运行中的集合在生效时是整体替换引用的，不会被修改，所以这里持有的是准备时的快照。</p>
+         */
+        static final class StagedMap extends StrictMap<Object> {
+
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * 准备时运行中的集合
+             */
+            private final transient Map<String,Object> liveMap;
+
+            /**
+             * 运行中的集合中被隐藏的 key，即热修复 Mapper 命名空间的旧元数据
+             */
+            private final transient Set<String> hiddenKeys;
+
+            /**
+             * 运行中的集合自己的 Ambiguity 类型的构造方法，运行中的集合就是 StrictMap 或者不是 StrictMap 时为null
+             */
+            private final transient Constructor<?> liveAmbiguityConstructor;
+
+            StagedMap(String name, Map<String,Object> liveMap, Set<String> hiddenKeys) {
+                super(name);
+                this.liveMap = liveMap;
+                this.hiddenKeys = hiddenKeys;
+                this.liveAmbiguityConstructor = findAmbiguityConstructor(liveMap.getClass());
+            }
+
+            /**
+             * 转换成可以放到运行中的集合中的值：有歧义的短名称标记换成运行中的集合自己的类型，如 Mybatis-Plus 的 StrictMap 只认它自己的 Ambiguity
+             * @param key 影子集合中的 key
+             * @param value 影子集合中的值
+             */
+            Object toLiveValue(String key, Object value){
+                if(!(value instanceof Ambiguity) || liveAmbiguityConstructor==null) return value;
+                //Mybatis-Plus 的 Ambiguity 是内部类，第一个参数是外部的集合对象
+                return liveAmbiguityConstructor.getParameterCount()==2 ? BeanUtils.instantiateClass(liveAmbiguityConstructor, liveMap, key)
+                        : BeanUtils.instantiateClass(liveAmbiguityConstructor, key);
+            }
+
+            private static Constructor<?> findAmbiguityConstructor(Class<?> mapClass){
+                for (Class<?> cls = mapClass; cls!=null && cls!=StrictMap.class; cls=cls.getSuperclass()) {
+                    for (Class<?> declaredClass : cls.getDeclaredClasses()) {
+                        if(!"Ambiguity".equals(declaredClass.getSimpleName())) continue;
+                        try {
+                            return Modifier.isStatic(declaredClass.getModifiers()) ? ReflectionUtils.accessibleConstructor(declaredClass, String.class)
+                                    : ReflectionUtils.accessibleConstructor(declaredClass, cls, String.class);
+                        } catch (NoSuchMethodException e) {
+                            throw new HotFixException(" no found constructor of "+declaredClass.getName(),e);
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return super.containsKey(key) || isLiveVisible(key);
+            }
+
+            @Override
+            public Object get(Object key) {
+                return super.containsKey(key) || !isLiveVisible(key) ? super.get(key) : liveMap.get(key);
+            }
+
+            @Override
+            public Object getOrDefault(Object key, Object defaultValue) {
+                if(super.containsKey(key)) return super.getOrDefault(key,defaultValue);
+                return isLiveVisible(key) ? liveMap.getOrDefault(key,defaultValue) : defaultValue;
+            }
+
+            @Override
+            public Object put(String key, Object value) {
+                Object previous = super.put(key, value);
+                //与运行中集合的短名称冲突时，同样标记为有歧义
+                String shortKey = key.substring(key.lastIndexOf('.') + 1);
+                if(!shortKey.equals(key) && isLiveVisible(shortKey)){
+                    replace(shortKey,new Ambiguity(shortKey));
+                }
+                return previous;
+            }
+
+            private boolean isLiveVisible(Object key){
+                return !hiddenKeys.contains(key) && liveMap.containsKey(key);
+            }
+        }
+    }
+
+    /**
+     * 访问 Mybatis-Plus 的全局配置和表信息，单独放在一个类中，没有依赖 Mybatis-Plus 时不会加载到
+     */
+    private static class MybatisPlusSupport {
+
+        static void share(Configuration from, Configuration to){
+            com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils.setGlobalConfig(to,
+                    com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils.getGlobalConfig(from));
+        }
+
+        /**
+         * Mybatis-Plus 3.4.0 没有提供删除全局配置的方法，按 {@link com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils#getGlobalConfig(Configuration)}
+         * 相同的 key 直接从 GLOBAL_CONFIG 中删除
+         */
+        static void remove(Configuration configuration){
+            try {
+                MybatisAccessors.field(com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils.class,"GLOBAL_CONFIG")
+                        .get(null,Map.class).remove(Integer.toHexString(configuration.hashCode()));
+            } catch (HotFixException e) {
+                if(log.isWarnEnabled()){
+                    log.warn("remove global config of staging configuration fail",e);
+                }
+            }
+        }
+
+        static void rebindTableInfos(Configuration from, Configuration to){
+            FieldAccessor configurationField = MybatisAccessors.field(com.baomidou.mybatisplus.core.metadata.TableInfo.class, "configuration");
+            for (com.baomidou.mybatisplus.core.metadata.TableInfo tableInfo : com.baomidou.mybatisplus.core.metadata.TableInfoHelper.getTableInfos()) {
+                if(tableInfo.getConfiguration()==from){
+                    configurationField.set(tableInfo,to);
+                }
+            }
+        }
+    }
+}
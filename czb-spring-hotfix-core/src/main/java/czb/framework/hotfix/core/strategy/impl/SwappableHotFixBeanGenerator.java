@@ -0,0 +1,86 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.strategy.HotFixAction;
+import czb.framework.hotfix.core.strategy.HotFixBeanGenerator;
+import czb.framework.hotfix.core.swap.AtomicSwappableTargetSource;
+import czb.framework.hotfix.core.swap.HotSwappableBeanRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * 可热替换 Bean 对象的热修复 Bean 对象生成器
+ * <p>原 Bean 已经被 {@link czb.framework.hotfix.core.swap.HotSwappableBeanPostProcessor} 包装成可热替换的代理对象时，
+ * 热修复 Bean 对象构建好之后，生效时只需要替换代理对象的目标对象【一次 volatile 写】，不需要反射修改依赖属性。</p>
+ * <p>只有容器中存在 {@link HotSwappableBeanRegistry} 时才会生效，否则交给 {@link CommonHotFixBeanGenerator} 处理。</p>
+ * @author chenzhuobin
+ */
+public class SwappableHotFixBeanGenerator implements HotFixBeanGenerator {
+
+    private Logger log= LoggerFactory.getLogger(SwappableHotFixBeanGenerator.class);
+
+    /**
+     * 当前应用上下文的Bean工厂
+     */
+    private DefaultListableBeanFactory beanFactory;
+
+    /**
+     * 新建一个 SwappableHotFixBeanGenerator 对象
+     * @param beanFactory 当前应用上下文的Bean工厂
+     */
+    public SwappableHotFixBeanGenerator(DefaultListableBeanFactory beanFactory) {
+        this.beanFactory=beanFactory;
+    }
+
+    @Override
+    public Object generate(Class<?> hotFixBeanClass) {
+        HotFixAction action = prepare(hotFixBeanClass);
+        action.commit();
+        return action.getBean();
+    }
+
+    /**
+     * 构建热修复 Bean 对象，生效时替换原 Bean 代理对象的目标对象
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    @Override
+    public HotFixAction prepare(Class<?> hotFixBeanClass) {
+        HotSwappableBeanRegistry registry = getRegistry();
+        String beanName = registry.getBeanName(hotFixBeanClass);
+        AtomicSwappableTargetSource targetSource = registry.getTargetSource(beanName);
+        Object hotFixBean;
+        try {
+            hotFixBean = beanFactory.configureBean(hotFixBeanClass.getDeclaredConstructor().newInstance(), beanName);
+        } catch (ReflectiveOperationException e) {
+            throw new HotFixException(" className = "+hotFixBeanClass.getName()+" newInstance fail ",e);
+        }
+        //准备阶段就检查接口，避免生效时才失败
+        targetSource.checkTarget(hotFixBean);
+        return HotFixAction.of(hotFixBean, () -> {
+            targetSource.swap(hotFixBean);
+            if(log.isInfoEnabled()){
+                log.info(" swap target of bean [{}] to {}",beanName,hotFixBeanClass.getName());
+            }
+        });
+    }
+
+    @Override
+    public String getType() {
+        return "swappable";
+    }
+
+    @Override
+    public boolean canHandle(Class<?> hotFixBeanClass) {
+        if(hotFixBeanClass.isInterface()||hotFixBeanClass.isAnnotation()||hotFixBeanClass.isEnum()) return false;
+        HotSwappableBeanRegistry registry = getRegistry();
+        return registry!=null && registry.getBeanName(hotFixBeanClass)!=null;
+    }
+
+    /**
+     * 获取 容器中的 {@link HotSwappableBeanRegistry}，没有时返回null
+     */
+    private HotSwappableBeanRegistry getRegistry(){
+        return beanFactory.getBeanProvider(HotSwappableBeanRegistry.class).getIfAvailable();
+    }
+}
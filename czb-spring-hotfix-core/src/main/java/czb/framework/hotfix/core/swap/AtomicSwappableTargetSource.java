@@ -0,0 +1,86 @@
+package czb.framework.hotfix.core.swap;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import org.springframework.aop.TargetSource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可原子替换目标对象的 {@link TargetSource}
+ * <p>目标对象保存在 {@link AtomicReference} 中，代理每次调用都读取一次当前目标对象，热修复时一次 volatile 写就能让所有调用方
+ * 同时看到新的目标对象。与 Spring 的 {@link org.springframework.aop.target.HotSwappableTargetSource} 不同，读取目标对象不需要加锁。</p>
+ * @author chenzhuobin
+ */
+public class AtomicSwappableTargetSource implements TargetSource {
+
+    /**
+     * 代理对象实现的接口，替换的目标对象必须实现所有接口
+     */
+    private final Class<?>[] proxiedInterfaces;
+
+    /**
+     * 当前目标对象
+     */
+    private final AtomicReference<Object> target;
+
+    /**
+     * 新建一个 AtomicSwappableTargetSource 对象
+     * @param initialTarget 初始的目标对象
+     * @param proxiedInterfaces 代理对象实现的接口
+     */
+    public AtomicSwappableTargetSource(Object initialTarget, Class<?>[] proxiedInterfaces) {
+        this.proxiedInterfaces = proxiedInterfaces;
+        this.target = new AtomicReference<>(initialTarget);
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+        return target.get().getClass();
+    }
+
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target.get();
+    }
+
+    @Override
+    public void releaseTarget(Object target) {
+    }
+
+    /**
+     * 检查 newTarget 是否可以作为目标对象，即实现了代理对象的所有接口
+     * @param newTarget 新的目标对象
+     */
+    public void checkTarget(Object newTarget){
+        if(newTarget==null){
+            throw new HotFixException(" swap target can not be null ");
+        }
+        for (Class<?> proxiedInterface : proxiedInterfaces) {
+            if(!proxiedInterface.isInstance(newTarget)){
+                throw new HotFixException(newTarget.getClass().getName()+" can not be swap target ,cause not implements "+proxiedInterface.getName());
+            }
+        }
+    }
+
+    /**
+     * 替换目标对象
+     * @param newTarget 新的目标对象
+     * @return 原来的目标对象
+     */
+    public Object swap(Object newTarget){
+        checkTarget(newTarget);
+        return target.getAndSet(newTarget);
+    }
+
+    /**
+     * 获取 代理对象实现的接口
+     */
+    public Class<?>[] getProxiedInterfaces() {
+        return proxiedInterfaces.clone();
+    }
+}
@@ -0,0 +1,98 @@
+package czb.framework.hotfix.core.swap;
+
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把指定包下的 Bean 对象包装成可热替换的代理对象
+ * <p>代理对象只实现 Bean 的业务接口【排除 JDK 与 Spring 的接口】，目标对象保存在 {@link AtomicSwappableTargetSource} 中，
+ * 并登记到 {@link HotSwappableBeanRegistry}。热修复时替换目标对象即可，所有依赖该 Bean 的对象都会同时看到新的目标对象。</p>
+ * <p>注意事项：
+ *  <ol>
+ *   <li>依赖方只能通过接口注入被包装的 Bean，按实现类注入会因为类型不匹配而启动失败，所以需要显式指定包名开启</li>
+ *   <li>没有业务接口的 Bean 不会被包装</li>
+ *   <li>热修复 Bean 对象本身【由 {@link HotFixClassLoader} 加载】不会被包装</li>
+ *  </ol>
+ * </p>
+ * @author chenzhuobin
+ */
+public class HotSwappableBeanPostProcessor implements BeanPostProcessor {
+
+    private Logger log= LoggerFactory.getLogger(HotSwappableBeanPostProcessor.class);
+
+    /**
+     * 可热替换的 Bean 对象的注册表
+     */
+    private final HotSwappableBeanRegistry registry;
+
+    /**
+     * 需要包装成可热替换代理对象的 Bean 所在的包名
+     */
+    private final List<String> packages;
+
+    /**
+     * 新建一个 HotSwappableBeanPostProcessor 对象
+     * @param registry 可热替换的 Bean 对象的注册表
+     * @param packages 需要包装成可热替换代理对象的 Bean 所在的包名，为空时不包装任何 Bean
+     */
+    public HotSwappableBeanPostProcessor(HotSwappableBeanRegistry registry, List<String> packages) {
+        this.registry = registry;
+        this.packages = packages==null?new ArrayList<>():new ArrayList<>(packages);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if(packages.isEmpty() || bean instanceof FactoryBean || registry.contains(beanName)) return bean;
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if(HotFixClassLoader.isHotFixClass(targetClass) || !isSwappablePackage(targetClass)) return bean;
+        Class<?>[] proxiedInterfaces = getProxiedInterfaces(bean);
+        if(proxiedInterfaces.length==0) return bean;
+        AtomicSwappableTargetSource targetSource = new AtomicSwappableTargetSource(bean, proxiedInterfaces);
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setInterfaces(proxiedInterfaces);
+        proxyFactory.setTargetSource(targetSource);
+        proxyFactory.setFrozen(true);
+        Object proxy = proxyFactory.getProxy(targetClass.getClassLoader());
+        registry.register(beanName,targetClass,targetSource);
+        if(log.isDebugEnabled()){
+            log.debug(" wrap bean [{}] as hot swappable proxy ,interfaces = {}",beanName,proxiedInterfaces);
+        }
+        return proxy;
+    }
+
+    /**
+     * cls 是否在 {@link #packages} 下
+     * @param cls Bean类
+     */
+    private boolean isSwappablePackage(Class<?> cls){
+        String className = cls.getName();
+        for (String swappablePackage : packages) {
+            if(className.startsWith(swappablePackage+".")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取 bean 的业务接口，排除 JDK 与 Spring 的接口
+     * @param bean Bean对象
+     */
+    private Class<?>[] getProxiedInterfaces(Object bean){
+        List<Class<?>> proxiedInterfaces=new ArrayList<>();
+        for (Class<?> ifc : ClassUtils.getAllInterfaces(bean)) {
+            String name = ifc.getName();
+            if(name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("org.springframework.") || ifc.getMethods().length==0) continue;
+            proxiedInterfaces.add(ifc);
+        }
+        return proxiedInterfaces.toArray(new Class<?>[0]);
+    }
+}
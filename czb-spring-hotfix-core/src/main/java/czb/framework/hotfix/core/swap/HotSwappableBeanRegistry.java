@@ -0,0 +1,77 @@
+package czb.framework.hotfix.core.swap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可热替换 Bean 对象的注册表
+ * <p>记录被 {@link HotSwappableBeanPostProcessor} 包装成代理对象的 Bean 名与其 {@link AtomicSwappableTargetSource}，
+ * 热修复这些 Bean 时只需要替换 {@link AtomicSwappableTargetSource} 的目标对象，依赖它们的 Bean 对象持有的是代理对象，
+ * 所以不需要再反射修改依赖属性。</p>
+ * @author chenzhuobin
+ */
+public class HotSwappableBeanRegistry {
+
+    /**
+     * 可热替换的 Bean【key=Bean名,value=代理对象的目标对象来源】
+     */
+    private final Map<String,AtomicSwappableTargetSource> targetSources=new ConcurrentHashMap<>();
+
+    /**
+     * 原 Bean 的用户类名【AOP 代理对象取其目标类】 - Bean名
+     */
+    private final Map<String,String> beanNamesByClassName=new ConcurrentHashMap<>();
+
+    /**
+     * 注册一个可热替换的 Bean
+     * <p>原 Bean 本身可能已经是 AOP 代理对象【如 @Transactional】，这时目标对象来源的 {@link AtomicSwappableTargetSource#getTargetClass()}
+     * 是 JDK 代理类或 CGLIB 子类，与热修复类名对不上，所以由调用方传入用户类</p>
+     * @param beanName Bean名
+     * @param userClass 原 Bean 的用户类，即 {@link org.springframework.aop.support.AopUtils#getTargetClass(Object)}
+     * @param targetSource 代理对象的目标对象来源
+     */
+    public void register(String beanName, Class<?> userClass, AtomicSwappableTargetSource targetSource){
+        targetSources.put(beanName,targetSource);
+        beanNamesByClassName.put(userClass.getName(),beanName);
+    }
+
+    /**
+     * 获取 beanName 的目标对象来源，不是可热替换的 Bean 时返回null
+     * @param beanName Bean名
+     */
+    public AtomicSwappableTargetSource getTargetSource(String beanName){
+        return targetSources.get(beanName);
+    }
+
+    /**
+     * 获取 热修复类 hotFixBeanClass 对应的原 Bean 的目标对象来源，不是可热替换的 Bean 时返回null
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    public AtomicSwappableTargetSource getTargetSource(Class<?> hotFixBeanClass){
+        String beanName = getBeanName(hotFixBeanClass);
+        return beanName==null?null:targetSources.get(beanName);
+    }
+
+    /**
+     * beanName 是否是可热替换的 Bean
+     * @param beanName Bean名
+     */
+    public boolean contains(String beanName){
+        return targetSources.containsKey(beanName);
+    }
+
+    /**
+     * 获取 可热替换的 Bean 的数量
+     */
+    public int size(){
+        return targetSources.size();
+    }
+
+    /**
+     * 获取 热修复类 hotFixBeanClass 对应的可热替换的 Bean 名，按原 Bean 的用户类名精确匹配，不是可热替换的 Bean 时返回null
+     * @param hotFixBeanClass 热修复Bean类
+     */
+    public String getBeanName(Class<?> hotFixBeanClass){
+        return beanNamesByClassName.get(hotFixBeanClass.getName());
+    }
+}
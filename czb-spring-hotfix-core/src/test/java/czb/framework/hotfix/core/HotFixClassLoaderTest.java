@@ -2,16 +2,35 @@ package czb.framework.hotfix.core;
 
 
 import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.ClassLoaderPartition;
 import czb.framework.hotfix.core.config.HotFixProperties;
 import czb.framework.hotfix.core.exception.HotFixException;
 import czb.framework.hotfix.core.service.BinService;
 import czb.framework.hotfix.core.service.CzbService;
 import czb.framework.hotfix.core.service.impl.BinServiceImpl;
 import czb.framework.hotfix.core.service.impl.CzbServiceImpl;
+import czb.framework.hotfix.core.source.BundlePatchSource;
+import czb.framework.hotfix.core.source.PatchSource;
+import czb.framework.hotfix.core.source.PatchSources;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class HotFixClassLoaderTest {
 
@@ -61,6 +80,179 @@ public class HotFixClassLoaderTest {
         System.out.println(packagePath+'.'+className);
     }
 
+    @Test
+    public void test_parallelLoad(@TempDir Path tempDir) throws Exception {
+        //耗时对比见 benchmarks 模块的 ClassDefineBenchmark，这里只校验并行定义的结果
+        List<String> classNames = PatchClassGenerator.generate(tempDir, "czb.framework.hotfix.core.generated", 1200, 50);
+        HotFixProperties properties=new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+        HotFixClassLoader serialClassLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties);
+
+        //并行定义在限定时间内完成，不会死锁
+        properties.setParallelLoad(true);
+        HotFixClassLoader parallelClassLoader = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> new HotFixClassLoader(CzbService.class.getClassLoader(), properties));
+
+        Assertions.assertEquals(classNames.size(), serialClassLoader.getClassLoaderMap().size());
+        Assertions.assertEquals(classNames.size(), parallelClassLoader.getClassLoaderMap().size());
+        Assertions.assertEquals(classNames.size(), parallelClassLoader.getClassLoadCostMap().size());
+        Assertions.assertEquals(serialClassLoader.getClassLoaderCount(), parallelClassLoader.getClassLoaderCount());
+        for (String className : classNames) {
+            Class<?> cls = parallelClassLoader.loadClass(className);
+            Assertions.assertEquals(className, cls.getName());
+            //由分组对应的 InnerHotFixClassLoader 定义
+            Assertions.assertSame(parallelClassLoader.getClassLoaderMap().get(className), cls.getClassLoader());
+            Assertions.assertTrue(HotFixClassLoader.isHotFixClass(cls));
+        }
+    }
+
+    @Test
+    public void test_defineOrder(@TempDir Path tempDir) throws Exception {
+        //新增接口链 Level0 <- Level1 <- ... <- Level9 <- Impl，补丁中的顺序与依赖顺序相反
+        String packageName = "czb.framework.hotfix.core.chain";
+        Path packagePath = tempDir.resolve(packageName.replace('.', '/'));
+        Files.createDirectories(packagePath);
+        int depth = 10;
+        Files.write(packagePath.resolve("Impl.class"), PatchClassGenerator.generateType(packageName + ".Impl", false, packageName + ".Level" + (depth - 1)));
+        for (int i = depth - 1; i >= 0; i--) {
+            String[] interfaceNames = i == 0 ? new String[0] : new String[]{packageName + ".Level" + (i - 1)};
+            Files.write(packagePath.resolve("Level" + i + ".class"), PatchClassGenerator.generateType(packageName + ".Level" + i, true, interfaceNames));
+        }
+        for (boolean parallel : new boolean[]{false, true}) {
+            HotFixProperties properties=new HotFixProperties();
+            properties.setBasePackage("czb.framework.hotfix.core");
+            properties.setLoadPath(tempDir.toString());
+            properties.setParallelLoad(parallel);
+            ClassLoader parent = new ClassLoader(CzbService.class.getClassLoader()) { };
+            HotFixClassLoader classLoader = new HotFixClassLoader(parent, properties);
+            Assertions.assertEquals(depth + 1, classLoader.getClassLoaderMap().size());
+            Class<?> implClass = classLoader.loadClass(packageName + ".Impl");
+            Assertions.assertTrue(parent.loadClass(packageName + ".Level0").isAssignableFrom(implClass));
+        }
+    }
+
+    @Test
+    public void test_partition(@TempDir Path tempDir) throws Exception {
+        String packageName = "czb.framework.hotfix.core.nest";
+        int classCount = 300;
+        List<String> classNames = PatchClassGenerator.generate(tempDir, packageName, classCount, 20);
+        for (String className : classNames) {
+            String innerClassName = className + "$Inner";
+            Files.write(tempDir.resolve(innerClassName.replace('.', '/') + ".class"), PatchClassGenerator.generateCaller(innerClassName, className));
+        }
+        //引用新增类的顶层类
+        String callerClassName = packageName + ".Caller";
+        Files.write(tempDir.resolve(callerClassName.replace('.', '/') + ".class"), PatchClassGenerator.generateCaller(callerClassName, classNames.get(1)));
+        //互相引用的已有类
+        Path implPath = Files.createDirectories(tempDir.resolve(CzbServiceImpl.class.getPackage().getName().replace('.', '/')));
+        Files.write(implPath.resolve("CzbServiceImpl.class"), PatchClassGenerator.generateCaller(CzbServiceImpl.class.getName(), BinServiceImpl.class.getName()));
+        Files.write(implPath.resolve("BinServiceImpl.class"), PatchClassGenerator.generateCaller(BinServiceImpl.class.getName(), CzbServiceImpl.class.getName()));
+        HotFixProperties properties=new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+
+        Assertions.assertEquals(ClassLoaderPartition.PER_CLASS, properties.getClassLoaderPartition());
+        HotFixClassLoader perClassLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties);
+        properties.setClassLoaderPartition(ClassLoaderPartition.COMPONENT);
+        HotFixClassLoader componentLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties);
+
+        //内部类与外部类、新增类与引用它的类共用类加载器，已有类即使互相引用也分开
+        Assertions.assertEquals(classCount + 2, perClassLoader.getClassLoaderCount());
+        Assertions.assertEquals(classCount + 1, componentLoader.getClassLoaderCount());
+        Assertions.assertEquals(classCount * 2 + 3, perClassLoader.getClassLoaderMap().size());
+        for (HotFixClassLoader classLoader : new HotFixClassLoader[]{perClassLoader, componentLoader}) {
+            Class<?> innerClass = classLoader.loadClass(classNames.get(0) + "$Inner");
+            Assertions.assertSame(innerClass.getClassLoader(), classLoader.loadClass(classNames.get(0)).getClassLoader());
+            Assertions.assertEquals(classNames.get(0) + "#method0", innerClass.getMethod("call").invoke(innerClass.getDeclaredConstructor().newInstance()));
+            Class<?> callerClass = classLoader.loadClass(callerClassName);
+            Assertions.assertEquals(classNames.get(1) + "#method0", callerClass.getMethod("call").invoke(callerClass.getDeclaredConstructor().newInstance()));
+        }
+        Assertions.assertNotSame(perClassLoader.loadClass(CzbServiceImpl.class.getName()).getClassLoader(), perClassLoader.loadClass(BinServiceImpl.class.getName()).getClassLoader());
+        Assertions.assertSame(componentLoader.loadClass(CzbServiceImpl.class.getName()).getClassLoader(), componentLoader.loadClass(BinServiceImpl.class.getName()).getClassLoader());
+    }
+
+    @Test
+    public void test_concurrentLoad(@TempDir Path tempDir) throws Exception {
+        List<String> classNames = PatchClassGenerator.generate(tempDir, "czb.framework.hotfix.core.concurrent", 200, 5);
+        HotFixProperties properties=new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+        HotFixClassLoader classLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> classLoader.getClassLoaderMap().clear());
+
+        int threadCount = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Class<?>>>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    List<Class<?>> classes = new ArrayList<>();
+                    for (String className : classNames) {
+                        classes.add(classLoader.loadClass(className));
+                    }
+                    return classes;
+                }));
+            }
+            start.countDown();
+            List<Class<?>> expected = futures.get(0).get();
+            for (Future<List<Class<?>>> future : futures) {
+                List<Class<?>> classes = future.get();
+                for (int i = 0; i < classes.size(); i++) {
+                    Assertions.assertSame(expected.get(i), classes.get(i));
+                    Assertions.assertTrue(HotFixClassLoader.isHotFixClass(classes.get(i)));
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void test_bundle(@TempDir Path tempDir) throws Exception {
+        Path bundleFile = tempDir.resolve("patch.jar");
+        int classCount=1000;
+        try(ZipOutputStream zos=new ZipOutputStream(Files.newOutputStream(bundleFile))){
+            for (int i = 0; i < classCount; i++) {
+                String className = "czb.framework.hotfix.core.bundle.BundlePatch" + i;
+                byte[] classBytes = PatchClassGenerator.generateClass(className, 10);
+                ZipEntry entry = new ZipEntry(className.replace('.', '/') + ".class");
+                //一半不压缩，一半压缩
+                if(i%2==0){
+                    CRC32 crc32=new CRC32();
+                    crc32.update(classBytes);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(classBytes.length);
+                    entry.setCrc(crc32.getValue());
+                }
+                zos.putNextEntry(entry);
+                zos.write(classBytes);
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("hofix-class-map.properties"));
+            zos.write("a.B=a.impl.BImpl".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        HotFixProperties properties=new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(bundleFile.toString());
+        try(PatchSource patchSource = PatchSources.open(properties)){
+            Assertions.assertTrue(patchSource instanceof BundlePatchSource);
+            Assertions.assertEquals(classCount, patchSource.getClassNames().size());
+            Properties prop=new Properties();
+            prop.load(patchSource.getResourceAsStream("hofix-class-map.properties"));
+            Assertions.assertEquals("a.impl.BImpl", prop.getProperty("a.B"));
+
+            HotFixClassLoader classLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties, patchSource);
+            Assertions.assertEquals(classCount, classLoader.getClassLoaderMap().size());
+            Class<?> cls = classLoader.loadClass("czb.framework.hotfix.core.bundle.BundlePatch1");
+            Object result = cls.getMethod("method3").invoke(cls.getDeclaredConstructor().newInstance());
+            Assertions.assertEquals("czb.framework.hotfix.core.bundle.BundlePatch1#method3", result);
+        }
+    }
+
     private String loadPath;
     private String getLoadPath(){
         if(loadPath!=null) return loadPath;
@@ -0,0 +1,83 @@
+package czb.framework.hotfix.core;
+
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+import czb.framework.hotfix.core.service.BinService;
+import czb.framework.hotfix.core.service.impl.BinServiceImpl;
+import czb.framework.hotfix.core.service.impl.CzbServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+public class HotFixCompactionTest {
+
+    @Test
+    public void test_compact(@TempDir Path tempDir) throws Exception {
+        String resourcePath = BinServiceImpl.class.getName().replace('.', '/') + ".class";
+        Path classFile = tempDir.resolve(resourcePath);
+        Files.createDirectories(classFile.getParent());
+        try(InputStream in = BinServiceImpl.class.getClassLoader().getResourceAsStream(resourcePath)){
+            Files.copy(in, classFile);
+        }
+        HotFixProperties properties = new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+        properties.setIncremental(false);
+
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.registerBean("binService", BinServiceImpl.class);
+        applicationContext.registerBean("czbService", CzbServiceImpl.class,
+                beanDefinition -> ((AbstractBeanDefinition) beanDefinition).setAutowireMode(AutowireCapableBeanFactory.AUTOWIRE_BY_TYPE));
+        applicationContext.registerBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        applicationContext.refresh();
+        HotFix hotFix = new HotFix(properties);
+        hotFix.setApplicationContext(applicationContext);
+        Assertions.assertThrows(HotFixException.class, hotFix::prepareCompaction);
+
+        //多次热修复后再删除补丁文件，合并时使用的是生效时拷贝的内容
+        hotFix.exec();
+        hotFix.exec();
+        Files.delete(classFile);
+        HotFixPlan stalePlan = hotFix.prepareCompaction();
+        HotFixReport report = hotFix.compact();
+        Assertions.assertThrows(HotFixException.class, () -> hotFix.commit(stalePlan));
+
+        Assertions.assertTrue(report.getAppliedClassNames().contains(BinServiceImpl.class.getName()));
+        //每个阶段的耗时与按生成器类型统计的耗时
+        Assertions.assertTrue(report.getPhaseCostNanos().keySet().containsAll(EnumSet.of(HotFixPhase.SCAN, HotFixPhase.DEFINE,
+                HotFixPhase.GENERATE, HotFixPhase.REWIRE, HotFixPhase.COMMIT, HotFixPhase.WARM_UP)));
+        Assertions.assertTrue(report.getGenerateCostNanos().containsKey("common"));
+        Assertions.assertTrue(report.getPatchBytes() > 0);
+        Assertions.assertEquals(report.getAppliedClassNames().size(), report.getDefinedClassCount());
+        List<PatchGeneration> generations = hotFix.getGenerationRegistry().getGenerations();
+        PatchGeneration compacted = generations.get(generations.size() - 1);
+        for (PatchGeneration generation : generations) {
+            Assertions.assertEquals(generation != compacted, generation.isSuperseded());
+        }
+        //合并前后的补丁内容相同，内容摘要也相同
+        Assertions.assertEquals(generations.get(0).getContentHash(), compacted.getContentHash());
+        Assertions.assertEquals(Collections.singletonList(BinServiceImpl.class.getName()), compacted.getGeneratedClassNames().get("common"));
+        Assertions.assertEquals(Collections.singletonList("binService"), compacted.getReplacedBeanNames());
+        //最近一次是过时计划的生效失败
+        Assertions.assertSame(stalePlan.getReport(), hotFix.getLastReport());
+        //依赖方引用的是合并后的热修复 Bean 对象
+        BinService binService = applicationContext.getBean(CzbServiceImpl.class).getBinService();
+        Assertions.assertTrue(HotFixClassLoader.isHotFixClass(binService.getClass()));
+        Assertions.assertSame(compacted.getReachableClassLoaders().get(0), binService.getClass().getClassLoader());
+    }
+}
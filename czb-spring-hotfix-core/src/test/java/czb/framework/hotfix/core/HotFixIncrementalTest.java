@@ -0,0 +1,80 @@
+package czb.framework.hotfix.core;
+
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.report.HotFixReport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HotFixIncrementalTest {
+
+    private static final String PACKAGE_NAME = "czb.framework.hotfix.core.incremental";
+
+    private static final String CALLEE_CLASS_NAME = PACKAGE_NAME + ".Callee";
+
+    private static final String CALLER_CLASS_NAME = PACKAGE_NAME + ".Caller";
+
+    @Test
+    public void test_reapplyReferencedNewClass(@TempDir Path tempDir) throws Exception {
+        Path packagePath = tempDir.resolve(PACKAGE_NAME.replace('.', '/'));
+        Files.createDirectories(packagePath);
+        Files.write(packagePath.resolve("Callee.class"), PatchClassGenerator.generateClass(CALLEE_CLASS_NAME, 2));
+        Files.write(packagePath.resolve("Caller.class"), PatchClassGenerator.generateCaller(CALLER_CLASS_NAME, CALLEE_CLASS_NAME, "method0"));
+        HotFixProperties properties = new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+        properties.setIncremental(true);
+
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.registerBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        applicationContext.refresh();
+        HotFix hotFix = new HotFix(properties);
+        hotFix.setApplicationContext(applicationContext);
+        hotFix.exec();
+        Assertions.assertEquals(CALLEE_CLASS_NAME + "#method0", call(hotFix));
+
+        //只修改 Caller，没有变化的新增类 Callee 只在上一次热修复的类加载器中，需要一起重新定义
+        Files.write(packagePath.resolve("Caller.class"), PatchClassGenerator.generateCaller(CALLER_CLASS_NAME, CALLEE_CLASS_NAME, "method1"));
+        HotFixReport report = hotFix.exec();
+        Assertions.assertEquals(Arrays.asList(CALLEE_CLASS_NAME, CALLER_CLASS_NAME), sorted(report.getAppliedClassNames()));
+        Assertions.assertTrue(report.getSkippedClassNames().isEmpty());
+        Assertions.assertEquals(CALLEE_CLASS_NAME + "#method1", call(hotFix));
+
+        //没有任何变化时都跳过
+        report = hotFix.exec();
+        Assertions.assertTrue(report.getAppliedClassNames().isEmpty());
+        Assertions.assertEquals(2, report.getSkippedClassNames().size());
+    }
+
+    /**
+     * 调用最近一次热修复定义的 Caller#call()
+     */
+    private String call(HotFix hotFix) throws Exception {
+        List<PatchGeneration> generations = hotFix.getGenerationRegistry().getGenerations();
+        for (ClassLoader classLoader : generations.get(generations.size() - 1).getReachableClassLoaders()) {
+            Class<?> callerClass;
+            try {
+                callerClass = classLoader.loadClass(CALLER_CLASS_NAME);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            Object caller = callerClass.getDeclaredConstructor().newInstance();
+            return (String) callerClass.getMethod("call").invoke(caller);
+        }
+        throw new AssertionError(CALLER_CLASS_NAME + " not found");
+    }
+
+    private static List<String> sorted(List<String> classNames){
+        Collections.sort(classNames);
+        return classNames;
+    }
+}
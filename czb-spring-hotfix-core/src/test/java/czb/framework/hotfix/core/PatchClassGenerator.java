@@ -0,0 +1,132 @@
+package czb.framework.hotfix.core;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成测试用的热修复 class 文件，用于模拟大批量的热修复补丁
+ */
+public class PatchClassGenerator {
+
+    /**
+     * 在 loadPath 下按包名路径生成 classCount 个类，每个类有 methodCount 个方法
+     * @param loadPath 热修复文件加载地址
+     * @param packageName 包名
+     * @param classCount 类的个数
+     * @param methodCount 每个类的方法个数
+     * @return 生成的类名
+     */
+    public static List<String> generate(Path loadPath, String packageName, int classCount, int methodCount) throws IOException {
+        Path packagePath = loadPath.resolve(packageName.replace('.', '/'));
+        Files.createDirectories(packagePath);
+        List<String> classNames=new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            String simpleName = "GeneratedPatch" + i;
+            String className = packageName + "." + simpleName;
+            Files.write(packagePath.resolve(simpleName + ".class"), generateClass(className, methodCount));
+            classNames.add(className);
+        }
+        return classNames;
+    }
+
+    /**
+     * 生成一个有 methodCount 个返回字符串的方法的类
+     * @param className 类名
+     * @param methodCount 方法个数
+     */
+    public static byte[] generateClass(String className, int methodCount) {
+        String internalName = className.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        for (int i = 0; i < methodCount; i++) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "()Ljava/lang/String;", null, null);
+            mv.visitCode();
+            mv.visitLdcInsn(className + "#method" + i);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 生成一个只有默认构造方法的类或者接口
+     * @param className 类名
+     * @param isInterface 是否是接口
+     * @param interfaceNames 实现/继承的接口名
+     */
+    public static byte[] generateType(String className, boolean isInterface, String... interfaceNames) {
+        String[] internalInterfaceNames = new String[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            internalInterfaceNames[i] = interfaceNames[i].replace('.', '/');
+        }
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        int access = isInterface ? Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT : Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER;
+        cw.visit(Opcodes.V1_8, access, className.replace('.', '/'), null, "java/lang/Object", internalInterfaceNames);
+        if (!isInterface) {
+            MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            init.visitCode();
+            init.visitVarInsn(Opcodes.ALOAD, 0);
+            init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+            init.visitInsn(Opcodes.RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * 生成一个有 call() 方法的类，call() 返回 new calleeClassName().method0() 的结果
+     * @param className 类名
+     * @param calleeClassName 被调用的类名，由 {@link #generateClass(String, int)} 生成
+     */
+    public static byte[] generateCaller(String className, String calleeClassName) {
+        return generateCaller(className, calleeClassName, "method0");
+    }
+
+    /**
+     * 生成一个有 call() 方法的类，call() 返回 new calleeClassName().calleeMethodName() 的结果
+     * @param className 类名
+     * @param calleeClassName 被调用的类名，由 {@link #generateClass(String, int)} 生成
+     * @param calleeMethodName 被调用的方法名，如 method0
+     */
+    public static byte[] generateCaller(String className, String calleeClassName, String calleeMethodName) {
+        String calleeInternalName = calleeClassName.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className.replace('.', '/'), null, "java/lang/Object", null);
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, calleeInternalName);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, calleeInternalName, "<init>", "()V", false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, calleeInternalName, calleeMethodName, "()Ljava/lang/String;", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
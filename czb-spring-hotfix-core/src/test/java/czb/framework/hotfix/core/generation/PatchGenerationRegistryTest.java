@@ -0,0 +1,80 @@
+package czb.framework.hotfix.core.generation;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PatchGenerationRegistryTest {
+
+    @Test
+    public void test_supersede() throws InterruptedException {
+        PatchGenerationRegistry registry = new PatchGenerationRegistry();
+        ClassLoader leakedClassLoader = new ClassLoader() { };
+        registry.register(new PatchGeneration("patch-1", Arrays.asList("a.A", "a.B"), Collections.singletonList(leakedClassLoader), 1024));
+        ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+        WeakReference<ClassLoader> patch2ClassLoader = registerUnreferenced(registry, "patch-2", queue);
+        //patch-1 还有 a.B 没有被热修复
+        Assertions.assertTrue(registry.getLeakSuspectedGenerations().isEmpty());
+
+        ClassLoader currentClassLoader = new ClassLoader() { };
+        registry.register(new PatchGeneration("patch-3", Arrays.asList("a.A", "a.B"), Collections.singletonList(currentClassLoader), 1024));
+        //patch-1 刚被取代，还没有经过GC
+        Assertions.assertTrue(registry.getGenerations().get(0).isSuperseded());
+        Assertions.assertTrue(registry.getLeakSuspectedGenerations().isEmpty());
+        Assertions.assertSame(patch2ClassLoader, awaitCollected(queue));
+        //patch-2 没有被引用，已经被回收；patch-1 的类加载器还被引用着
+        Assertions.assertEquals(1, registry.getCollectedCount());
+        Assertions.assertEquals(1, registry.getLeakSuspectedGenerations().size());
+        PatchGeneration leakedGeneration = registry.getLeakSuspectedGenerations().get(0);
+        Assertions.assertEquals(1, leakedGeneration.getId());
+        Assertions.assertEquals(3, leakedGeneration.getSupersededBy());
+        Assertions.assertFalse(registry.getGenerations().get(1).isSuperseded());
+        Assertions.assertNotNull(leakedClassLoader);
+        Assertions.assertNotNull(currentClassLoader);
+
+        //按类名查找当前生效的类加载器
+        ClassLoader classLoaderA = new ClassLoader() { };
+        ClassLoader classLoaderC = new ClassLoader() { };
+        Map<String, ClassLoader> classLoaderMap = new HashMap<>();
+        classLoaderMap.put("a.A", classLoaderA);
+        classLoaderMap.put("a.C", classLoaderC);
+        registry.register(new PatchGeneration("patch-4", classLoaderMap, 1024));
+        registry.register(new PatchGeneration("patch-5", Collections.singletonMap("a.C", currentClassLoader), 1024));
+        Assertions.assertSame(classLoaderA, registry.getClassLoader("a.A"));
+        Assertions.assertSame(currentClassLoader, registry.getClassLoader("a.C"));
+        Assertions.assertNull(registry.getClassLoader("a.B"));
+
+        registry.checkMetaspaceHeadroom(0);
+        Assertions.assertThrows(HotFixException.class, () -> registry.checkMetaspaceHeadroom(Long.MAX_VALUE));
+    }
+
+    /**
+     * 注册一代只热修复了 a.A 的补丁，它的类加载器除了注册表之外没有其他引用
+     */
+    private WeakReference<ClassLoader> registerUnreferenced(PatchGenerationRegistry registry, String patchLocation, ReferenceQueue<ClassLoader> queue){
+        ClassLoader classLoader = new ClassLoader() { };
+        registry.register(new PatchGeneration(patchLocation, Collections.singletonList("a.A"), Collections.singletonList(classLoader), 1024));
+        return new WeakReference<>(classLoader, queue);
+    }
+
+    /**
+     * 触发GC，等待 queue 中有被回收的引用，超时返回null
+     */
+    private static Reference<?> awaitCollected(ReferenceQueue<?> queue) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        Reference<?> collected = null;
+        while (collected == null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            collected = queue.remove(100);
+        }
+        return collected;
+    }
+}
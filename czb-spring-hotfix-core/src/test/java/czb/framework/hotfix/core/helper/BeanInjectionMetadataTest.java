@@ -0,0 +1,57 @@
+package czb.framework.hotfix.core.helper;
+
+import czb.framework.hotfix.core.service.BinService;
+import czb.framework.hotfix.core.service.impl.BinServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+public class BeanInjectionMetadataTest {
+
+    @Test
+    public void test_injectedElements(){
+        BeanInjectionMetadata metadata = BeanInjectionMetadata.forClass(ChildBean.class);
+        Assertions.assertSame(metadata, BeanInjectionMetadata.forClass(ChildBean.class));
+        //父类的属性和 setter 方法也会被找到
+        Assertions.assertEquals(2, metadata.getInjectedElements().size());
+        Assertions.assertEquals(2, metadata.getReferenceFields().size());
+
+        ChildBean childBean = new ChildBean();
+        BinService binService = new BinServiceImpl();
+        RefNewBeanHelper refNewBeanHelper = new RefNewBeanHelper();
+        refNewBeanHelper.refNewBean("childBean", childBean, "binServiceImpl", binService);
+        Assertions.assertSame(binService, childBean.binService);
+        List<String> dependentBeanNames = refNewBeanHelper.findDependentBeanNames(childBean);
+        Assertions.assertTrue(dependentBeanNames.contains(BinService.class.getName()));
+        Assertions.assertTrue(dependentBeanNames.contains(Runnable.class.getName()));
+
+        Runnable runnable = () -> { };
+        refNewBeanHelper.refNewBean("childBean", childBean, "task", runnable);
+        Assertions.assertSame(runnable, childBean.getTask());
+
+        BeanInjectionMetadata.evict(ChildBean.class.getClassLoader());
+        Assertions.assertNotSame(metadata, BeanInjectionMetadata.forClass(ChildBean.class));
+    }
+
+    public static class ParentBean {
+
+        @Autowired
+        protected BinService binService;
+    }
+
+    public static class ChildBean extends ParentBean {
+
+        private Runnable task;
+
+        @Autowired
+        public void setTask(Runnable task) {
+            this.task = task;
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+    }
+}
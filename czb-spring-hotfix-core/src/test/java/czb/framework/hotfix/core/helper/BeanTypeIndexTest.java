@@ -0,0 +1,61 @@
+package czb.framework.hotfix.core.helper;
+
+import czb.framework.hotfix.core.service.BinService;
+import czb.framework.hotfix.core.service.impl.BinServiceImpl;
+import czb.framework.hotfix.core.service.impl.CzbServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+public class BeanTypeIndexTest {
+
+    @Test
+    public void test_index(){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        //自定义 Bean 名
+        beanFactory.registerBeanDefinition("bin", new RootBeanDefinition(BinServiceImpl.class));
+        BeanTypeIndex index = BeanTypeIndex.of(beanFactory);
+        Assertions.assertSame(index, BeanTypeIndex.of(beanFactory));
+        Assertions.assertEquals("bin", index.getBeanName(BinServiceImpl.class));
+        Assertions.assertNull(index.getBeanName(CzbServiceImpl.class));
+        Assertions.assertEquals(Collections.singleton(BinServiceImpl.class.getName()), index.getImplementations(BinService.class.getName()));
+
+        //Bean 定义变化后重新构建索引
+        beanFactory.registerSingleton("czb", new CzbServiceImpl());
+        Assertions.assertEquals("czb", index.getBeanName(CzbServiceImpl.class));
+
+        Map<String, Set<String>> implementations = BeanTypeIndex.indexImplementations(Arrays.asList(BinService.class, BinServiceImpl.class));
+        Assertions.assertEquals(Collections.singleton(BinServiceImpl.class.getName()), implementations.get(BinService.class.getName()));
+        Assertions.assertFalse(implementations.containsKey(BinServiceImpl.class.getName()));
+    }
+
+    @Test
+    public void test_beanFactoryCollectable() throws InterruptedException {
+        ReferenceQueue<DefaultListableBeanFactory> queue = new ReferenceQueue<>();
+        WeakReference<DefaultListableBeanFactory> reference = indexNewBeanFactory(queue);
+        //索引只弱引用 Bean 工厂，Bean 工厂没有其他引用时可以被回收
+        long deadline = System.currentTimeMillis() + 10_000;
+        Reference<? extends DefaultListableBeanFactory> collected = null;
+        while (collected == null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            collected = queue.remove(100);
+        }
+        Assertions.assertSame(reference, collected);
+    }
+
+    private WeakReference<DefaultListableBeanFactory> indexNewBeanFactory(ReferenceQueue<DefaultListableBeanFactory> queue){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("bin", new RootBeanDefinition(BinServiceImpl.class));
+        Assertions.assertEquals("bin", BeanTypeIndex.of(beanFactory).getBeanName(BinServiceImpl.class));
+        return new WeakReference<>(beanFactory, queue);
+    }
+}
@@ -0,0 +1,45 @@
+package czb.framework.hotfix.core.helper;
+
+import czb.framework.hotfix.core.service.BinService;
+import czb.framework.hotfix.core.service.CzbService;
+import czb.framework.hotfix.core.service.impl.BinServiceImpl;
+import czb.framework.hotfix.core.service.impl.CzbServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DependentBeanIndexTest {
+
+    @Test
+    public void test_refDependentBeans(){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("binServiceImpl", new RootBeanDefinition(BinServiceImpl.class));
+        RootBeanDefinition czbServiceDefinition = new RootBeanDefinition(CzbServiceImpl.class);
+        czbServiceDefinition.setAutowireMode(AutowireCapableBeanFactory.AUTOWIRE_BY_TYPE);
+        beanFactory.registerBeanDefinition("czbServiceImpl", czbServiceDefinition);
+        beanFactory.preInstantiateSingletons();
+        CzbService czbService = beanFactory.getBean(CzbService.class);
+        Assertions.assertSame(beanFactory.getBean(BinService.class), czbService.getBinService());
+
+        DependentBeanIndex index = new DependentBeanIndex(beanFactory);
+        //setter 注入的原单例对象也会被找到
+        BinService firstHotFixBean = command -> { };
+        List<RefNewBeanHelper.FieldRef> fieldRefs = index.planRefNewBean("binServiceImpl", firstHotFixBean);
+        Assertions.assertEquals(1, fieldRefs.size());
+        fieldRefs.forEach(RefNewBeanHelper.FieldRef::apply);
+        index.markApplied(Collections.singletonMap("binServiceImpl", firstHotFixBean));
+        Assertions.assertSame(firstHotFixBean, czbService.getBinService());
+
+        //再次热修复时，依赖方引用的是上一次的热修复 Bean 对象
+        BinService secondHotFixBean = command -> { };
+        index.planRefNewBean("binServiceImpl", secondHotFixBean).forEach(RefNewBeanHelper.FieldRef::apply);
+        index.markApplied(Collections.singletonMap("binServiceImpl", secondHotFixBean));
+        Assertions.assertSame(secondHotFixBean, czbService.getBinService());
+        Assertions.assertSame(secondHotFixBean, index.getCurrentBean("binServiceImpl"));
+    }
+}
@@ -0,0 +1,77 @@
+package czb.framework.hotfix.core.job;
+
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HotFixJobSchedulerTest {
+
+    @Test
+    public void test_coalesce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runCount = new AtomicInteger();
+        AtomicReference<HotFixJobScheduler> schedulerRef = new AtomicReference<>();
+        HotFixJobScheduler scheduler = new HotFixJobScheduler(() -> {
+            HotFixReport report = new HotFixReport();
+            schedulerRef.get().onPhaseStart(report, HotFixPhase.DEFINE);
+            if(runCount.incrementAndGet()==1){
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return report;
+        });
+        schedulerRef.set(scheduler);
+
+        HotFixJob running = scheduler.submit();
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assertions.assertSame(running, scheduler.getRunningJob());
+        Assertions.assertEquals(HotFixJobStatus.RUNNING, running.getStatus());
+        Assertions.assertEquals(HotFixPhase.DEFINE, running.getPhase());
+        //不在执行线程上的回调被忽略
+        scheduler.onPhaseStart(new HotFixReport(), HotFixPhase.COMMIT);
+        Assertions.assertEquals(HotFixPhase.DEFINE, running.getPhase());
+
+        //执行期间的请求合并成一个排队的任务
+        HotFixJob queued = scheduler.submit();
+        Assertions.assertNotSame(running, queued);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertSame(queued, scheduler.submit());
+        }
+        Assertions.assertEquals(HotFixJobStatus.QUEUED, queued.getStatus());
+        Assertions.assertEquals(6, queued.getRequestCount());
+
+        release.countDown();
+        Assertions.assertNotNull(queued.toFuture().get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(HotFixJobStatus.SUCCEEDED, running.getStatus());
+        Assertions.assertEquals(HotFixJobStatus.SUCCEEDED, queued.getStatus());
+        Assertions.assertEquals(2, runCount.get());
+        Assertions.assertSame(queued, scheduler.getJob(queued.getId()));
+        Assertions.assertEquals(2, scheduler.getRecentJobs().size());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void test_fail() throws Exception {
+        HotFixJobScheduler scheduler = new HotFixJobScheduler(() -> {
+            throw new IllegalStateException("broken patch");
+        });
+        HotFixJob job = scheduler.submit();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> job.toFuture().get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+        Assertions.assertEquals(HotFixJobStatus.FAILED, job.getStatus());
+        Assertions.assertEquals("broken patch", job.getErrorMessage());
+        scheduler.shutdown();
+    }
+}
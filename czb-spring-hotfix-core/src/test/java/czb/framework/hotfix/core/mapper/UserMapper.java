@@ -0,0 +1,10 @@
+package czb.framework.hotfix.core.mapper;
+
+import java.util.List;
+
+public interface UserMapper {
+
+    List<String> listName();
+
+    String getName(Long id);
+}
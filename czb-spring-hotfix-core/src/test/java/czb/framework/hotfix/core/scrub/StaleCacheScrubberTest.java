@@ -0,0 +1,117 @@
+package czb.framework.hotfix.core.scrub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import czb.framework.hotfix.core.PatchClassGenerator;
+import czb.framework.hotfix.core.classloader.HotFixClassLoader;
+import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.generation.PatchGenerationRegistry;
+import czb.framework.hotfix.core.service.CzbService;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.method.annotation.ExceptionHandlerMethodResolver;
+import org.springframework.web.servlet.handler.HandlerExceptionResolverComposite;
+import org.springframework.web.servlet.mvc.method.annotation.ExceptionHandlerExceptionResolver;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StaleCacheScrubberTest {
+
+    private static final int PATCH_COUNT = 120;
+
+    @Test
+    public void test_soak(@TempDir Path tempDir) throws Exception {
+        List<String> classNames = PatchClassGenerator.generate(tempDir, "czb.framework.hotfix.core.soak", 20, 10);
+        HotFixProperties properties=new HotFixProperties();
+        properties.setBasePackage("czb.framework.hotfix.core");
+        properties.setLoadPath(tempDir.toString());
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        RequestMappingHandlerAdapter handlerAdapter = new RequestMappingHandlerAdapter();
+        ExceptionHandlerExceptionResolver exceptionResolver = new ExceptionHandlerExceptionResolver();
+        HandlerExceptionResolverComposite exceptionResolverComposite = new HandlerExceptionResolverComposite();
+        exceptionResolverComposite.setExceptionResolvers(Collections.singletonList(exceptionResolver));
+        ObjectMapper objectMapper = new ObjectMapper().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        Configuration configuration = new Configuration();
+        beanFactory.registerSingleton("requestMappingHandlerAdapter", handlerAdapter);
+        beanFactory.registerSingleton("handlerExceptionResolver", exceptionResolverComposite);
+        beanFactory.registerSingleton("objectMapper", objectMapper);
+        beanFactory.registerSingleton("sqlSessionFactory", new DefaultSqlSessionFactory(configuration));
+        StaleCacheScrubber scrubber = new DefaultStaleCacheScrubber(beanFactory);
+        Map<Class<?>, Set<Method>> initBinderCache = StaleCaches.getCache(RequestMappingHandlerAdapter.class, "initBinderCache", handlerAdapter);
+        Map<Class<?>, ExceptionHandlerMethodResolver> exceptionHandlerCache = StaleCaches.getCache(ExceptionHandlerExceptionResolver.class, "exceptionHandlerCache", exceptionResolver);
+        Map<Class<?>, ?> reflectorMap = StaleCaches.getCache(DefaultReflectorFactory.class, "reflectorMap", configuration.getReflectorFactory());
+
+        PatchGenerationRegistry registry = new PatchGenerationRegistry();
+        ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+        Set<Reference<ClassLoader>> supersededClassLoaders = new HashSet<>();
+        List<Reference<ClassLoader>> currentClassLoaders = new ArrayList<>();
+        for (int i = 0; i < PATCH_COUNT; i++) {
+            HotFixClassLoader classLoader = new HotFixClassLoader(CzbService.class.getClassLoader(), properties);
+            registry.register(new PatchGeneration(tempDir.toString(), classLoader.getClassLoaderMap().keySet(),
+                    classLoader.getClassLoaders(), classLoader.getMetaspaceUsedBytes()));
+            supersededClassLoaders.addAll(currentClassLoaders);
+            currentClassLoaders.clear();
+            for (ClassLoader generationClassLoader : classLoader.getClassLoaders()) {
+                currentClassLoaders.add(new WeakReference<>(generationClassLoader, queue));
+            }
+            for (String className : classNames) {
+                //模拟热修复后处理请求时框架缓存的补丁类
+                Class<?> cls = classLoader.loadClass(className);
+                ReflectionUtils.findMethod(cls, "method0");
+                BeanUtils.getPropertyDescriptors(cls);
+                objectMapper.writeValueAsString(cls.getDeclaredConstructor().newInstance());
+                objectMapper.readValue("{}", cls);
+                configuration.getReflectorFactory().findForClass(cls);
+                initBinderCache.put(cls, Collections.emptySet());
+                exceptionHandlerCache.put(cls, new ExceptionHandlerMethodResolver(cls));
+            }
+            if(i==1){
+                //不清理时被取代的补丁代一直被框架缓存强引用着，经过GC仍然可达
+                System.gc();
+                Assertions.assertEquals(1, registry.getLeakSuspectedGenerations().size());
+            }
+            scrubber.scrub(registry.getSupersededClassLoaders());
+            Assertions.assertEquals(classNames.size(), reflectorMap.size());
+            Assertions.assertEquals(classNames.size(), initBinderCache.size());
+            Assertions.assertEquals(classNames.size(), exceptionHandlerCache.size());
+        }
+        awaitCollected(queue, supersededClassLoaders);
+        Assertions.assertTrue(supersededClassLoaders.isEmpty(), supersededClassLoaders.size() + " superseded class loaders are still reachable");
+        Assertions.assertTrue(registry.getLeakSuspectedGenerations().isEmpty());
+        Assertions.assertEquals(PATCH_COUNT - 1, registry.getCollectedCount());
+    }
+
+    /**
+     * 触发GC，等待 references 都被回收，每个被回收的引用从 references 中移除，超时后返回
+     */
+    private static void awaitCollected(ReferenceQueue<ClassLoader> queue, Set<Reference<ClassLoader>> references) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!references.isEmpty() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Reference<? extends ClassLoader> collected;
+            while ((collected = queue.remove(100)) != null) {
+                references.remove(collected);
+            }
+        }
+    }
+}
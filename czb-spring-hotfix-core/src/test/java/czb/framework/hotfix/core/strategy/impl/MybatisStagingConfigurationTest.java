@@ -0,0 +1,277 @@
+package czb.framework.hotfix.core.strategy.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import czb.framework.hotfix.core.mapper.UserMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MybatisStagingConfigurationTest {
+
+    private static final String NAMESPACE=UserMapper.class.getName();
+
+    private static final String XML_RESOURCE=NAMESPACE.replace('.','/')+".xml";
+
+    @Test
+    public void test_stagingSwap() throws InterruptedException {
+        Configuration configuration = new MybatisConfiguration();
+        parseXml(configuration, "name");
+
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, new MybatisNamespaceIndex(), NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        try {
+            parseXml(stagingConfiguration.getConfiguration(), "nick_name");
+        } finally {
+            stagingConfiguration.seal();
+        }
+        //解析到影子 Configuration 中，运行中的 Configuration 不受影响
+        Assertions.assertTrue(getSql(configuration, "listName").contains(" name "));
+        Assertions.assertTrue(getSql(stagingConfiguration.getConfiguration(), "listName").contains("nick_name"));
+
+        //生效期间并发查找 MappedStatement，不会找不到
+        AtomicBoolean running=new AtomicBoolean(true);
+        AtomicLong lookups=new AtomicLong();
+        AtomicLong failures=new AtomicLong();
+        List<Thread> threads=new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        configuration.getMappedStatement(NAMESPACE + ".listName").getBoundSql(null);
+                        configuration.getMappedStatement(NAMESPACE + ".getName").getResultMaps();
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                    lookups.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(50);
+        stagingConfiguration.commit();
+        Thread.sleep(50);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(lookups.get() > 0);
+        Assertions.assertEquals(0, failures.get());
+        Assertions.assertTrue(getSql(configuration, "listName").contains("nick_name"));
+        Assertions.assertTrue(configuration.hasResultMap(NAMESPACE + ".nameMap"));
+        Assertions.assertTrue(configuration.getSqlFragments().containsKey(NAMESPACE + ".columns"));
+    }
+
+    @Test
+    public void test_namespaceIndex(){
+        Configuration configuration = new MybatisConfiguration();
+        for (int i = 0; i < 200; i++) {
+            String namespace = "czb.framework.hotfix.other.Mapper" + i;
+            StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+                    "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n" +
+                    "<mapper namespace=\"" + namespace + "\">\n");
+            for (int j = 0; j < 5; j++) {
+                xml.append("  <select id=\"select").append(j).append("\" resultType=\"string\">select ").append(j).append("</select>\n");
+            }
+            xml.append("</mapper>");
+            new XMLMapperBuilder(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), configuration,
+                    namespace.replace('.', '/') + ".xml", configuration.getSqlFragments(), namespace).parse();
+        }
+        parseXml(configuration, "name");
+        int otherStatementSize = configuration.getMappedStatementNames().size();
+        MybatisNamespaceIndex namespaceIndex = new MybatisNamespaceIndex();
+
+        //第一次热修复删除了 getName
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, namespaceIndex, NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseXml(stagingConfiguration.getConfiguration(), "nick_name", false);
+        stagingConfiguration.seal();
+        stagingConfiguration.commit();
+        Assertions.assertTrue(getSql(configuration, "listName").contains("nick_name"));
+        Assertions.assertFalse(configuration.hasStatement(NAMESPACE + ".getName", false));
+        Assertions.assertFalse(configuration.hasResultMap(NAMESPACE + ".nameMap"));
+        Assertions.assertTrue(configuration.hasStatement("czb.framework.hotfix.other.Mapper199.select4", false));
+
+        //第二次热修复使用增量更新后的索引，恢复 getName
+        stagingConfiguration = new MybatisStagingConfiguration(configuration, namespaceIndex, NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseXml(stagingConfiguration.getConfiguration(), "name");
+        stagingConfiguration.seal();
+        stagingConfiguration.commit();
+        Assertions.assertTrue(getSql(configuration, "getName").contains(" name "));
+        Assertions.assertEquals(otherStatementSize, configuration.getMappedStatementNames().size());
+    }
+
+    @Test
+    public void test_statementDiff(){
+        Configuration configuration = new MybatisConfiguration();
+        parseCachedXml(configuration, "name");
+        MappedStatement liveGetName = configuration.getMappedStatement(NAMESPACE + ".getName");
+        MappedStatement liveListName = configuration.getMappedStatement(NAMESPACE + ".listName");
+        Object liveCache = configuration.getCache(NAMESPACE);
+
+        //只修改 listName 的SQL
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, new MybatisNamespaceIndex(), NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseCachedXml(stagingConfiguration.getConfiguration(), "nick_name");
+        stagingConfiguration.seal();
+        Assertions.assertEquals(Collections.singleton(NAMESPACE + ".listName"), stagingConfiguration.getChangedStatementIds());
+        stagingConfiguration.commit();
+
+        //没有变化的语句和二级缓存继续使用原来的对象，有变化的语句引用原来的二级缓存
+        Assertions.assertSame(liveGetName, configuration.getMappedStatement(NAMESPACE + ".getName"));
+        Assertions.assertSame(liveCache, configuration.getCache(NAMESPACE));
+        MappedStatement newListName = configuration.getMappedStatement(NAMESPACE + ".listName");
+        Assertions.assertNotSame(liveListName, newListName);
+        Assertions.assertSame(liveCache, newListName.getCache());
+        Assertions.assertTrue(getSql(configuration, "listName").contains("nick_name"));
+    }
+
+    @Test
+    public void test_rebindConfiguration(){
+        Configuration configuration = new MybatisConfiguration();
+        parseCachedXml(configuration, "name");
+
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, new MybatisNamespaceIndex(), NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseCachedXml(stagingConfiguration.getConfiguration(), "nick_name where id = #{id}<if test=\"id != null\"> and deleted = 0</if>");
+        stagingConfiguration.seal();
+        stagingConfiguration.commit();
+
+        //生效后的元数据引用运行中的 Configuration，而不是影子 Configuration
+        MappedStatement listName = configuration.getMappedStatement(NAMESPACE + ".listName");
+        Assertions.assertTrue(listName.getSqlSource() instanceof DynamicSqlSource);
+        Assertions.assertSame(configuration, listName.getConfiguration());
+        Assertions.assertSame(configuration, MybatisAccessors.field(DynamicSqlSource.class, "configuration").get(listName.getSqlSource(), Configuration.class));
+        for (ResultMap resultMap : listName.getResultMaps()) {
+            Assertions.assertSame(configuration, MybatisAccessors.field(ResultMap.class, "configuration").get(resultMap, Configuration.class));
+        }
+        Assertions.assertTrue(getSql(configuration, "listName").contains("nick_name"));
+    }
+
+    @Test
+    public void test_stagingConfigurationCollectable() throws InterruptedException {
+        Configuration configuration = new MybatisConfiguration();
+        parseCachedXml(configuration, "name");
+        ReferenceQueue<Configuration> queue = new ReferenceQueue<>();
+        WeakReference<Configuration> reference = patch(configuration, "nick_name", queue);
+        patch(configuration, "name", queue);
+        Assertions.assertSame(configuration, configuration.getMappedStatement(NAMESPACE + ".listName").getConfiguration());
+
+        //第二次热修复后，第一次热修复的影子 Configuration 没有被任何元数据或全局配置引用，可以被回收
+        long deadline = System.currentTimeMillis() + 10_000;
+        Set<Reference<? extends Configuration>> collected = new HashSet<>();
+        while (!collected.contains(reference) && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Reference<? extends Configuration> next;
+            while ((next = queue.remove(100)) != null) {
+                collected.add(next);
+            }
+        }
+        Assertions.assertTrue(collected.contains(reference));
+    }
+
+    private WeakReference<Configuration> patch(Configuration configuration, String listNameColumn, ReferenceQueue<Configuration> queue){
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, new MybatisNamespaceIndex(), NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseCachedXml(stagingConfiguration.getConfiguration(), listNameColumn);
+        stagingConfiguration.seal();
+        stagingConfiguration.commit();
+        //影子 Configuration 在 Mybatis-Plus 中的全局配置已经注销
+        Assertions.assertFalse(MybatisAccessors.field(GlobalConfigUtils.class, "GLOBAL_CONFIG").get(null, Map.class)
+                .containsKey(Integer.toHexString(stagingConfiguration.getConfiguration().hashCode())));
+        return new WeakReference<>(stagingConfiguration.getConfiguration(), queue);
+    }
+
+    @Test
+    public void test_shortNameAmbiguity(){
+        Configuration configuration = new MybatisConfiguration();
+        String otherNamespace = "czb.framework.hotfix.other.NameMapper";
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+                "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n" +
+                "<mapper namespace=\"" + otherNamespace + "\">\n" +
+                "  <select id=\"listName\" resultType=\"string\">select name from other</select>\n" +
+                "</mapper>";
+        new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), configuration,
+                otherNamespace.replace('.', '/') + ".xml", configuration.getSqlFragments(), otherNamespace).parse();
+        parseXml(configuration, "name");
+
+        MybatisStagingConfiguration stagingConfiguration = new MybatisStagingConfiguration(configuration, new MybatisNamespaceIndex(), NAMESPACE,
+                Arrays.asList(NAMESPACE + ".listName", NAMESPACE + ".getName"), Arrays.asList(UserMapper.class.toString(), XML_RESOURCE));
+        parseXml(stagingConfiguration.getConfiguration(), "nick_name");
+        //影子集合中可以读到运行中其他命名空间的元数据，短名称与运行中的集合冲突时同样有歧义
+        Assertions.assertTrue(stagingConfiguration.getConfiguration().hasStatement(otherNamespace + ".listName", false));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> stagingConfiguration.getConfiguration().getMappedStatement("listName"));
+        stagingConfiguration.seal();
+        stagingConfiguration.commit();
+
+        //生效后的短名称仍然是运行中集合认识的歧义标记
+        Assertions.assertThrows(IllegalArgumentException.class, () -> configuration.getMappedStatement("listName"));
+        Assertions.assertTrue(getSql(configuration, "listName").contains("nick_name"));
+        Assertions.assertEquals(otherNamespace + ".listName", configuration.getMappedStatement(otherNamespace + ".listName").getId());
+    }
+
+    @Test
+    public void test_accessors(){
+        //当前依赖的 Mybatis / Mybatis-Plus 版本需要访问的内部属性和方法都可以解析
+        Assertions.assertDoesNotThrow(() -> MybatisAccessors.validate(getClass().getClassLoader()));
+        Assertions.assertSame(MybatisAccessors.field(MybatisConfiguration.class, "mappedStatements"),
+                MybatisAccessors.field(MybatisConfiguration.class, "mappedStatements"));
+        Assertions.assertEquals(2, MybatisAccessors.fields(MybatisConfiguration.class, "mappedStatements").size());
+    }
+
+    private void parseCachedXml(Configuration configuration, String listNameColumn){
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+                "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n" +
+                "<mapper namespace=\"" + NAMESPACE + "\">\n" +
+                "  <cache/>\n" +
+                "  <resultMap id=\"nameMap\" type=\"string\"/>\n" +
+                "  <select id=\"listName\" resultType=\"string\">select " + listNameColumn + " from user</select>\n" +
+                "  <select id=\"getName\" resultMap=\"nameMap\">select name from user where id = #{id}<if test=\"id != null\"> and deleted = 0</if></select>\n" +
+                "</mapper>";
+        new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), configuration, XML_RESOURCE,
+                configuration.getSqlFragments(), NAMESPACE).parse();
+    }
+
+    private void parseXml(Configuration configuration, String column){
+        parseXml(configuration, column, true);
+    }
+
+    private void parseXml(Configuration configuration, String column, boolean withGetName){
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+                "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n" +
+                "<mapper namespace=\"" + NAMESPACE + "\">\n" +
+                (withGetName ? "  <resultMap id=\"nameMap\" type=\"string\"/>\n" : "") +
+                "  <sql id=\"columns\"> " + column + " </sql>\n" +
+                "  <select id=\"listName\" resultType=\"string\">select <include refid=\"columns\"/> from user</select>\n" +
+                (withGetName ? "  <select id=\"getName\" resultMap=\"nameMap\">select <include refid=\"columns\"/> from user where id = #{id}</select>\n" : "") +
+                "</mapper>";
+        new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), configuration, XML_RESOURCE,
+                configuration.getSqlFragments(), NAMESPACE).parse();
+    }
+
+    private String getSql(Configuration configuration, String id){
+        MappedStatement mappedStatement = configuration.getMappedStatement(NAMESPACE + "." + id);
+        return mappedStatement.getBoundSql(null).getSql();
+    }
+}
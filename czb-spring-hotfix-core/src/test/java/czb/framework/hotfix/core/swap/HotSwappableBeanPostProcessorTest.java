@@ -0,0 +1,60 @@
+package czb.framework.hotfix.core.swap;
+
+import czb.framework.hotfix.core.exception.HotFixException;
+import czb.framework.hotfix.core.service.BinService;
+import czb.framework.hotfix.core.service.CzbService;
+import czb.framework.hotfix.core.service.impl.BinServiceImpl;
+import czb.framework.hotfix.core.service.impl.CzbServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class HotSwappableBeanPostProcessorTest {
+
+    @Test
+    public void test_swap(){
+        HotSwappableBeanRegistry registry = new HotSwappableBeanRegistry();
+        HotSwappableBeanPostProcessor postProcessor = new HotSwappableBeanPostProcessor(registry, Collections.singletonList("czb.framework.hotfix.core.service"));
+        Object bean = postProcessor.postProcessAfterInitialization(new BinServiceImpl(), "binServiceImpl");
+        Assertions.assertTrue(bean instanceof BinService);
+        Assertions.assertFalse(bean instanceof BinServiceImpl);
+        Assertions.assertTrue(registry.contains("binServiceImpl"));
+
+        //依赖方持有的是代理对象，替换目标对象后直接调用到新的目标对象
+        CzbService czbService = new CzbServiceImpl();
+        czbService.setBinService((BinService) bean);
+        List<String> commands=new ArrayList<>();
+        registry.getTargetSource(BinServiceImpl.class).swap((BinService) commands::add);
+        czbService.listName();
+        Assertions.assertEquals(1, commands.size());
+
+        //没有实现代理接口的对象不能作为目标对象
+        Assertions.assertThrows(HotFixException.class, () -> registry.getTargetSource("binServiceImpl").swap(new Object()));
+
+        //不在指定包下的 Bean 不会被包装
+        Object other = new ArrayList<>();
+        Assertions.assertSame(other, postProcessor.postProcessAfterInitialization(other, "list"));
+    }
+
+    @Test
+    public void test_swap_aop_proxy(){
+        HotSwappableBeanRegistry registry = new HotSwappableBeanRegistry();
+        HotSwappableBeanPostProcessor postProcessor = new HotSwappableBeanPostProcessor(registry, Collections.singletonList("czb.framework.hotfix.core.service"));
+        //JDK 代理与 CGLIB 代理的原 Bean 都按用户类登记
+        ProxyFactory jdkProxyFactory = new ProxyFactory(new BinServiceImpl());
+        jdkProxyFactory.setInterfaces(BinService.class);
+        postProcessor.postProcessAfterInitialization(jdkProxyFactory.getProxy(), "binServiceImpl");
+        ProxyFactory cglibProxyFactory = new ProxyFactory(new CzbServiceImpl());
+        cglibProxyFactory.setProxyTargetClass(true);
+        postProcessor.postProcessAfterInitialization(cglibProxyFactory.getProxy(), "czbServiceImpl");
+
+        Assertions.assertEquals("binServiceImpl", registry.getBeanName(BinServiceImpl.class));
+        Assertions.assertNotNull(registry.getTargetSource(BinServiceImpl.class));
+        Assertions.assertEquals("czbServiceImpl", registry.getBeanName(CzbServiceImpl.class));
+        Assertions.assertNotNull(registry.getTargetSource(CzbServiceImpl.class));
+    }
+}
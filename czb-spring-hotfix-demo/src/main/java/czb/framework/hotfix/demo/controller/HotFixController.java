@@ -1,8 +1,11 @@
 package czb.framework.hotfix.demo.controller;
 
 import czb.framework.hotfix.core.HotFix;
+import czb.framework.hotfix.core.job.HotFixJob;
 import czb.framework.hotfix.demo.vo.resq.ApiResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -15,8 +18,15 @@ public class HotFixController {
     @PutMapping("/hotfix")
     public ApiResult hotfix(){
         if(hotFix==null) return ApiResult.fail("未开启热修复");
-        //启动热修复
-        hotFix.exec();
-        return ApiResult.success();
+        //异步启动热修复，不占用请求线程，返回热修复任务
+        return ApiResult.success(hotFix.submit());
+    }
+
+    @GetMapping("/hotfix/jobs/{id}")
+    public ApiResult job(@PathVariable long id){
+        if(hotFix==null) return ApiResult.fail("未开启热修复");
+        HotFixJob job = hotFix.getJobScheduler().getJob(id);
+        if(job==null) return ApiResult.fail("热修复任务不存在");
+        return ApiResult.success(job);
     }
 }
@@ -0,0 +1,31 @@
+package czb.framework.hotfix.demo.loadtest;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 热修复压测配置，只在 loadtest 环境下生效
+ * @author chenzhuobin
+ */
+@Configuration
+@Profile("loadtest")
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTestConfiguration {
+
+    @Bean
+    public LoadTestRunner loadTestRunner(ConfigurableApplicationContext context, LoadTestProperties properties){
+        //HttpURLConnection 默认每个地址只保持 5 个空闲连接，并发线程更多时每次请求都会新建连接，需要在第一次请求之前设置
+        if(System.getProperty("http.maxConnections")==null){
+            System.setProperty("http.maxConnections", String.valueOf(Math.max(5, properties.getConcurrency())));
+        }
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(5000);
+        requestFactory.setReadTimeout(30000);
+        return new LoadTestRunner(context, properties, new RestTemplate(requestFactory));
+    }
+}
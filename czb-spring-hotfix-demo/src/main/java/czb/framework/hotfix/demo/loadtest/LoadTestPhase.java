@@ -0,0 +1,28 @@
+package czb.framework.hotfix.demo.loadtest;
+
+/**
+ * 压测阶段，请求按发出时所在的阶段统计
+ * @author chenzhuobin
+ */
+public enum LoadTestPhase {
+
+    /**
+     * 预热，不统计
+     */
+    WARM_UP,
+
+    /**
+     * 热修复之前
+     */
+    BEFORE,
+
+    /**
+     * 从触发热修复到热修复任务结束，再加上 {@link LoadTestProperties#getSettle()}，包括热修复后第一次调用补丁类的请求
+     */
+    DURING,
+
+    /**
+     * 热修复之后
+     */
+    AFTER
+}
@@ -0,0 +1,145 @@
+package czb.framework.hotfix.demo.loadtest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 热修复压测参数配置
+ * @author chenzhuobin
+ */
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+    /**
+     * 并发请求的线程数
+     */
+    private int concurrency = 16;
+
+    /**
+     * 所有线程合计每秒发出的请求数，按固定速率发出，不受响应快慢影响
+     */
+    private int rate = 800;
+
+    /**
+     * 预热时长，不统计
+     */
+    private Duration warmUp = Duration.ofSeconds(10);
+
+    /**
+     * 热修复之前的统计时长
+     */
+    private Duration before = Duration.ofSeconds(20);
+
+    /**
+     * 热修复任务结束后继续按 {@link LoadTestPhase#DURING} 统计的时长
+     */
+    private Duration settle = Duration.ofSeconds(2);
+
+    /**
+     * 热修复之后的统计时长
+     */
+    private Duration after = Duration.ofSeconds(20);
+
+    /**
+     * 等待热修复任务结束的最长时间
+     */
+    private Duration hotfixTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 轮流请求的接口【相对路径，可以带查询参数】
+     */
+    private List<String> paths = new ArrayList<>();
+
+    /**
+     * 允许的失败请求数，超过时以非0退出码结束
+     */
+    private long maxErrors = 0;
+
+    /**
+     * 允许的 {@link LoadTestPhase#DURING} 阶段 p999 延迟【毫秒】，超过时以非0退出码结束，为0时不检查
+     */
+    private long maxDuringP999Millis = 0;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public Duration getWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(Duration warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public Duration getBefore() {
+        return before;
+    }
+
+    public void setBefore(Duration before) {
+        this.before = before;
+    }
+
+    public Duration getSettle() {
+        return settle;
+    }
+
+    public void setSettle(Duration settle) {
+        this.settle = settle;
+    }
+
+    public Duration getAfter() {
+        return after;
+    }
+
+    public void setAfter(Duration after) {
+        this.after = after;
+    }
+
+    public Duration getHotfixTimeout() {
+        return hotfixTimeout;
+    }
+
+    public void setHotfixTimeout(Duration hotfixTimeout) {
+        this.hotfixTimeout = hotfixTimeout;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public long getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(long maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public long getMaxDuringP999Millis() {
+        return maxDuringP999Millis;
+    }
+
+    public void setMaxDuringP999Millis(long maxDuringP999Millis) {
+        this.maxDuringP999Millis = maxDuringP999Millis;
+    }
+}
@@ -0,0 +1,243 @@
+package czb.framework.hotfix.demo.loadtest;
+
+import czb.framework.hotfix.demo.vo.resq.ApiResult;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 热修复压测：在热修复生效前后持续并发请求接口，统计客户端看到的延迟和失败
+ * <p>请求按固定速率发出【开环】：每个压测线程按 {@link LoadTestProperties#getRate()} 均分后的间隔排好每个请求的计划发出时间，
+ * 延迟从计划发出时间开始计算。热修复期间服务端停顿时，排在后面的请求虽然晚发出，但等待的时间同样计入延迟，
+ * 不会像闭环压测那样因为少发了请求而漏掉停顿【coordinated omission】。</p>
+ * <p>应用启动后先预热，然后依次经过 {@link LoadTestPhase#BEFORE}、{@link LoadTestPhase#DURING}、{@link LoadTestPhase#AFTER} 三个阶段，
+ * DURING 阶段开始时通过 PUT /hotfix 触发热修复，并轮询热修复任务直到结束。结束后输出每个阶段的请求数、失败数和 p50/p99/p999 延迟，
+ * 热修复失败、失败请求数或者 DURING 阶段的 p999 延迟超过配置时以非0退出码结束应用，可以作为每次修改热修复引擎后的回归检查。</p>
+ * @author chenzhuobin
+ */
+public class LoadTestRunner implements ApplicationRunner {
+
+    private Logger log= LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private final ConfigurableApplicationContext context;
+
+    private final LoadTestProperties properties;
+
+    private final RestTemplate restTemplate;
+
+    /**
+     * 每个阶段的统计
+     */
+    private final Map<LoadTestPhase,PhaseStats> stats=new EnumMap<>(LoadTestPhase.class);
+
+    /**
+     * 当前阶段，压测线程发出请求时读取
+     */
+    private volatile LoadTestPhase phase=LoadTestPhase.WARM_UP;
+
+    private volatile boolean running=true;
+
+    public LoadTestRunner(ConfigurableApplicationContext context, LoadTestProperties properties, RestTemplate restTemplate) {
+        this.context = context;
+        this.properties = properties;
+        this.restTemplate = restTemplate;
+        for (LoadTestPhase loadTestPhase : LoadTestPhase.values()) {
+            stats.put(loadTestPhase,new PhaseStats(loadTestPhase));
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        List<String> paths = properties.getPaths();
+        if(paths.isEmpty()) throw new IllegalStateException(" loadtest.paths is empty");
+        if(properties.getRate()<=0) throw new IllegalStateException(" loadtest.rate must be positive");
+        if(log.isInfoEnabled()){
+            log.info("load test {} with {} threads at {} requests/s , paths = {}",baseUrl,properties.getConcurrency(),properties.getRate(),paths);
+        }
+        AtomicInteger threadIndex=new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(properties.getConcurrency(), runnable -> new Thread(runnable, "loadtest-" + threadIndex.incrementAndGet()));
+        //每个线程发出请求的间隔，所有线程合起来为 rate
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(properties.getConcurrency()) / properties.getRate());
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < properties.getConcurrency(); i++) {
+            int offset = i;
+            //各个线程的计划发出时间均匀错开
+            long firstNanos = startNanos + intervalNanos * i / properties.getConcurrency();
+            executor.execute(() -> drive(baseUrl, paths, offset, firstNanos, intervalNanos));
+        }
+        Map<?,?> job=null;
+        try {
+            stats.get(phase).start();
+            sleep(properties.getWarmUp());
+            enter(LoadTestPhase.BEFORE);
+            sleep(properties.getBefore());
+            enter(LoadTestPhase.DURING);
+            job = triggerHotFix(baseUrl);
+            sleep(properties.getSettle());
+            enter(LoadTestPhase.AFTER);
+            sleep(properties.getAfter());
+        } catch (RuntimeException e) {
+            log.error(" load test interrupted",e);
+        } finally {
+            running=false;
+            stats.get(phase).end();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        int exitCode = report(job);
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    /**
+     * 压测线程：按固定间隔轮流请求 paths，直到压测结束
+     * <p>第 n 个请求的计划发出时间为 firstNanos + n * intervalNanos，与前面的请求什么时候返回无关。前面的请求变慢时，
+     * 后面已经到了计划时间的请求会立即接着发出，它们的延迟包括在客户端排队等待的时间。</p>
+     * @param offset 第一个请求的下标，让各个线程错开请求的接口
+     * @param firstNanos 第一个请求的计划发出时间【{@link System#nanoTime()}】
+     * @param intervalNanos 该线程发出请求的间隔【纳秒】
+     */
+    private void drive(String baseUrl, List<String> paths, int offset, long firstNanos, long intervalNanos){
+        int index=offset % paths.size();
+        long intendedStart=firstNanos;
+        while (running){
+            long now = System.nanoTime();
+            if(now<intendedStart){
+                LockSupport.parkNanos(intendedStart-now);
+                continue;
+            }
+            String path = paths.get(index);
+            index=(index+1) % paths.size();
+            PhaseStats phaseStats = stats.get(phase);
+            long start = intendedStart;
+            intendedStart+=intervalNanos;
+            try {
+                ApiResult<?> result = restTemplate.getForObject(baseUrl + path, ApiResult.class);
+                if(result==null || result.getCode()==null || result.getCode()!=0){
+                    phaseStats.recordError(path+" code="+(result==null?null:result.getCode()));
+                }else{
+                    //从计划发出时间开始计算延迟
+                    phaseStats.recordLatency(System.nanoTime()-start);
+                }
+            } catch (HttpStatusCodeException e) {
+                phaseStats.recordError(path+" status="+e.getRawStatusCode());
+            } catch (RestClientException e) {
+                phaseStats.recordError(path+" "+e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * 结束当前阶段，进入 next 阶段
+     */
+    private void enter(LoadTestPhase next){
+        stats.get(phase).end();
+        stats.get(next).start();
+        phase=next;
+        if(log.isInfoEnabled()){
+            log.info("load test phase {}",next);
+        }
+    }
+
+    /**
+     * 通过 PUT /hotfix 异步触发热修复，轮询热修复任务直到结束
+     * @return 结束的热修复任务
+     */
+    private Map<?,?> triggerHotFix(String baseUrl) throws InterruptedException {
+        long start = System.nanoTime();
+        ApiResult<?> submitted = restTemplate.exchange(baseUrl + "/hotfix", HttpMethod.PUT, null, ApiResult.class).getBody();
+        if(submitted==null || submitted.getCode()==null || submitted.getCode()!=0){
+            throw new IllegalStateException(" submit hotfix fail : "+(submitted==null?null:submitted.getMsg()));
+        }
+        Object id = ((Map<?,?>) submitted.getData()).get("id");
+        long deadline = start + properties.getHotfixTimeout().toNanos();
+        while (true){
+            ApiResult<?> result = restTemplate.getForObject(baseUrl + "/hotfix/jobs/" + id, ApiResult.class);
+            Map<?,?> job = result==null ? null : (Map<?,?>) result.getData();
+            Object status = job==null ? null : job.get("status");
+            if("SUCCEEDED".equals(status) || "FAILED".equals(status)){
+                if(log.isInfoEnabled()){
+                    log.info("hotfix job {} {} , {} ms after submit",id,status,TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
+                }
+                return job;
+            }
+            if(System.nanoTime()>deadline){
+                throw new IllegalStateException(" hotfix job "+id+" not finished in "+properties.getHotfixTimeout());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 输出每个阶段的统计，并检查是否通过
+     * @param job 结束的热修复任务，触发失败时为null
+     * @return 退出码，通过时为0
+     */
+    private int report(Map<?,?> job){
+        StringBuilder table=new StringBuilder("\n");
+        table.append(String.format("%-8s %10s %8s %10s %10s %10s %10s %10s%n","phase","requests","errors","rps","p50(ms)","p99(ms)","p999(ms)","max(ms)"));
+        long totalErrors=0;
+        for (LoadTestPhase reportPhase : new LoadTestPhase[]{LoadTestPhase.BEFORE, LoadTestPhase.DURING, LoadTestPhase.AFTER}) {
+            PhaseStats phaseStats = stats.get(reportPhase);
+            Histogram histogram = phaseStats.getHistogram();
+            long durationMillis = Math.max(1, phaseStats.getDurationMillis());
+            table.append(String.format("%-8s %10d %8d %10d %10.3f %10.3f %10.3f %10.3f%n",reportPhase,histogram.getTotalCount(),phaseStats.getErrorCount(),
+                    histogram.getTotalCount()*1000/durationMillis,toMillis(histogram.getValueAtPercentile(50)),toMillis(histogram.getValueAtPercentile(99)),
+                    toMillis(histogram.getValueAtPercentile(99.9)),toMillis(histogram.getMaxValue())));
+            totalErrors+=phaseStats.getErrorCount();
+            if(!phaseStats.getErrors().isEmpty()){
+                log.warn("{} errors : {}",reportPhase,phaseStats.getErrors());
+            }
+        }
+        log.info(table.toString());
+        List<String> failures=new ArrayList<>();
+        if(job==null){
+            failures.add("hotfix not finished");
+        }else{
+            if(log.isInfoEnabled()){
+                log.info("hotfix report : {}",job.get("report"));
+            }
+            if(!"SUCCEEDED".equals(job.get("status"))) failures.add("hotfix job "+job.get("status")+" : "+job.get("errorMessage"));
+        }
+        if(totalErrors>properties.getMaxErrors()){
+            failures.add(totalErrors+" errors , max "+properties.getMaxErrors());
+        }
+        double duringP999Millis = toMillis(stats.get(LoadTestPhase.DURING).getHistogram().getValueAtPercentile(99.9));
+        if(properties.getMaxDuringP999Millis()>0 && duringP999Millis>properties.getMaxDuringP999Millis()){
+            failures.add("during p999 "+duringP999Millis+" ms , max "+properties.getMaxDuringP999Millis()+" ms");
+        }
+        if(failures.isEmpty()){
+            log.info("load test passed");
+            return 0;
+        }
+        log.error("load test failed : {}",failures);
+        return 1;
+    }
+
+    private static double toMillis(long nanos){
+        return nanos/1_000_000.0;
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        Thread.sleep(duration.toMillis());
+    }
+}
@@ -0,0 +1,105 @@
+package czb.framework.hotfix.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个压测阶段的统计：成功请求的延迟分布和失败次数
+ * <p>延迟记录到 HdrHistogram 的 {@link Recorder} 中，多个压测线程并发记录不需要加锁。</p>
+ * @author chenzhuobin
+ */
+public class PhaseStats {
+
+    /**
+     * 可以记录的最大延迟【纳秒】，超过的按最大值记录
+     */
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LoadTestPhase phase;
+
+    private final Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+
+    private final LongAdder errorCount = new LongAdder();
+
+    /**
+     * 失败原因的次数【key=失败原因,value=次数】
+     */
+    private final Map<String,AtomicLong> errors = new ConcurrentHashMap<>();
+
+    /**
+     * 阶段开始和结束的时间【纳秒】
+     */
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    /**
+     * 阶段结束后的延迟分布
+     */
+    private Histogram histogram;
+
+    public PhaseStats(LoadTestPhase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * 记录一次成功请求的延迟
+     * @param latencyNanos 延迟【纳秒】
+     */
+    public void recordLatency(long latencyNanos){
+        recorder.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+    }
+
+    /**
+     * 记录一次失败请求
+     * @param reason 失败原因，如异常类名或者响应码
+     */
+    public void recordError(String reason){
+        errorCount.increment();
+        errors.computeIfAbsent(reason, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    void start(){
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * 结束该阶段，之后还在处理中的请求仍会记录，在 {@link #getHistogram()} 之前完成
+     */
+    void end(){
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取 延迟分布，所有压测线程停止后调用
+     */
+    public synchronized Histogram getHistogram(){
+        if(histogram==null) histogram = recorder.getIntervalHistogram();
+        return histogram;
+    }
+
+    public LoadTestPhase getPhase() {
+        return phase;
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public Map<String, AtomicLong> getErrors() {
+        return errors;
+    }
+
+    /**
+     * 获取 阶段持续的毫秒数
+     */
+    public long getDurationMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+}
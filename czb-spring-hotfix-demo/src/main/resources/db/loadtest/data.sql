@@ -0,0 +1,9 @@
+INSERT INTO `classroom` (`id`, `name`) VALUES
+	(1, '一班'),
+	(2, '二班'),
+	(3, '三班');
+
+INSERT INTO `user` (`id`, `name`, `age`) VALUES
+	(1, '小明', 12),
+	(2, '小红', 22),
+	(3, '小西', 32);
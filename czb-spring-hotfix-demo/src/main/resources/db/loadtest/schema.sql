@@ -0,0 +1,14 @@
+DROP TABLE IF EXISTS `classroom`;
+CREATE TABLE `classroom` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `name` varchar(50) NOT NULL DEFAULT '0',
+  PRIMARY KEY (`id`)
+);
+
+DROP TABLE IF EXISTS `user`;
+CREATE TABLE `user` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `name` varchar(50) NOT NULL DEFAULT '0',
+  `age` int NOT NULL DEFAULT '0',
+  PRIMARY KEY (`id`)
+);
@@ -2,12 +2,17 @@ package czb.framework.hotfix.autoconfigure;
 
 import czb.framework.hotfix.core.HotFix;
 import czb.framework.hotfix.core.config.HotFixProperties;
+import czb.framework.hotfix.core.swap.HotSwappableBeanPostProcessor;
+import czb.framework.hotfix.core.swap.HotSwappableBeanRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 @Configuration
 @EnableConfigurationProperties(HotFixProperties.class)
@@ -22,4 +27,38 @@ public class HotFixAutoConfiguration {
     public HotFix hotFix(){
         return new HotFix(hotFixProperties);
     }
+
+    /**
+     * 可热替换 Bean 对象的注册表，配置了 hotfix.hot-swappable-packages 时才会有 Bean 被登记
+     */
+    @ConditionalOnProperty(prefix = "hotfix",name="enable",havingValue = "true")
+    @Bean
+    public static HotSwappableBeanRegistry hotSwappableBeanRegistry(){
+        return new HotSwappableBeanRegistry();
+    }
+
+    /**
+     * 把 hotfix.hot-swappable-packages 下的 Bean 包装成可热替换的代理对象
+     * <p>BeanPostProcessor 会在其他 Bean 之前实例化，此时 {@link HotFixProperties} 还没有绑定，所以直接从 {@link Environment} 中绑定</p>
+     */
+    @ConditionalOnProperty(prefix = "hotfix",name="enable",havingValue = "true")
+    @Bean
+    public static HotSwappableBeanPostProcessor hotSwappableBeanPostProcessor(HotSwappableBeanRegistry hotSwappableBeanRegistry, Environment environment){
+        HotFixProperties properties = Binder.get(environment).bind("hotfix", HotFixProperties.class).orElseGet(HotFixProperties::new);
+        return new HotSwappableBeanPostProcessor(hotSwappableBeanRegistry, properties.getHotSwappablePackages());
+    }
+
+    /**
+     * 有 Micrometer 依赖时记录热修复每个阶段的指标，由 Spring Boot 绑定到应用的 MeterRegistry
+     */
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "hotfix",name="enable",havingValue = "true")
+    static class HotFixMetricsConfiguration {
+
+        @Bean
+        public HotFixMetrics hotFixMetrics(HotFix hotFix){
+            return new HotFixMetrics(hotFix);
+        }
+    }
 }
@@ -0,0 +1,220 @@
+package czb.framework.hotfix.autoconfigure;
+
+import czb.framework.hotfix.core.HotFix;
+import czb.framework.hotfix.core.generation.PatchGeneration;
+import czb.framework.hotfix.core.generation.PatchGenerationRegistry;
+import czb.framework.hotfix.core.job.HotFixJob;
+import czb.framework.hotfix.core.report.HotFixReport;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 热修复的 Actuator 端点，id 为 hotfix
+ * <ul>
+ *   <li>GET /actuator/hotfix：补丁代【内容摘要、热修复的类、Controller、Mapper 命名空间、替换的 Bean】、最近一次热修复每个阶段的耗时、
+ *   类加载器数量以及估算占用的元空间</li>
+ *   <li>GET /actuator/hotfix/{id}：热修复任务的状态</li>
+ *   <li>POST /actuator/hotfix：异步启动热修复，返回热修复任务，见 {@link HotFix#submit()}</li>
+ * </ul>
+ * @author chenzhuobin
+ */
+@Endpoint(id = "hotfix")
+public class HotFixEndpoint {
+
+    private final HotFix hotFix;
+
+    public HotFixEndpoint(HotFix hotFix) {
+        this.hotFix = hotFix;
+    }
+
+    @ReadOperation
+    public HotFixDescriptor hotFix(){
+        PatchGenerationRegistry registry = hotFix.getGenerationRegistry();
+        List<PatchGeneration> generations = registry.getGenerations();
+        List<GenerationDescriptor> generationDescriptors=new ArrayList<>(generations.size());
+        int classLoaderCount=0;
+        for (PatchGeneration generation : generations) {
+            GenerationDescriptor descriptor = new GenerationDescriptor(generation);
+            classLoaderCount+=descriptor.getReachableClassLoaderCount();
+            generationDescriptors.add(descriptor);
+        }
+        HotFixDescriptor descriptor = new HotFixDescriptor();
+        //最后注册的补丁代即当前生效的补丁代
+        descriptor.activeGeneration = generationDescriptors.isEmpty() ? null : generationDescriptors.get(generationDescriptors.size() - 1);
+        descriptor.generations = generationDescriptors;
+        descriptor.classLoaderCount = classLoaderCount;
+        descriptor.retainedMetaspaceBytes = registry.getRetainedMetaspaceBytes();
+        descriptor.collectedGenerationCount = registry.getCollectedCount();
+        descriptor.lastReport = hotFix.getLastReport();
+        descriptor.runningJob = hotFix.getJobScheduler().getRunningJob();
+        return descriptor;
+    }
+
+    @ReadOperation
+    public HotFixJob job(@Selector long id){
+        return hotFix.getJobScheduler().getJob(id);
+    }
+
+    @WriteOperation
+    public HotFixJob apply(){
+        return hotFix.submit();
+    }
+
+    /**
+     * 热修复的状态
+     */
+    public static final class HotFixDescriptor {
+
+        private GenerationDescriptor activeGeneration;
+
+        private List<GenerationDescriptor> generations;
+
+        private int classLoaderCount;
+
+        private long retainedMetaspaceBytes;
+
+        private long collectedGenerationCount;
+
+        private HotFixReport lastReport;
+
+        private HotFixJob runningJob;
+
+        /**
+         * 获取 当前生效的补丁代，即最后生效的补丁代，还没有热修复过时为null
+         */
+        public GenerationDescriptor getActiveGeneration() {
+            return activeGeneration;
+        }
+
+        /**
+         * 获取 还没有被回收的补丁代
+         */
+        public List<GenerationDescriptor> getGenerations() {
+            return generations;
+        }
+
+        /**
+         * 获取 还没有被回收的热修复类加载器数量
+         */
+        public int getClassLoaderCount() {
+            return classLoaderCount;
+        }
+
+        /**
+         * 获取 还没有被回收的补丁代估算占用的元空间大小【字节】
+         */
+        public long getRetainedMetaspaceBytes() {
+            return retainedMetaspaceBytes;
+        }
+
+        /**
+         * 获取 已经被回收的补丁代的数量
+         */
+        public long getCollectedGenerationCount() {
+            return collectedGenerationCount;
+        }
+
+        /**
+         * 获取 最近一次热修复的执行报告，包括每个阶段的耗时
+         */
+        public HotFixReport getLastReport() {
+            return lastReport;
+        }
+
+        /**
+         * 获取 执行中的热修复任务
+         */
+        public HotFixJob getRunningJob() {
+            return runningJob;
+        }
+    }
+
+    /**
+     * 一代补丁的状态
+     */
+    public static final class GenerationDescriptor {
+
+        private final PatchGeneration generation;
+
+        private final int reachableClassLoaderCount;
+
+        private GenerationDescriptor(PatchGeneration generation) {
+            this.generation = generation;
+            this.reachableClassLoaderCount = generation.getReachableClassLoaders().size();
+        }
+
+        public long getId() {
+            return generation.getId();
+        }
+
+        public String getPatchLocation() {
+            return generation.getPatchLocation();
+        }
+
+        public String getContentHash() {
+            return generation.getContentHash();
+        }
+
+        public long getCreateTime() {
+            return generation.getCreateTime();
+        }
+
+        public List<String> getClassNames() {
+            return generation.getClassNames();
+        }
+
+        /**
+         * 获取 热修复的 Controller 类名
+         */
+        public List<String> getControllers() {
+            return generation.getGeneratedClassNames().getOrDefault("controller", Collections.emptyList());
+        }
+
+        /**
+         * 获取 热修复的 Mapper 命名空间
+         */
+        public List<String> getMapperNamespaces() {
+            return generation.getGeneratedClassNames().getOrDefault("mybatis", Collections.emptyList());
+        }
+
+        /**
+         * 获取 被替换的原 Bean 名
+         */
+        public List<String> getBeans() {
+            return generation.getReplacedBeanNames();
+        }
+
+        public int getClassLoaderCount() {
+            return generation.getClassLoaderCount();
+        }
+
+        /**
+         * 获取 还没有被回收的类加载器数量
+         */
+        public int getReachableClassLoaderCount() {
+            return reachableClassLoaderCount;
+        }
+
+        public long getMetaspaceBytes() {
+            return generation.getMetaspaceBytes();
+        }
+
+        public boolean isSuperseded() {
+            return generation.isSuperseded();
+        }
+
+        public long getSupersededBy() {
+            return generation.getSupersededBy();
+        }
+
+        public boolean isLeakSuspected() {
+            return generation.isLeakSuspected();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package czb.framework.hotfix.autoconfigure;
+
+import czb.framework.hotfix.core.HotFix;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 有 Spring Boot Actuator 依赖时注册热修复的端点 {@link HotFixEndpoint}，端点需要通过 management.endpoints.web.exposure.include 暴露
+ * @author chenzhuobin
+ */
+@Configuration
+@ConditionalOnClass(Endpoint.class)
+@ConditionalOnBean(HotFix.class)
+@AutoConfigureAfter(HotFixAutoConfiguration.class)
+public class HotFixEndpointAutoConfiguration {
+
+    @Bean
+    @ConditionalOnAvailableEndpoint(endpoint = HotFixEndpoint.class)
+    public HotFixEndpoint hotFixEndpoint(HotFix hotFix){
+        return new HotFixEndpoint(hotFix);
+    }
+}
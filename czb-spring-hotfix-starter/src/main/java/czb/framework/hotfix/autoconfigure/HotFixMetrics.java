@@ -0,0 +1,124 @@
+package czb.framework.hotfix.autoconfigure;
+
+import czb.framework.hotfix.core.HotFix;
+import czb.framework.hotfix.core.listener.HotFixListener;
+import czb.framework.hotfix.core.listener.HotFixPhase;
+import czb.framework.hotfix.core.report.HotFixReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热修复的 Micrometer 指标，监听 {@link HotFix} 的每个阶段
+ * <ul>
+ *   <li>hotfix.phase：每个阶段的耗时，tag phase=scan/define/generate/rewire/commit/scrub/warm_up</li>
+ *   <li>hotfix.generate：每种生成器准备热修复动作的耗时，tag generator=mybatis/controller/swappable/common，
+ *   mybatis 即删除并重新解析 Mapper 元数据到影子 Configuration 的耗时</li>
+ *   <li>hotfix.flush：每种生成器生效时提交变更的耗时，mybatis 即替换运行中 Configuration 元数据的耗时，controller 即覆盖接口注册信息的耗时</li>
+ *   <li>hotfix.field.rewire：生效时修改依赖属性引用的耗时</li>
+ *   <li>hotfix.exec：一次热修复的总耗时，tag outcome=success/failure</li>
+ *   <li>hotfix.patch.bytes、hotfix.classes.defined、hotfix.classloaders.created：读取的补丁字节数、定义的类数量、创建的类加载器数量</li>
+ *   <li>hotfix.failures：失败次数，tag phase=失败的阶段,exception=异常类名</li>
+ * </ul>
+ * <p>Spring Boot 会把所有 {@link MeterBinder} 绑定到应用的 {@link MeterRegistry}，绑定之前的热修复不会记录指标。</p>
+ * @author chenzhuobin
+ */
+public class HotFixMetrics implements MeterBinder, HotFixListener {
+
+    /**
+     * 绑定的所有 MeterRegistry
+     */
+    private final CompositeMeterRegistry registry=new CompositeMeterRegistry();
+
+    /**
+     * 新建一个 HotFixMetrics 并注册为 hotFix 的监听器
+     * @param hotFix 热修复main类
+     */
+    public HotFixMetrics(HotFix hotFix) {
+        hotFix.addListener(this);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry.add(registry);
+    }
+
+    @Override
+    public void onPhaseEnd(HotFixReport report, HotFixPhase phase, long costNanos) {
+        Timer.builder("hotfix.phase")
+                .description("hotfix phase duration")
+                .tag("phase", phase.name().toLowerCase(Locale.ENGLISH))
+                .register(registry)
+                .record(costNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onComplete(HotFixReport report) {
+        record(report, "success");
+    }
+
+    @Override
+    public void onFailure(HotFixReport report, Throwable error) {
+        record(report, "failure");
+        Counter.builder("hotfix.failures")
+                .description("hotfix failures")
+                .tag("phase", report.getPhase()==null?"none":report.getPhase().name().toLowerCase(Locale.ENGLISH))
+                .tag("exception", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 记录一次热修复的耗时和数量，失败时只有已经完成的部分
+     * @param report 热修复执行报告
+     * @param outcome success/failure
+     */
+    private void record(HotFixReport report, String outcome){
+        Map<String, Long> generateCostNanos = report.getGenerateCostNanos();
+        recordByGenerator("hotfix.generate", "hotfix bean generation duration by generator", generateCostNanos, generateCostNanos.keySet());
+        //只记录本次热修复用到的生成器的提交耗时
+        recordByGenerator("hotfix.flush", "hotfix buffered changes commit duration by generator", report.getFlushCostNanos(), generateCostNanos.keySet());
+        if(report.getFieldRefCount()>0){
+            Timer.builder("hotfix.field.rewire")
+                    .description("hotfix dependent field rewiring duration")
+                    .register(registry)
+                    .record(report.getFieldRefCostNanos(), TimeUnit.NANOSECONDS);
+        }
+        Timer.builder("hotfix.exec")
+                .description("hotfix total duration")
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(System.currentTimeMillis()-report.getStartTime(), TimeUnit.MILLISECONDS);
+        Counter.builder("hotfix.patch.bytes")
+                .description("bytes of classes and mapper xml read from patches")
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(report.getPatchBytes());
+        Counter.builder("hotfix.classes.defined")
+                .description("hotfix classes defined")
+                .register(registry)
+                .increment(report.getDefinedClassCount());
+        Counter.builder("hotfix.classloaders.created")
+                .description("hotfix class loaders created")
+                .register(registry)
+                .increment(report.getClassLoaderCount());
+    }
+
+    private void recordByGenerator(String name, String description, Map<String,Long> costNanos, Set<String> generatorTypes){
+        for (Map.Entry<String, Long> entry : costNanos.entrySet()) {
+            if(!generatorTypes.contains(entry.getKey())) continue;
+            Timer.builder(name)
+                    .description(description)
+                    .tag("generator", entry.getKey())
+                    .register(registry)
+                    .record(entry.getValue(), TimeUnit.NANOSECONDS);
+        }
+    }
+}